@@ -20,9 +20,13 @@ package org.jclouds.googlecomputeengine;
 
 import static org.jclouds.Constants.PROPERTY_SESSION_INTERVAL;
 import static org.jclouds.compute.config.ComputeServiceProperties.TEMPLATE;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.CATALOG_FILE;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.CATALOG_TTL;
 import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.GCE_PROVIDER_NAME;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.GROUP_RESOURCE_CACHE_TTL;
 import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.OPERATION_COMPLETE_INTERVAL;
 import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.OPERATION_COMPLETE_TIMEOUT;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.PAGE_PREFETCH;
 import static org.jclouds.oauth.v2.config.OAuthProperties.AUDIENCE;
 import static org.jclouds.oauth.v2.config.OAuthProperties.SIGNATURE_OR_MAC_ALGORITHM;
 import static org.jclouds.reflect.Reflection2.typeToken;
@@ -72,6 +76,10 @@ public class GoogleComputeEngineApiMetadata extends BaseHttpApiMetadata<GoogleCo
               "loginUser=jclouds");
       properties.put(OPERATION_COMPLETE_INTERVAL, 500);
       properties.put(OPERATION_COMPLETE_TIMEOUT, 600000);
+      properties.put(GROUP_RESOURCE_CACHE_TTL, 60000);
+      properties.put(PAGE_PREFETCH, 2);
+      properties.put(CATALOG_TTL, 600000);
+      properties.put(CATALOG_FILE, "");
       return properties;
    }
 
@@ -52,6 +52,34 @@ public interface GoogleComputeEngineConstants {
    @Beta
    public static final String OPERATION_COMPLETE_INTERVAL = "jclouds.google-compute-engine.operation-complete-interval";
 
+   /**
+    * How long, in msecs, the networks and firewalls shared by the nodes of a group are cached before they are looked
+    * up again.
+    */
+   @Beta
+   public static final String GROUP_RESOURCE_CACHE_TTL = "jclouds.google-compute-engine.group-resource-cache-ttl";
+
+   /**
+    * How many pages of a list to request ahead of the one being consumed, 0 fetches each page only when it is needed.
+    * When positive, images of the user project and the google project are also listed concurrently.
+    */
+   @Beta
+   public static final String PAGE_PREFETCH = "jclouds.google-compute-engine.page-prefetch";
+
+   /**
+    * How long, in msecs, the images, machine types and zones templates are built from are used before they are
+    * reloaded in the background, 0 lists them again every time they are needed.
+    */
+   @Beta
+   public static final String CATALOG_TTL = "jclouds.google-compute-engine.catalog-ttl";
+
+   /**
+    * A file where the images, machine types and zones templates are built from are saved and restored from on start,
+    * empty to keep them in memory only.
+    */
+   @Beta
+   public static final String CATALOG_FILE = "jclouds.google-compute-engine.catalog-file";
+
    public static final Location GOOGLE_PROVIDER_LOCATION = new LocationBuilder().scope(LocationScope.PROVIDER).id
            (GCE_PROVIDER_NAME).description(GCE_PROVIDER_NAME).build();
 
@@ -23,6 +23,10 @@ import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import org.jclouds.Constants;
 import org.jclouds.collect.Memoized;
@@ -50,27 +54,29 @@ import org.jclouds.compute.strategy.SuspendNodeStrategy;
 import org.jclouds.domain.Credentials;
 import org.jclouds.domain.Location;
 import org.jclouds.googlecomputeengine.GoogleComputeEngineApi;
+import org.jclouds.googlecomputeengine.compute.internal.GroupResourceCache;
 import org.jclouds.googlecomputeengine.compute.options.GoogleComputeEngineTemplateOptions;
 import org.jclouds.googlecomputeengine.config.UserProject;
 import org.jclouds.googlecomputeengine.domain.Operation;
+import org.jclouds.googlecomputeengine.internal.OperationTracker;
 import org.jclouds.http.HttpResponse;
 import org.jclouds.scriptbuilder.functions.InitAdminAccess;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static com.google.common.util.concurrent.Futures.allAsList;
+import static com.google.common.util.concurrent.Futures.transform;
 import static org.jclouds.compute.config.ComputeServiceProperties.TIMEOUT_NODE_RUNNING;
 import static org.jclouds.compute.config.ComputeServiceProperties.TIMEOUT_NODE_SUSPENDED;
 import static org.jclouds.compute.config.ComputeServiceProperties.TIMEOUT_NODE_TERMINATED;
-import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.OPERATION_COMPLETE_INTERVAL;
-import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.OPERATION_COMPLETE_TIMEOUT;
-import static org.jclouds.util.Predicates2.retry;
 
 /**
  * @author David Alves
@@ -81,9 +87,9 @@ public class GoogleComputeEngineService extends BaseComputeService {
    private final GroupNamingConvention.Factory namingConvention;
    private final GoogleComputeEngineApi api;
    private final Supplier<String> project;
-   private final Predicate<AtomicReference<Operation>> operationDonePredicate;
-   private final long operationCompleteCheckInterval;
-   private final long operationCompleteCheckTimeout;
+   private final OperationTracker operationTracker;
+   private final GroupResourceCache groupResourceCache;
+   private final ListeningExecutorService userExecutor;
 
    @Inject
    protected GoogleComputeEngineService(ComputeServiceContext context,
@@ -118,9 +124,8 @@ public class GoogleComputeEngineService extends BaseComputeService {
                                         GroupNamingConvention.Factory namingConvention,
                                         GoogleComputeEngineApi api,
                                         @UserProject Supplier<String> project,
-                                        Predicate<AtomicReference<Operation>> operationDonePredicate,
-                                        @Named(OPERATION_COMPLETE_INTERVAL) Long operationCompleteCheckInterval,
-                                        @Named(OPERATION_COMPLETE_TIMEOUT) Long operationCompleteCheckTimeout) {
+                                        OperationTracker operationTracker,
+                                        GroupResourceCache groupResourceCache) {
 
       super(context, credentialStore, images, hardwareProfiles, locations, listNodesStrategy, getImageStrategy,
               getNodeMetadataStrategy, runNodesAndAddToSetStrategy, rebootNodeStrategy, destroyNodeStrategy,
@@ -131,44 +136,61 @@ public class GoogleComputeEngineService extends BaseComputeService {
       this.namingConvention = checkNotNull(namingConvention, "naming convention factory");
       this.api = checkNotNull(api, "google compute api");
       this.project = checkNotNull(project, "user project name");
-      this.operationDonePredicate = checkNotNull(operationDonePredicate, "operation completed predicate");
-      this.operationCompleteCheckInterval = checkNotNull(operationCompleteCheckInterval,
-              "operation completed check interval");
-      this.operationCompleteCheckTimeout = checkNotNull(operationCompleteCheckTimeout,
-              "operation completed check timeout");
+      this.operationTracker = checkNotNull(operationTracker, "operation tracker");
+      this.groupResourceCache = checkNotNull(groupResourceCache, "group resource cache");
+      this.userExecutor = checkNotNull(userExecutor, "user executor");
    }
 
    @Override
    protected synchronized void cleanUpIncidentalResourcesOfDeadNodes(Set<? extends NodeMetadata> deadNodes) {
       Set<String> orphanedGroups = findOrphanedGroups.apply(deadNodes);
+      List<ListenableFuture<Operation>> cleanUps = Lists.newArrayList();
       for (String orphanedGroup : orphanedGroups) {
-         cleanUpNetworksAndFirewallsForGroup(orphanedGroup);
+         cleanUps.add(cleanUpNetworksAndFirewallsForGroup(orphanedGroup));
       }
-   }
-
-
-   protected void cleanUpNetworksAndFirewallsForGroup(String groupName) {
-      String resourceName = namingConvention.create().sharedNameForGroup(groupName);
-      AtomicReference<Operation> operation = new AtomicReference<Operation>(api.getFirewallApiForProject(project.get())
-              .delete(resourceName));
-
-      retry(operationDonePredicate, operationCompleteCheckTimeout, operationCompleteCheckInterval,
-              MILLISECONDS).apply(operation);
-
-      if (operation.get().getHttpError().isPresent()) {
-         HttpResponse response = operation.get().getHttpError().get();
-         logger.warn("delete orphaned firewall failed. Http Error Code: " + response.getStatusCode() +
-                 " HttpError: " + response.getMessage());
+      // the operations of all the groups are tracked together, so this waits once rather than once per operation
+      try {
+         allAsList(cleanUps).get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw Throwables.propagate(e);
+      } catch (ExecutionException e) {
+         throw Throwables.propagate(e.getCause());
       }
+   }
 
-      operation = new AtomicReference<Operation>(api.getNetworkApiForProject(project.get()).delete(resourceName));
-
-      retry(operationDonePredicate, operationCompleteCheckTimeout, operationCompleteCheckInterval,
-              MILLISECONDS).apply(operation);
+   /**
+    * Deletes the firewall of the group and then its network, which can only be deleted once no firewall uses it.
+    *
+    * @return a future holding the network delete operation in DONE state
+    */
+   protected ListenableFuture<Operation> cleanUpNetworksAndFirewallsForGroup(String groupName) {
+      final String resourceName = namingConvention.create().sharedNameForGroup(groupName);
+      groupResourceCache.invalidate(project.get(), resourceName);
+      ListenableFuture<Operation> firewallDeleted = operationTracker.track(project.get(),
+              api.getFirewallApiForProject(project.get()).delete(resourceName));
+
+      return transform(firewallDeleted, new AsyncFunction<Operation, Operation>() {
+         @Override
+         public ListenableFuture<Operation> apply(Operation operation) {
+            warnIfFailed("firewall", operation);
+            return transform(operationTracker.track(project.get(),
+                    api.getNetworkApiForProject(project.get()).delete(resourceName)),
+                    new Function<Operation, Operation>() {
+                       @Override
+                       public Operation apply(Operation operation) {
+                          warnIfFailed("network", operation);
+                          return operation;
+                       }
+                    });
+         }
+      }, userExecutor);
+   }
 
-      if (operation.get().getHttpError().isPresent()) {
-         HttpResponse response = operation.get().getHttpError().get();
-         logger.warn("delete orphaned network failed. Http Error Code: " + response.getStatusCode() +
+   private void warnIfFailed(String resource, Operation operation) {
+      if (operation.getHttpError().isPresent()) {
+         HttpResponse response = operation.getHttpError().get();
+         logger.warn("delete orphaned " + resource + " failed. Http Error Code: " + response.getStatusCode() +
                  " HttpError: " + response.getMessage());
       }
    }
@@ -23,10 +23,18 @@ import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
 import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.util.concurrent.UncheckedTimeoutException;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.inject.Inject;
+import org.jclouds.Constants;
 import org.jclouds.compute.ComputeServiceAdapter;
 import org.jclouds.compute.domain.Hardware;
 import org.jclouds.compute.domain.Template;
@@ -34,6 +42,7 @@ import org.jclouds.compute.options.TemplateOptions;
 import org.jclouds.compute.reference.ComputeServiceConstants;
 import org.jclouds.domain.LoginCredentials;
 import org.jclouds.googlecomputeengine.GoogleComputeEngineApi;
+import org.jclouds.googlecomputeengine.compute.internal.CatalogCache;
 import org.jclouds.googlecomputeengine.compute.options.GoogleComputeEngineTemplateOptions;
 import org.jclouds.googlecomputeengine.config.UserProject;
 import org.jclouds.googlecomputeengine.domain.Image;
@@ -42,19 +51,24 @@ import org.jclouds.googlecomputeengine.domain.InstanceTemplate;
 import org.jclouds.googlecomputeengine.domain.MachineType;
 import org.jclouds.googlecomputeengine.domain.Operation;
 import org.jclouds.googlecomputeengine.domain.Zone;
+import org.jclouds.googlecomputeengine.features.InstanceApi;
+import org.jclouds.googlecomputeengine.internal.OperationTracker;
+import org.jclouds.googlecomputeengine.options.ListOptions;
 import org.jclouds.http.HttpResponse;
 import org.jclouds.logging.Logger;
 
 import javax.annotation.Resource;
 import javax.inject.Named;
 import java.net.URI;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
-import static com.google.common.collect.Iterables.contains;
-import static com.google.common.collect.Iterables.filter;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.GOOGLE_PROJECT;
 import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.OPERATION_COMPLETE_INTERVAL;
@@ -67,6 +81,18 @@ import static org.jclouds.util.Predicates2.retry;
  */
 public class GoogleComputeEngineServiceAdapter implements ComputeServiceAdapter<Instance, MachineType, Image, Zone> {
 
+   /**
+    * The maximum length of the filter expression sent with a single list request, longer lists of names are split
+    * into several requests.
+    */
+   public static final int MAX_FILTER_LENGTH = 1024;
+
+   /**
+    * The names GCE accepts for instances. Ids that don't match it can't name an instance and, since they contain no
+    * regular expression meta characters, the ones that do match it can be used as is in a filter expression.
+    */
+   private static final Pattern INSTANCE_NAME = Pattern.compile("[a-z]([-a-z0-9]*[a-z0-9])?");
+
    @Resource
    @Named(ComputeServiceConstants.COMPUTE_LOGGER)
    protected Logger logger = Logger.NULL;
@@ -74,18 +100,23 @@ public class GoogleComputeEngineServiceAdapter implements ComputeServiceAdapter<
    private final GoogleComputeEngineApi api;
    private final Supplier<String> userProject;
    private final Function<TemplateOptions, ImmutableMap.Builder<String, String>> metatadaFromTemplateOptions;
-   private final Predicate<AtomicReference<Operation>> retryOperationDonePredicate;
+   private final OperationTracker operationTracker;
+   private final ListeningExecutorService userExecutor;
    private final long operationCompleteCheckInterval;
    private final long operationCompleteCheckTimeout;
+   private final CatalogCache catalog;
 
    @Inject
    public GoogleComputeEngineServiceAdapter(GoogleComputeEngineApi api,
                                             @UserProject Supplier<String> userProject,
                                             Function<TemplateOptions,
                                                     ImmutableMap.Builder<String, String>> metatadaFromTemplateOptions,
-                                            Predicate<AtomicReference<Operation>> operationDonePredicate,
+                                            OperationTracker operationTracker,
+                                            @Named(Constants.PROPERTY_USER_THREADS)
+                                            ListeningExecutorService userExecutor,
                                             @Named(OPERATION_COMPLETE_INTERVAL) Long operationCompleteCheckInterval,
-                                            @Named(OPERATION_COMPLETE_TIMEOUT) Long operationCompleteCheckTimeout) {
+                                            @Named(OPERATION_COMPLETE_TIMEOUT) Long operationCompleteCheckTimeout,
+                                            CatalogCache catalog) {
       this.api = checkNotNull(api, "google compute api");
       this.userProject = checkNotNull(userProject, "user project name");
       this.metatadaFromTemplateOptions = checkNotNull(metatadaFromTemplateOptions,
@@ -94,8 +125,9 @@ public class GoogleComputeEngineServiceAdapter implements ComputeServiceAdapter<
               "operation completed check interval");
       this.operationCompleteCheckTimeout = checkNotNull(operationCompleteCheckTimeout,
               "operation completed check timeout");
-      this.retryOperationDonePredicate = retry(operationDonePredicate, operationCompleteCheckTimeout,
-              operationCompleteCheckInterval, TimeUnit.MILLISECONDS);
+      this.operationTracker = checkNotNull(operationTracker, "operation tracker");
+      this.userExecutor = checkNotNull(userExecutor, "user executor");
+      this.catalog = checkNotNull(catalog, "catalog");
    }
 
    @Override
@@ -150,15 +182,12 @@ public class GoogleComputeEngineServiceAdapter implements ComputeServiceAdapter<
 
    @Override
    public Iterable<MachineType> listHardwareProfiles() {
-      return api.getMachineTypeApiForProject(userProject.get()).list().concat();
+      return catalog.getMachineTypes();
    }
 
    @Override
    public Iterable<Image> listImages() {
-      return ImmutableSet.<Image>builder()
-              .addAll(api.getImageApiForProject(userProject.get()).list().concat())
-              .addAll(api.getImageApiForProject(GOOGLE_PROJECT).list().concat())
-              .build();
+      return catalog.getImages();
    }
 
    @Override
@@ -169,7 +198,7 @@ public class GoogleComputeEngineServiceAdapter implements ComputeServiceAdapter<
 
    @Override
    public Iterable<Zone> listLocations() {
-      return api.getZoneApiForProject(userProject.get()).list().concat();
+      return catalog.getZones();
    }
 
    @Override
@@ -182,15 +211,67 @@ public class GoogleComputeEngineServiceAdapter implements ComputeServiceAdapter<
       return api.getInstanceApiForProject(userProject.get()).list().concat();
    }
 
+   /**
+    * Lists only the instances with the given names by filtering on the server side. Long lists of names are split in
+    * several filter expressions, which are listed concurrently.
+    */
    @Override
-   public Iterable<Instance> listNodesByIds(final Iterable<String> ids) {
-      return filter(listNodes(), new Predicate<Instance>() {
+   public Iterable<Instance> listNodesByIds(Iterable<String> ids) {
+      final InstanceApi instanceApi = api.getInstanceApiForProject(userProject.get());
+      List<String> filters = nameFilters(ids, MAX_FILTER_LENGTH);
+      if (filters.isEmpty()) {
+         return ImmutableSet.of();
+      } else if (filters.size() == 1) {
+         return ImmutableList.copyOf(instanceApi.list(new ListOptions().filter(filters.get(0))).concat());
+      }
 
-         @Override
-         public boolean apply(Instance instance) {
-            return contains(ids, instance.getName());
+      List<ListenableFuture<List<Instance>>> responses = Lists.newArrayListWithCapacity(filters.size());
+      for (final String filter : filters) {
+         responses.add(userExecutor.submit(new Callable<List<Instance>>() {
+            @Override
+            public List<Instance> call() {
+               return ImmutableList.copyOf(instanceApi.list(new ListOptions().filter(filter)).concat());
+            }
+         }));
+      }
+      try {
+         return ImmutableList.copyOf(Iterables.concat(Futures.allAsList(responses).get()));
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw Throwables.propagate(e);
+      } catch (ExecutionException e) {
+         throw Throwables.propagate(e.getCause());
+      } finally {
+         for (ListenableFuture<List<Instance>> response : responses) {
+            response.cancel(true);
          }
-      });
+      }
+   }
+
+   /**
+    * Builds filter expressions, of the form {@code name eq (a|b|c)}, matching the instances with the given names,
+    * each of them at most maxLength long unless a single name doesn't fit.
+    */
+   static List<String> nameFilters(Iterable<String> names, int maxLength) {
+      Set<String> validNames = Sets.newLinkedHashSet();
+      for (String name : names) {
+         if (name != null && INSTANCE_NAME.matcher(name).matches()) {
+            validNames.add(name);
+         }
+      }
+      ImmutableList.Builder<String> filters = ImmutableList.builder();
+      StringBuilder filter = new StringBuilder();
+      for (String name : validNames) {
+         if (filter.length() > 0 && filter.length() + name.length() + 2 > maxLength) {
+            filters.add(filter.append(')').toString());
+            filter.setLength(0);
+         }
+         filter.append(filter.length() == 0 ? "name eq (" : "|").append(name);
+      }
+      if (filter.length() > 0) {
+         filters.add(filter.append(')').toString());
+      }
+      return filters.build();
    }
 
    @Override
@@ -247,16 +328,12 @@ public class GoogleComputeEngineServiceAdapter implements ComputeServiceAdapter<
    }
 
    private void waitOperationDone(Operation operation) {
-      AtomicReference<Operation> operationRef = new AtomicReference<Operation>(operation);
-
-      // wait for the operation to complete
-      if (!retryOperationDonePredicate.apply(operationRef)) {
-         throw new UncheckedTimeoutException("operation did not reach DONE state" + operationRef.get());
-      }
+      // wait for the operation to complete, throws UncheckedTimeoutException if it doesn't
+      Operation done = operationTracker.awaitDone(userProject.get(), operation);
 
       // check if the operation failed
-      if (operationRef.get().getHttpError().isPresent()) {
-         HttpResponse response = operationRef.get().getHttpError().get();
+      if (done.getHttpError().isPresent()) {
+         HttpResponse response = done.getHttpError().get();
          throw new IllegalStateException("operation failed. Http Error Code: " + response.getStatusCode() +
                  " HttpError: " + response.getMessage());
       }
@@ -0,0 +1,301 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.googlecomputeengine.compute.internal;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.jclouds.Constants.PROPERTY_USER_THREADS;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.CATALOG_FILE;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.CATALOG_TTL;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.GOOGLE_PROJECT;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.PAGE_PREFETCH;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Resource;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.googlecomputeengine.GoogleComputeEngineApi;
+import org.jclouds.googlecomputeengine.config.UserProject;
+import org.jclouds.googlecomputeengine.domain.Image;
+import org.jclouds.googlecomputeengine.domain.MachineType;
+import org.jclouds.googlecomputeengine.domain.Zone;
+import org.jclouds.json.Json;
+import org.jclouds.logging.Logger;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.inject.Inject;
+
+/**
+ * Keeps the images, machine types and zones templates are built from.
+ * <p/>
+ * Once loaded, each of them is served from memory. When it is older than
+ * {@link org.jclouds.googlecomputeengine.GoogleComputeEngineConstants#CATALOG_TTL} it is reloaded in the background
+ * while readers keep getting the previous snapshot; only the very first load blocks. A ttl of 0 disables caching.
+ * <p/>
+ * When {@link org.jclouds.googlecomputeengine.GoogleComputeEngineConstants#CATALOG_FILE} is set, every snapshot is
+ * also written to that file and read back on start, so templates can be built before the api is reached. Snapshots
+ * read from the file are refreshed on first use.
+ */
+@Singleton
+public class CatalogCache {
+
+   @Resource
+   protected Logger logger = Logger.NULL;
+
+   @Inject(optional = true)
+   public Ticker ticker = Ticker.systemTicker();
+
+   private final GoogleComputeEngineApi api;
+   private final Supplier<String> userProject;
+   private final ListeningExecutorService userExecutor;
+   private final Json json;
+   private final long ttlNanos;
+   private final int pagePrefetch;
+   private final File file;
+
+   // guarded by this
+   private boolean restored;
+
+   private final Entry<Image> images = new Entry<Image>("images", new Callable<List<Image>>() {
+      @Override
+      public List<Image> call() {
+         return listImages();
+      }
+   });
+
+   private final Entry<MachineType> machineTypes = new Entry<MachineType>("machine types",
+           new Callable<List<MachineType>>() {
+      @Override
+      public List<MachineType> call() {
+         return ImmutableList.copyOf(api.getMachineTypeApiForProject(userProject.get()).list().concat());
+      }
+   });
+
+   private final Entry<Zone> zones = new Entry<Zone>("zones", new Callable<List<Zone>>() {
+      @Override
+      public List<Zone> call() {
+         return ImmutableList.copyOf(api.getZoneApiForProject(userProject.get()).list().concat());
+      }
+   });
+
+   @Inject
+   public CatalogCache(GoogleComputeEngineApi api, @UserProject Supplier<String> userProject,
+                       @Named(PROPERTY_USER_THREADS) ListeningExecutorService userExecutor, Json json,
+                       @Named(CATALOG_TTL) Long ttl, @Named(PAGE_PREFETCH) Integer pagePrefetch,
+                       @Named(CATALOG_FILE) String file) {
+      this.api = checkNotNull(api, "google compute api");
+      this.userProject = checkNotNull(userProject, "user project name");
+      this.userExecutor = checkNotNull(userExecutor, "user executor");
+      this.json = checkNotNull(json, "json");
+      this.ttlNanos = MILLISECONDS.toNanos(checkNotNull(ttl, "catalog ttl"));
+      this.pagePrefetch = checkNotNull(pagePrefetch, "page prefetch");
+      this.file = checkNotNull(file, "catalog file").isEmpty() ? null : new File(file);
+   }
+
+   public List<Image> getImages() {
+      return images.get();
+   }
+
+   public List<MachineType> getMachineTypes() {
+      return machineTypes.get();
+   }
+
+   public List<Zone> getZones() {
+      return zones.get();
+   }
+
+   /**
+    * Reloads everything that was loaded before and waits for it.
+    */
+   public void refresh() {
+      images.reload();
+      machineTypes.reload();
+      zones.reload();
+   }
+
+   private List<Image> listImages() {
+      // an image listed by both projects is kept once
+      if (pagePrefetch <= 0) {
+         return ImmutableSet.<Image>builder()
+                 .addAll(api.getImageApiForProject(userProject.get()).list().concat())
+                 .addAll(api.getImageApiForProject(GOOGLE_PROJECT).list().concat())
+                 .build().asList();
+      }
+      // list the google project while the user project is being listed
+      ListenableFuture<List<Image>> googleImages = userExecutor.submit(new Callable<List<Image>>() {
+         @Override
+         public List<Image> call() {
+            return ImmutableList.copyOf(api.getImageApiForProject(GOOGLE_PROJECT).list().concat());
+         }
+      });
+      try {
+         ImmutableSet.Builder<Image> result = ImmutableSet.<Image>builder()
+                 .addAll(api.getImageApiForProject(userProject.get()).list().concat());
+         return result.addAll(googleImages.get()).build().asList();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw Throwables.propagate(e);
+      } catch (ExecutionException e) {
+         throw Throwables.propagate(e.getCause());
+      } finally {
+         googleImages.cancel(true);
+      }
+   }
+
+   /**
+    * Reads the catalog file, if any, the first time any entry is needed.
+    */
+   private synchronized void restoreOnce() {
+      if (restored) {
+         return;
+      }
+      restored = true;
+      if (file == null || !file.isFile()) {
+         return;
+      }
+      try {
+         Snapshot snapshot = json.fromJson(Files.toString(file, UTF_8), Snapshot.class);
+         images.restore(snapshot.images);
+         machineTypes.restore(snapshot.machineTypes);
+         zones.restore(snapshot.zones);
+         logger.debug("<< restored catalog from %s", file);
+      } catch (IOException e) {
+         logger.warn(e, "<< could not read catalog from %s, it will be loaded from the api", file);
+      } catch (RuntimeException e) {
+         logger.warn(e, "<< could not parse catalog from %s, it will be loaded from the api", file);
+      }
+   }
+
+   private synchronized void save() {
+      if (file == null) {
+         return;
+      }
+      Snapshot snapshot = new Snapshot();
+      snapshot.images = images.value;
+      snapshot.machineTypes = machineTypes.value;
+      snapshot.zones = zones.value;
+      try {
+         File temp = new File(file.getPath() + ".tmp");
+         Files.write(json.toJson(snapshot), temp, UTF_8);
+         Files.move(temp, file);
+      } catch (IOException e) {
+         logger.warn(e, "<< could not write catalog to %s", file);
+      }
+   }
+
+   /**
+    * The contents of the catalog file.
+    */
+   private static final class Snapshot {
+      private List<Image> images;
+      private List<MachineType> machineTypes;
+      private List<Zone> zones;
+   }
+
+   private final class Entry<T> {
+      private final String name;
+      private final Callable<List<T>> loader;
+      private final AtomicBoolean refreshing = new AtomicBoolean();
+      private volatile List<T> value;
+      private volatile long loadedAt;
+
+      private Entry(String name, Callable<List<T>> loader) {
+         this.name = name;
+         this.loader = loader;
+      }
+
+      private List<T> get() {
+         if (ttlNanos <= 0) {
+            return load();
+         }
+         List<T> current = value;
+         if (current == null) {
+            restoreOnce();
+            synchronized (this) {
+               if (value == null) {
+                  set(load());
+               }
+            }
+            return get();
+         }
+         if (ticker.read() - loadedAt >= ttlNanos && refreshing.compareAndSet(false, true)) {
+            userExecutor.execute(new Runnable() {
+               @Override
+               public void run() {
+                  try {
+                     set(load());
+                  } catch (RuntimeException e) {
+                     logger.warn(e, "<< could not refresh %s, serving the previous ones", name);
+                  } finally {
+                     refreshing.set(false);
+                  }
+               }
+            });
+         }
+         return current;
+      }
+
+      private void reload() {
+         if (value != null) {
+            set(load());
+         }
+      }
+
+      private void restore(List<T> restored) {
+         if (restored != null) {
+            value = ImmutableList.copyOf(restored);
+            // stale right away, so the first reader triggers a refresh
+            loadedAt = ticker.read() - ttlNanos;
+         }
+      }
+
+      private List<T> load() {
+         logger.debug(">> loading %s", name);
+         try {
+            return loader.call();
+         } catch (Exception e) {
+            throw Throwables.propagate(e);
+         }
+      }
+
+      private void set(List<T> loaded) {
+         synchronized (this) {
+            value = loaded;
+            loadedAt = ticker.read();
+         }
+         save();
+         logger.debug("<< loaded %d %s", loaded.size(), name);
+      }
+   }
+}
@@ -0,0 +1,102 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.googlecomputeengine.compute.internal;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.GROUP_RESOURCE_CACHE_TTL;
+
+import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.googlecomputeengine.domain.Network;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Caches, per project, the networks and firewalls shared by the nodes of a group so that launching nodes into a group
+ * whose resources were recently looked up or created does not go back to the api.
+ * <p/>
+ * Loading an entry is single-flight: concurrent lookups of the same resource wait for the one in progress, while
+ * lookups of the resources of other groups proceed independently. Failed loads are not cached.
+ */
+@Singleton
+public class GroupResourceCache {
+
+   private final Cache<String, Network> networks;
+   private final Cache<String, URI> firewalls;
+
+   @Inject
+   public GroupResourceCache(@Named(GROUP_RESOURCE_CACHE_TTL) Long ttl) {
+      checkNotNull(ttl, "group resource cache ttl");
+      this.networks = CacheBuilder.newBuilder().expireAfterWrite(ttl, MILLISECONDS).build();
+      this.firewalls = CacheBuilder.newBuilder().expireAfterWrite(ttl, MILLISECONDS).build();
+   }
+
+   /**
+    * Returns the cached network with the given name, or obtains it with the given loader, which should look it up and
+    * create it if it does not exist.
+    */
+   public Network getNetwork(String project, String networkName, Callable<Network> loader) {
+      return get(networks, key(project, networkName), loader);
+   }
+
+   /**
+    * Returns the link of the cached firewall with the given name, or obtains it with the given loader, which should
+    * look it up and create it if it does not exist.
+    */
+   public URI getFirewall(String project, String firewallName, Callable<URI> loader) {
+      return get(firewalls, key(project, firewallName), loader);
+   }
+
+   /**
+    * Forgets the network and the firewall with the given name, e.g., because they were deleted.
+    */
+   public void invalidate(String project, String resourceName) {
+      networks.invalidate(key(project, resourceName));
+      firewalls.invalidate(key(project, resourceName));
+   }
+
+   public void invalidateAll() {
+      networks.invalidateAll();
+      firewalls.invalidateAll();
+   }
+
+   private static <T> T get(Cache<String, T> cache, String key, Callable<T> loader) {
+      try {
+         return cache.get(key, loader);
+      } catch (ExecutionException e) {
+         throw Throwables.propagate(e.getCause());
+      } catch (UncheckedExecutionException e) {
+         throw Throwables.propagate(e.getCause());
+      }
+   }
+
+   private static String key(String project, String resourceName) {
+      return checkNotNull(project, "project") + "/" + checkNotNull(resourceName, "resourceName");
+   }
+}
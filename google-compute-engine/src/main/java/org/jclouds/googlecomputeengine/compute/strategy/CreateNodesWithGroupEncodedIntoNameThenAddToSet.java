@@ -19,7 +19,6 @@
 
 package org.jclouds.googlecomputeengine.compute.strategy;
 
-import com.google.common.base.Predicate;
 import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
@@ -34,26 +33,25 @@ import org.jclouds.compute.strategy.CreateNodeWithGroupEncodedIntoName;
 import org.jclouds.compute.strategy.CustomizeNodeAndAddToGoodMapOrPutExceptionIntoBadMap;
 import org.jclouds.compute.strategy.ListNodesStrategy;
 import org.jclouds.googlecomputeengine.GoogleComputeEngineApi;
+import org.jclouds.googlecomputeengine.compute.internal.GroupResourceCache;
 import org.jclouds.googlecomputeengine.compute.options.GoogleComputeEngineTemplateOptions;
 import org.jclouds.googlecomputeengine.config.UserProject;
 import org.jclouds.googlecomputeengine.domain.Firewall;
 import org.jclouds.googlecomputeengine.domain.Network;
 import org.jclouds.googlecomputeengine.domain.Operation;
+import org.jclouds.googlecomputeengine.internal.OperationTracker;
 import org.jclouds.googlecomputeengine.options.FirewallOptions;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.net.URI;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.Callable;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.ImmutableSet.of;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
-import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.OPERATION_COMPLETE_INTERVAL;
-import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.OPERATION_COMPLETE_TIMEOUT;
-import static org.jclouds.util.Predicates2.retry;
 
 /**
  * @author David Alves
@@ -66,9 +64,8 @@ public class CreateNodesWithGroupEncodedIntoNameThenAddToSet extends
 
    private final GoogleComputeEngineApi api;
    private final Supplier<String> userProject;
-   private final Predicate<AtomicReference<Operation>> operationDonePredicate;
-   private final long operationCompleteCheckInterval;
-   private final long operationCompleteCheckTimeout;
+   private final OperationTracker operationTracker;
+   private final GroupResourceCache groupResourceCache;
 
    @Inject
    protected CreateNodesWithGroupEncodedIntoNameThenAddToSet(
@@ -81,37 +78,45 @@ public class CreateNodesWithGroupEncodedIntoNameThenAddToSet extends
                    customizeNodeAndAddToGoodMapOrPutExceptionIntoBadMapFactory,
            GoogleComputeEngineApi api,
            @UserProject Supplier<String> userProject,
-           Predicate<AtomicReference<Operation>> operationDonePredicate,
-           @Named(OPERATION_COMPLETE_INTERVAL) Long operationCompleteCheckInterval,
-           @Named(OPERATION_COMPLETE_TIMEOUT) Long operationCompleteCheckTimeout) {
+           OperationTracker operationTracker,
+           GroupResourceCache groupResourceCache) {
       super(addNodeWithGroupStrategy, listNodesStrategy, namingConvention, userExecutor,
               customizeNodeAndAddToGoodMapOrPutExceptionIntoBadMapFactory);
 
       this.api = checkNotNull(api, "google compute api");
       this.userProject = checkNotNull(userProject, "user project name");
-      this.operationCompleteCheckInterval = checkNotNull(operationCompleteCheckInterval,
-              "operation completed check interval");
-      this.operationCompleteCheckTimeout = checkNotNull(operationCompleteCheckTimeout,
-              "operation completed check timeout");
-      this.operationDonePredicate = operationDonePredicate;
+      this.operationTracker = checkNotNull(operationTracker, "operation tracker");
+      this.groupResourceCache = checkNotNull(groupResourceCache, "group resource cache");
    }
 
    @Override
-   public synchronized Map<?, ListenableFuture<Void>> execute(String group, int count,
-                                                              Template template,
-                                                              Set<NodeMetadata> goodNodes,
-                                                              Map<NodeMetadata, Exception> badNodes,
-                                                              Multimap<NodeMetadata, CustomizationResponse> customizationResponses) {
+   public Map<?, ListenableFuture<Void>> execute(String group, int count,
+                                                 Template template,
+                                                 Set<NodeMetadata> goodNodes,
+                                                 Map<NodeMetadata, Exception> badNodes,
+                                                 Multimap<NodeMetadata, CustomizationResponse> customizationResponses) {
 
-      String sharedResourceName = namingConvention.create().sharedNameForGroup(group);
+      final String sharedResourceName = namingConvention.create().sharedNameForGroup(group);
       Template mutableTemplate = template.clone();
-      GoogleComputeEngineTemplateOptions templateOptions = GoogleComputeEngineTemplateOptions.class.cast(mutableTemplate
-              .getOptions());
+      final GoogleComputeEngineTemplateOptions templateOptions = GoogleComputeEngineTemplateOptions.class
+              .cast(mutableTemplate.getOptions());
       assert template.getOptions().equals(templateOptions) : "options didn't clone properly";
 
-      // get or create the network and create a firewall with the users configuration
-      Network network = getOrCreateNetwork(templateOptions, sharedResourceName);
-      getOrCreateFirewall(templateOptions, network, sharedResourceName);
+      // get or create the network and create a firewall with the users configuration, concurrent launches into the
+      // same group wait for each other here while launches into other groups proceed
+      final String networkName = templateOptions.getNetworkName().or(sharedResourceName);
+      final Network network = groupResourceCache.getNetwork(userProject.get(), networkName, new Callable<Network>() {
+         @Override
+         public Network call() {
+            return getOrCreateNetwork(templateOptions, networkName, sharedResourceName);
+         }
+      });
+      groupResourceCache.getFirewall(userProject.get(), sharedResourceName, new Callable<URI>() {
+         @Override
+         public URI call() {
+            return getOrCreateFirewall(templateOptions, network, sharedResourceName);
+         }
+      });
       templateOptions.network(network.getSelfLink());
 
       return super.execute(group, count, mutableTemplate, goodNodes, badNodes, customizationResponses);
@@ -120,11 +125,10 @@ public class CreateNodesWithGroupEncodedIntoNameThenAddToSet extends
    /**
     * Try and find a network either previously created by jclouds or user defined.
     */
-   private Network getOrCreateNetwork(GoogleComputeEngineTemplateOptions templateOptions, String sharedResourceName) {
+   private Network getOrCreateNetwork(GoogleComputeEngineTemplateOptions templateOptions, String networkName,
+                                      String sharedResourceName) {
 
-      String networkName = templateOptions.getNetworkName().or(sharedResourceName);
-
-      // check if the network was previously created (cache???)
+      // check if the network was previously created
       Network network = api.getNetworkApiForProject(userProject.get()).get(networkName);
 
       if (network != null) {
@@ -133,12 +137,10 @@ public class CreateNodesWithGroupEncodedIntoNameThenAddToSet extends
          throw new IllegalArgumentException("requested network " + networkName + " does not exist"); 
       }
 
-      AtomicReference<Operation> operation = new AtomicReference<Operation>(api.getNetworkApiForProject(userProject
+      Operation operation = operationTracker.awaitDone(userProject.get(), api.getNetworkApiForProject(userProject
               .get()).createInIPv4Range(sharedResourceName, DEFAULT_INTERNAL_NETWORK_RANGE));
-      retry(operationDonePredicate, operationCompleteCheckTimeout, operationCompleteCheckInterval,
-              MILLISECONDS).apply(operation);
 
-      checkState(!operation.get().getHttpError().isPresent(),"Could not create network, operation failed" + operation);
+      checkState(!operation.getHttpError().isPresent(),"Could not create network, operation failed" + operation);
 
       return checkNotNull(api.getNetworkApiForProject(userProject.get()).get(sharedResourceName),
               "no network with name %s was found", sharedResourceName);
@@ -148,15 +150,17 @@ public class CreateNodesWithGroupEncodedIntoNameThenAddToSet extends
    /**
     * Tries to find if a firewall already exists for this group, if not it creates one.
     *
+    * @return the link to the firewall
+    *
     * @see org.jclouds.googlecomputeengine.features.FirewallAsyncApi#patch(String, org.jclouds.googlecomputeengine.options.FirewallOptions)
     */
-   private void getOrCreateFirewall(GoogleComputeEngineTemplateOptions templateOptions, Network network,
-                                    String sharedResourceName) {
+   private URI getOrCreateFirewall(GoogleComputeEngineTemplateOptions templateOptions, Network network,
+                                   String sharedResourceName) {
 
       Firewall firewall = api.getFirewallApiForProject(userProject.get()).get(sharedResourceName);
 
       if (firewall != null) {
-         return;
+         return firewall.getSelfLink();
       }
 
       ImmutableSet.Builder<Firewall.Rule> rules = ImmutableSet.builder();
@@ -180,16 +184,14 @@ public class CreateNodesWithGroupEncodedIntoNameThenAddToSet extends
               .allowedRules(rules.build())
               .sourceRanges(of(DEFAULT_INTERNAL_NETWORK_RANGE, EXTERIOR_RANGE));
 
-      AtomicReference<Operation> operation = new AtomicReference<Operation>(api.getFirewallApiForProject(userProject
+      Operation operation = operationTracker.awaitDone(userProject.get(), api.getFirewallApiForProject(userProject
               .get()).createInNetwork(
               sharedResourceName,
               network.getSelfLink(),
               options));
 
-      retry(operationDonePredicate, operationCompleteCheckTimeout, operationCompleteCheckInterval,
-              MILLISECONDS).apply(operation);
-
-      checkState(!operation.get().getHttpError().isPresent(),"Could not create firewall, operation failed" + operation);
+      checkState(!operation.getHttpError().isPresent(),"Could not create firewall, operation failed" + operation);
+      return operation.getTargetLink();
    }
 
 
@@ -30,6 +30,7 @@ import org.jclouds.oauth.v2.functions.BuildTokenRequest;
 import org.jclouds.oauth.v2.functions.FetchToken;
 import org.jclouds.oauth.v2.functions.OAuthCredentialsSupplier;
 import org.jclouds.oauth.v2.functions.SignOrProduceMacForToken;
+import org.jclouds.oauth.v2.functions.TokenRefresher;
 import org.jclouds.rest.internal.GeneratedHttpRequest;
 
 /**
@@ -47,5 +48,6 @@ public class OAuthModuleWithoutTypeAdapters extends OAuthModule {
       bind(new TypeLiteral<Supplier<OAuthCredentials>>() {}).to(OAuthCredentialsSupplier.class);
       bind(new TypeLiteral<Function<GeneratedHttpRequest, TokenRequest>>() {}).to(BuildTokenRequest.class);
       bind(new TypeLiteral<Function<TokenRequest, Token>>() {}).to(FetchToken.class);
+      bind(TokenRefresher.class).asEagerSingleton();
    }
 }
@@ -22,6 +22,8 @@ package org.jclouds.googlecomputeengine.functions.internal;
 import com.google.common.annotations.Beta;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.inject.Inject;
 import org.jclouds.collect.IterableWithMarker;
 import org.jclouds.collect.PagedIterable;
 import org.jclouds.collect.PagedIterables;
@@ -31,8 +33,12 @@ import org.jclouds.http.HttpRequest;
 import org.jclouds.rest.InvocationContext;
 import org.jclouds.rest.internal.GeneratedHttpRequest;
 
+import javax.inject.Named;
+
 import static com.google.common.base.Predicates.instanceOf;
 import static com.google.common.collect.Iterables.tryFind;
+import static org.jclouds.Constants.PROPERTY_USER_THREADS;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.PAGE_PREFETCH;
 
 /**
  * @author Adrian Cole
@@ -43,6 +49,14 @@ public abstract class BaseToPagedIterable<T, I extends BaseToPagedIterable<T, I>
 
    private GeneratedHttpRequest request;
 
+   @Inject(optional = true)
+   @Named(PAGE_PREFETCH)
+   protected int pagePrefetch = 0;
+
+   @Inject(optional = true)
+   @Named(PROPERTY_USER_THREADS)
+   protected ListeningExecutorService userExecutor;
+
    @Override
    public PagedIterable<T> apply(ListPage<T> input) {
       if (input.nextMarker() == null)
@@ -55,8 +69,11 @@ public abstract class BaseToPagedIterable<T, I extends BaseToPagedIterable<T, I>
       assert project.isPresent() : String.format("programming error, method %s should have a string param for the "
             + "project", request.getCaller().get().getInvokable());
 
-      return PagedIterables.advance(
-              input, fetchNextPage(project.get().toString(), (ListOptions) listOptions.orNull()));
+      Function<Object, IterableWithMarker<T>> nextPage = fetchNextPage(project.get().toString(),
+              (ListOptions) listOptions.orNull());
+      if (pagePrefetch > 0 && userExecutor != null)
+         return new PrefetchingPagedIterable<T>(input, nextPage, userExecutor, pagePrefetch);
+      return PagedIterables.advance(input, nextPage);
    }
 
    protected abstract Function<Object, IterableWithMarker<T>> fetchNextPage(String projectName,
@@ -0,0 +1,134 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.googlecomputeengine.functions.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.jclouds.collect.IterableWithMarker;
+import org.jclouds.collect.PagedIterable;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * A {@link PagedIterable} that requests the next page as soon as the marker for it is known, instead of waiting for
+ * the caller to finish with the current page.
+ * <p/>
+ * At most {@code window} pages beyond the one being consumed are requested ahead. Each iterator fetches its own
+ * pages, as {@link org.jclouds.collect.PagedIterables#advance} does.
+ */
+@Beta
+public class PrefetchingPagedIterable<T> extends PagedIterable<T> {
+
+   private final IterableWithMarker<T> first;
+   private final Function<Object, IterableWithMarker<T>> markerToNextPage;
+   private final ListeningExecutorService executor;
+   private final int window;
+
+   public PrefetchingPagedIterable(IterableWithMarker<T> first,
+                                   Function<Object, IterableWithMarker<T>> markerToNextPage,
+                                   ListeningExecutorService executor, int window) {
+      this.first = checkNotNull(first, "first");
+      this.markerToNextPage = checkNotNull(markerToNextPage, "markerToNextPage");
+      this.executor = checkNotNull(executor, "executor");
+      checkArgument(window > 0, "window must be positive");
+      this.window = window;
+   }
+
+   @Override
+   public Iterator<IterableWithMarker<T>> iterator() {
+      return new AbstractIterator<IterableWithMarker<T>>() {
+
+         // futures of the pages following the last one returned, in order; a null page means there are no more
+         private final Deque<ListenableFuture<IterableWithMarker<T>>> ahead = Queues.newArrayDeque();
+         private boolean started;
+
+         @Override
+         protected IterableWithMarker<T> computeNext() {
+            if (!started) {
+               started = true;
+               ahead.add(Futures.immediateFuture(first));
+            }
+            fill();
+            ListenableFuture<IterableWithMarker<T>> next = ahead.poll();
+            IterableWithMarker<T> page = next == null ? null : getPage(next);
+            if (page == null) {
+               return endOfData();
+            }
+            return page;
+         }
+
+         private void fill() {
+            while (ahead.size() <= window) {
+               ListenableFuture<IterableWithMarker<T>> last = ahead.peekLast();
+               if (last == null || (last.isDone() && getPage(last) == null)) {
+                  return;
+               }
+               ahead.add(Futures.transform(last, fetchNext));
+            }
+         }
+
+         private IterableWithMarker<T> getPage(ListenableFuture<IterableWithMarker<T>> future) {
+            try {
+               return future.get();
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               throw Throwables.propagate(e);
+            } catch (ExecutionException e) {
+               for (ListenableFuture<IterableWithMarker<T>> pending : ahead) {
+                  pending.cancel(true);
+               }
+               ahead.clear();
+               throw Throwables.propagate(e.getCause());
+            }
+         }
+      };
+   }
+
+   private final AsyncFunction<IterableWithMarker<T>, IterableWithMarker<T>> fetchNext =
+           new AsyncFunction<IterableWithMarker<T>, IterableWithMarker<T>>() {
+      @Override
+      public ListenableFuture<IterableWithMarker<T>> apply(IterableWithMarker<T> page) {
+         final Optional<Object> marker = page == null ? Optional.<Object>absent() : page.nextMarker();
+         if (!marker.isPresent()) {
+            return Futures.immediateFuture(null);
+         }
+         return executor.submit(new Callable<IterableWithMarker<T>>() {
+            @Override
+            public IterableWithMarker<T> call() {
+               return markerToNextPage.apply(marker.get());
+            }
+         });
+      }
+   };
+}
@@ -0,0 +1,258 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.googlecomputeengine.internal;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.jclouds.Constants.PROPERTY_SCHEDULER_THREADS;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.OPERATION_COMPLETE_INTERVAL;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.OPERATION_COMPLETE_TIMEOUT;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.annotation.Resource;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.googlecomputeengine.GoogleComputeEngineApi;
+import org.jclouds.googlecomputeengine.domain.Operation;
+import org.jclouds.googlecomputeengine.features.OperationApi;
+import org.jclouds.googlecomputeengine.options.ListOptions;
+import org.jclouds.logging.Logger;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+
+/**
+ * Tracks outstanding operations and completes a future for each of them once it reaches the DONE state.
+ * <p/>
+ * Instead of polling every operation on its own, a single background task lists the operations of each project that
+ * are not done yet, so the cost of polling does not grow with the number of outstanding operations. The poll interval
+ * starts at {@link org.jclouds.googlecomputeengine.GoogleComputeEngineConstants#OPERATION_COMPLETE_INTERVAL} and
+ * backs off while no operation completes.
+ */
+@Singleton
+public class OperationTracker {
+
+   /**
+    * The poll interval never grows beyond this many times the configured interval.
+    */
+   public static final int MAX_BACKOFF = 8;
+
+   private static final String NOT_DONE = "status ne " + Operation.Status.DONE;
+
+   @Resource
+   protected Logger logger = Logger.NULL;
+
+   private final GoogleComputeEngineApi api;
+   private final ScheduledExecutorService scheduler;
+   private final long operationCompleteCheckInterval;
+   private final long operationCompleteCheckTimeout;
+   private final ConcurrentMap<String, ConcurrentMap<String, PendingOperation>> pending = Maps.newConcurrentMap();
+   private final Runnable poller = new Runnable() {
+      @Override
+      public void run() {
+         poll();
+      }
+   };
+
+   // guarded by this
+   private boolean pollScheduled;
+   private long currentInterval;
+
+   @Inject
+   public OperationTracker(GoogleComputeEngineApi api,
+                           @Named(PROPERTY_SCHEDULER_THREADS) ScheduledExecutorService scheduler,
+                           @Named(OPERATION_COMPLETE_INTERVAL) Long operationCompleteCheckInterval,
+                           @Named(OPERATION_COMPLETE_TIMEOUT) Long operationCompleteCheckTimeout) {
+      this.api = checkNotNull(api, "google compute api");
+      this.scheduler = checkNotNull(scheduler, "scheduler");
+      this.operationCompleteCheckInterval = checkNotNull(operationCompleteCheckInterval,
+              "operation completed check interval");
+      this.operationCompleteCheckTimeout = checkNotNull(operationCompleteCheckTimeout,
+              "operation completed check timeout");
+      this.currentInterval = operationCompleteCheckInterval;
+   }
+
+   /**
+    * Starts tracking the given operation.
+    *
+    * @return a future holding the operation in DONE state, which fails with an {@link UncheckedTimeoutException} if
+    *         the operation does not complete within the configured timeout.
+    */
+   public ListenableFuture<Operation> track(String project, Operation operation) {
+      checkNotNull(project, "project");
+      checkNotNull(operation, "operation");
+      if (operation.getStatus() == Operation.Status.DONE) {
+         return Futures.immediateFuture(operation);
+      }
+      ConcurrentMap<String, PendingOperation> operations = pending.get(project);
+      if (operations == null) {
+         ConcurrentMap<String, PendingOperation> created = Maps.newConcurrentMap();
+         operations = pending.putIfAbsent(project, created);
+         if (operations == null) {
+            operations = created;
+         }
+      }
+      PendingOperation tracked = new PendingOperation(operation,
+              System.nanoTime() + MILLISECONDS.toNanos(operationCompleteCheckTimeout));
+      PendingOperation existing = operations.putIfAbsent(operation.getName(), tracked);
+      if (existing != null) {
+         return existing.future;
+      }
+      synchronized (this) {
+         // a new operation is likely to complete soon, so poll at the configured pace again
+         currentInterval = operationCompleteCheckInterval;
+         schedulePoll();
+      }
+      return tracked.future;
+   }
+
+   /**
+    * Blocks until the given operation is done. Meant for callers that must return the outcome synchronously, others
+    * should continue from the future returned by {@link #track(String, Operation)} instead of holding a thread.
+    *
+    * @return the operation in DONE state
+    * @throws UncheckedTimeoutException if the operation does not complete within the configured timeout
+    */
+   public Operation awaitDone(String project, Operation operation) {
+      try {
+         return track(project, operation).get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw Throwables.propagate(e);
+      } catch (ExecutionException e) {
+         throw Throwables.propagate(e.getCause());
+      }
+   }
+
+   /**
+    * @return the number of operations that are not done yet.
+    */
+   public int getPendingCount() {
+      int count = 0;
+      for (Map<String, PendingOperation> operations : pending.values()) {
+         count += operations.size();
+      }
+      return count;
+   }
+
+   // guarded by this
+   private void schedulePoll() {
+      if (!pollScheduled) {
+         pollScheduled = true;
+         scheduler.schedule(poller, currentInterval, MILLISECONDS);
+      }
+   }
+
+   private void poll() {
+      boolean anyCompleted = false;
+      try {
+         for (Map.Entry<String, ConcurrentMap<String, PendingOperation>> entry : pending.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+               continue;
+            }
+            try {
+               anyCompleted |= pollProject(entry.getKey(), entry.getValue());
+            } catch (RuntimeException e) {
+               logger.warn(e, "error polling operations of project %s, will retry", entry.getKey());
+            }
+         }
+         failTimedOut();
+      } finally {
+         synchronized (this) {
+            pollScheduled = false;
+            currentInterval = anyCompleted ? operationCompleteCheckInterval
+                    : Math.min(currentInterval * 2, operationCompleteCheckInterval * MAX_BACKOFF);
+            if (getPendingCount() > 0) {
+               schedulePoll();
+            }
+         }
+      }
+   }
+
+   /**
+    * Lists the operations of the project that are not done and fetches those of the tracked ones that are missing
+    * from that list.
+    *
+    * @return whether any tracked operation completed
+    */
+   private boolean pollProject(String project, ConcurrentMap<String, PendingOperation> operations) {
+      OperationApi operationApi = api.getOperationApiForProject(project);
+      Set<String> notDone = Sets.newHashSet();
+      for (Operation operation : operationApi.list(new ListOptions().filter(NOT_DONE)).concat()) {
+         notDone.add(operation.getName());
+      }
+      boolean anyCompleted = false;
+      for (Map.Entry<String, PendingOperation> entry : operations.entrySet()) {
+         if (notDone.contains(entry.getKey())) {
+            continue;
+         }
+         PendingOperation tracked = entry.getValue();
+         Operation current = operationApi.get(entry.getKey());
+         if (current == null) {
+            operations.remove(entry.getKey(), tracked);
+            tracked.future.setException(new IllegalStateException("operation " + entry.getKey()
+                    + " no longer exists"));
+         } else if (current.getStatus() == Operation.Status.DONE) {
+            operations.remove(entry.getKey(), tracked);
+            tracked.future.set(current);
+            anyCompleted = true;
+         } else {
+            // operations that were just created may not be listed yet
+            tracked.last = current;
+         }
+      }
+      return anyCompleted;
+   }
+
+   private void failTimedOut() {
+      long now = System.nanoTime();
+      for (ConcurrentMap<String, PendingOperation> operations : pending.values()) {
+         for (Map.Entry<String, PendingOperation> entry : operations.entrySet()) {
+            PendingOperation tracked = entry.getValue();
+            if (now - tracked.deadline >= 0 && operations.remove(entry.getKey(), tracked)) {
+               tracked.future.setException(new UncheckedTimeoutException("operation did not reach DONE state"
+                       + tracked.last));
+            }
+         }
+      }
+   }
+
+   private static final class PendingOperation {
+      private final SettableFuture<Operation> future = SettableFuture.create();
+      private final long deadline;
+      private volatile Operation last;
+
+      private PendingOperation(Operation operation, long deadline) {
+         this.last = operation;
+         this.deadline = deadline;
+      }
+   }
+}
@@ -0,0 +1,53 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.googlecomputeengine.compute;
+
+import static org.jclouds.googlecomputeengine.compute.GoogleComputeEngineServiceAdapter.nameFilters;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests the filter expressions used by GoogleComputeEngineServiceAdapter#listNodesByIds
+ */
+@Test(groups = "unit", testName = "GoogleComputeEngineServiceAdapterTest")
+public class GoogleComputeEngineServiceAdapterTest {
+
+   public void testNameFiltersSkipDuplicateAndInvalidNames() {
+      List<String> filters = nameFilters(ImmutableList.of("test-0", "test-1", "test-0", "Test_2", "test-.*"), 1024);
+      assertEquals(filters, ImmutableList.of("name eq (test-0|test-1)"));
+   }
+
+   public void testNoFilterWhenNoValidNames() {
+      assertTrue(nameFilters(ImmutableList.of("", "UPPER"), 1024).isEmpty());
+   }
+
+   public void testNameFiltersAreSplitAtMaxLength() {
+      List<String> filters = nameFilters(ImmutableList.of("test-0", "test-1", "test-2", "test-3"), 30);
+      assertEquals(filters, ImmutableList.of("name eq (test-0|test-1|test-2)", "name eq (test-3)"));
+      for (String filter : filters) {
+         assertTrue(filter.length() <= 30, filter);
+      }
+   }
+}
@@ -22,6 +22,8 @@ package org.jclouds.googlecomputeengine.compute;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 import org.jclouds.compute.ComputeService;
 import org.jclouds.compute.RunNodesException;
 import org.jclouds.compute.domain.Template;
@@ -42,8 +44,10 @@ import java.util.Properties;
 import java.util.Set;
 
 import static com.google.common.collect.Iterables.getOnlyElement;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.CATALOG_TTL;
 import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.COMPUTE_READONLY_SCOPE;
 import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.COMPUTE_SCOPE;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.PAGE_PREFETCH;
 import static org.jclouds.googlecomputeengine.features.FirewallApiExpectTest.GET_FIREWALL_REQUEST;
 import static org.jclouds.googlecomputeengine.features.ImageApiExpectTest.LIST_PROJECT_IMAGES_REQUEST;
 import static org.jclouds.googlecomputeengine.features.ImageApiExpectTest.LIST_PROJECT_IMAGES_RESPONSE;
@@ -117,6 +121,23 @@ public class GoogleComputeEngineServiceExpectTest extends BaseGoogleComputeEngin
    private HttpResponse SUCESSFULL_OPERATION_RESPONSE = HttpResponse.builder().statusCode(200)
            .payload(payloadFromResource("/operation.json")).build();
 
+   private HttpResponse RUNNING_OPERATION_RESPONSE = HttpResponse.builder().statusCode(200)
+           .payload(payloadFromResource("/operation_running.json")).build();
+
+   private HttpRequest LIST_PENDING_OPERATIONS_REQUEST = HttpRequest
+           .builder()
+           .method("GET")
+           .endpoint("https://www.googleapis.com/compute/v1beta13/projects/myproject/operations?filter=status%20ne" +
+                   "%20DONE")
+           .addHeader("Accept", "application/json")
+           .addHeader("Authorization", "Bearer " + TOKEN).build();
+
+   // the operation is no longer pending, so the tracker gets it to learn its outcome
+   private HttpResponse LIST_PENDING_OPERATIONS_RESPONSE = HttpResponse.builder().statusCode(200)
+           .payload(payloadFromStringWithContentType("{\"kind\":\"compute#operationList\"," +
+                   "\"id\":\"projects/myproject/operations\",\"selfLink\":\"https://www.googleapis" +
+                   ".com/compute/v1beta13/projects/myproject/operations\"}", MediaType.APPLICATION_JSON)).build();
+
 
    private HttpResponse getInstanceResponseForInstanceAndNetworkAndStatus(String instanceName, String networkName,
                                                                           String status) throws
@@ -226,6 +247,51 @@ public class GoogleComputeEngineServiceExpectTest extends BaseGoogleComputeEngin
       assertEquals(toMatch.getImage(), template.getImage());
    }
 
+   public void testListImagesWithDefaultSettings() throws Exception {
+      HttpRequest listGoogleImagesPage2 = HttpRequest.builder()
+              .method("GET")
+              .endpoint("https://www.googleapis.com/compute/v1beta13/projects/google/images?pageToken" +
+                      "=CgVJTUFHRRIbZ29vZ2xlLmNlbnRvcy02LTItdjIwMTIwNjIx")
+              .addHeader("Accept", "application/json")
+              .addHeader("Authorization", "Bearer " + TOKEN).build();
+
+      HttpRequest listGoogleImagesPage3 = HttpRequest.builder()
+              .method("GET")
+              .endpoint("https://www.googleapis.com/compute/v1beta13/projects/google/images?pageToken" +
+                      "=CgVJTUFHRRIbZ29vZ2xlLmdjZWwtMTAtMDQtdjIwMTIxMTA2")
+              .addHeader("Accept", "application/json")
+              .addHeader("Authorization", "Bearer " + TOKEN).build();
+
+      // both image projects are listed at once and the next pages are prefetched, so the order of the requests is
+      // not known
+      ImmutableMap<HttpRequest, HttpResponse> requestResponseMap = ImmutableMap.
+              <HttpRequest, HttpResponse>builder()
+              .put(requestForScopes(COMPUTE_READONLY_SCOPE), TOKEN_RESPONSE)
+              .put(LIST_ZONES_REQ, LIST_ZONES_RESPONSE)
+              .put(LIST_MACHINE_TYPES_REQUEST, LIST_MACHINE_TYPES_RESPONSE)
+              .put(LIST_PROJECT_IMAGES_REQUEST, LIST_PROJECT_IMAGES_RESPONSE)
+              .put(LIST_GOOGLE_IMAGES_REQUEST, HttpResponse.builder().statusCode(200)
+                      .payload(payloadFromResource("/image_list_multiple_page_1.json")).build())
+              .put(listGoogleImagesPage2, HttpResponse.builder().statusCode(200)
+                      .payload(payloadFromResource("/image_list_multiple_page_2.json")).build())
+              .put(listGoogleImagesPage3, LIST_GOOGLE_IMAGES_RESPONSE)
+              .build();
+
+      Properties defaults = setupProperties();
+      defaults.remove(PAGE_PREFETCH);
+      defaults.remove(CATALOG_TTL);
+      ComputeService client = requestsSendResponses(requestResponseMap, createModule(), defaults);
+
+      Set<String> imageIds = Sets.newHashSet();
+      for (org.jclouds.compute.domain.Image image : client.listImages()) {
+         imageIds.add(image.getId());
+      }
+      // the image listed by both projects is kept once
+      assertEquals(imageIds, ImmutableSet.of("centos-6-2-v20120326", "centos-6-2-v20120503", "centos-6-2-v20120611",
+              "centos-6-2-v20120621", "centos-6-v20120912", "centos-6-v20121106", "gcel-10-04-v20121106",
+              "gcel-12-04-v20121106", "ubuntu-10-04-v20110728"));
+   }
+
    @Test
    public void testNetworksAndFirewallDeletedWhenAllGroupNodesAreTerminated() throws IOException {
 
@@ -259,6 +325,7 @@ public class GoogleComputeEngineServiceExpectTest extends BaseGoogleComputeEngin
               .add(LIST_MACHINE_TYPES_REQUEST)
               .add(requestForScopes(COMPUTE_SCOPE))
               .add(deleteNodeRequest)
+              .add(LIST_PENDING_OPERATIONS_REQUEST)
               .add(GET_OPERATION_REQUEST)
               .add(getInstanceRequestForInstance("test-delete-networks"))
               .add(LIST_PROJECT_IMAGES_REQUEST)
@@ -271,8 +338,8 @@ public class GoogleComputeEngineServiceExpectTest extends BaseGoogleComputeEngin
               .add(LIST_ZONES_REQ)
               .add(LIST_MACHINE_TYPES_REQUEST)
               .add(deleteFirewallRequest)
-              .add(GET_OPERATION_REQUEST)
               .add(deleteNetworkReqquest)
+              .add(LIST_PENDING_OPERATIONS_REQUEST)
               .add(GET_OPERATION_REQUEST)
               .build();
 
@@ -286,7 +353,8 @@ public class GoogleComputeEngineServiceExpectTest extends BaseGoogleComputeEngin
               .add(LIST_ZONES_RESPONSE)
               .add(LIST_MACHINE_TYPES_RESPONSE)
               .add(TOKEN_RESPONSE)
-              .add(SUCESSFULL_OPERATION_RESPONSE)
+              .add(RUNNING_OPERATION_RESPONSE)
+              .add(LIST_PENDING_OPERATIONS_RESPONSE)
               .add(GET_OPERATION_RESPONSE)
               .add(getInstanceResponseForInstanceAndNetworkAndStatus("test-delete-networks", "test-network", Instance
                       .Status.TERMINATED.name()))
@@ -301,9 +369,10 @@ public class GoogleComputeEngineServiceExpectTest extends BaseGoogleComputeEngin
               .add(LIST_GOOGLE_IMAGES_RESPONSE)
               .add(LIST_ZONES_RESPONSE)
               .add(LIST_MACHINE_TYPES_RESPONSE)
+              // the firewall is deleted right away, so its operation is not polled
               .add(SUCESSFULL_OPERATION_RESPONSE)
-              .add(GET_OPERATION_RESPONSE)
-              .add(SUCESSFULL_OPERATION_RESPONSE)
+              .add(RUNNING_OPERATION_RESPONSE)
+              .add(LIST_PENDING_OPERATIONS_RESPONSE)
               .add(GET_OPERATION_RESPONSE)
               .build();
 
@@ -357,10 +426,12 @@ public class GoogleComputeEngineServiceExpectTest extends BaseGoogleComputeEngin
               .add(GET_NETWORK_REQUEST)
               .add(requestForScopes(COMPUTE_SCOPE))
               .add(INSERT_NETWORK_REQUEST)
+              .add(LIST_PENDING_OPERATIONS_REQUEST)
               .add(GET_OPERATION_REQUEST)
               .add(GET_NETWORK_REQUEST)
               .add(GET_FIREWALL_REQUEST)
               .add(INSERT_FIREWALL_REQUEST)
+              .add(LIST_PENDING_OPERATIONS_REQUEST)
               .add(GET_OPERATION_REQUEST)
               .add(LIST_INSTANCES_REQUEST)
               .add(LIST_PROJECT_IMAGES_REQUEST)
@@ -368,6 +439,7 @@ public class GoogleComputeEngineServiceExpectTest extends BaseGoogleComputeEngin
               .add(LIST_ZONES_REQ)
               .add(LIST_MACHINE_TYPES_REQUEST)
               .add(createInstanceRequestForInstance("test-1", "jclouds-test", openSshKey))
+              .add(LIST_PENDING_OPERATIONS_REQUEST)
               .add(GET_OPERATION_REQUEST)
               .add(getInstanceRequestForInstance("test-1"))
               .add(LIST_PROJECT_IMAGES_REQUEST)
@@ -384,18 +456,21 @@ public class GoogleComputeEngineServiceExpectTest extends BaseGoogleComputeEngin
               .add(LIST_MACHINE_TYPES_RESPONSE)
               .add(HttpResponse.builder().statusCode(404).build())
               .add(TOKEN_RESPONSE)
-              .add(SUCESSFULL_OPERATION_RESPONSE)
+              .add(RUNNING_OPERATION_RESPONSE)
+              .add(LIST_PENDING_OPERATIONS_RESPONSE)
               .add(GET_OPERATION_RESPONSE)
               .add(GET_NETWORK_RESPONSE)
               .add(HttpResponse.builder().statusCode(404).build())
-              .add(SUCESSFULL_OPERATION_RESPONSE)
+              .add(RUNNING_OPERATION_RESPONSE)
+              .add(LIST_PENDING_OPERATIONS_RESPONSE)
               .add(GET_OPERATION_RESPONSE)
               .add(LIST_INSTANCES_RESPONSE)
               .add(LIST_PROJECT_IMAGES_RESPONSE)
               .add(LIST_GOOGLE_IMAGES_RESPONSE)
               .add(LIST_ZONES_RESPONSE)
               .add(LIST_MACHINE_TYPES_RESPONSE)
-              .add(SUCESSFULL_OPERATION_RESPONSE)
+              .add(RUNNING_OPERATION_RESPONSE)
+              .add(LIST_PENDING_OPERATIONS_RESPONSE)
               .add(GET_OPERATION_RESPONSE)
               .add(getInstanceResponse)
               .add(LIST_PROJECT_IMAGES_RESPONSE)
@@ -0,0 +1,223 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.googlecomputeengine.compute;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.collect.Iterables.filter;
+import static com.google.common.collect.Iterables.size;
+import static org.jclouds.oauth.v2.config.OAuthProperties.SIGNATURE_OR_MAC_ALGORITHM;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.compute.ComputeServiceContext;
+import org.jclouds.googlecomputeengine.domain.Instance;
+import org.jclouds.oauth.v2.OAuthConstants;
+import org.jclouds.util.Strings2;
+import org.testng.Reporter;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Predicate;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Compares {@link GoogleComputeEngineServiceAdapter#listNodesByIds(Iterable)} with listing all the instances and
+ * filtering them on the client, against a local server that holds 10k instances and pages and filters them the way
+ * GCE does.
+ * <p/>
+ * Not part of the unit tests, run it with {@code mvn test -Dtest=ListNodesByIdsBenchmark -Dgroups=performance}.
+ */
+@Test(groups = "performance", singleThreaded = true, testName = "ListNodesByIdsBenchmark")
+public class ListNodesByIdsBenchmark {
+
+   private static final int INSTANCES = 10000;
+   private static final int PAGE_SIZE = 100;
+   private static final int ITERATIONS = 5;
+   private static final Pattern NAME_FILTER = Pattern.compile("name eq \\((.*)\\)");
+
+   private HttpServer server;
+   private ComputeServiceContext context;
+   private GoogleComputeEngineServiceAdapter adapter;
+   private final AtomicInteger requests = new AtomicInteger();
+
+   @BeforeClass
+   public void startServer() throws IOException {
+      String template = Strings2.toStringAndClose(getClass().getResourceAsStream("/instance_get.json"));
+      final List<String> instances = Lists.newArrayListWithCapacity(INSTANCES);
+      for (int i = 0; i < INSTANCES; i++) {
+         instances.add(template.replace("test-0", "instance-" + i));
+      }
+
+      server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+      server.setExecutor(Executors.newFixedThreadPool(8));
+      server.createContext("/o/oauth2/token", new HttpHandler() {
+         @Override
+         public void handle(HttpExchange exchange) throws IOException {
+            respond(exchange, "{\"access_token\":\"token\",\"token_type\":\"Bearer\",\"expires_in\":3600}");
+         }
+      });
+      server.createContext("/compute/v1beta13/projects/myproject/instances", new HttpHandler() {
+         @Override
+         public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            Pattern names = null;
+            if (query.containsKey("filter")) {
+               Matcher matcher = NAME_FILTER.matcher(query.get("filter"));
+               matcher.matches();
+               names = Pattern.compile(matcher.group(1));
+            }
+            int offset = query.containsKey("pageToken") ? Integer.parseInt(query.get("pageToken")) : 0;
+            List<String> page = Lists.newArrayList();
+            int i = offset;
+            for (; i < instances.size() && page.size() < PAGE_SIZE; i++) {
+               if (names == null || names.matcher("instance-" + i).matches()) {
+                  page.add(instances.get(i));
+               }
+            }
+            StringBuilder response = new StringBuilder("{\"kind\":\"compute#instanceList\",")
+                    .append("\"id\":\"projects/myproject/instances\",")
+                    .append("\"selfLink\":\"https://www.googleapis.com/compute/v1beta13/projects/myproject/instances\",");
+            if (i < instances.size()) {
+               response.append("\"nextPageToken\":\"").append(i).append("\",");
+            }
+            response.append("\"items\":[").append(Joiner.on(',').join(page)).append("]}");
+            respond(exchange, response.toString());
+         }
+      });
+      server.start();
+
+      String endpoint = "http://localhost:" + server.getAddress().getPort();
+      Properties overrides = new Properties();
+      overrides.setProperty("oauth.endpoint", endpoint + "/o/oauth2/token");
+      overrides.setProperty(SIGNATURE_OR_MAC_ALGORITHM, OAuthConstants.NO_ALGORITHM);
+      context = ContextBuilder.newBuilder("google-compute-engine")
+              .endpoint(endpoint + "/compute/v1beta13")
+              .credentials("myproject@developer.gserviceaccount.com", "none")
+              .overrides(overrides)
+              .buildView(ComputeServiceContext.class);
+      adapter = context.utils().injector().getInstance(GoogleComputeEngineServiceAdapter.class);
+   }
+
+   @AfterClass(alwaysRun = true)
+   public void stopServer() {
+      if (context != null) {
+         context.close();
+      }
+      if (server != null) {
+         server.stop(0);
+      }
+   }
+
+   @DataProvider
+   public Object[][] idCounts() {
+      return new Object[][]{{1}, {10}, {100}, {1000}};
+   }
+
+   @Test(dataProvider = "idCounts")
+   public void compareWithClientSideFiltering(int idCount) {
+      final Set<String> ids = ImmutableSet.copyOf(idsSpreadOverInstances(idCount));
+
+      requests.set(0);
+      long start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+         assertEquals(size(filter(adapter.listNodes(), new Predicate<Instance>() {
+            @Override
+            public boolean apply(Instance input) {
+               return ids.contains(input.getName());
+            }
+         })), idCount);
+      }
+      long clientSide = System.nanoTime() - start;
+      int clientSideRequests = requests.get();
+
+      requests.set(0);
+      start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+         assertEquals(size(adapter.listNodesByIds(ids)), idCount);
+      }
+      long serverSide = System.nanoTime() - start;
+      int serverSideRequests = requests.get();
+
+      Reporter.log(String.format("%5d ids: list and filter %6.1f ms (%d requests), listNodesByIds %6.1f ms "
+              + "(%d requests)", idCount, clientSide / 1e6 / ITERATIONS, clientSideRequests / ITERATIONS,
+              serverSide / 1e6 / ITERATIONS, serverSideRequests / ITERATIONS));
+
+      // listing everything reads every page, while each name filter matches less than a page of instances
+      assertEquals(clientSideRequests, ITERATIONS * INSTANCES / PAGE_SIZE);
+      assertEquals(serverSideRequests, ITERATIONS * GoogleComputeEngineServiceAdapter.nameFilters(ids,
+              GoogleComputeEngineServiceAdapter.MAX_FILTER_LENGTH).size());
+      assertTrue(serverSideRequests < clientSideRequests, serverSideRequests + " requests");
+   }
+
+   private static List<String> idsSpreadOverInstances(int count) {
+      List<String> ids = Lists.newArrayListWithCapacity(count);
+      for (int i = 0; i < count; i++) {
+         ids.add("instance-" + (i * (INSTANCES / count)));
+      }
+      return ids;
+   }
+
+   private static Map<String, String> parseQuery(String query) throws IOException {
+      Map<String, String> parameters = Maps.newHashMap();
+      if (query != null) {
+         for (String parameter : Splitter.on('&').split(query)) {
+            List<String> keyValue = Lists.newArrayList(Splitter.on('=').limit(2).split(parameter));
+            parameters.put(URLDecoder.decode(keyValue.get(0), "UTF-8"),
+                    keyValue.size() > 1 ? URLDecoder.decode(keyValue.get(1), "UTF-8") : "");
+         }
+      }
+      return parameters;
+   }
+
+   private static void respond(HttpExchange exchange, String body) throws IOException {
+      byte[] bytes = body.getBytes(UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, bytes.length);
+      OutputStream out = exchange.getResponseBody();
+      try {
+         out.write(bytes);
+      } finally {
+         out.close();
+      }
+   }
+}
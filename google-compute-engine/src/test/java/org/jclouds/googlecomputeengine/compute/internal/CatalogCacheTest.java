@@ -0,0 +1,257 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.googlecomputeengine.compute.internal;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createStrictMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.jclouds.Constants.PROPERTY_USER_THREADS;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.CATALOG_FILE;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.CATALOG_TTL;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.GOOGLE_PROJECT;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.PAGE_PREFETCH;
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.collect.IterableWithMarkers;
+import org.jclouds.collect.PagedIterable;
+import org.jclouds.collect.PagedIterables;
+import org.jclouds.googlecomputeengine.GoogleComputeEngineApi;
+import org.jclouds.googlecomputeengine.config.GoogleComputeEngineParserModule;
+import org.jclouds.googlecomputeengine.config.UserProject;
+import org.jclouds.googlecomputeengine.domain.Image;
+import org.jclouds.googlecomputeengine.domain.MachineType;
+import org.jclouds.googlecomputeengine.domain.Zone;
+import org.jclouds.googlecomputeengine.features.ImageApi;
+import org.jclouds.googlecomputeengine.features.MachineTypeApi;
+import org.jclouds.googlecomputeengine.features.ZoneApi;
+import org.jclouds.googlecomputeengine.parse.ParseImageListTest;
+import org.jclouds.googlecomputeengine.parse.ParseMachineTypeListTest;
+import org.jclouds.googlecomputeengine.parse.ParseZoneListTest;
+import org.jclouds.json.Json;
+import org.jclouds.json.config.GsonModule;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.TypeLiteral;
+import com.google.inject.name.Names;
+
+/**
+ * Tests the CatalogCache
+ */
+@Test(groups = "unit", testName = "CatalogCacheTest")
+public class CatalogCacheTest {
+
+   private static final long TTL = 60000;
+
+   private final Json json = Guice.createInjector(new GsonModule(), new GoogleComputeEngineParserModule())
+           .getInstance(Json.class);
+   private final Supplier<String> project = Suppliers.ofInstance("myproject");
+   private final List<Zone> allZones = ImmutableList.copyOf(new ParseZoneListTest().expected());
+
+   public void testServesPreviousSnapshotWhileRefreshing() {
+      GoogleComputeEngineApi api = createMock(GoogleComputeEngineApi.class);
+      ZoneApi zoneApi = createMock(ZoneApi.class);
+      expect(api.getZoneApiForProject("myproject")).andReturn(zoneApi).anyTimes();
+      expect(zoneApi.list()).andReturn(pages(allZones.subList(0, 1))).once();
+      expect(zoneApi.list()).andReturn(pages(allZones)).once();
+      replay(api, zoneApi);
+
+      // refreshes run inline, so each one completes before the read that triggered it returns
+      CatalogCache catalog = new CatalogCache(api, project, MoreExecutors.sameThreadExecutor(), json, TTL, 0, "");
+      FakeTicker ticker = new FakeTicker();
+      catalog.ticker = ticker;
+
+      assertEquals(names(catalog.getZones()), ImmutableList.of("us-central1-a"));
+      assertEquals(names(catalog.getZones()), ImmutableList.of("us-central1-a"));
+
+      ticker.advance(TTL, TimeUnit.MILLISECONDS);
+      assertEquals(names(catalog.getZones()), ImmutableList.of("us-central1-a"));
+      assertEquals(names(catalog.getZones()), ImmutableList.of("us-central1-a", "us-east1-a"));
+      verify(api, zoneApi);
+   }
+
+   public void testNoCachingWithoutTtl() {
+      GoogleComputeEngineApi api = createMock(GoogleComputeEngineApi.class);
+      ZoneApi zoneApi = createMock(ZoneApi.class);
+      expect(api.getZoneApiForProject("myproject")).andReturn(zoneApi).anyTimes();
+      expect(zoneApi.list()).andReturn(pages(allZones)).times(2);
+      replay(api, zoneApi);
+
+      CatalogCache catalog = new CatalogCache(api, project, MoreExecutors.sameThreadExecutor(), json, 0L, 0, "");
+      catalog.getZones();
+      catalog.getZones();
+      verify(api, zoneApi);
+   }
+
+   public void testSnapshotIsRestoredFromFileWithoutCallingTheApi() throws IOException {
+      File file = new File(Files.createTempDir(), "catalog.json");
+
+      GoogleComputeEngineApi api = createMock(GoogleComputeEngineApi.class);
+      ZoneApi zoneApi = createMock(ZoneApi.class);
+      expect(api.getZoneApiForProject("myproject")).andReturn(zoneApi).anyTimes();
+      expect(zoneApi.list()).andReturn(pages(allZones)).once();
+      replay(api, zoneApi);
+      new CatalogCache(api, project, MoreExecutors.sameThreadExecutor(), json, TTL, 0, file.getPath()).getZones();
+      verify(api, zoneApi);
+
+      GoogleComputeEngineApi offline = createStrictMock(GoogleComputeEngineApi.class);
+      ListeningExecutorService executor = createStrictMock(ListeningExecutorService.class);
+      // the restored snapshot is refreshed in the background
+      executor.execute(anyObject(Runnable.class));
+      expectLastCall().once();
+      replay(offline, executor);
+
+      CatalogCache restored = new CatalogCache(offline, project, executor, json, TTL, 0, file.getPath());
+      assertEquals(names(restored.getZones()), ImmutableList.of("us-central1-a", "us-east1-a"));
+      verify(offline, executor);
+   }
+
+   public void testImagesOfBothProjectsAreListedOnceAndExpireWithTheInjectedTicker() {
+      Image centos = Iterables.getOnlyElement(new ParseImageListTest().expected());
+      Image debian = centos.toBuilder().name("debian-7-wheezy-v20130617").build();
+      GoogleComputeEngineApi api = createMock(GoogleComputeEngineApi.class);
+      ImageApi userImages = createMock(ImageApi.class);
+      ImageApi googleImages = createMock(ImageApi.class);
+      expect(api.getImageApiForProject("myproject")).andReturn(userImages).anyTimes();
+      expect(api.getImageApiForProject(GOOGLE_PROJECT)).andReturn(googleImages).anyTimes();
+      expect(userImages.list()).andReturn(pages(ImmutableList.of(centos))).times(2);
+      expect(googleImages.list()).andReturn(pages(ImmutableList.of(centos))).once();
+      expect(googleImages.list()).andReturn(pages(ImmutableList.of(centos, debian))).once();
+      replay(api, userImages, googleImages);
+
+      FakeTicker ticker = new FakeTicker();
+      CatalogCache catalog = injectCatalog(api, ticker, TTL, "");
+
+      assertEquals(catalog.getImages(), ImmutableList.of(centos));
+      ticker.advance(TTL - 1, TimeUnit.MILLISECONDS);
+      assertEquals(catalog.getImages(), ImmutableList.of(centos));
+
+      ticker.advance(1, TimeUnit.MILLISECONDS);
+      // the read which finds the images expired gets the previous ones and refreshes them
+      assertEquals(catalog.getImages(), ImmutableList.of(centos));
+      assertEquals(catalog.getImages(), ImmutableList.of(centos, debian));
+      verify(api, userImages, googleImages);
+   }
+
+   public void testImagesAndMachineTypesAreRestoredFromFile() throws IOException {
+      File file = new File(Files.createTempDir(), "catalog.json");
+      List<Image> images = ImmutableList.copyOf(new ParseImageListTest().expected());
+      List<MachineType> machineTypes = ImmutableList.copyOf(new ParseMachineTypeListTest().expected());
+
+      GoogleComputeEngineApi api = createMock(GoogleComputeEngineApi.class);
+      ImageApi userImages = createMock(ImageApi.class);
+      ImageApi googleImages = createMock(ImageApi.class);
+      MachineTypeApi machineTypeApi = createMock(MachineTypeApi.class);
+      expect(api.getImageApiForProject("myproject")).andReturn(userImages).anyTimes();
+      expect(api.getImageApiForProject(GOOGLE_PROJECT)).andReturn(googleImages).anyTimes();
+      expect(api.getMachineTypeApiForProject("myproject")).andReturn(machineTypeApi).anyTimes();
+      expect(userImages.list()).andReturn(pages(ImmutableList.<Image>of()));
+      expect(googleImages.list()).andReturn(pages(images));
+      expect(machineTypeApi.list()).andReturn(pages(machineTypes));
+      replay(api, userImages, googleImages, machineTypeApi);
+      CatalogCache catalog = new CatalogCache(api, project, MoreExecutors.sameThreadExecutor(), json, TTL, 0,
+              file.getPath());
+      catalog.getImages();
+      catalog.getMachineTypes();
+      verify(api, userImages, googleImages, machineTypeApi);
+
+      GoogleComputeEngineApi offline = createStrictMock(GoogleComputeEngineApi.class);
+      ListeningExecutorService executor = createStrictMock(ListeningExecutorService.class);
+      executor.execute(anyObject(Runnable.class));
+      expectLastCall().times(2);
+      replay(offline, executor);
+
+      CatalogCache restored = new CatalogCache(offline, project, executor, json, TTL, 0, file.getPath());
+      // the domain objects only compare their kind and name, so compare all their fields
+      assertEquals(restored.getImages().toString(), images.toString());
+      assertEquals(restored.getMachineTypes().toString(), machineTypes.toString());
+      verify(offline, executor);
+   }
+
+   /**
+    * Creates the catalog the way the compute service does, with the ticker bound in the injector.
+    */
+   private CatalogCache injectCatalog(final GoogleComputeEngineApi api, final Ticker ticker, long ttl, String file) {
+      final Properties properties = new Properties();
+      properties.setProperty(CATALOG_TTL, Long.toString(ttl));
+      properties.setProperty(PAGE_PREFETCH, "0");
+      properties.setProperty(CATALOG_FILE, file);
+      return Guice.createInjector(new AbstractModule() {
+         @Override
+         protected void configure() {
+            Names.bindProperties(binder(), properties);
+            bind(GoogleComputeEngineApi.class).toInstance(api);
+            bind(new TypeLiteral<Supplier<String>>() {
+            }).annotatedWith(UserProject.class).toInstance(project);
+            bind(ListeningExecutorService.class).annotatedWith(Names.named(PROPERTY_USER_THREADS))
+                    .toInstance(MoreExecutors.sameThreadExecutor());
+            bind(Json.class).toInstance(json);
+            bind(Ticker.class).toInstance(ticker);
+         }
+      }).getInstance(CatalogCache.class);
+   }
+
+   private static <T> PagedIterable<T> pages(List<T> items) {
+      return PagedIterables.of(IterableWithMarkers.from(items));
+   }
+
+   private static List<String> names(List<Zone> zones) {
+      return Lists.transform(zones, new Function<Zone, String>() {
+         @Override
+         public String apply(Zone input) {
+            return input.getName();
+         }
+      });
+   }
+
+   private static class FakeTicker extends Ticker {
+      private final AtomicLong nanos = new AtomicLong();
+
+      private void advance(long time, TimeUnit unit) {
+         nanos.addAndGet(unit.toNanos(time));
+      }
+
+      @Override
+      public long read() {
+         return nanos.get();
+      }
+   }
+}
@@ -0,0 +1,134 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.googlecomputeengine.compute.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests the GroupResourceCache
+ */
+@Test(groups = "unit", testName = "GroupResourceCacheTest")
+public class GroupResourceCacheTest {
+
+   private static final URI FIREWALL = URI.create("https://www.googleapis" +
+           ".com/compute/v1beta16/projects/myproject/global/firewalls/jclouds-test");
+
+   public void testConcurrentLoadsOfTheSameGroupAreCoalesced() throws InterruptedException {
+      final GroupResourceCache cache = new GroupResourceCache(60000L);
+      final CountDownLatch loading = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      final AtomicInteger loads = new AtomicInteger();
+      final Callable<URI> loader = new Callable<URI>() {
+         @Override
+         public URI call() throws InterruptedException {
+            loads.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return FIREWALL;
+         }
+      };
+
+      Thread[] threads = new Thread[8];
+      for (int i = 0; i < threads.length; i++) {
+         threads[i] = new Thread(new Runnable() {
+            @Override
+            public void run() {
+               cache.getFirewall("myproject", "jclouds-test", loader);
+            }
+         });
+         threads[i].start();
+      }
+      loading.await();
+      release.countDown();
+      for (Thread thread : threads) {
+         thread.join();
+      }
+
+      assertEquals(loads.get(), 1);
+   }
+
+   public void testLoadsOfDifferentGroupsDoNotWaitForEachOther() throws InterruptedException {
+      final GroupResourceCache cache = new GroupResourceCache(60000L);
+      final CountDownLatch loading = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+
+      Thread blocked = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            cache.getFirewall("myproject", "jclouds-slow", new Callable<URI>() {
+               @Override
+               public URI call() throws InterruptedException {
+                  loading.countDown();
+                  release.await();
+                  return FIREWALL;
+               }
+            });
+         }
+      });
+      blocked.start();
+      assertTrue(loading.await(10, TimeUnit.SECONDS));
+
+      try {
+         assertEquals(cache.getFirewall("myproject", "jclouds-test", new Callable<URI>() {
+            @Override
+            public URI call() {
+               return FIREWALL;
+            }
+         }), FIREWALL);
+      } finally {
+         release.countDown();
+         blocked.join();
+      }
+   }
+
+   public void testFailedLoadsAreNotCachedAndInvalidateForgetsEntries() {
+      GroupResourceCache cache = new GroupResourceCache(60000L);
+      final AtomicInteger loads = new AtomicInteger();
+      Callable<URI> loader = new Callable<URI>() {
+         @Override
+         public URI call() {
+            if (loads.incrementAndGet() == 1) {
+               throw new IllegalStateException("Could not create firewall");
+            }
+            return FIREWALL;
+         }
+      };
+
+      try {
+         cache.getFirewall("myproject", "jclouds-test", loader);
+      } catch (IllegalStateException expected) {
+      }
+      assertEquals(cache.getFirewall("myproject", "jclouds-test", loader), FIREWALL);
+      assertEquals(cache.getFirewall("myproject", "jclouds-test", loader), FIREWALL);
+      assertEquals(loads.get(), 2);
+
+      cache.invalidate("myproject", "jclouds-test");
+      cache.getFirewall("myproject", "jclouds-test", loader);
+      assertEquals(loads.get(), 3);
+   }
+}
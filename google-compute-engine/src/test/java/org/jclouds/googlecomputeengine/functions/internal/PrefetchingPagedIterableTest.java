@@ -0,0 +1,111 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.googlecomputeengine.functions.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.collect.IterableWithMarker;
+import org.jclouds.collect.IterableWithMarkers;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Tests the PrefetchingPagedIterable
+ */
+@Test(groups = "unit", testName = "PrefetchingPagedIterableTest")
+public class PrefetchingPagedIterableTest {
+
+   private static final int PAGES = 10;
+
+   private final ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool());
+
+   @AfterClass(alwaysRun = true)
+   public void shutdownExecutor() {
+      executor.shutdownNow();
+   }
+
+   public void testAllPagesAreReturnedInOrder() {
+      PrefetchingPagedIterable<Integer> pages = new PrefetchingPagedIterable<Integer>(page(0), new Pages(),
+              executor, 3);
+
+      assertEquals(ImmutableList.copyOf(pages.concat()), ImmutableList.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+   }
+
+   public void testSinglePage() {
+      IterableWithMarker<Integer> only = IterableWithMarkers.from(ImmutableList.of(0));
+      PrefetchingPagedIterable<Integer> pages = new PrefetchingPagedIterable<Integer>(only, new Pages(), executor, 3);
+
+      assertEquals(ImmutableList.copyOf(pages.concat()), ImmutableList.of(0));
+   }
+
+   public void testReadAheadIsBounded() throws InterruptedException {
+      Pages fetcher = new Pages();
+      Iterator<IterableWithMarker<Integer>> pages = new PrefetchingPagedIterable<Integer>(page(0), fetcher,
+              executor, 2).iterator();
+
+      pages.next();
+      // give the read ahead time to run, it must stop two pages past the one being consumed
+      TimeUnit.MILLISECONDS.sleep(200);
+      assertEquals(fetcher.fetched.get(), 2);
+
+      pages.next();
+      TimeUnit.MILLISECONDS.sleep(200);
+      assertEquals(fetcher.fetched.get(), 3);
+   }
+
+   @Test(expectedExceptions = IllegalStateException.class)
+   public void testFailureIsPropagated() {
+      PrefetchingPagedIterable<Integer> pages = new PrefetchingPagedIterable<Integer>(page(0),
+              new Function<Object, IterableWithMarker<Integer>>() {
+                 @Override
+                 public IterableWithMarker<Integer> apply(Object marker) {
+                    throw new IllegalStateException("page " + marker + " unavailable");
+                 }
+              }, executor, 2);
+
+      for (IterableWithMarker<Integer> page : pages) {
+         assertTrue(page.iterator().hasNext());
+      }
+   }
+
+   private static IterableWithMarker<Integer> page(int index) {
+      return IterableWithMarkers.from(ImmutableList.of(index), index + 1 < PAGES ? index + 1 : null);
+   }
+
+   private static class Pages implements Function<Object, IterableWithMarker<Integer>> {
+      private final AtomicInteger fetched = new AtomicInteger();
+
+      @Override
+      public IterableWithMarker<Integer> apply(Object marker) {
+         fetched.incrementAndGet();
+         return page((Integer) marker);
+      }
+   }
+}
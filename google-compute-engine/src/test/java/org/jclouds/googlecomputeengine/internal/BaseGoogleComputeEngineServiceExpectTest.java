@@ -19,6 +19,11 @@
 
 package org.jclouds.googlecomputeengine.internal;
 
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.CATALOG_TTL;
+import static org.jclouds.googlecomputeengine.GoogleComputeEngineConstants.PAGE_PREFETCH;
+
+import java.util.Properties;
+
 import org.jclouds.compute.ComputeService;
 import org.jclouds.compute.ComputeServiceContext;
 
@@ -27,6 +32,16 @@ import org.jclouds.compute.ComputeServiceContext;
  */
 public class BaseGoogleComputeEngineServiceExpectTest extends BaseGoogleComputeEngineServiceContextExpectTest<ComputeService> {
 
+   @Override
+   protected Properties setupProperties() {
+      Properties props = super.setupProperties();
+      // list the images of both projects one after the other, so requests are sent in a predictable order
+      props.put(PAGE_PREFETCH, "0");
+      // list images, machine types and zones every time they are needed, as the expected requests reflect
+      props.put(CATALOG_TTL, "0");
+      return props;
+   }
+
    @Override
    public ComputeService apply(ComputeServiceContext input) {
       return input.getComputeService();
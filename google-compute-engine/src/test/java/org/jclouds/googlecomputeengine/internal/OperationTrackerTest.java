@@ -0,0 +1,107 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.googlecomputeengine.internal;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.jclouds.collect.IterableWithMarkers;
+import org.jclouds.collect.PagedIterables;
+import org.jclouds.googlecomputeengine.GoogleComputeEngineApi;
+import org.jclouds.googlecomputeengine.domain.Operation;
+import org.jclouds.googlecomputeengine.features.OperationApi;
+import org.jclouds.googlecomputeengine.options.ListOptions;
+import org.jclouds.googlecomputeengine.parse.ParseOperationTest;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+
+/**
+ * Tests the OperationTracker
+ */
+@Test(groups = "unit", testName = "OperationTrackerTest")
+public class OperationTrackerTest {
+
+   private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+   @AfterClass(alwaysRun = true)
+   public void shutdownScheduler() {
+      scheduler.shutdownNow();
+   }
+
+   public void testDoneOperationIsNotPolled() throws Exception {
+      GoogleComputeEngineApi api = createMock(GoogleComputeEngineApi.class);
+      replay(api);
+
+      Operation done = new ParseOperationTest().expected();
+      OperationTracker tracker = new OperationTracker(api, scheduler, 10L, 1000L);
+
+      assertSame(tracker.track("myproject", done).get(), done);
+      assertEquals(tracker.getPendingCount(), 0);
+      verify(api);
+   }
+
+   public void testOperationCompletesWhenNoLongerListedAsNotDone() throws Exception {
+      Operation done = new ParseOperationTest().expected();
+      Operation running = done.toBuilder().status(Operation.Status.RUNNING).build();
+
+      GoogleComputeEngineApi api = createMock(GoogleComputeEngineApi.class);
+      OperationApi operationApi = createMock(OperationApi.class);
+      expect(api.getOperationApiForProject("myproject")).andReturn(operationApi).atLeastOnce();
+      expect(operationApi.list(anyObject(ListOptions.class))).andReturn(PagedIterables.of(IterableWithMarkers
+              .from(ImmutableSet.<Operation>of()))).atLeastOnce();
+      expect(operationApi.get(done.getName())).andReturn(done).once();
+      replay(api, operationApi);
+
+      OperationTracker tracker = new OperationTracker(api, scheduler, 10L, 5000L);
+      ListenableFuture<Operation> future = tracker.track("myproject", running);
+
+      assertSame(tracker.awaitDone("myproject", running), done);
+      assertTrue(future.isDone());
+      assertEquals(tracker.getPendingCount(), 0);
+      verify(api, operationApi);
+   }
+
+   @Test(expectedExceptions = UncheckedTimeoutException.class)
+   public void testOperationTimesOut() {
+      Operation running = new ParseOperationTest().expected().toBuilder().status(Operation.Status.RUNNING).build();
+
+      GoogleComputeEngineApi api = createMock(GoogleComputeEngineApi.class);
+      OperationApi operationApi = createMock(OperationApi.class);
+      expect(api.getOperationApiForProject("myproject")).andReturn(operationApi).anyTimes();
+      expect(operationApi.list(anyObject(ListOptions.class))).andReturn(PagedIterables.of(IterableWithMarkers
+              .from(ImmutableSet.of(running)))).anyTimes();
+      replay(api, operationApi);
+
+      OperationTracker tracker = new OperationTracker(api, scheduler, 10L, 50L);
+      tracker.awaitDone("myproject", running);
+   }
+}
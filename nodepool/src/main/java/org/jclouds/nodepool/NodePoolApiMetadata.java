@@ -20,11 +20,16 @@ package org.jclouds.nodepool;
 
 import static org.jclouds.nodepool.config.NodePoolProperties.BACKEND_GROUP;
 import static org.jclouds.nodepool.config.NodePoolProperties.BACKEND_MODULES;
+import static org.jclouds.nodepool.config.NodePoolProperties.LOW_WATER_MARK;
 import static org.jclouds.nodepool.config.NodePoolProperties.MAX_SIZE;
 import static org.jclouds.nodepool.config.NodePoolProperties.METADATA_CONTAINER;
+import static org.jclouds.nodepool.config.NodePoolProperties.METADATA_STORE;
 import static org.jclouds.nodepool.config.NodePoolProperties.MIN_SIZE;
 import static org.jclouds.nodepool.config.NodePoolProperties.POOL_ADMIN_ACCESS;
+import static org.jclouds.nodepool.config.NodePoolProperties.RECONCILE_INTERVAL;
+import static org.jclouds.nodepool.config.NodePoolProperties.RECYCLE_CONCURRENCY;
 import static org.jclouds.nodepool.config.NodePoolProperties.REMOVE_DESTROYED;
+import static org.jclouds.nodepool.config.NodePoolProperties.TARGET_IDLE;
 
 import java.io.File;
 import java.net.URI;
@@ -58,11 +63,16 @@ public class NodePoolApiMetadata extends BaseApiMetadata {
       Properties properties = BaseRestApiMetadata.defaultProperties();
       properties.setProperty(BACKEND_GROUP, "nodepool");
       properties.setProperty(METADATA_CONTAINER, "nodes");
+      properties.setProperty(METADATA_STORE, "blobstore");
       properties.setProperty(BACKEND_MODULES,
                "org.jclouds.logging.slf4j.config.SLF4JLoggingModule,org.jclouds.sshj.config.SshjSshClientModule");
       properties.setProperty(MAX_SIZE, 10 + "");
       properties.setProperty(MIN_SIZE, 5 + "");
       properties.setProperty(REMOVE_DESTROYED, "true");
+      properties.setProperty(RECONCILE_INTERVAL, 60 + "");
+      properties.setProperty(LOW_WATER_MARK, 1 + "");
+      properties.setProperty(TARGET_IDLE, 2 + "");
+      properties.setProperty(RECYCLE_CONCURRENCY, 4 + "");
       // by default use the current user's user and private key if one exists, if not the properties
       // will need to be set (no default passwords)
       if (new File(System.getProperty("user.home") + "/.ssh/id_rsa").exists()) {
@@ -34,12 +34,15 @@ import com.google.inject.Inject;
 public class NodePoolComputeServiceContext extends ComputeServiceContextImpl {
 
    private final NodePoolComputeServiceAdapter adapter;
+   private final NodePoolMetrics metrics;
 
    @Inject
    public NodePoolComputeServiceContext(@Provider Context backend, @Provider TypeToken<? extends Context> backendType,
-            ComputeService computeService, Utils utils, NodePoolComputeServiceAdapter adapter) {
+            ComputeService computeService, Utils utils, NodePoolComputeServiceAdapter adapter,
+            NodePoolMetrics metrics) {
       super(backend, backendType, computeService, utils);
       this.adapter = adapter;
+      this.metrics = metrics;
    }
 
    /**
@@ -52,6 +55,14 @@ public class NodePoolComputeServiceContext extends ComputeServiceContextImpl {
                adapter.minNodes());
    }
 
+   /**
+    * Returns the live counters and latencies of the pool. Reading them is cheap, so they can be
+    * polled frequently.
+    */
+   public NodePoolMetrics getPoolMetrics() {
+      return metrics;
+   }
+
    /**
     * Destroys all (backing nodes) in the pool and deletes all state.
     */
@@ -0,0 +1,301 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.nodepool;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.inject.Singleton;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Live counters and latencies of the pool, updated as nodes are assigned, released and created.
+ * <p/>
+ * Nothing here takes a lock or goes to the backend, so it can be read as often as needed.
+ */
+@Beta
+@Singleton
+public class NodePoolMetrics {
+
+   /**
+    * How many idle depth samples are kept.
+    */
+   public static final int IDLE_DEPTH_SAMPLES = 256;
+
+   private final AtomicLong assignments = new AtomicLong();
+   private final AtomicLong idleMisses = new AtomicLong();
+   private final AtomicLong releases = new AtomicLong();
+   private final AtomicLong replenishments = new AtomicLong();
+   private final AtomicLong provisionedNodes = new AtomicLong();
+   private final AtomicLong backendFailures = new AtomicLong();
+   private final AtomicLong recycledNodes = new AtomicLong();
+   private final AtomicLong recycleFailures = new AtomicLong();
+   private final LatencyHistogram assignLatency = new LatencyHistogram();
+   private final LatencyHistogram provisionLatency = new LatencyHistogram();
+   private final LatencyHistogram destroyLatency = new LatencyHistogram();
+   private final AtomicReferenceArray<IdleDepth> idleDepths = new AtomicReferenceArray<IdleDepth>(IDLE_DEPTH_SAMPLES);
+   private final AtomicLong idleDepthCount = new AtomicLong();
+
+   /**
+    * @param fromIdle
+    *           false if no node was idle and the caller waited for one to be created
+    */
+   public void assigned(long nanos, boolean fromIdle) {
+      assignments.incrementAndGet();
+      if (!fromIdle) {
+         idleMisses.incrementAndGet();
+      }
+      assignLatency.record(nanos);
+   }
+
+   public void released(long nanos) {
+      releases.incrementAndGet();
+      destroyLatency.record(nanos);
+   }
+
+   public void provisioned(int nodes, long nanos, boolean replenishment) {
+      provisionedNodes.addAndGet(nodes);
+      if (replenishment) {
+         replenishments.incrementAndGet();
+      }
+      provisionLatency.record(nanos);
+   }
+
+   public void backendFailed() {
+      backendFailures.incrementAndGet();
+   }
+
+   /**
+    * @param healthy
+    *           false if the node failed its cleanup or health check and is being replaced
+    */
+   public void recycled(boolean healthy) {
+      if (healthy) {
+         recycledNodes.incrementAndGet();
+      } else {
+         recycleFailures.incrementAndGet();
+      }
+   }
+
+   public void idleDepth(int idle) {
+      long index = idleDepthCount.getAndIncrement();
+      idleDepths.set((int) (index % IDLE_DEPTH_SAMPLES), new IdleDepth(System.currentTimeMillis(), idle));
+   }
+
+   /**
+    * The number of nodes assigned to a frontend group.
+    */
+   public long getAssignments() {
+      return assignments.get();
+   }
+
+   /**
+    * The number of assignments that found no idle node and waited for one to be created.
+    */
+   public long getIdleMisses() {
+      return idleMisses.get();
+   }
+
+   /**
+    * The number of nodes given back by the frontend.
+    */
+   public long getReleases() {
+      return releases.get();
+   }
+
+   /**
+    * The number of times the pool was replenished in the background.
+    */
+   public long getReplenishments() {
+      return replenishments.get();
+   }
+
+   /**
+    * The number of nodes created in the backend.
+    */
+   public long getProvisionedNodes() {
+      return provisionedNodes.get();
+   }
+
+   /**
+    * The number of backend calls to create or destroy nodes that failed.
+    */
+   public long getBackendFailures() {
+      return backendFailures.get();
+   }
+
+   /**
+    * The number of nodes given back that were cleaned and made idle again.
+    */
+   public long getRecycledNodes() {
+      return recycledNodes.get();
+   }
+
+   /**
+    * The number of nodes given back that failed their cleanup or health check.
+    */
+   public long getRecycleFailures() {
+      return recycleFailures.get();
+   }
+
+   /**
+    * The time taken to assign a node, including creating it when none was idle.
+    */
+   public LatencyHistogram getAssignLatency() {
+      return assignLatency;
+   }
+
+   /**
+    * The time taken by each backend call creating nodes.
+    */
+   public LatencyHistogram getProvisionLatency() {
+      return provisionLatency;
+   }
+
+   /**
+    * The time taken to give a node back, including destroying it in the backend.
+    */
+   public LatencyHistogram getDestroyLatency() {
+      return destroyLatency;
+   }
+
+   /**
+    * The last {@link #IDLE_DEPTH_SAMPLES} idle node counts, oldest first. One is taken every time
+    * a node is assigned, released or added to the pool.
+    */
+   public List<IdleDepth> getIdleDepths() {
+      long end = idleDepthCount.get();
+      ImmutableList.Builder<IdleDepth> samples = ImmutableList.builder();
+      for (long i = Math.max(0, end - IDLE_DEPTH_SAMPLES); i < end; i++) {
+         IdleDepth sample = idleDepths.get((int) (i % IDLE_DEPTH_SAMPLES));
+         if (sample != null) {
+            samples.add(sample);
+         }
+      }
+      return samples.build();
+   }
+
+   /**
+    * The number of idle nodes at a point in time.
+    */
+   public static class IdleDepth {
+      private final long timestamp;
+      private final int idleNodes;
+
+      IdleDepth(long timestamp, int idleNodes) {
+         this.timestamp = timestamp;
+         this.idleNodes = idleNodes;
+      }
+
+      /**
+       * When the sample was taken, in milliseconds since the epoch.
+       */
+      public long getTimestamp() {
+         return timestamp;
+      }
+
+      public int getIdleNodes() {
+         return idleNodes;
+      }
+
+      @Override
+      public String toString() {
+         return timestamp + "=" + idleNodes;
+      }
+   }
+
+   /**
+    * Latencies bucketed by powers of two microseconds, so percentiles are accurate within a factor
+    * of two.
+    */
+   public static class LatencyHistogram {
+      private static final int BUCKETS = 40;
+
+      private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+      private final AtomicLong count = new AtomicLong();
+      private final AtomicLong totalNanos = new AtomicLong();
+      private final AtomicLong maxNanos = new AtomicLong();
+
+      void record(long nanos) {
+         long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+         buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+         count.incrementAndGet();
+         totalNanos.addAndGet(nanos);
+         long max = maxNanos.get();
+         while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+         }
+      }
+
+      public long getCount() {
+         return count.get();
+      }
+
+      public long getMean(TimeUnit unit) {
+         long n = count.get();
+         return n == 0 ? 0 : unit.convert(totalNanos.get() / n, TimeUnit.NANOSECONDS);
+      }
+
+      public long getMax(TimeUnit unit) {
+         return unit.convert(maxNanos.get(), TimeUnit.NANOSECONDS);
+      }
+
+      /**
+       * @param percentile
+       *           between 0 and 100
+       * @return the upper bound of the bucket holding the percentile
+       */
+      public long getPercentile(double percentile, TimeUnit unit) {
+         checkArgument(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100");
+         long[] counts = new long[BUCKETS];
+         long total = 0;
+         for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+         }
+         if (total == 0) {
+            return 0;
+         }
+         long rank = (long) Math.ceil(total * percentile / 100);
+         long seen = 0;
+         for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+               return unit.convert(1L << i, TimeUnit.MICROSECONDS);
+            }
+         }
+         return getMax(unit);
+      }
+
+      @Override
+      public String toString() {
+         return String.format("[count=%s, mean=%sms, p50=%sms, p99=%sms, max=%sms]", getCount(),
+                  getMean(TimeUnit.MILLISECONDS), getPercentile(50, TimeUnit.MILLISECONDS),
+                  getPercentile(99, TimeUnit.MILLISECONDS), getMax(TimeUnit.MILLISECONDS));
+      }
+   }
+
+}
@@ -19,6 +19,11 @@
 
 package org.jclouds.nodepool.config;
 
+import static org.jclouds.nodepool.config.NodePoolProperties.METADATA_STORE;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
 import org.jclouds.apis.ApiMetadata;
 import org.jclouds.compute.ComputeServiceContext;
 import org.jclouds.compute.config.JCloudsNativeComputeServiceAdapterContextModule;
@@ -33,9 +38,12 @@ import org.jclouds.nodepool.NodePoolApiMetadata;
 import org.jclouds.nodepool.NodePoolComputeServiceAdapter;
 import org.jclouds.nodepool.NodePoolComputeServiceContext;
 import org.jclouds.nodepool.internal.JsonNodeMetadataStore;
+import org.jclouds.nodepool.internal.LogNodeMetadataStore;
 import org.jclouds.nodepool.internal.NodeMetadataStore;
 
 import com.google.common.base.Function;
+import com.google.inject.Injector;
+import com.google.inject.Provides;
 import com.google.inject.TypeLiteral;
 
 public class NodePoolComputeServiceContextModule extends JCloudsNativeComputeServiceAdapterContextModule {
@@ -57,7 +65,6 @@ public class NodePoolComputeServiceContextModule extends JCloudsNativeComputeSer
    @Override
    protected void configure() {
       super.configure();
-      bind(NodeMetadataStore.class).to(JsonNodeMetadataStore.class);
       bind(ApiMetadata.class).to(NodePoolApiMetadata.class);
       bind(ComputeServiceContext.class).to(NodePoolComputeServiceContext.class);
       install(new LocationsFromComputeServiceAdapterModule<NodeMetadata, Hardware, Image, Location>() {
@@ -65,6 +72,16 @@ public class NodePoolComputeServiceContextModule extends JCloudsNativeComputeSer
 
    }
 
+   @Provides
+   @Singleton
+   protected NodeMetadataStore provideNodeMetadataStore(@Named(METADATA_STORE) String metadataStore,
+            Injector injector) {
+      if ("log".equals(metadataStore)) {
+         return injector.getInstance(LogNodeMetadataStore.class);
+      }
+      return injector.getInstance(JsonNodeMetadataStore.class);
+   }
+
    @Override
    protected void bindCredentialsOverriderFunction() {
       bind(new TypeLiteral<Function<Template, LoginCredentials>>() {
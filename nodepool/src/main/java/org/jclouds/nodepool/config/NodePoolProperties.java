@@ -56,6 +56,13 @@ public interface NodePoolProperties {
     */
    public static final String METADATA_CONTAINER = "jclouds.nodepool.metadata-container";
 
+   /**
+    * Property to set where frontend mappings are stored: {@literal blobstore} keeps one json blob
+    * per node in the {@link #METADATA_CONTAINER} of a filesystem blobstore under {@link #BASEDIR},
+    * {@literal log} keeps them in memory, backed by a single append-only file under {@link #BASEDIR}.
+    */
+   public static final String METADATA_STORE = "jclouds.nodepool.metadata-store";
+
    /**
     * Property to set the maximum size of the pool. Set this to {@literal -1} to have an unlimited
     * pool size.
@@ -73,4 +80,36 @@ public interface NodePoolProperties {
     */
    public static final String REMOVE_DESTROYED = "jclouds.nodepool.remove-destroyed";
 
+   /**
+    * Property to set a script run on nodes given back to the pool, before they are made idle again.
+    * Nodes are only recycled when {@link #REMOVE_DESTROYED} is false, and the ones the script fails
+    * on are destroyed and replaced. Bind a {@link org.jclouds.scriptbuilder.domain.Statement} named
+    * after this property to run a statement instead.
+    */
+   public static final String CLEANUP_SCRIPT = "jclouds.nodepool.cleanup-script";
+
+   /**
+    * Property to set the maximum number of nodes that are cleaned at the same time. Cleaning runs
+    * on the user threads, this only limits how many of them it takes.
+    */
+   public static final String RECYCLE_CONCURRENCY = "jclouds.nodepool.recycle-concurrency";
+
+   /**
+    * Property to set how often, in seconds, the pool checks its view of idle and assigned nodes
+    * against the backend. Set this to {@literal 0} to only check on start.
+    */
+   public static final String RECONCILE_INTERVAL = "jclouds.nodepool.reconcile-interval";
+
+   /**
+    * Property to set the number of idle nodes below which the pool starts creating nodes in the
+    * background.
+    */
+   public static final String LOW_WATER_MARK = "jclouds.nodepool.low-water-mark";
+
+   /**
+    * Property to set the number of idle nodes the pool creates nodes up to when replenishing. Nodes
+    * needed to get there are created in a single backend call.
+    */
+   public static final String TARGET_IDLE = "jclouds.nodepool.target-idle";
+
 }
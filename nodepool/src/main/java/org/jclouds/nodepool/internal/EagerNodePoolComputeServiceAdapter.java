@@ -21,15 +21,28 @@ package org.jclouds.nodepool.internal;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static org.jclouds.Constants.PROPERTY_SCHEDULER_THREADS;
 import static org.jclouds.nodepool.config.NodePoolProperties.BACKEND_GROUP;
+import static org.jclouds.nodepool.config.NodePoolProperties.LOW_WATER_MARK;
 import static org.jclouds.nodepool.config.NodePoolProperties.MAX_SIZE;
 import static org.jclouds.nodepool.config.NodePoolProperties.MIN_SIZE;
 import static org.jclouds.nodepool.config.NodePoolProperties.POOL_ADMIN_ACCESS;
+import static org.jclouds.nodepool.config.NodePoolProperties.RECONCILE_INTERVAL;
 import static org.jclouds.nodepool.config.NodePoolProperties.REMOVE_DESTROYED;
+import static org.jclouds.nodepool.config.NodePoolProperties.TARGET_IDLE;
 
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -43,16 +56,36 @@ import org.jclouds.compute.reference.ComputeServiceConstants;
 import org.jclouds.domain.LoginCredentials;
 import org.jclouds.logging.Logger;
 import org.jclouds.nodepool.Backend;
+import org.jclouds.nodepool.NodePoolMetrics;
 import org.jclouds.scriptbuilder.statements.login.AdminAccess;
 
 import com.google.common.base.Supplier;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Sets;
-import com.google.common.collect.Sets.SetView;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
  * An eager {@link NodePoolComputeService}. Eagerly builds and maintains a pool of nodes. It's only
  * "started" after min nodes are allocated and available.
+ * <p/>
+ * Which nodes are idle and which are assigned is kept in {@link NodePoolState}, so assigning a node
+ * does not list the backend. The state is reconciled with the backend every
+ * {@link org.jclouds.nodepool.config.NodePoolProperties#RECONCILE_INTERVAL} seconds.
+ * <p/>
+ * Whenever the idle nodes fall below
+ * {@link org.jclouds.nodepool.config.NodePoolProperties#LOW_WATER_MARK}, or the pool below its min
+ * size, nodes are created in the background, in one backend call, until there are
+ * {@link org.jclouds.nodepool.config.NodePoolProperties#TARGET_IDLE} idle nodes. A caller finding
+ * no idle node waits for that replenishment and takes one of its nodes, it never creates one itself.
+ * Replenishment runs on a thread of its own, so it is never queued behind the callers waiting for it.
+ * <p/>
+ * Unless destroyed nodes are removed, nodes given back by the frontend are cleaned by the
+ * {@link NodeRecycler} before they are made idle again, and replaced if that fails.
  * 
  * @author David Alves
  * 
@@ -67,108 +100,364 @@ public class EagerNodePoolComputeServiceAdapter extends BaseNodePoolComputeServi
    private final int maxSize;
    private final int minSize;
    private final boolean removeDestroyed;
+   private final NodePoolState poolState;
+   private final ScheduledExecutorService scheduler;
+   private final long reconcileInterval;
+   private final ExecutorService replenisher = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("nodepool-replenisher-%d").setDaemon(true).build());
+   private final int lowWaterMark;
+   private final int targetIdle;
+   private final AtomicReference<ListenableFuture<Integer>> replenishment =
+            new AtomicReference<ListenableFuture<Integer>>();
+   // callers waiting for a node to be created, guarded by this
+   private int waiting;
+   private final NodePoolMetrics metrics;
+   private final NodeRecycler recycler;
+   private volatile ScheduledFuture<?> reconciler;
 
    @Inject
    public EagerNodePoolComputeServiceAdapter(@Backend Supplier<ComputeService> backendComputeService,
             @Backend Supplier<Template> backendTemplate, @Named(BACKEND_GROUP) String poolGroupPrefix,
             @Named(MAX_SIZE) int maxSize, @Named(MIN_SIZE) int minSize,
             @Named(REMOVE_DESTROYED) boolean removeDestroyed, NodeMetadataStore storage,
-            @Named(POOL_ADMIN_ACCESS) String poolNodeAdminAccess, AdminAccess.Configuration configuration) {
+            @Named(POOL_ADMIN_ACCESS) String poolNodeAdminAccess, AdminAccess.Configuration configuration,
+            NodePoolState poolState, @Named(PROPERTY_SCHEDULER_THREADS) ScheduledExecutorService scheduler,
+            @Named(RECONCILE_INTERVAL) long reconcileInterval, @Named(LOW_WATER_MARK) int lowWaterMark, @Named(TARGET_IDLE) int targetIdle,
+            NodePoolMetrics metrics, NodeRecycler recycler) {
       super(backendComputeService, backendTemplate, poolGroupPrefix, storage, poolNodeAdminAccess, configuration);
       this.maxSize = maxSize;
       this.minSize = minSize;
       this.removeDestroyed = removeDestroyed;
+      this.poolState = checkNotNull(poolState, "poolState");
+      this.scheduler = checkNotNull(scheduler, "scheduler");
+      this.reconcileInterval = reconcileInterval;
+      this.lowWaterMark = lowWaterMark;
+      this.targetIdle = targetIdle;
+      this.metrics = checkNotNull(metrics, "metrics");
+      this.recycler = checkNotNull(recycler, "recycler");
    }
 
    @PostConstruct
    public void startEagerPool() {
-      Set<? extends NodeMetadata> backendNodes = getBackendNodes();
-      int currentNodes = backendNodes.size();
-      int newNodes = backendNodes.size() < minSize ? minSize - backendNodes.size() : 0;
+      reconcile();
+      int currentNodes = poolState.size();
+      int newNodes = currentNodes < minSize ? minSize - currentNodes : 0;
       logger.info(
                ">> initializing nodepool [backend provider: %s]. [existing nodes: %s, min nodes: %s, allocating: %s ]",
                backendComputeService.get().getClass().getSimpleName(), currentNodes, minSize, newNodes);
-      if (backendNodes.size() < minSize) {
-         addToPool(minSize - backendNodes.size());
+      if (newNodes > 0) {
+         growPool(newNodes, false);
       }
+      if (reconcileInterval > 0) {
+         reconciler = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+               try {
+                  reconcile();
+                  replenishIfNeeded();
+               } catch (RuntimeException e) {
+                  logger.warn(e, "could not reconcile pool with the backend");
+               }
+            }
+         }, reconcileInterval, reconcileInterval, TimeUnit.SECONDS);
+      }
+      replenishIfNeeded();
       logger.info("<< pool initialized.");
    }
 
+   @PreDestroy
+   public void stop() {
+      if (reconciler != null) {
+         reconciler.cancel(false);
+      }
+      replenisher.shutdownNow();
+   }
+
+   /**
+    * Brings the pool state in line with the nodes of the pool group in the backend.
+    */
+   public void reconcile() {
+      Set<String> known = poolState.knownIds();
+      poolState.reconcile(known, getBackendNodes(), metadataStore);
+      logger.debug("<< pool reconciled [size: %s, idle: %s, used: %s]", poolState.size(), poolState.idleCount(),
+               poolState.assignedCount());
+   }
+
    @Override
    public NodeWithInitialCredentials createNodeWithGroupEncodedIntoName(String group, String name, Template template) {
-      int count = 1;
-      synchronized (this) {
-         TemplateOptions options = template.getOptions().clone();
+      TemplateOptions options = template.getOptions().clone();
 
-         // if no user is provided we set the pool's user
-         if (options.getLoginUser() == null) {
-            options.overrideLoginCredentials(LoginCredentials.fromCredentials(checkNotNull(initialCredentialsBuilder
-                     .build().getAdminCredentials())));
-         }
+      // if no user is provided we set the pool's user
+      if (options.getLoginUser() == null) {
+         options.overrideLoginCredentials(adminCredentials());
+      }
 
-         logger.info(">> assigning pool node to frontend group %s", group);
-         Set<NodeMetadata> backendNodes = getBackendNodes();
-         checkState(!backendNodes.isEmpty());
-         Set<NodeMetadata> frontendNodes = metadataStore.loadAll(backendNodes);
-         checkState(frontendNodes.size() + count <= maxSize,
-                  "cannot add more nodes to pool [requested: %s, current: %s, max: %s]", count, frontendNodes.size(),
-                  maxSize);
-
-         SetView<NodeMetadata> availableNodes = Sets.difference(backendNodes, frontendNodes);
-
-         if (availableNodes.size() < 1) {
-            if (backendNodes.size() < maxSize && backendNodes.size() + count <= maxSize) {
-               logger.info(
-                        ">> all pool nodes are assigned, requiring additional nodes [requested: %s, current: %s, next: %s, max: %s]",
-                        count, frontendNodes.size(), frontendNodes.size() + 1, maxSize);
-               addToPool(count);
-               // update backend and available sets, no need to update frontend
-               backendNodes = getBackendNodes();
-               availableNodes = Sets.difference(backendNodes, frontendNodes);
-               logger.info("<< additional nodes added to the pool and ready");
-            } else {
-               logger.error("maximum pool size reached (%s)", maxSize);
-               throw new IllegalStateException(String.format("maximum pool size reached (%s)", maxSize));
-            }
-         }
-         NodeMetadata userNode = Iterables.get(availableNodes, 0);
+      logger.info(">> assigning pool node to frontend group %s", group);
+      long start = System.nanoTime();
+      NodeMetadata userNode = poolState.takeIdle();
+      boolean fromIdle = userNode != null;
+      if (userNode == null) {
+         userNode = awaitReplenishedNode();
+      }
+      metrics.idleDepth(poolState.idleCount());
+      replenishIfNeeded();
+      try {
          NodeMetadata node = metadataStore.store(userNode, options, group);
+         metrics.assigned(System.nanoTime() - start, fromIdle);
          logger.info("pool node assigned");
          return new NodeWithInitialCredentials(node);
+      } catch (RuntimeException e) {
+         poolState.release(userNode.getId());
+         throw e;
       }
    }
 
    @Override
-   public synchronized void destroyNode(String id) {
+   public void destroyNode(String id) {
       checkState(getNode(id) != null);
       logger.info(">> destroying node %s", id);
+      long start = System.nanoTime();
       metadataStore.deleteMapping(id);
       if (removeDestroyed) {
-         backendComputeService.get().destroyNode(id);
+         poolState.remove(id);
+         try {
+            backendComputeService.get().destroyNode(id);
+         } catch (RuntimeException e) {
+            metrics.backendFailed();
+            throw e;
+         }
          if (currentSize() < minSize) {
             logger.info(">> policy is remove destroyed node and pool "
-                     + "would fall below minsize, replacing node with id %s", id);
-            Set<? extends NodeMetadata> replacement = addToPool(1);
-            logger.info("<< node %s replaced with %s", id, Iterables.getOnlyElement(replacement));
+                     + "would fall below minsize, replacing node with id %s in the background", id);
          }
+         replenishIfNeeded();
       }
-      // TODO we should allow the user to hook a way to "clean" the node
-      else {
-
+      else if (poolState.startRecycling(id)) {
+         recycle(id);
       }
+      metrics.released(System.nanoTime() - start);
+      metrics.idleDepth(poolState.idleCount());
       logger.info("<< node destroyed %s", id);
    }
 
+   /**
+    * Cleans a node given back by the frontend in the background and makes it idle again, or
+    * destroys it and replenishes the pool if it could not be cleaned.
+    */
+   private void recycle(final String id) {
+      Futures.addCallback(recycler.recycle(id, adminCredentials()), new FutureCallback<Boolean>() {
+         @Override
+         public void onSuccess(Boolean healthy) {
+            metrics.recycled(healthy);
+            if (healthy) {
+               poolState.finishRecycling(id);
+               metrics.idleDepth(poolState.idleCount());
+            } else {
+               replace(id);
+            }
+         }
+
+         @Override
+         public void onFailure(Throwable t) {
+            metrics.recycled(false);
+            replace(id);
+         }
+      });
+   }
+
+   private void replace(String id) {
+      logger.info(">> node %s could not be recycled, replacing it", id);
+      poolState.remove(id);
+      try {
+         backendComputeService.get().destroyNode(id);
+      } catch (RuntimeException e) {
+         metrics.backendFailed();
+         logger.warn(e, "could not destroy node %s", id);
+      }
+      replenishIfNeeded();
+   }
+
+   /**
+    * Waits for the replenishment in progress, or one started for this caller, and takes one of the
+    * nodes it added, rather than creating a node besides it.
+    */
+   private NodeMetadata awaitReplenishedNode() {
+      synchronized (this) {
+         waiting++;
+      }
+      logger.info(">> all pool nodes are assigned, waiting for additional nodes [current: %s, max: %s]",
+               poolState.size(), maxSize);
+      boolean taken = false;
+      try {
+         while (true) {
+            NodeMetadata node = takeIdleWhileWaiting();
+            if (node != null) {
+               taken = true;
+               logger.info("<< additional nodes added to the pool and ready");
+               return node;
+            }
+            ListenableFuture<Integer> replenished = replenishIfNeeded();
+            // none needed means a node became idle meanwhile
+            if (replenished != null && awaitUninterruptibly(replenished) == 0 && poolState.idleCount() == 0) {
+               logger.error("maximum pool size reached (%s)", maxSize);
+               throw new IllegalStateException(String.format("maximum pool size reached (%s)", maxSize));
+            }
+         }
+      } finally {
+         if (!taken) {
+            synchronized (this) {
+               waiting--;
+            }
+         }
+      }
+   }
+
+   /**
+    * Takes an idle node for a waiting caller, which stops counting as waiting at the same time, so
+    * that the node is not seen missing from both the idle nodes and the waiting callers.
+    */
+   private synchronized NodeMetadata takeIdleWhileWaiting() {
+      NodeMetadata node = poolState.takeIdle();
+      if (node != null) {
+         waiting--;
+      }
+      return node;
+   }
+
+   private static int awaitUninterruptibly(ListenableFuture<Integer> replenished) {
+      try {
+         return Uninterruptibles.getUninterruptibly(replenished);
+      } catch (ExecutionException e) {
+         throw Throwables.propagate(e.getCause());
+      }
+   }
+
+   private LoginCredentials adminCredentials() {
+      return LoginCredentials.fromCredentials(checkNotNull(initialCredentialsBuilder.build().getAdminCredentials()));
+   }
+
+   /**
+    * Starts creating nodes in the background when there are fewer idle nodes than the low water
+    * mark or than callers waiting for one, or fewer nodes than the min size, unless that is already
+    * being done.
+    * 
+    * @return the replenishment in progress, completed with the number of nodes it created, or null
+    *         if none is needed
+    */
+   private ListenableFuture<Integer> replenishIfNeeded() {
+      while (true) {
+         ListenableFuture<Integer> current = replenishment.get();
+         if (current != null) {
+            return current;
+         }
+         if (!needsReplenishing()) {
+            return null;
+         }
+         final SettableFuture<Integer> started = SettableFuture.create();
+         if (replenishment.compareAndSet(null, started)) {
+            try {
+               replenisher.execute(replenishTask(started));
+            } catch (RejectedExecutionException e) {
+               // the pool is being stopped
+               replenishment.compareAndSet(started, null);
+               started.setException(e);
+            }
+            return started;
+         }
+      }
+   }
+
+   private Runnable replenishTask(final SettableFuture<Integer> started) {
+      return new Runnable() {
+         @Override
+         public void run() {
+            int created;
+            try {
+               created = replenish();
+            } catch (RuntimeException e) {
+               logger.warn(e, "could not replenish pool");
+               // cleared first, so that the callers woken up can start another one
+               replenishment.compareAndSet(started, null);
+               started.setException(e);
+               return;
+            }
+            replenishment.compareAndSet(started, null);
+            started.set(created);
+            // nodes may have been taken after the last check
+            replenishIfNeeded();
+         }
+      };
+   }
+
+   private synchronized boolean needsReplenishing() {
+      int idle = poolState.idleCount();
+      return idle < lowWaterMark || idle < waiting || poolState.size() < minSize;
+   }
+
+   /**
+    * @return how many nodes to add so that there are enough idle ones for the callers waiting and
+    *         the target idle ones, and at least min size nodes
+    */
+   private synchronized int wanted() {
+      return Math.max(targetIdle - poolState.idleCount() + waiting, minSize - poolState.size());
+   }
+
+   private int replenish() {
+      int created = 0;
+      while (true) {
+         int wanted = wanted();
+         if (wanted <= 0) {
+            return created;
+         }
+         logger.debug(">> replenishing pool [idle: %s, target idle: %s, wanted: %s, size: %s, min: %s]",
+                  poolState.idleCount(), targetIdle, wanted, poolState.size(), minSize);
+         int added = growPool(wanted, true).size();
+         if (added == 0) {
+            return created;
+         }
+         created += added;
+      }
+   }
+
+   /**
+    * Adds up to {@code count} idle nodes to the pool, as many as fit below its maximum size.
+    */
+   private Set<? extends NodeMetadata> growPool(int count, boolean replenishment) {
+      int reserved = poolState.beginGrowth(count, maxSize);
+      if (reserved == 0) {
+         return ImmutableSet.of();
+      }
+      try {
+         Set<? extends NodeMetadata> created = provision(reserved, replenishment);
+         poolState.addIdle(created);
+         metrics.idleDepth(poolState.idleCount());
+         logger.debug("<< %s nodes added to the pool", created.size());
+         return created;
+      } finally {
+         poolState.endGrowth(reserved);
+      }
+   }
+
+   private Set<? extends NodeMetadata> provision(int count, boolean replenishment) {
+      long start = System.nanoTime();
+      try {
+         Set<? extends NodeMetadata> created = addToPool(count);
+         metrics.provisioned(created.size(), System.nanoTime() - start, replenishment);
+         return created;
+      } catch (RuntimeException e) {
+         metrics.backendFailed();
+         throw e;
+      }
+   }
+
    @Override
    public int currentSize() {
-      return getBackendNodes().size();
+      return poolState.size();
    }
 
    @Override
    public int idleNodes() {
-      Set<NodeMetadata> backendNodes = getBackendNodes();
-      Set<NodeMetadata> frontendNodes = metadataStore.loadAll(backendNodes);
-      return backendNodes.size() - frontendNodes.size();
+      return poolState.idleCount();
    }
 
    @Override
@@ -183,7 +472,7 @@ public class EagerNodePoolComputeServiceAdapter extends BaseNodePoolComputeServi
 
    @Override
    public int usedNodes() {
-      return metadataStore.loadAll(getBackendNodes()).size();
+      return poolState.assignedCount();
    }
 
 }
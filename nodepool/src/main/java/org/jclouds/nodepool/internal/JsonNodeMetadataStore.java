@@ -55,7 +55,7 @@ public class JsonNodeMetadataStore implements NodeMetadataStore {
    private Supplier<Map<String, InputStream>> storage;
    private final Json json;
 
-   private static class JsonUserNodeMetadata {
+   static class JsonUserNodeMetadata {
       private String group;
       private Set<String> tags;
       private Map<String, String> userMetadata;
@@ -74,6 +74,12 @@ public class JsonNodeMetadataStore implements NodeMetadataStore {
    @Override
    public NodeMetadata store(NodeMetadata backendNodeMetadata, TemplateOptions userOptions, String userGroup) {
       checkNotNull(backendNodeMetadata);
+      JsonUserNodeMetadata jsonMetadata = fromUserOptions(userOptions, userGroup);
+      storage.get().put(backendNodeMetadata.getId(), Strings2.toInputStream(json.toJson(jsonMetadata)));
+      return buildFromJsonAndBackendMetadata(backendNodeMetadata, jsonMetadata);
+   }
+
+   static JsonUserNodeMetadata fromUserOptions(TemplateOptions userOptions, String userGroup) {
       checkNotNull(userGroup);
       checkNotNull(userOptions);
       checkNotNull(userOptions.getLoginUser());
@@ -87,8 +93,7 @@ public class JsonNodeMetadataStore implements NodeMetadataStore {
       jsonMetadata.userMetadata = userOptions.getUserMetadata();
       jsonMetadata.tags = userOptions.getTags();
       jsonMetadata.group = userGroup;
-      storage.get().put(backendNodeMetadata.getId(), Strings2.toInputStream(json.toJson(jsonMetadata)));
-      return buildFromJsonAndBackendMetadata(backendNodeMetadata, jsonMetadata);
+      return jsonMetadata;
    }
 
    @Override
@@ -122,7 +127,7 @@ public class JsonNodeMetadataStore implements NodeMetadataStore {
       return loadedSet;
    }
 
-   private NodeMetadata buildFromJsonAndBackendMetadata(NodeMetadata backendNodeMetadata,
+   static NodeMetadata buildFromJsonAndBackendMetadata(NodeMetadata backendNodeMetadata,
             JsonUserNodeMetadata jsonMetadata) {
       return NodeMetadataBuilder
                .fromNodeMetadata(backendNodeMetadata)
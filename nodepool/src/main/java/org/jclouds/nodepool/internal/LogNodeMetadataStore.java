@@ -0,0 +1,274 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.nodepool.internal;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.Constants.PROPERTY_USER_THREADS;
+import static org.jclouds.nodepool.config.NodePoolProperties.BASEDIR;
+import static org.jclouds.nodepool.config.NodePoolProperties.METADATA_CONTAINER;
+import static org.jclouds.nodepool.internal.JsonNodeMetadataStore.buildFromJsonAndBackendMetadata;
+import static org.jclouds.nodepool.internal.JsonNodeMetadataStore.fromUserOptions;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.options.TemplateOptions;
+import org.jclouds.json.Json;
+import org.jclouds.logging.Logger;
+import org.jclouds.nodepool.internal.JsonNodeMetadataStore.JsonUserNodeMetadata;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * A {@link NodeMetadataStore} that keeps all the mappings in memory and appends every change to a
+ * single log file, {@code <basedir>/<metadata-container>.log}, which is replayed on start.
+ * <p/>
+ * Loads never touch the disk, and a change is a single appended line.
+ * Once the log holds many more records than there are mappings, it is rewritten in the background
+ * with only the current ones.
+ */
+@Singleton
+public class LogNodeMetadataStore implements NodeMetadataStore {
+
+   /**
+    * The log is compacted when it has this many records and more than twice as many as there are
+    * mappings.
+    */
+   static final int COMPACTION_THRESHOLD = 1000;
+
+   @Resource
+   protected Logger logger = Logger.NULL;
+
+   private final File log;
+   private final Json json;
+   private final ListeningExecutorService userExecutor;
+   private final ConcurrentMap<String, JsonUserNodeMetadata> mappings = Maps.newConcurrentMap();
+   private final AtomicBoolean compacting = new AtomicBoolean();
+   private volatile boolean opened;
+
+   // guarded by this
+   private Writer writer;
+   private int records;
+
+   /**
+    * A line of the log, a null metadata removes the mapping.
+    */
+   private static class Record {
+      private String id;
+      private JsonUserNodeMetadata metadata;
+
+      private Record(String id, JsonUserNodeMetadata metadata) {
+         this.id = id;
+         this.metadata = metadata;
+      }
+   }
+
+   @Inject
+   public LogNodeMetadataStore(@Named(BASEDIR) String basedir, @Named(METADATA_CONTAINER) String container,
+            Json json, @Named(PROPERTY_USER_THREADS) ListeningExecutorService userExecutor) {
+      this.log = new File(checkNotNull(basedir, "basedir"), checkNotNull(container, "container") + ".log");
+      this.json = checkNotNull(json, "json");
+      this.userExecutor = checkNotNull(userExecutor, "userExecutor");
+   }
+
+   @Override
+   public NodeMetadata store(NodeMetadata backendNode, TemplateOptions userOptions, String userGroup) {
+      JsonUserNodeMetadata jsonMetadata = fromUserOptions(userOptions, userGroup);
+      append(new Record(checkNotNull(backendNode).getId(), jsonMetadata));
+      return buildFromJsonAndBackendMetadata(backendNode, jsonMetadata);
+   }
+
+   @Override
+   public void deleteMapping(String backendNodeId) {
+      append(new Record(checkNotNull(backendNodeId), null));
+   }
+
+   @Override
+   public synchronized void deleteAllMappings() {
+      open();
+      mappings.clear();
+      rewrite();
+   }
+
+   @Override
+   public NodeMetadata load(NodeMetadata backendNode) {
+      open();
+      JsonUserNodeMetadata jsonMetadata = mappings.get(checkNotNull(backendNode).getId());
+      return jsonMetadata == null ? null : buildFromJsonAndBackendMetadata(backendNode, jsonMetadata);
+   }
+
+   @Override
+   public Set<NodeMetadata> loadAll(Set<NodeMetadata> backendNodes) {
+      if (backendNodes == null || backendNodes.isEmpty()) {
+         return ImmutableSet.of();
+      }
+      open();
+      Set<NodeMetadata> loadedSet = Sets.newLinkedHashSet();
+      for (NodeMetadata backendNode : backendNodes) {
+         JsonUserNodeMetadata jsonMetadata = mappings.get(backendNode.getId());
+         if (jsonMetadata != null) {
+            loadedSet.add(buildFromJsonAndBackendMetadata(backendNode, jsonMetadata));
+         }
+      }
+      return loadedSet;
+   }
+
+   @PreDestroy
+   public synchronized void close() {
+      Closeables.closeQuietly(writer);
+      writer = null;
+      opened = false;
+   }
+
+   private synchronized void append(Record record) {
+      open();
+      try {
+         writer.write(json.toJson(record));
+         writer.write('\n');
+         writer.flush();
+      } catch (IOException e) {
+         throw Throwables.propagate(e);
+      }
+      records++;
+      apply(record);
+      if (records >= COMPACTION_THRESHOLD && records > 2 * mappings.size() && compacting.compareAndSet(false, true)) {
+         userExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+               try {
+                  compact();
+               } finally {
+                  compacting.set(false);
+               }
+            }
+         });
+      }
+   }
+
+   synchronized void compact() {
+      int before = records;
+      rewrite();
+      logger.debug("<< compacted %s from %s to %s records", log, before, records);
+   }
+
+   /**
+    * Replaces the log with one record per current mapping.
+    */
+   private void rewrite() {
+      File temp = new File(log.getPath() + ".tmp");
+      try {
+         Writer out = new OutputStreamWriter(new FileOutputStream(temp), UTF_8);
+         try {
+            for (Map.Entry<String, JsonUserNodeMetadata> mapping : mappings.entrySet()) {
+               out.write(json.toJson(new Record(mapping.getKey(), mapping.getValue())));
+               out.write('\n');
+            }
+         } finally {
+            out.close();
+         }
+         Closeables.closeQuietly(writer);
+         Files.move(temp, log);
+         writer = new OutputStreamWriter(new FileOutputStream(log, true), UTF_8);
+         records = mappings.size();
+      } catch (IOException e) {
+         throw Throwables.propagate(e);
+      }
+   }
+
+   /**
+    * Replays the log the first time it is needed.
+    */
+   private void open() {
+      if (opened) {
+         return;
+      }
+      synchronized (this) {
+         if (opened) {
+            return;
+         }
+         try {
+            Files.createParentDirs(log);
+            if (log.isFile() && !replay()) {
+               rewrite();
+            } else {
+               writer = new OutputStreamWriter(new FileOutputStream(log, true), UTF_8);
+            }
+         } catch (IOException e) {
+            throw Throwables.propagate(e);
+         }
+         opened = true;
+      }
+   }
+
+   /**
+    * @return false if the last record was incomplete, and the log needs to be rewritten before
+    *         anything is appended to it
+    */
+   private boolean replay() throws IOException {
+      mappings.clear();
+      records = 0;
+      List<String> lines = Files.readLines(log, UTF_8);
+      for (int i = 0; i < lines.size(); i++) {
+         try {
+            apply(json.fromJson(lines.get(i), Record.class));
+            records++;
+         } catch (RuntimeException e) {
+            // a write cut short leaves a partial last line
+            if (i < lines.size() - 1) {
+               throw e;
+            }
+            logger.warn(e, "ignoring incomplete last record of %s", log);
+            return false;
+         }
+      }
+      logger.debug("<< replayed %s records from %s, %s mappings", records, log, mappings.size());
+      return true;
+   }
+
+   private void apply(Record record) {
+      if (record.metadata == null) {
+         mappings.remove(record.id);
+      } else {
+         mappings.put(record.id, record.metadata);
+      }
+   }
+
+}
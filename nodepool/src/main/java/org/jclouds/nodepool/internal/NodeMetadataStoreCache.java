@@ -18,8 +18,9 @@
  */
 package org.jclouds.nodepool.internal;
 
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -31,12 +32,15 @@ import com.google.common.base.Function;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Striped;
 
 @Singleton
 public class NodeMetadataStoreCache implements NodeMetadataStore {
 
-   private Map<String, NodeMetadata> frontendMetadataCache = Maps.newHashMap();
-   private NodeMetadataStore backend;
+   private final ConcurrentMap<String, NodeMetadata> frontendMetadataCache = Maps.newConcurrentMap();
+   private final NodeMetadataStore backend;
+   // changes to the mapping of a node and cache misses on it go one at a time, other nodes are not held up
+   private final Striped<Lock> nodeLocks = Striped.lock(64);
 
    @Inject
    public NodeMetadataStoreCache(NodeMetadataStore backend) {
@@ -44,39 +48,60 @@ public class NodeMetadataStoreCache implements NodeMetadataStore {
    }
 
    @Override
-   public synchronized NodeMetadata store(NodeMetadata backendNode, TemplateOptions userOptions, String userGroup) {
-      NodeMetadata frontEndNode = backend.store(backendNode, userOptions, userGroup);
-      frontendMetadataCache.put(backendNode.getId(), frontEndNode);
-      return frontEndNode;
+   public NodeMetadata store(NodeMetadata backendNode, TemplateOptions userOptions, String userGroup) {
+      Lock lock = nodeLocks.get(backendNode.getId());
+      lock.lock();
+      try {
+         NodeMetadata frontEndNode = backend.store(backendNode, userOptions, userGroup);
+         frontendMetadataCache.put(backendNode.getId(), frontEndNode);
+         return frontEndNode;
+      } finally {
+         lock.unlock();
+      }
    }
 
    @Override
-   public synchronized void deleteMapping(String backendNodeId) {
-      frontendMetadataCache.remove(backendNodeId);
-      backend.deleteMapping(backendNodeId);
-
+   public void deleteMapping(String backendNodeId) {
+      Lock lock = nodeLocks.get(backendNodeId);
+      lock.lock();
+      try {
+         frontendMetadataCache.remove(backendNodeId);
+         backend.deleteMapping(backendNodeId);
+      } finally {
+         lock.unlock();
+      }
    }
 
    @Override
-   public synchronized void deleteAllMappings() {
+   public void deleteAllMappings() {
       frontendMetadataCache.clear();
       backend.deleteAllMappings();
    }
 
    @Override
-   public synchronized NodeMetadata load(NodeMetadata backendNode) {
+   public NodeMetadata load(NodeMetadata backendNode) {
       NodeMetadata frontendNode = frontendMetadataCache.get(backendNode.getId());
-      if (frontendNode == null) {
-         frontendNode = backend.load(backendNode);
-         if (frontendNode != null) {
-            frontendMetadataCache.put(backendNode.getId(), frontendNode);
+      if (frontendNode != null) {
+         return frontendNode;
+      }
+      Lock lock = nodeLocks.get(backendNode.getId());
+      lock.lock();
+      try {
+         frontendNode = frontendMetadataCache.get(backendNode.getId());
+         if (frontendNode == null) {
+            frontendNode = backend.load(backendNode);
+            if (frontendNode != null) {
+               frontendMetadataCache.put(backendNode.getId(), frontendNode);
+            }
          }
+         return frontendNode;
+      } finally {
+         lock.unlock();
       }
-      return frontendNode;
    }
 
    @Override
-   public synchronized Set<NodeMetadata> loadAll(Set<NodeMetadata> backendNodes) {
+   public Set<NodeMetadata> loadAll(Set<NodeMetadata> backendNodes) {
       return ImmutableSet.copyOf(Iterables.transform(backendNodes, new Function<NodeMetadata, NodeMetadata>() {
          @Override
          public NodeMetadata apply(NodeMetadata input) {
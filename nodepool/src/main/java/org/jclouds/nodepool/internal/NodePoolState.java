@@ -0,0 +1,226 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.nodepool.internal;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Singleton;
+
+import org.jclouds.compute.domain.NodeMetadata;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+
+/**
+ * The in memory view of the pool: which backend nodes exist and which of them are idle or assigned
+ * to a frontend group.
+ * <p/>
+ * Taking an idle node is a dequeue and never goes to the backend. The view is kept in line with
+ * the backend by {@link #reconcile}, which the adapter runs on start and then periodically.
+ */
+@Singleton
+public class NodePoolState {
+
+   private final ConcurrentMap<String, NodeMetadata> nodes = Maps.newConcurrentMap();
+   // an id is idle while it is in idleIds, the queue may still hold ids that were taken or removed
+   private final Set<String> idleIds = Sets.newSetFromMap(Maps.<String, Boolean> newConcurrentMap());
+   private final Queue<String> idleQueue = Queues.newConcurrentLinkedQueue();
+   private final Set<String> assignedIds = Sets.newSetFromMap(Maps.<String, Boolean> newConcurrentMap());
+   private final Set<String> recyclingIds = Sets.newSetFromMap(Maps.<String, Boolean> newConcurrentMap());
+   private final AtomicInteger growing = new AtomicInteger();
+
+   /**
+    * Takes an idle node and marks it assigned.
+    *
+    * @return the backend node, or null if there are no idle nodes
+    */
+   public NodeMetadata takeIdle() {
+      String id;
+      while ((id = idleQueue.poll()) != null) {
+         if (idleIds.remove(id)) {
+            NodeMetadata node = nodes.get(id);
+            if (node != null) {
+               assignedIds.add(id);
+               return node;
+            }
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Adds nodes that were just created in the backend as idle nodes.
+    */
+   public void addIdle(Iterable<? extends NodeMetadata> created) {
+      for (NodeMetadata node : created) {
+         nodes.put(node.getId(), node);
+         if (!assignedIds.contains(node.getId())) {
+            markIdle(node.getId());
+         }
+      }
+   }
+
+   /**
+    * Returns an assigned node to the idle nodes.
+    */
+   public void release(String id) {
+      if (assignedIds.remove(id) && nodes.containsKey(id)) {
+         markIdle(id);
+      }
+   }
+
+   /**
+    * Takes an assigned node out of the frontend without making it idle yet, while it is cleaned.
+    *
+    * @return false if the node was not assigned
+    */
+   public boolean startRecycling(String id) {
+      if (assignedIds.remove(id)) {
+         recyclingIds.add(id);
+         return true;
+      }
+      return false;
+   }
+
+   /**
+    * Makes a node that was being cleaned idle.
+    */
+   public void finishRecycling(String id) {
+      if (recyclingIds.remove(id) && nodes.containsKey(id)) {
+         markIdle(id);
+      }
+   }
+
+   /**
+    * Forgets a node, as when it is destroyed in the backend.
+    */
+   public void remove(String id) {
+      nodes.remove(id);
+      idleIds.remove(id);
+      assignedIds.remove(id);
+      recyclingIds.remove(id);
+   }
+
+   /**
+    * Reserves room for up to {@code count} more backend nodes. Reservations are counted against
+    * {@code maxSize} until {@link #endGrowth} is called, so concurrent callers cannot go past it.
+    *
+    * @param maxSize
+    *           the maximum size of the pool, or a negative number for no maximum
+    * @return how many nodes were reserved, which is less than {@code count} when the pool is
+    *         close to {@code maxSize}
+    */
+   public int beginGrowth(int count, int maxSize) {
+      while (true) {
+         int reserved = growing.get();
+         int room = maxSize < 0 ? count : Math.min(count, maxSize - nodes.size() - reserved);
+         if (room <= 0) {
+            return 0;
+         }
+         if (growing.compareAndSet(reserved, reserved + room)) {
+            return room;
+         }
+      }
+   }
+
+   public void endGrowth(int count) {
+      growing.addAndGet(-count);
+   }
+
+   /**
+    * Brings the view in line with a listing of the backend. Nodes that are no longer in the backend
+    * are dropped, and new ones are added as assigned when {@code metadataStore} has a frontend
+    * mapping for them, or as idle otherwise. Nodes already known keep their state, so that
+    * assignments in progress are not undone.
+    *
+    * @param known
+    *           the ids known before the listing started, as returned by {@link #knownIds}
+    * @param backendNodes
+    *           the nodes of the pool group in the backend
+    */
+   public void reconcile(Set<String> known, Set<? extends NodeMetadata> backendNodes,
+            NodeMetadataStore metadataStore) {
+      checkNotNull(metadataStore, "metadataStore");
+      Set<String> listed = Sets.newHashSet();
+      for (NodeMetadata node : backendNodes) {
+         listed.add(node.getId());
+      }
+      for (String id : Sets.difference(known, listed)) {
+         remove(id);
+      }
+      // nodes being created may already be listed but not added yet, pick them up next time
+      if (growing.get() > 0) {
+         return;
+      }
+      Set<NodeMetadata> added = Sets.newLinkedHashSet();
+      for (NodeMetadata node : backendNodes) {
+         if (nodes.putIfAbsent(node.getId(), node) == null) {
+            added.add(node);
+         }
+      }
+      if (added.isEmpty()) {
+         return;
+      }
+      Set<String> mapped = Sets.newHashSet();
+      for (NodeMetadata frontendNode : metadataStore.loadAll(added)) {
+         mapped.add(frontendNode.getId());
+      }
+      for (NodeMetadata node : added) {
+         if (mapped.contains(node.getId())) {
+            assignedIds.add(node.getId());
+         } else {
+            markIdle(node.getId());
+         }
+      }
+   }
+
+   public Set<String> knownIds() {
+      return ImmutableSet.copyOf(nodes.keySet());
+   }
+
+   public int size() {
+      return nodes.size();
+   }
+
+   public int idleCount() {
+      return idleIds.size();
+   }
+
+   public int assignedCount() {
+      return assignedIds.size();
+   }
+
+   public int recyclingCount() {
+      return recyclingIds.size();
+   }
+
+   private void markIdle(String id) {
+      if (idleIds.add(id)) {
+         idleQueue.add(id);
+      }
+   }
+
+}
@@ -0,0 +1,180 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.nodepool.internal;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.Constants.PROPERTY_USER_THREADS;
+import static org.jclouds.compute.options.RunScriptOptions.Builder.overrideLoginCredentials;
+import static org.jclouds.nodepool.config.NodePoolProperties.CLEANUP_SCRIPT;
+import static org.jclouds.nodepool.config.NodePoolProperties.RECYCLE_CONCURRENCY;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.compute.ComputeService;
+import org.jclouds.compute.domain.ExecResponse;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadata.Status;
+import org.jclouds.compute.reference.ComputeServiceConstants;
+import org.jclouds.domain.LoginCredentials;
+import org.jclouds.logging.Logger;
+import org.jclouds.nodepool.Backend;
+import org.jclouds.scriptbuilder.domain.Statement;
+import org.jclouds.scriptbuilder.domain.Statements;
+
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.inject.Inject;
+
+/**
+ * Gets nodes given back by the frontend ready to be assigned again: runs the
+ * {@link org.jclouds.nodepool.config.NodePoolProperties#CLEANUP_SCRIPT} on them, if any, and checks
+ * they are still running in the backend.
+ * <p/>
+ * At most {@link org.jclouds.nodepool.config.NodePoolProperties#RECYCLE_CONCURRENCY} nodes are
+ * recycled at the same time, on the user executor, the others wait for their turn without holding
+ * one of its threads.
+ */
+@Singleton
+public class NodeRecycler {
+
+   @Resource
+   @Named(ComputeServiceConstants.COMPUTE_LOGGER)
+   protected Logger logger = Logger.NULL;
+
+   @Inject(optional = true)
+   @Named(CLEANUP_SCRIPT)
+   protected String cleanupScript;
+
+   @Inject(optional = true)
+   @Named(CLEANUP_SCRIPT)
+   protected Statement cleanupStatement;
+
+   private final Supplier<ComputeService> backendComputeService;
+   private final ListeningExecutorService userExecutor;
+   private final int concurrency;
+   // guarded by this
+   private final Queue<ListenableFutureTask<Boolean>> pending = new ArrayDeque<ListenableFutureTask<Boolean>>();
+   private int running;
+
+   @Inject
+   public NodeRecycler(@Backend Supplier<ComputeService> backendComputeService,
+            @Named(PROPERTY_USER_THREADS) ListeningExecutorService userExecutor,
+            @Named(RECYCLE_CONCURRENCY) int concurrency) {
+      this.backendComputeService = checkNotNull(backendComputeService, "backendComputeService");
+      this.userExecutor = checkNotNull(userExecutor, "userExecutor");
+      this.concurrency = concurrency;
+   }
+
+   /**
+    * Recycles a node in the background.
+    *
+    * @param credentials
+    *           the pool's admin credentials, used to run the cleanup
+    * @return true if the node can be made idle again, false if it has to be replaced
+    */
+   public ListenableFuture<Boolean> recycle(final String id, final LoginCredentials credentials) {
+      ListenableFutureTask<Boolean> task = ListenableFutureTask.create(new Callable<Boolean>() {
+         @Override
+         public Boolean call() {
+            try {
+               return cleanAndCheck(id, credentials);
+            } catch (RuntimeException e) {
+               logger.warn(e, "could not recycle node %s", id);
+               return false;
+            }
+         }
+      });
+      synchronized (this) {
+         pending.add(task);
+         startPending();
+      }
+      return task;
+   }
+
+   private synchronized void startPending() {
+      while (running < concurrency && !pending.isEmpty()) {
+         final ListenableFutureTask<Boolean> task = pending.remove();
+         running++;
+         try {
+            userExecutor.execute(new Runnable() {
+               @Override
+               public void run() {
+                  try {
+                     task.run();
+                  } finally {
+                     finished();
+                  }
+               }
+            });
+         } catch (RejectedExecutionException e) {
+            running--;
+            logger.warn(e, "could not schedule the recycling of a node");
+            task.cancel(false);
+         }
+      }
+   }
+
+   private synchronized void finished() {
+      running--;
+      startPending();
+   }
+
+   private boolean cleanAndCheck(String id, LoginCredentials credentials) {
+      Statement cleanup = cleanupStatement != null ? cleanupStatement
+               : cleanupScript != null ? Statements.exec(cleanupScript) : null;
+      if (cleanup != null) {
+         logger.debug(">> cleaning node %s", id);
+         ExecResponse response = backendComputeService.get().runScriptOnNode(id, cleanup,
+                  overrideLoginCredentials(credentials).nameTask("nodepool-cleanup"));
+         if (response.getExitStatus() != 0) {
+            logger.warn("cleanup of node %s exited with %s: %s", id, response.getExitStatus(), response.getError());
+            return false;
+         }
+      }
+      NodeMetadata node = backendComputeService.get().getNodeMetadata(id);
+      if (node == null || node.getStatus() != Status.RUNNING) {
+         logger.warn("node %s is not running after cleanup: %s", id, node == null ? null : node.getStatus());
+         return false;
+      }
+      logger.debug("<< node %s recycled", id);
+      return true;
+   }
+
+   /**
+    * Cancels the nodes waiting for their turn; the user executor is not ours to shut down.
+    */
+   @PreDestroy
+   public synchronized void shutdown() {
+      for (ListenableFutureTask<Boolean> task : pending) {
+         task.cancel(false);
+      }
+      pending.clear();
+   }
+
+}
@@ -0,0 +1,205 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.nodepool;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.easymock.IAnswer;
+import org.jclouds.compute.ComputeService;
+import org.jclouds.compute.ComputeServiceAdapter.NodeWithInitialCredentials;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadata.Status;
+import org.jclouds.compute.domain.NodeMetadataBuilder;
+import org.jclouds.compute.domain.Template;
+import org.jclouds.compute.options.TemplateOptions;
+import org.jclouds.nodepool.internal.EagerNodePoolComputeServiceAdapter;
+import org.jclouds.nodepool.internal.NodeMetadataStore;
+import org.jclouds.nodepool.internal.NodePoolState;
+import org.jclouds.nodepool.internal.NodeRecycler;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Tests how the EagerNodePoolComputeServiceAdapter hands out nodes when there are no idle ones
+ */
+@Test(groups = "unit", singleThreaded = true, testName = "EagerNodePoolComputeServiceAdapterTest")
+public class EagerNodePoolComputeServiceAdapterTest {
+
+   private ExecutorService callers;
+   private ExecutorService recycleExecutor;
+   private TestAdapter adapter;
+
+   @BeforeMethod
+   public void createExecutors() {
+      callers = Executors.newCachedThreadPool();
+      recycleExecutor = Executors.newCachedThreadPool();
+   }
+
+   @AfterMethod(alwaysRun = true)
+   public void shutdown() {
+      if (adapter != null) {
+         adapter.stop();
+      }
+      callers.shutdownNow();
+      recycleExecutor.shutdownNow();
+   }
+
+   public void testConcurrentCallersShareOneReplenishment() throws Exception {
+      int callerCount = 5;
+      final CountDownLatch createNodes = new CountDownLatch(1);
+      adapter = newAdapter(10, createNodes);
+
+      List<Future<NodeWithInitialCredentials>> assigned = Lists.newArrayList();
+      for (int i = 0; i < callerCount; i++) {
+         assigned.add(callers.submit(createNode()));
+      }
+      // lets all the callers find no idle node before the first nodes are created
+      Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+      createNodes.countDown();
+
+      Set<String> ids = Sets.newHashSet();
+      for (Future<NodeWithInitialCredentials> node : assigned) {
+         ids.add(node.get(10, TimeUnit.SECONDS).getNode().getId());
+      }
+      assertEquals(ids.size(), callerCount);
+      assertEquals(adapter.created.get(), callerCount);
+      assertTrue(adapter.provisionCalls.get() < callerCount, adapter.provisionCalls.get() + " backend calls");
+      assertEquals(adapter.idleNodes(), 0);
+      assertEquals(adapter.usedNodes(), callerCount);
+   }
+
+   public void testCallerFailsWhenThePoolIsAtItsMaximumSize() throws Exception {
+      adapter = newAdapter(1, new CountDownLatch(0));
+      createNode().call();
+
+      try {
+         createNode().call();
+         fail("expected the maximum pool size to be reached");
+      } catch (IllegalStateException e) {
+         assertEquals(e.getMessage(), "maximum pool size reached (1)");
+      }
+      assertEquals(adapter.created.get(), 1);
+   }
+
+   public void testCallerFailsWhenReplenishingFailsAndTheNextOneStartsAnew() throws Exception {
+      adapter = newAdapter(10, new CountDownLatch(0));
+      adapter.failures.set(1);
+
+      try {
+         callers.submit(createNode()).get(10, TimeUnit.SECONDS);
+         fail("expected the replenishment to fail");
+      } catch (ExecutionException e) {
+         assertEquals(e.getCause().getMessage(), "backend unavailable");
+      }
+
+      NodeWithInitialCredentials node = callers.submit(createNode()).get(10, TimeUnit.SECONDS);
+      assertEquals(node.getNode().getId(), "node0");
+      assertEquals(adapter.provisionCalls.get(), 2);
+   }
+
+   private Callable<NodeWithInitialCredentials> createNode() {
+      final Template template = createNiceMock(Template.class);
+      // a login user is given, so the pool's admin credentials are not needed
+      expect(template.getOptions()).andReturn(TemplateOptions.Builder.overrideLoginUser("user")).anyTimes();
+      replay(template);
+      return new Callable<NodeWithInitialCredentials>() {
+         @Override
+         public NodeWithInitialCredentials call() {
+            return adapter.createNodeWithGroupEncodedIntoName("frontend", "frontend-node", template);
+         }
+      };
+   }
+
+   private TestAdapter newAdapter(int maxSize, CountDownLatch createNodes) {
+      NodeMetadataStore store = createMock(NodeMetadataStore.class);
+      expect(store.store(anyObject(NodeMetadata.class), anyObject(TemplateOptions.class), anyObject(String.class)))
+               .andAnswer(new IAnswer<NodeMetadata>() {
+                  @Override
+                  public NodeMetadata answer() throws Throwable {
+                     return (NodeMetadata) getCurrentArguments()[0];
+                  }
+               }).anyTimes();
+      replay(store);
+      Supplier<ComputeService> backend = Suppliers.ofInstance(createMock(ComputeService.class));
+      return new TestAdapter(backend, maxSize, store, new NodeRecycler(backend,
+               MoreExecutors.listeningDecorator(recycleExecutor), 1), createNodes);
+   }
+
+   /**
+    * Adds nodes to the pool without a backend, once {@code createNodes} is opened.
+    */
+   private static class TestAdapter extends EagerNodePoolComputeServiceAdapter {
+      private final CountDownLatch createNodes;
+      private final AtomicInteger created = new AtomicInteger();
+      private final AtomicInteger provisionCalls = new AtomicInteger();
+      private final AtomicInteger failures = new AtomicInteger();
+
+      private TestAdapter(Supplier<ComputeService> backend, int maxSize, NodeMetadataStore store,
+               NodeRecycler recycler, CountDownLatch createNodes) {
+         super(backend, Suppliers.<Template> ofInstance(null), "pool", maxSize, 0, false, store,
+                  "adminUsername=pooluser,adminPassword=poolpass", null, new NodePoolState(),
+                  createMock(ScheduledExecutorService.class), 0, 0, 0, new NodePoolMetrics(), recycler);
+         this.createNodes = createNodes;
+      }
+
+      @Override
+      protected Set<? extends NodeMetadata> addToPool(int number) {
+         provisionCalls.incrementAndGet();
+         Uninterruptibles.awaitUninterruptibly(createNodes);
+         if (failures.getAndDecrement() > 0) {
+            throw new IllegalStateException("backend unavailable");
+         }
+         ImmutableSet.Builder<NodeMetadata> nodes = ImmutableSet.builder();
+         for (int i = 0; i < number; i++) {
+            nodes.add(new NodeMetadataBuilder().id("node" + created.getAndIncrement()).status(Status.RUNNING)
+                     .build());
+         }
+         return nodes.build();
+      }
+   }
+}
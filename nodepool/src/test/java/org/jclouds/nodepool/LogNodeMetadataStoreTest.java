@@ -0,0 +1,125 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.nodepool;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadata.Status;
+import org.jclouds.compute.domain.NodeMetadataBuilder;
+import org.jclouds.compute.options.TemplateOptions;
+import org.jclouds.json.Json;
+import org.jclouds.json.config.GsonModule;
+import org.jclouds.nodepool.internal.LogNodeMetadataStore;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.inject.Guice;
+
+/**
+ * Tests the LogNodeMetadataStore
+ */
+@Test(groups = "unit", singleThreaded = true, testName = "LogNodeMetadataStoreTest")
+public class LogNodeMetadataStoreTest {
+
+   private final Json json = Guice.createInjector(new GsonModule()).getInstance(Json.class);
+   private final NodeMetadata nodeMeta1 = new NodeMetadataBuilder().id("testmeta1").status(Status.ERROR).build();
+   private final NodeMetadata nodeMeta2 = new NodeMetadataBuilder().id("testmeta2").status(Status.ERROR).build();
+   private final TemplateOptions templateOptions = new TemplateOptions().overrideLoginUser("testuser")
+            .overrideLoginPassword("testpass").userMetadata("testmetakey", "testmetavalue")
+            .tags(ImmutableSet.of("tag1"));
+
+   private File basedir;
+
+   @BeforeMethod
+   public void setUp() {
+      basedir = Files.createTempDir();
+   }
+
+   public void testMappingsAreReplayedOnStart() {
+      LogNodeMetadataStore store = newStore();
+      store.store(nodeMeta1, templateOptions, "testgroup");
+      store.store(nodeMeta2, templateOptions, "testgroup");
+      store.deleteMapping(nodeMeta2.getId());
+      store.close();
+
+      LogNodeMetadataStore reopened = newStore();
+      NodeMetadata loaded = reopened.load(nodeMeta1);
+      assertEquals(loaded.getGroup(), "testgroup");
+      assertEquals(loaded.getTags(), ImmutableSet.of("tag1"));
+      assertEquals(loaded.getUserMetadata().get("testmetakey"), "testmetavalue");
+      assertEquals(loaded.getCredentials().getUser(), "testuser");
+      assertEquals(loaded.getCredentials().getPassword(), "testpass");
+      assertNull(reopened.load(nodeMeta2));
+   }
+
+   public void testLoadAllOnlyReturnsMappedNodes() {
+      LogNodeMetadataStore store = newStore();
+      store.store(nodeMeta1, templateOptions, "testgroup");
+
+      Set<NodeMetadata> loaded = store.loadAll(ImmutableSet.of(nodeMeta1, nodeMeta2));
+      assertEquals(loaded.size(), 1);
+      assertEquals(loaded.iterator().next().getId(), nodeMeta1.getId());
+   }
+
+   public void testIncompleteLastRecordIsDropped() throws IOException {
+      LogNodeMetadataStore store = newStore();
+      store.store(nodeMeta1, templateOptions, "testgroup");
+      store.close();
+      Files.append("{\"id\":\"testmeta2\",\"meta", log(), UTF_8);
+
+      LogNodeMetadataStore reopened = newStore();
+      assertNull(reopened.load(nodeMeta2));
+      reopened.store(nodeMeta2, templateOptions, "testgroup");
+      reopened.close();
+
+      assertEquals(newStore().loadAll(ImmutableSet.of(nodeMeta1, nodeMeta2)).size(), 2);
+   }
+
+   public void testLogIsCompacted() throws IOException {
+      LogNodeMetadataStore store = newStore();
+      store.store(nodeMeta2, templateOptions, "testgroup");
+      // the thousandth record triggers the compaction
+      for (int i = 0; i < 999; i++) {
+         store.store(nodeMeta1, templateOptions, "group" + i);
+      }
+
+      assertEquals(Files.readLines(log(), UTF_8).size(), 2);
+      assertEquals(store.load(nodeMeta1).getGroup(), "group998");
+      store.close();
+      assertEquals(newStore().load(nodeMeta1).getGroup(), "group998");
+   }
+
+   private LogNodeMetadataStore newStore() {
+      return new LogNodeMetadataStore(basedir.getPath(), "nodes", json, MoreExecutors.sameThreadExecutor());
+   }
+
+   private File log() {
+      return new File(basedir, "nodes.log");
+   }
+}
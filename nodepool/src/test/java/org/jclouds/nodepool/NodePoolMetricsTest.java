@@ -0,0 +1,83 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.nodepool;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.testng.Assert.assertEquals;
+
+import java.util.List;
+
+import org.jclouds.nodepool.NodePoolMetrics.IdleDepth;
+import org.jclouds.nodepool.NodePoolMetrics.LatencyHistogram;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the NodePoolMetrics
+ */
+@Test(groups = "unit", testName = "NodePoolMetricsTest")
+public class NodePoolMetricsTest {
+
+   public void testCounters() {
+      NodePoolMetrics metrics = new NodePoolMetrics();
+      metrics.assigned(MILLISECONDS.toNanos(1), true);
+      metrics.assigned(MILLISECONDS.toNanos(1000), false);
+      metrics.provisioned(3, MILLISECONDS.toNanos(1000), true);
+      metrics.provisioned(1, MILLISECONDS.toNanos(1000), false);
+      metrics.released(MILLISECONDS.toNanos(5));
+      metrics.backendFailed();
+
+      assertEquals(metrics.getAssignments(), 2);
+      assertEquals(metrics.getIdleMisses(), 1);
+      assertEquals(metrics.getProvisionedNodes(), 4);
+      assertEquals(metrics.getReplenishments(), 1);
+      assertEquals(metrics.getReleases(), 1);
+      assertEquals(metrics.getBackendFailures(), 1);
+      assertEquals(metrics.getAssignLatency().getCount(), 2);
+      assertEquals(metrics.getProvisionLatency().getCount(), 2);
+      assertEquals(metrics.getDestroyLatency().getCount(), 1);
+   }
+
+   public void testPercentilesAreBucketUpperBounds() {
+      LatencyHistogram histogram = new NodePoolMetrics().getAssignLatency();
+      for (int i = 0; i < 99; i++) {
+         histogram.record(MICROSECONDS.toNanos(100));
+      }
+      histogram.record(MILLISECONDS.toNanos(100));
+
+      assertEquals(histogram.getPercentile(50, MICROSECONDS), 128);
+      assertEquals(histogram.getPercentile(99, MICROSECONDS), 128);
+      assertEquals(histogram.getPercentile(100, MICROSECONDS), 131072);
+      assertEquals(histogram.getMax(MILLISECONDS), 100);
+      assertEquals(histogram.getMean(MICROSECONDS), 1099);
+   }
+
+   public void testOnlyTheLastIdleDepthsAreKept() {
+      NodePoolMetrics metrics = new NodePoolMetrics();
+      for (int i = 0; i < NodePoolMetrics.IDLE_DEPTH_SAMPLES + 10; i++) {
+         metrics.idleDepth(i);
+      }
+
+      List<IdleDepth> depths = metrics.getIdleDepths();
+      assertEquals(depths.size(), NodePoolMetrics.IDLE_DEPTH_SAMPLES);
+      assertEquals(depths.get(0).getIdleNodes(), 10);
+      assertEquals(depths.get(depths.size() - 1).getIdleNodes(), NodePoolMetrics.IDLE_DEPTH_SAMPLES + 9);
+   }
+
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.nodepool;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadata.Status;
+import org.jclouds.compute.domain.NodeMetadataBuilder;
+import org.jclouds.nodepool.internal.NodeMetadataStore;
+import org.jclouds.nodepool.internal.NodePoolState;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Tests the NodePoolState
+ */
+@Test(groups = "unit", testName = "NodePoolStateTest")
+public class NodePoolStateTest {
+
+   private final NodeMetadata node1 = new NodeMetadataBuilder().id("node1").status(Status.RUNNING).build();
+   private final NodeMetadata node2 = new NodeMetadataBuilder().id("node2").status(Status.RUNNING).build();
+
+   public void testReconcileClassifiesNewNodesByTheirMapping() {
+      NodeMetadataStore store = createMock(NodeMetadataStore.class);
+      expect(store.loadAll(ImmutableSet.of(node1, node2))).andReturn(ImmutableSet.of(node1));
+      replay(store);
+
+      NodePoolState state = new NodePoolState();
+      state.reconcile(state.knownIds(), ImmutableSet.of(node1, node2), store);
+      verify(store);
+
+      assertEquals(state.size(), 2);
+      assertEquals(state.assignedCount(), 1);
+      assertEquals(state.idleCount(), 1);
+      assertEquals(state.takeIdle(), node2);
+      assertNull(state.takeIdle());
+   }
+
+   public void testReconcileDropsNodesGoneFromTheBackend() {
+      NodeMetadataStore store = createMock(NodeMetadataStore.class);
+      replay(store);
+
+      NodePoolState state = new NodePoolState();
+      state.addIdle(ImmutableSet.of(node1, node2));
+      state.reconcile(state.knownIds(), ImmutableSet.of(node2), store);
+      verify(store);
+
+      assertEquals(state.knownIds(), ImmutableSet.of("node2"));
+      assertEquals(state.takeIdle(), node2);
+   }
+
+   public void testReleasedNodesCanBeTakenAgain() {
+      NodePoolState state = new NodePoolState();
+      state.addIdle(ImmutableSet.of(node1));
+      assertEquals(state.takeIdle(), node1);
+      assertNull(state.takeIdle());
+
+      state.release("node1");
+      assertEquals(state.idleCount(), 1);
+      assertEquals(state.takeIdle(), node1);
+      assertEquals(state.assignedCount(), 1);
+   }
+
+   public void testBatchGrowthIsTrimmedToMaxSize() {
+      NodePoolState state = new NodePoolState();
+      state.addIdle(ImmutableSet.of(node1));
+      assertEquals(state.beginGrowth(5, 4), 3);
+      assertEquals(state.beginGrowth(5, 4), 0);
+      state.endGrowth(3);
+      assertEquals(state.beginGrowth(5, -1), 5);
+   }
+
+   public void testEachIdleNodeIsTakenOnce() throws Exception {
+      int nodes = 1000;
+      final NodePoolState state = new NodePoolState();
+      Set<NodeMetadata> idle = Sets.newHashSet();
+      for (int i = 0; i < nodes; i++) {
+         idle.add(new NodeMetadataBuilder().id("node" + i).status(Status.RUNNING).build());
+      }
+      state.addIdle(idle);
+
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      try {
+         List<Future<NodeMetadata>> takes = Lists.newArrayList();
+         for (int i = 0; i < nodes + 100; i++) {
+            takes.add(executor.submit(new Callable<NodeMetadata>() {
+               @Override
+               public NodeMetadata call() {
+                  return state.takeIdle();
+               }
+            }));
+         }
+         Set<String> taken = Sets.newHashSet();
+         for (Future<NodeMetadata> take : takes) {
+            NodeMetadata node = take.get();
+            if (node != null) {
+               assertTrue(taken.add(node.getId()), node.getId() + " was taken twice");
+            }
+         }
+         assertEquals(taken.size(), nodes);
+         assertEquals(state.idleCount(), 0);
+         assertEquals(state.assignedCount(), nodes);
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.nodepool;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import org.easymock.IAnswer;
+import org.jclouds.compute.ComputeService;
+import org.jclouds.compute.domain.ExecResponse;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.NodeMetadata.Status;
+import org.jclouds.compute.domain.NodeMetadataBuilder;
+import org.jclouds.compute.options.RunScriptOptions;
+import org.jclouds.domain.LoginCredentials;
+import org.jclouds.nodepool.internal.NodeRecycler;
+import org.jclouds.scriptbuilder.domain.Statement;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Suppliers;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Tests the NodeRecycler
+ */
+@Test(groups = "unit", testName = "NodeRecyclerTest")
+public class NodeRecyclerTest {
+
+   private final LoginCredentials credentials = LoginCredentials.builder().user("pooluser").password("poolpass")
+            .build();
+
+   private ListeningExecutorService userExecutor;
+
+   @BeforeMethod
+   public void createUserExecutor() {
+      userExecutor = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool());
+   }
+
+   @AfterMethod(alwaysRun = true)
+   public void shutdownUserExecutor() {
+      userExecutor.shutdownNow();
+   }
+
+   public void testNodeIsRecycledWhenCleanupSucceeds() throws Exception {
+      ComputeService compute = createMock(ComputeService.class);
+      expect(compute.runScriptOnNode(eq("node1"), anyObject(Statement.class), anyObject(RunScriptOptions.class)))
+               .andReturn(new ExecResponse("", "", 0));
+      expect(compute.getNodeMetadata("node1")).andReturn(node("node1", Status.RUNNING));
+      replay(compute);
+
+      assertTrue(recycler(compute, "rm -rf /tmp/*").recycle("node1", credentials).get());
+      verify(compute);
+   }
+
+   public void testNodeIsReplacedWhenCleanupFails() throws Exception {
+      ComputeService compute = createMock(ComputeService.class);
+      expect(compute.runScriptOnNode(eq("node1"), anyObject(Statement.class), anyObject(RunScriptOptions.class)))
+               .andReturn(new ExecResponse("", "disk full", 1));
+      replay(compute);
+
+      assertFalse(recycler(compute, "rm -rf /tmp/*").recycle("node1", credentials).get());
+      verify(compute);
+   }
+
+   public void testNodeIsReplacedWhenNotRunning() throws Exception {
+      ComputeService compute = createMock(ComputeService.class);
+      expect(compute.getNodeMetadata("node1")).andReturn(node("node1", Status.ERROR));
+      replay(compute);
+
+      assertFalse(recycler(compute, null).recycle("node1", credentials).get());
+      verify(compute);
+   }
+
+   public void testNodesWaitForTheirTurnWhenAllRecycleThreadsAreBusy() throws Exception {
+      final CountDownLatch release = new CountDownLatch(1);
+      ComputeService compute = createMock(ComputeService.class);
+      compute.getNodeMetadata("node1");
+      expectLastCall().andAnswer(new IAnswer<NodeMetadata>() {
+         @Override
+         public NodeMetadata answer() throws Throwable {
+            release.await();
+            return node("node1", Status.RUNNING);
+         }
+      });
+      expect(compute.getNodeMetadata("node2")).andReturn(node("node2", Status.RUNNING));
+      replay(compute);
+
+      NodeRecycler recycler = recycler(compute, null);
+      ListenableFuture<Boolean> first = recycler.recycle("node1", credentials);
+      ListenableFuture<Boolean> second = recycler.recycle("node2", credentials);
+      assertFalse(second.isDone());
+
+      release.countDown();
+      assertTrue(first.get());
+      assertTrue(second.get());
+      verify(compute);
+   }
+
+   private NodeRecycler recycler(ComputeService compute, final String cleanupScript) {
+      return new NodeRecycler(Suppliers.ofInstance(compute), userExecutor, 1) {
+         {
+            this.cleanupScript = cleanupScript;
+         }
+      };
+   }
+
+   private static NodeMetadata node(String id, Status status) {
+      return new NodeMetadataBuilder().id(id).status(status).build();
+   }
+}
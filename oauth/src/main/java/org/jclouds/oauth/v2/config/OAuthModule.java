@@ -20,12 +20,8 @@ package org.jclouds.oauth.v2.config;
 
 import com.google.common.base.Function;
 import com.google.common.base.Supplier;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.AbstractModule;
-import com.google.inject.Provides;
 import com.google.inject.TypeLiteral;
 import org.jclouds.oauth.v2.domain.ClaimSet;
 import org.jclouds.oauth.v2.domain.Header;
@@ -36,17 +32,13 @@ import org.jclouds.oauth.v2.functions.BuildTokenRequest;
 import org.jclouds.oauth.v2.functions.FetchToken;
 import org.jclouds.oauth.v2.functions.OAuthCredentialsSupplier;
 import org.jclouds.oauth.v2.functions.SignOrProduceMacForToken;
+import org.jclouds.oauth.v2.functions.TokenRefresher;
 import org.jclouds.oauth.v2.json.ClaimSetTypeAdapter;
 import org.jclouds.oauth.v2.json.HeaderTypeAdapter;
 import org.jclouds.rest.internal.GeneratedHttpRequest;
 
-import javax.inject.Named;
-import javax.inject.Singleton;
 import java.lang.reflect.Type;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
-
-import static org.jclouds.Constants.PROPERTY_SESSION_INTERVAL;
 
 /**
  * Base OAuth module
@@ -65,23 +57,7 @@ public class OAuthModule extends AbstractModule {
       bind(new TypeLiteral<Supplier<OAuthCredentials>>() {}).to(OAuthCredentialsSupplier.class);
       bind(new TypeLiteral<Function<GeneratedHttpRequest, TokenRequest>>() {}).to(BuildTokenRequest.class);
       bind(new TypeLiteral<Function<TokenRequest, Token>>() {}).to(FetchToken.class);
-   }
-
-   /**
-    * Provides a cache for tokens. Cache is time based and expires after 59 minutes (the maximum time a token is
-    * valid is 60 minutes)
-    */
-   @Provides
-   @Singleton
-   public LoadingCache<TokenRequest, Token> provideAccessCache(Function<TokenRequest, Token> getAccess,
-                                                               @Named(PROPERTY_SESSION_INTERVAL) long
-                                                                       sessionIntervalInSeconds) {
-      // since the session interval is also the token expiration time requested to the server make the token expire a
-      // bit before the deadline to make sure there aren't session expiration exceptions
-      sessionIntervalInSeconds = sessionIntervalInSeconds > 30 ? sessionIntervalInSeconds - 30 :
-              sessionIntervalInSeconds;
-      return CacheBuilder.newBuilder().expireAfterWrite(sessionIntervalInSeconds, TimeUnit.MINUTES).build(CacheLoader
-              .from(getAccess));
+      bind(TokenRefresher.class).asEagerSingleton();
    }
 
 }
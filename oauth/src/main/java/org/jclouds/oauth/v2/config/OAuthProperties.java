@@ -45,4 +45,17 @@ public class OAuthProperties {
     * Optional list of comma-separated scopes to use when no OAuthScopes annotation is present.
     */
    public static final String SCOPES = "jclouds.oauth.scopes";
+
+   /**
+    * Whether tokens for all the scopes declared with {@link OAuthScopes} on the api are fetched when the context is
+    * created and renewed in the background before they expire, so requests never wait on the token endpoint.
+    * Defaults to false.
+    */
+   public static final String REFRESH_AHEAD = "jclouds.oauth.refresh-ahead";
+
+   /**
+    * How long, in seconds, before a token expires it is renewed when {@link #REFRESH_AHEAD} is enabled. Defaults to
+    * 300 seconds.
+    */
+   public static final String REFRESH_AHEAD_MARGIN = "jclouds.oauth.refresh-ahead-margin";
 }
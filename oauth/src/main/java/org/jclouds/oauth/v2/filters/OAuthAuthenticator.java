@@ -19,12 +19,12 @@
 package org.jclouds.oauth.v2.filters;
 
 import com.google.common.base.Function;
-import com.google.common.cache.LoadingCache;
 import org.jclouds.http.HttpException;
 import org.jclouds.http.HttpRequest;
 import org.jclouds.http.HttpRequestFilter;
 import org.jclouds.oauth.v2.domain.Token;
 import org.jclouds.oauth.v2.domain.TokenRequest;
+import org.jclouds.oauth.v2.functions.TokenManager;
 import org.jclouds.rest.internal.GeneratedHttpRequest;
 
 import javax.inject.Inject;
@@ -46,8 +46,7 @@ public class OAuthAuthenticator implements HttpRequestFilter {
    private Function<TokenRequest, Token> tokenFetcher;
 
    @Inject
-   OAuthAuthenticator(Function<GeneratedHttpRequest, TokenRequest> tokenRequestBuilder, LoadingCache<TokenRequest,
-           Token> tokenFetcher) {
+   OAuthAuthenticator(Function<GeneratedHttpRequest, TokenRequest> tokenRequestBuilder, TokenManager tokenFetcher) {
       this.tokenRequestBuilder = tokenRequestBuilder;
       this.tokenFetcher = tokenFetcher;
    }
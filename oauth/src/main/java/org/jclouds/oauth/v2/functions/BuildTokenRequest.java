@@ -91,6 +91,13 @@ public class BuildTokenRequest implements Function<GeneratedHttpRequest, TokenRe
 
    @Override
    public TokenRequest apply(GeneratedHttpRequest request) {
+      return buildTokenRequest(getOAuthScopes(request));
+   }
+
+   /**
+    * Builds a token request for the given comma-separated scopes, valid from now on.
+    */
+   public TokenRequest buildTokenRequest(String scopes) {
       long now = TimeUnit.SECONDS.convert(ticker.read(), TimeUnit.NANOSECONDS);
 
       // fetch the token
@@ -101,7 +108,7 @@ public class BuildTokenRequest implements Function<GeneratedHttpRequest, TokenRe
 
       ClaimSet claimSet = new ClaimSet.Builder(this.tokenRequestFormat.requiredClaims())
               .addClaim("iss", credentialsSupplier.get().identity)
-              .addClaim("scope", getOAuthScopes(request))
+              .addClaim("scope", scopes)
               .addClaim("aud", assertionTargetDescription)
               .emissionTime(now)
               .expirationTime(now + tokenDuration)
@@ -131,6 +138,20 @@ public class BuildTokenRequest implements Function<GeneratedHttpRequest, TokenRe
       }
 
       OAuthScopes scopes = methodScopes != null ? methodScopes : classScopes;
+      return toScopeClaim(scopes);
+   }
+
+   /**
+    * @return the globally set scopes, or null if the "oauth.scopes" property is not set.
+    */
+   public String getGlobalScopes() {
+      return globalScopes;
+   }
+
+   /**
+    * @return the value of the scope claim for the given annotation.
+    */
+   public static String toScopeClaim(OAuthScopes scopes) {
       return Joiner.on(",").join(scopes.value());
    }
 }
@@ -27,11 +27,14 @@ import javax.annotation.PostConstruct;
 import javax.crypto.Mac;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.Signature;
 import java.security.SignatureException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static com.google.common.base.Preconditions.checkState;
 import static java.lang.String.format;
@@ -41,7 +44,7 @@ import static org.jclouds.oauth.v2.config.OAuthProperties.SIGNATURE_OR_MAC_ALGOR
 
 /**
  * Function that signs/produces mac's for  OAuth tokens, provided a {@link Signature} or a {@link Mac} algorithm and
- * {@link PrivateKey}
+ * {@link PrivateKey}. Safe to use from multiple threads.
  *
  * @author David Alves
  */
@@ -83,41 +86,91 @@ public class SignOrProduceMacForToken implements Function<byte[], byte[]> {
       return signatureOrMacFunction.apply(input);
    }
 
-   private static class MessageAuthenticationCodeGenerator implements Function<byte[], byte[]> {
+   /**
+    * {@link Signature} and {@link Mac} instances are not thread-safe, so each call borrows an instance initialized with
+    * the key from a pool and returns it once done. The pool grows up to the number of threads signing concurrently.
+    */
+   private abstract static class PooledGenerator<T> implements Function<byte[], byte[]> {
 
-      private Mac mac;
+      private final Queue<T> pool = new ConcurrentLinkedQueue<T>();
+
+      protected abstract T newInstance() throws NoSuchAlgorithmException, InvalidKeyException;
+
+      protected abstract byte[] generate(T instance, byte[] input) throws SignatureException;
+
+      /**
+       * Creates and initializes the first instance eagerly, which also validates the algorithm and key.
+       */
+      protected void preload() throws NoSuchAlgorithmException, InvalidKeyException {
+         pool.offer(newInstance());
+      }
+
+      @Override
+      public byte[] apply(byte[] input) {
+         T instance = pool.poll();
+         try {
+            if (instance == null) {
+               instance = newInstance();
+            }
+            byte[] result = generate(instance, input);
+            // instances that failed are dropped, as their state is unknown
+            pool.offer(instance);
+            return result;
+         } catch (GeneralSecurityException e) {
+            throw Throwables.propagate(e);
+         }
+      }
+   }
+
+   private static class MessageAuthenticationCodeGenerator extends PooledGenerator<Mac> {
+
+      private final String macAlgorithm;
+      private final PrivateKey privateKey;
 
       private MessageAuthenticationCodeGenerator(String macAlgorithm, PrivateKey privateKey) throws
               NoSuchAlgorithmException, InvalidKeyException {
-         this.mac = Mac.getInstance(macAlgorithm);
-         this.mac.init(privateKey);
+         this.macAlgorithm = macAlgorithm;
+         this.privateKey = privateKey;
+         preload();
       }
 
       @Override
-      public byte[] apply(byte[] input) {
-         this.mac.update(input);
-         return this.mac.doFinal();
+      protected Mac newInstance() throws NoSuchAlgorithmException, InvalidKeyException {
+         Mac mac = Mac.getInstance(macAlgorithm);
+         mac.init(privateKey);
+         return mac;
+      }
+
+      @Override
+      protected byte[] generate(Mac mac, byte[] input) {
+         mac.update(input);
+         return mac.doFinal();
       }
    }
 
-   private static class SignatureGenerator implements Function<byte[], byte[]> {
+   private static class SignatureGenerator extends PooledGenerator<Signature> {
 
-      private Signature signature;
+      private final String signatureAlgorithm;
+      private final PrivateKey privateKey;
 
       private SignatureGenerator(String signatureAlgorithm, PrivateKey privateKey) throws NoSuchAlgorithmException,
               InvalidKeyException {
-         this.signature = Signature.getInstance(signatureAlgorithm);
-         this.signature.initSign(privateKey);
+         this.signatureAlgorithm = signatureAlgorithm;
+         this.privateKey = privateKey;
+         preload();
       }
 
       @Override
-      public byte[] apply(byte[] input) {
-         try {
-            signature.update(input);
-            return signature.sign();
-         } catch (SignatureException e) {
-            throw Throwables.propagate(e);
-         }
+      protected Signature newInstance() throws NoSuchAlgorithmException, InvalidKeyException {
+         Signature signature = Signature.getInstance(signatureAlgorithm);
+         signature.initSign(privateKey);
+         return signature;
+      }
+
+      @Override
+      protected byte[] generate(Signature signature, byte[] input) throws SignatureException {
+         signature.update(input);
+         return signature.sign();
       }
    }
 }
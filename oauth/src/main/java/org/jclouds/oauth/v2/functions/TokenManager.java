@@ -0,0 +1,265 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.oauth.v2.functions;
+
+import static com.google.common.base.Objects.equal;
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.Constants.PROPERTY_SESSION_INTERVAL;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.oauth.v2.domain.Header;
+import org.jclouds.oauth.v2.domain.Token;
+import org.jclouds.oauth.v2.domain.TokenRequest;
+
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+
+/**
+ * Caches access tokens by the stable part of a {@link TokenRequest}, i.e., the header and the claims (issuer, scopes,
+ * audience and any additional claims), ignoring the emission and expiration times that change on every request.
+ * <p/>
+ * Tokens are refreshed a margin before they expire and concurrent refreshes of the same token are coalesced into a
+ * single call to the token endpoint.
+ */
+@Singleton
+public class TokenManager implements Function<TokenRequest, Token> {
+
+   /**
+    * How long, in seconds, before a token expires it is considered stale and gets refreshed.
+    */
+   public static final long DEFAULT_REFRESH_MARGIN = 30;
+
+   private final Function<TokenRequest, Token> tokenFetcher;
+   private final long tokenDuration;
+   private final ConcurrentMap<Key, CachedToken> tokens = Maps.newConcurrentMap();
+   private final ConcurrentMap<Key, FutureTask<CachedToken>> inFlight = Maps.newConcurrentMap();
+   private final AtomicLong hitCount = new AtomicLong();
+   private final AtomicLong missCount = new AtomicLong();
+   private final AtomicLong refreshCount = new AtomicLong();
+   private final AtomicLong failureCount = new AtomicLong();
+   private final AtomicLong totalRefreshTime = new AtomicLong();
+   private final AtomicLong lastRefreshTime = new AtomicLong();
+
+   @Inject(optional = true)
+   public Ticker ticker = Ticker.systemTicker();
+
+   @Inject
+   public TokenManager(Function<TokenRequest, Token> tokenFetcher,
+                       @Named(PROPERTY_SESSION_INTERVAL) long tokenDuration) {
+      this.tokenFetcher = checkNotNull(tokenFetcher, "tokenFetcher");
+      this.tokenDuration = tokenDuration;
+   }
+
+   @Override
+   public Token apply(TokenRequest request) {
+      Key key = new Key(request);
+      CachedToken cached = tokens.get(key);
+      if (cached != null && !cached.isStale(ticker.read())) {
+         hitCount.incrementAndGet();
+         return cached.token;
+      }
+      if (cached == null) {
+         missCount.incrementAndGet();
+      }
+      return fetch(key, request).token;
+   }
+
+   /**
+    * Fetches a new token for the given request even if the cached one is still fresh. Requests for the same token
+    * keep being served the cached one, if not stale, until the new one arrives.
+    */
+   public Token refresh(TokenRequest request) {
+      return fetch(new Key(request), request).token;
+   }
+
+   /**
+    * Fetches a new token for the given key, or waits for the refresh already in progress for it.
+    */
+   private CachedToken fetch(final Key key, final TokenRequest request) {
+      FutureTask<CachedToken> task = new FutureTask<CachedToken>(new Callable<CachedToken>() {
+         @Override
+         public CachedToken call() {
+            long fetchedAt = ticker.read();
+            Token token;
+            try {
+               token = tokenFetcher.apply(request);
+            } finally {
+               lastRefreshTime.set(ticker.read() - fetchedAt);
+               totalRefreshTime.addAndGet(lastRefreshTime.get());
+            }
+            CachedToken cached = new CachedToken(token, fetchedAt, lifetimeOf(token));
+            // publish before the in-flight task is removed so no thread starts a second refresh in between
+            tokens.put(key, cached);
+            return cached;
+         }
+      });
+      FutureTask<CachedToken> existing = inFlight.putIfAbsent(key, task);
+      if (existing == null) {
+         refreshCount.incrementAndGet();
+         try {
+            task.run();
+         } finally {
+            inFlight.remove(key, task);
+         }
+         existing = task;
+      }
+      try {
+         return existing.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw Throwables.propagate(e);
+      } catch (ExecutionException e) {
+         if (existing == task) {
+            failureCount.incrementAndGet();
+         }
+         throw Throwables.propagate(e.getCause());
+      }
+   }
+
+   /**
+    * @return how long, in seconds, the given token is valid for since it was fetched.
+    */
+   long lifetimeOf(Token token) {
+      return token.getExpiresIn() > 0 ? token.getExpiresIn() : tokenDuration;
+   }
+
+   /**
+    * Drops all cached tokens, forcing the next request for each of them to go to the token endpoint.
+    */
+   public void invalidateAll() {
+      tokens.clear();
+   }
+
+   /**
+    * @return the number of requests served from a fresh cached token.
+    */
+   public long getHitCount() {
+      return hitCount.get();
+   }
+
+   /**
+    * @return the number of requests for which no token had been cached yet.
+    */
+   public long getMissCount() {
+      return missCount.get();
+   }
+
+   /**
+    * @return the number of calls made to the token endpoint, both for missing and for stale tokens.
+    */
+   public long getRefreshCount() {
+      return refreshCount.get();
+   }
+
+   /**
+    * @return the number of calls to the token endpoint that failed.
+    */
+   public long getFailureCount() {
+      return failureCount.get();
+   }
+
+   /**
+    * @return the total time, in nanoseconds, spent waiting on the token endpoint.
+    */
+   public long getTotalRefreshTime() {
+      return totalRefreshTime.get();
+   }
+
+   /**
+    * @return the time, in nanoseconds, the last call to the token endpoint took.
+    */
+   public long getLastRefreshTime() {
+      return lastRefreshTime.get();
+   }
+
+   /**
+    * @return the average time, in nanoseconds, a call to the token endpoint took.
+    */
+   public double getAverageRefreshTime() {
+      long count = refreshCount.get();
+      return count == 0 ? 0.0 : (double) totalRefreshTime.get() / count;
+   }
+
+   @Override
+   public String toString() {
+      return toStringHelper(this).add("tokens", tokens.size()).add("hitCount", hitCount)
+              .add("missCount", missCount).add("refreshCount", refreshCount)
+              .add("failureCount", failureCount).add("totalRefreshTime", totalRefreshTime).toString();
+   }
+
+   private static final class CachedToken {
+      private final Token token;
+      private final long refreshAt;
+
+      private CachedToken(Token token, long fetchedAt, long lifetimeInSeconds) {
+         this.token = token;
+         // refresh a margin before the deadline, but never use less than half of the token lifetime
+         long usableLifetime = Math.max(lifetimeInSeconds - DEFAULT_REFRESH_MARGIN, lifetimeInSeconds / 2);
+         this.refreshAt = fetchedAt + TimeUnit.SECONDS.toNanos(usableLifetime);
+      }
+
+      private boolean isStale(long now) {
+         return now - refreshAt >= 0;
+      }
+   }
+
+   /**
+    * The part of a token request that identifies the token: everything but the times.
+    */
+   private static final class Key {
+      private final Header header;
+      private final Map<String, String> claims;
+
+      private Key(TokenRequest request) {
+         this.header = request.getHeader();
+         this.claims = ImmutableMap.copyOf(request.getClaimSet());
+      }
+
+      @Override
+      public boolean equals(Object obj) {
+         if (this == obj)
+            return true;
+         if (!(obj instanceof Key))
+            return false;
+         Key other = (Key) obj;
+         return equal(header, other.header) && equal(claims, other.claims);
+      }
+
+      @Override
+      public int hashCode() {
+         return Objects.hashCode(header, claims);
+      }
+   }
+}
@@ -0,0 +1,186 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.oauth.v2.functions;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.Constants.PROPERTY_SCHEDULER_THREADS;
+import static org.jclouds.oauth.v2.config.OAuthProperties.REFRESH_AHEAD;
+import static org.jclouds.oauth.v2.config.OAuthProperties.REFRESH_AHEAD_MARGIN;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.apis.ApiMetadata;
+import org.jclouds.logging.Logger;
+import org.jclouds.oauth.v2.config.OAuthScopes;
+import org.jclouds.oauth.v2.domain.Token;
+import org.jclouds.providers.ProviderMetadata;
+import org.jclouds.rest.HttpApiMetadata;
+import org.jclouds.rest.annotations.Delegate;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+
+/**
+ * When {@link org.jclouds.oauth.v2.config.OAuthProperties#REFRESH_AHEAD} is enabled, fetches the tokens for all the
+ * scopes the api declares as soon as the context is created, and renews each of them in the background a margin
+ * before it expires. Requests keep being served the previous token until the new one arrives.
+ */
+@Singleton
+public class TokenRefresher {
+
+   /**
+    * How long, in seconds, to wait before retrying a refresh that failed.
+    */
+   public static final long RETRY_DELAY = 10;
+
+   @Resource
+   protected Logger logger = Logger.NULL;
+
+   private final TokenManager tokenManager;
+   private final BuildTokenRequest tokenRequestBuilder;
+   private final ScheduledExecutorService scheduler;
+   private final ProviderMetadata providerMetadata;
+   private final ConcurrentMap<String, ScheduledFuture<?>> refreshes = Maps.newConcurrentMap();
+   private volatile boolean closed;
+
+   @Inject(optional = true)
+   @Named(REFRESH_AHEAD)
+   protected boolean refreshAhead = false;
+
+   @Inject(optional = true)
+   @Named(REFRESH_AHEAD_MARGIN)
+   protected long refreshAheadMargin = 300;
+
+   @Inject
+   public TokenRefresher(TokenManager tokenManager, BuildTokenRequest tokenRequestBuilder,
+                         @Named(PROPERTY_SCHEDULER_THREADS) ScheduledExecutorService scheduler,
+                         ProviderMetadata providerMetadata) {
+      this.tokenManager = checkNotNull(tokenManager, "tokenManager");
+      this.tokenRequestBuilder = checkNotNull(tokenRequestBuilder, "tokenRequestBuilder");
+      this.scheduler = checkNotNull(scheduler, "scheduler");
+      this.providerMetadata = checkNotNull(providerMetadata, "providerMetadata");
+   }
+
+   /**
+    * Schedules the initial fetch of every token. Tokens are fetched in the background so context creation does not
+    * wait on the token endpoint.
+    */
+   @PostConstruct
+   public void start() {
+      if (!refreshAhead) {
+         return;
+      }
+      Set<String> scopes = Sets.newLinkedHashSet();
+      ApiMetadata apiMetadata = providerMetadata.getApiMetadata();
+      if (apiMetadata instanceof HttpApiMetadata) {
+         collectScopes(HttpApiMetadata.class.cast(apiMetadata).getApi(), scopes);
+      }
+      if (tokenRequestBuilder.getGlobalScopes() != null) {
+         scopes.add(tokenRequestBuilder.getGlobalScopes());
+      }
+      logger.debug(">> pre-fetching tokens for scopes %s", scopes);
+      for (String scope : scopes) {
+         schedule(scope, 0);
+      }
+   }
+
+   @PreDestroy
+   public void close() {
+      closed = true;
+      for (ScheduledFuture<?> refresh : refreshes.values()) {
+         refresh.cancel(false);
+      }
+      refreshes.clear();
+   }
+
+   /**
+    * @return the scopes currently being kept fresh.
+    */
+   public Set<String> getScopes() {
+      return ImmutableSet.copyOf(refreshes.keySet());
+   }
+
+   private void schedule(final String scope, long delayInSeconds) {
+      if (closed) {
+         return;
+      }
+      refreshes.put(scope, scheduler.schedule(new Runnable() {
+         @Override
+         public void run() {
+            refresh(scope);
+         }
+      }, delayInSeconds, TimeUnit.SECONDS));
+   }
+
+   private void refresh(String scope) {
+      if (closed) {
+         return;
+      }
+      try {
+         Token token = tokenManager.refresh(tokenRequestBuilder.buildTokenRequest(scope));
+         long lifetime = tokenManager.lifetimeOf(token);
+         long delay = Math.max(lifetime - refreshAheadMargin, lifetime / 2);
+         logger.debug("<< refreshed token for scopes %s, next refresh in %ss", scope, delay);
+         schedule(scope, delay);
+      } catch (RuntimeException e) {
+         logger.warn(e, "<< could not refresh token for scopes %s, retrying in %ss", scope, RETRY_DELAY);
+         schedule(scope, RETRY_DELAY);
+      }
+   }
+
+   /**
+    * Collects the scopes declared with {@link OAuthScopes} on the given api, its methods and the apis returned by its
+    * {@link Delegate} methods.
+    */
+   public static void collectScopes(Class<?> api, Set<String> scopes) {
+      collectScopes(api, scopes, Sets.<Class<?>>newHashSet());
+   }
+
+   private static void collectScopes(Class<?> api, Set<String> scopes, Set<Class<?>> visited) {
+      if (!visited.add(api)) {
+         return;
+      }
+      OAuthScopes classScopes = api.getAnnotation(OAuthScopes.class);
+      if (classScopes != null) {
+         scopes.add(BuildTokenRequest.toScopeClaim(classScopes));
+      }
+      for (Method method : api.getMethods()) {
+         OAuthScopes methodScopes = method.getAnnotation(OAuthScopes.class);
+         if (methodScopes != null) {
+            scopes.add(BuildTokenRequest.toScopeClaim(methodScopes));
+         }
+         if (method.isAnnotationPresent(Delegate.class)) {
+            collectScopes(method.getReturnType(), scopes, visited);
+         }
+      }
+   }
+}
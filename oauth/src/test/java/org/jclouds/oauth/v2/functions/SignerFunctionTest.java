@@ -28,9 +28,17 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.Lists;
+
 /**
  * Tests the SignOrProduceMacForToken
  *
@@ -62,4 +70,35 @@ public class SignerFunctionTest {
 
       assertEquals(base64Url().omitPadding().encode(payloadSignature), SHA256withRSA_PAYLOAD_SIGNATURE_RESULT);
    }
+
+   @DataProvider(name = "threads")
+   public Object[][] threads() {
+      return new Object[][] { { 1 }, { 4 }, { 16 } };
+   }
+
+   @Test(dataProvider = "threads")
+   public void testSignPayloadConcurrently(int threads) throws Exception {
+      final SignOrProduceMacForToken signer = new SignOrProduceMacForToken("RS256",
+              ofInstance(OAuthCredentialsFromPKTest
+                      .loadOAuthCredentials()));
+      signer.loadSignatureOrMacOrNone();
+
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+         List<Future<String>> signatures = Lists.newArrayList();
+         for (int i = 0; i < threads * 50; i++) {
+            signatures.add(executor.submit(new Callable<String>() {
+               @Override
+               public String call() {
+                  return base64Url().omitPadding().encode(signer.apply(PAYLOAD.getBytes(UTF_8)));
+               }
+            }));
+         }
+         for (Future<String> signature : signatures) {
+            assertEquals(signature.get(), SHA256withRSA_PAYLOAD_SIGNATURE_RESULT);
+         }
+      } finally {
+         executor.shutdownNow();
+      }
+   }
 }
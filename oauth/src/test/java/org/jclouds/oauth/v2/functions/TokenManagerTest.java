@@ -0,0 +1,182 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.oauth.v2.functions;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.oauth.v2.domain.ClaimSet;
+import org.jclouds.oauth.v2.domain.Header;
+import org.jclouds.oauth.v2.domain.Token;
+import org.jclouds.oauth.v2.domain.TokenRequest;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.base.Ticker;
+
+/**
+ * Tests the TokenManager
+ */
+@Test(groups = "unit", testName = "TokenManagerTest")
+public class TokenManagerTest {
+
+   private static final Header HEADER = Header.builder().signerAlgorithm("RS256").type("JWT").build();
+
+   public void testTokenIsReusedAcrossEmissionTimes() {
+      CountingFetcher fetcher = new CountingFetcher(3600);
+      TokenManager manager = new TokenManager(fetcher, 3600);
+      manager.ticker = new FakeTicker();
+
+      Token first = manager.apply(request("scope1", 1000));
+      Token second = manager.apply(request("scope1", 1001));
+
+      assertSame(second, first);
+      assertEquals(fetcher.calls.get(), 1);
+      assertEquals(manager.getMissCount(), 1);
+      assertEquals(manager.getHitCount(), 1);
+      assertEquals(manager.getRefreshCount(), 1);
+   }
+
+   public void testDifferentScopesGetDifferentTokens() {
+      CountingFetcher fetcher = new CountingFetcher(3600);
+      TokenManager manager = new TokenManager(fetcher, 3600);
+      manager.ticker = new FakeTicker();
+
+      manager.apply(request("scope1", 1000));
+      manager.apply(request("scope2", 1000));
+
+      assertEquals(fetcher.calls.get(), 2);
+      assertEquals(manager.getMissCount(), 2);
+   }
+
+   public void testTokenIsRefreshedBeforeExpiry() {
+      CountingFetcher fetcher = new CountingFetcher(3600);
+      TokenManager manager = new TokenManager(fetcher, 3600);
+      FakeTicker ticker = new FakeTicker();
+      manager.ticker = ticker;
+
+      manager.apply(request("scope1", 1000));
+      ticker.advance(3600 - TokenManager.DEFAULT_REFRESH_MARGIN - 1, TimeUnit.SECONDS);
+      manager.apply(request("scope1", 1000));
+      assertEquals(fetcher.calls.get(), 1);
+
+      ticker.advance(1, TimeUnit.SECONDS);
+      manager.apply(request("scope1", 1000));
+      assertEquals(fetcher.calls.get(), 2);
+      assertEquals(manager.getMissCount(), 1);
+      assertEquals(manager.getRefreshCount(), 2);
+   }
+
+   public void testRefreshReplacesFreshToken() {
+      CountingFetcher fetcher = new CountingFetcher(3600);
+      TokenManager manager = new TokenManager(fetcher, 3600);
+      manager.ticker = new FakeTicker();
+
+      Token first = manager.apply(request("scope1", 1000));
+      Token refreshed = manager.refresh(request("scope1", 2000));
+
+      assertEquals(refreshed.getAccessToken(), "token2");
+      assertSame(manager.apply(request("scope1", 2001)), refreshed);
+      assertEquals(fetcher.calls.get(), 2);
+      assertEquals(manager.getRefreshCount(), 2);
+      assertEquals(first.getAccessToken(), "token1");
+   }
+
+   public void testConcurrentRefreshesAreCoalesced() throws InterruptedException {
+      final CountDownLatch fetching = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      final AtomicInteger calls = new AtomicInteger();
+      final TokenManager manager = new TokenManager(new Function<TokenRequest, Token>() {
+         @Override
+         public Token apply(TokenRequest input) {
+            calls.incrementAndGet();
+            fetching.countDown();
+            try {
+               release.await();
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+            return Token.builder().accessToken("token").tokenType("Bearer").expiresIn(3600).build();
+         }
+      }, 3600);
+
+      Thread[] threads = new Thread[8];
+      for (int i = 0; i < threads.length; i++) {
+         threads[i] = new Thread(new Runnable() {
+            @Override
+            public void run() {
+               manager.apply(request("scope1", 1000));
+            }
+         });
+         threads[i].start();
+      }
+      fetching.await();
+      release.countDown();
+      for (Thread thread : threads) {
+         thread.join();
+      }
+
+      assertEquals(calls.get(), 1);
+      assertEquals(manager.getRefreshCount(), 1);
+   }
+
+   private static TokenRequest request(String scope, long now) {
+      ClaimSet claimSet = ClaimSet.builder()
+              .addClaim("iss", "foo")
+              .addClaim("scope", scope)
+              .addClaim("aud", "https://accounts.google.com/o/oauth2/token")
+              .emissionTime(now)
+              .expirationTime(now + 3600)
+              .build();
+      return TokenRequest.builder().header(HEADER).claimSet(claimSet).build();
+   }
+
+   private static class CountingFetcher implements Function<TokenRequest, Token> {
+      private final AtomicInteger calls = new AtomicInteger();
+      private final long expiresIn;
+
+      private CountingFetcher(long expiresIn) {
+         this.expiresIn = expiresIn;
+      }
+
+      @Override
+      public Token apply(TokenRequest input) {
+         return Token.builder().accessToken("token" + calls.incrementAndGet()).tokenType("Bearer")
+                 .expiresIn(expiresIn).build();
+      }
+   }
+
+   private static class FakeTicker extends Ticker {
+      private final AtomicLong nanos = new AtomicLong();
+
+      private void advance(long time, TimeUnit unit) {
+         nanos.addAndGet(unit.toNanos(time));
+      }
+
+      @Override
+      public long read() {
+         return nanos.get();
+      }
+   }
+}
@@ -0,0 +1,64 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.oauth.v2.functions;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Set;
+
+import org.jclouds.oauth.v2.config.OAuthScopes;
+import org.jclouds.rest.annotations.Delegate;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+/**
+ * Tests the scope discovery of the TokenRefresher
+ */
+@Test(groups = "unit", testName = "TokenRefresherTest")
+public class TokenRefresherTest {
+
+   @OAuthScopes("read")
+   interface FeatureApi {
+
+      String get();
+
+      @OAuthScopes({"read", "write"})
+      void delete();
+
+      @Delegate
+      TopLevelApi getParent();
+   }
+
+   interface TopLevelApi {
+
+      @Delegate
+      FeatureApi getFeatureApi();
+
+      @OAuthScopes("admin")
+      void shutdown();
+   }
+
+   public void testCollectScopesFollowsDelegates() {
+      Set<String> scopes = Sets.newHashSet();
+      TokenRefresher.collectScopes(TopLevelApi.class, scopes);
+      assertEquals(scopes, ImmutableSet.of("admin", "read", "read,write"));
+   }
+}
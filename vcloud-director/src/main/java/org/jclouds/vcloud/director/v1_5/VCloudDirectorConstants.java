@@ -39,6 +39,9 @@ public class VCloudDirectorConstants {
    /** The property used to configure the timeout for task completion. */
    public static final String PROPERTY_VCLOUD_DIRECTOR_TIMEOUT_TASK_COMPLETED = "jclouds.vcloud-director.timeout.task-complete";
 
+   /** The property used to configure the period, in milliseconds, between two polls of the watched tasks. */
+   public static final String PROPERTY_VCLOUD_DIRECTOR_TASK_POLL_PERIOD = "jclouds.vcloud-director.task.poll-period";
+
    public static final String PROPERTY_VCLOUD_DIRECTOR_VERSION_SCHEMA = "jclouds.vcloud-director.version.schema";
 
    /** Name of the default org that your vApp will join, if an org isn't explicitly specified. */
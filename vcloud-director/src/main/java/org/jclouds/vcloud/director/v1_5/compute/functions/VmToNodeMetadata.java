@@ -25,6 +25,8 @@ import static org.jclouds.vcloud.director.v1_5.compute.util.VCloudDirectorComput
 import static org.jclouds.vcloud.director.v1_5.compute.util.VCloudDirectorComputeUtils.getIpsFromVm;
 import static org.jclouds.vcloud.director.v1_5.compute.util.VCloudDirectorComputeUtils.toComputeOs;
 
+import java.net.URI;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -36,16 +38,21 @@ import org.jclouds.compute.domain.Hardware;
 import org.jclouds.compute.domain.NodeMetadata;
 import org.jclouds.compute.domain.NodeMetadataBuilder;
 import org.jclouds.compute.functions.GroupNamingConvention;
+import org.jclouds.domain.Location;
 import org.jclouds.domain.Credentials;
 import org.jclouds.logging.Logger;
 import org.jclouds.util.InetAddresses2.IsPrivateIPAddress;
 import org.jclouds.vcloud.director.v1_5.VCloudDirectorMediaType;
+import org.jclouds.vcloud.director.v1_5.domain.Link;
+import org.jclouds.vcloud.director.v1_5.domain.VApp;
 import org.jclouds.vcloud.director.v1_5.domain.Vm;
 import org.jclouds.vcloud.director.v1_5.domain.ResourceEntity.Status;
 import org.jclouds.vcloud.director.v1_5.predicates.LinkPredicates;
 
 import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 
 /**
  * @author Adrian Cole
@@ -73,13 +80,37 @@ public class VmToNodeMetadata implements Function<Vm, NodeMetadata> {
    }
 
    public NodeMetadata apply(Vm from) {
+      return apply(from, Maps.<URI, Location> newHashMap());
+   }
+
+   /**
+    * Converts all the vms of the vApp in one pass, looking up the location of each vDC only once.
+    */
+   public List<NodeMetadata> nodesIn(VApp vApp) {
+      checkNotNull(vApp, "vApp");
+      if (vApp.getChildren() == null)
+         return ImmutableList.of();
+      Map<URI, Location> locationsByVdc = Maps.newHashMap();
+      ImmutableList.Builder<NodeMetadata> nodes = ImmutableList.builder();
+      for (Vm vm : vApp.getChildren().getVms()) {
+         nodes.add(apply(vm, locationsByVdc));
+      }
+      return nodes.build();
+   }
+
+   private NodeMetadata apply(Vm from, Map<URI, Location> locationsByVdc) {
       NodeMetadataBuilder builder = new NodeMetadataBuilder();
       builder.ids(from.getHref().toASCIIString());
       builder.uri(from.getHref());
       builder.name(from.getName());
       builder.hostname(from.getName());
-      builder.location(findLocationForResourceInVDC.apply(
-            Iterables.find(from.getLinks(), LinkPredicates.typeEquals(VCloudDirectorMediaType.VDC))));
+      Link vdc = Iterables.find(from.getLinks(), LinkPredicates.typeEquals(VCloudDirectorMediaType.VDC));
+      Location location = locationsByVdc.get(vdc.getHref());
+      if (location == null) {
+         location = findLocationForResourceInVDC.apply(vdc);
+         locationsByVdc.put(vdc.getHref(), location);
+      }
+      builder.location(location);
       builder.group(nodeNamingConvention.groupInUniqueNameOrNull(from.getName()));
       builder.operatingSystem(toComputeOs(from));
       builder.hardware(hardwareForVm.apply(from));
@@ -148,7 +148,9 @@ public class VCloudDirectorRestClientModule extends RestClientModule<VCloudDirec
       bindSyncToAsyncHttpApi(binder(), OrgApi.class, OrgAsyncApi.class);
       bindSyncToAsyncHttpApi(binder(), SessionApi.class, SessionAsyncApi.class);
       bindSyncToAsyncHttpApi(binder(), TaskApi.class, TaskAsyncApi.class);
+      bindSyncToAsyncHttpApi(binder(), UploadApi.class, UploadAsyncApi.class);
       bindSyncToAsyncHttpApi(binder(), VAppApi.class, VAppAsyncApi.class);
+      bindSyncToAsyncHttpApi(binder(), VAppTemplateApi.class, VAppTemplateAsyncApi.class);
       bindSyncToAsyncHttpApi(binder(), VmApi.class, VmAsyncApi.class);
       
       bind(HttpRetryHandler.class).annotatedWith(ClientError.class).to(InvalidateSessionAndRetryOn401AndLogoutOnClose.class);
@@ -210,7 +212,9 @@ public class VCloudDirectorRestClientModule extends RestClientModule<VCloudDirec
    @Provides
    @Singleton
    LoadingCache<String, Entity> resolveEntityCache(ResolveEntity loader, @Named(PROPERTY_SESSION_INTERVAL) int seconds) {
-      return CacheBuilder.newBuilder().expireAfterWrite(seconds, TimeUnit.SECONDS).build(loader);
+      // entities in use are refreshed in the background, rather than all expiring at the same time
+      return CacheBuilder.newBuilder().refreshAfterWrite(seconds, TimeUnit.SECONDS)
+            .expireAfterWrite(2L * seconds, TimeUnit.SECONDS).recordStats().build(loader);
    }
 
    @Provides
@@ -21,12 +21,14 @@ package org.jclouds.vcloud.director.v1_5.domain;
 import static com.google.common.base.Objects.equal;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.Map;
 import java.util.Set;
 
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElementRef;
 import javax.xml.bind.annotation.XmlElementRefs;
+import javax.xml.bind.annotation.XmlTransient;
 import javax.xml.bind.annotation.XmlType;
 
 import org.jclouds.dmtf.ovf.DeploymentOptionSection;
@@ -46,7 +48,9 @@ import org.jclouds.vcloud.director.v1_5.domain.section.VirtualHardwareSection;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Objects.ToStringHelper;
+import com.google.common.collect.ImmutableClassToInstanceMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 /**
@@ -156,6 +160,9 @@ public abstract class AbstractVAppType extends ResourceEntity {
    private Set<SectionType> sections = Sets.newLinkedHashSet();
    @XmlAttribute
    private Boolean deployed;
+   // the sections by their class and superclasses, built on first use as JAXB sets the sections late
+   @XmlTransient
+   private transient volatile ImmutableClassToInstanceMap<SectionType> sectionsByType;
 
    protected AbstractVAppType() {
       // for JAXB and Builders
@@ -203,6 +210,35 @@ public abstract class AbstractVAppType extends ResourceEntity {
       return sections != null ? ImmutableSet.copyOf(sections) : ImmutableSet.<SectionType>of();
    }
 
+   /**
+    * Returns the first section of the type, or of a subtype of it, looked up in an index of the
+    * sections by type rather than by scanning {@link #getSections()}.
+    *
+    * @return the section, or null if there is none of this type
+    */
+   public <S extends SectionType> S getSection(Class<S> type) {
+      ImmutableClassToInstanceMap<SectionType> index = sectionsByType;
+      if (index == null) {
+         index = sectionsByType = indexSections();
+      }
+      return index.getInstance(type);
+   }
+
+   private ImmutableClassToInstanceMap<SectionType> indexSections() {
+      Map<Class<? extends SectionType>, SectionType> index = Maps.newLinkedHashMap();
+      if (sections != null) {
+         for (SectionType section : sections) {
+            for (Class<?> type = section.getClass(); SectionType.class.isAssignableFrom(type);
+                     type = type.getSuperclass()) {
+               if (!index.containsKey(type)) {
+                  index.put(type.asSubclass(SectionType.class), section);
+               }
+            }
+         }
+      }
+      return ImmutableClassToInstanceMap.copyOf(index);
+   }
+
    /**
     * Gets the value of the deployed property.
     */
@@ -18,6 +18,7 @@
  */
 package org.jclouds.vcloud.director.v1_5.features;
 
+import org.jclouds.javax.annotation.Nullable;
 import org.jclouds.vcloud.director.v1_5.domain.query.CatalogReferences;
 import org.jclouds.vcloud.director.v1_5.domain.query.QueryList;
 import org.jclouds.vcloud.director.v1_5.domain.query.QueryResultRecords;
@@ -65,6 +66,19 @@ public interface QueryApi {
    /** @see #queryAll() */
    QueryResultRecords query(Integer page, Integer pageSize, String format, String type, String filter);
 
+   /**
+    * Retrieves a page of records, parsed one record at a time as the response is read, so that
+    * only the records of the page are held in memory.
+    *
+    * <pre>
+    * GET /query?format=records
+    * </pre>
+    *
+    * @param page the page to retrieve, starting at 1
+    * @see org.jclouds.vcloud.director.v1_5.functions.PagedQueryResults to iterate over the records of all the pages
+    */
+   QueryResultRecords queryRecordsPage(String type, @Nullable String filter, int page, int pageSize);
+
    /**
     * Retrieves a list of {@link Catalog}s by using REST API general QueryHandler.
     *
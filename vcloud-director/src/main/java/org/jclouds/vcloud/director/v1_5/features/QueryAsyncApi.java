@@ -23,14 +23,17 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.QueryParam;
 
+import org.jclouds.javax.annotation.Nullable;
 import org.jclouds.rest.annotations.JAXBResponseParser;
 import org.jclouds.rest.annotations.QueryParams;
 import org.jclouds.rest.annotations.RequestFilters;
+import org.jclouds.rest.annotations.ResponseParser;
 import org.jclouds.vcloud.director.v1_5.domain.query.CatalogReferences;
 import org.jclouds.vcloud.director.v1_5.domain.query.QueryList;
 import org.jclouds.vcloud.director.v1_5.domain.query.QueryResultRecords;
 import org.jclouds.vcloud.director.v1_5.domain.query.VAppReferences;
 import org.jclouds.vcloud.director.v1_5.filters.AddVCloudAuthorizationAndCookieToRequest;
+import org.jclouds.vcloud.director.v1_5.functions.ParseQueryResultRecords;
 
 import com.google.common.util.concurrent.ListenableFuture;
 
@@ -69,6 +72,18 @@ public interface QueryAsyncApi {
    ListenableFuture<QueryResultRecords> query(@QueryParam("page") Integer page, @QueryParam("pageSize") Integer pageSize,
          @QueryParam("format") String format, @QueryParam("type") String type, @QueryParam("filter") String filter);
 
+   /**
+    * @see QueryApi#queryRecordsPage(String, String, int, int)
+    */
+   @GET
+   @Path("/query")
+   @Consumes
+   @QueryParams(keys = { "format" }, values = { "records" })
+   @ResponseParser(ParseQueryResultRecords.class)
+   ListenableFuture<QueryResultRecords> queryRecordsPage(@QueryParam("type") String type,
+         @Nullable @QueryParam("filter") String filter, @QueryParam("page") int page,
+         @QueryParam("pageSize") int pageSize);
+
    /**
     * Retrieves a list of {@link Catalog}s by using REST API general QueryHandler.
     */
@@ -33,5 +33,14 @@ public interface UploadApi {
     * @return eTag
     */
    void upload(URI location, Payload payload);
+
+   /**
+    * Uploads a part of a file, so that a large file can be sent in several requests, and an upload
+    * which failed can be resumed from the last part received.
+    *
+    * @param contentRange
+    *           the bytes of the file in the payload, for instance {@code bytes 0-1048575/4194304}
+    */
+   void uploadRange(URI location, String contentRange, Payload payload);
    
 }
@@ -0,0 +1,210 @@
+/*
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.vcloud.director.v1_5.functions;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.vcloud.director.v1_5.domain.Entity;
+import org.jclouds.vcloud.director.v1_5.domain.Link;
+import org.jclouds.vcloud.director.v1_5.loaders.ResolveEntity;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Resolves URNs to {@link Entity entities} through the entity resolver cache, whose
+ * {@link ResolveEntity loader} sends the lookups of the URNs which are not cached at the same time.
+ * <p/>
+ * Resolving an entity starts looking up the entities it links to, without waiting for them, and
+ * caches them as they arrive. Resolving one of them next finds it in the cache.
+ */
+@Singleton
+public class EntityResolver {
+
+   // the type and id of an entity, from hrefs such as /api/vApp/vm-<uuid> or /api/admin/org/<uuid>
+   private static final Pattern ENTITY_HREF = Pattern.compile(
+            ".*/(\\w+)/(?:(\\w+)-)?([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})/?$");
+
+   private final LoadingCache<String, Entity> resolveEntityCache;
+   private final ResolveEntity loader;
+
+   @Inject
+   public EntityResolver(LoadingCache<String, Entity> resolveEntityCache, ResolveEntity loader) {
+      this.resolveEntityCache = checkNotNull(resolveEntityCache, "resolveEntityCache");
+      this.loader = checkNotNull(loader, "loader");
+   }
+
+   /**
+    * @return the entity, or null if there is no entity with this URN
+    */
+   @Nullable
+   public Entity resolve(String urn) {
+      try {
+         Entity entity = resolveEntityCache.get(checkNotNull(urn, "urn"));
+         prefetchLinks(urn, entity);
+         return entity;
+      } catch (InvalidCacheLoadException e) {
+         return null;
+      } catch (ExecutionException e) {
+         throw Throwables.propagate(e.getCause());
+      } catch (UncheckedExecutionException e) {
+         throw Throwables.propagate(e.getCause());
+      }
+   }
+
+   /**
+    * Resolves the URNs, looking up those which are not cached at the same time.
+    *
+    * @return the entities by URN, without the URNs which have no entity
+    */
+   public Map<String, Entity> resolveAll(Iterable<String> urns) {
+      Set<String> distinct = ImmutableSet.copyOf(checkNotNull(urns, "urns"));
+      try {
+         return resolveEntityCache.getAll(distinct);
+      } catch (InvalidCacheLoadException e) {
+         // the entities found were cached all the same
+         Map<String, Entity> entities = Maps.newLinkedHashMap();
+         for (String urn : distinct) {
+            Entity entity = resolveEntityCache.asMap().get(urn);
+            if (entity != null) {
+               entities.put(urn, entity);
+            }
+         }
+         return entities;
+      } catch (ExecutionException e) {
+         throw Throwables.propagate(e.getCause());
+      } catch (UncheckedExecutionException e) {
+         throw Throwables.propagate(e.getCause());
+      }
+   }
+
+   public Stats stats() {
+      return new Stats(resolveEntityCache.stats(), loader.lookupCount(), loader.joinedCount(),
+               loader.prefetchCount());
+   }
+
+   /**
+    * Starts looking up the entities the entity links to which are not cached yet. Lookups which
+    * fail are left to be tried again when the entity is resolved.
+    */
+   private void prefetchLinks(String urn, Entity entity) {
+      for (Link link : entity.getLinks()) {
+         final String linked = urn(link.getHref());
+         // alternate links are representations of the entity itself
+         if (linked == null || linked.equals(urn) || resolveEntityCache.asMap().containsKey(linked)) {
+            continue;
+         }
+         Futures.addCallback(loader.prefetch(linked), new FutureCallback<Entity>() {
+            @Override
+            public void onSuccess(Entity prefetched) {
+               if (prefetched != null) {
+                  resolveEntityCache.asMap().putIfAbsent(linked, prefetched);
+               }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+            }
+         });
+      }
+   }
+
+   /**
+    * Returns the URN of the entity at the href, or null if the href is not the one of an entity.
+    */
+   @Nullable
+   static String urn(@Nullable URI href) {
+      if (href == null) {
+         return null;
+      }
+      Matcher matcher = ENTITY_HREF.matcher(href.getPath() == null ? "" : href.getPath());
+      if (!matcher.matches()) {
+         return null;
+      }
+      String type = matcher.group(2) != null ? matcher.group(2) : matcher.group(1);
+      return "urn:vcloud:" + type.toLowerCase() + ":" + matcher.group(3);
+   }
+
+   /**
+    * The cache statistics, and the lookups sent by its loader.
+    */
+   public static class Stats {
+      private final CacheStats cacheStats;
+      private final long lookupCount;
+      private final long joinedCount;
+      private final long prefetchCount;
+
+      private Stats(CacheStats cacheStats, long lookupCount, long joinedCount, long prefetchCount) {
+         this.cacheStats = cacheStats;
+         this.lookupCount = lookupCount;
+         this.joinedCount = joinedCount;
+         this.prefetchCount = prefetchCount;
+      }
+
+      public CacheStats getCacheStats() {
+         return cacheStats;
+      }
+
+      /**
+       * @return the number of URNs looked up
+       */
+      public long getLookupCount() {
+         return lookupCount;
+      }
+
+      /**
+       * @return the number of times a URN was asked for while it was being looked up already
+       */
+      public long getJoinedCount() {
+         return joinedCount;
+      }
+
+      /**
+       * @return the number of URNs looked up ahead of time, because a resolved entity links to them
+       */
+      public long getPrefetchCount() {
+         return prefetchCount;
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).add("cacheStats", cacheStats).add("lookupCount", lookupCount)
+                  .add("joinedCount", joinedCount).add("prefetchCount", prefetchCount).toString();
+      }
+   }
+}
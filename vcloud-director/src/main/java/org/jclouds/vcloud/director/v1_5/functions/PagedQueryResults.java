@@ -0,0 +1,150 @@
+/*
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.vcloud.director.v1_5.functions;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.vcloud.director.v1_5.domain.query.QueryResultRecordType;
+import org.jclouds.vcloud.director.v1_5.domain.query.QueryResultRecords;
+import org.jclouds.vcloud.director.v1_5.features.QueryApi;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * The records of a query, over all its pages. Pages are retrieved as the records are iterated, with
+ * {@link QueryApi#queryRecordsPage(String, String, int, int)}, so that at most one page (two when
+ * prefetching) is held in memory however many records the query has.
+ * <p/>
+ * Records of a type are selected with {@link #filter(Class)}, for instance
+ * {@code PagedQueryResults.of(queryApi, "vm").filter(QueryResultVMRecord.class)}.
+ */
+public class PagedQueryResults extends FluentIterable<QueryResultRecordType> {
+
+   /**
+    * The largest page size vCloud Director accepts by default.
+    */
+   public static final int DEFAULT_PAGE_SIZE = 128;
+
+   public static PagedQueryResults of(QueryApi api, String type) {
+      return of(api, type, null, DEFAULT_PAGE_SIZE);
+   }
+
+   public static PagedQueryResults of(QueryApi api, String type, @Nullable String filter, int pageSize) {
+      return new PagedQueryResults(api, type, filter, pageSize, null);
+   }
+
+   private final QueryApi api;
+   private final String type;
+   private final String filter;
+   private final int pageSize;
+   private final ListeningExecutorService prefetcher;
+
+   private PagedQueryResults(QueryApi api, String type, @Nullable String filter, int pageSize,
+         @Nullable ListeningExecutorService prefetcher) {
+      checkArgument(pageSize > 0, "pageSize must be positive");
+      this.api = checkNotNull(api, "api");
+      this.type = checkNotNull(type, "type");
+      this.filter = filter;
+      this.pageSize = pageSize;
+      this.prefetcher = prefetcher;
+   }
+
+   /**
+    * Returns the same records, retrieving the next page with the executor while the records of the
+    * current one are iterated.
+    */
+   public PagedQueryResults prefetchingWith(ListeningExecutorService executor) {
+      return new PagedQueryResults(api, type, filter, pageSize, checkNotNull(executor, "executor"));
+   }
+
+   @Override
+   public Iterator<QueryResultRecordType> iterator() {
+      return new AbstractIterator<QueryResultRecordType>() {
+         private int page = 0;
+         private boolean lastPage = false;
+         private ListenableFuture<QueryResultRecords> prefetched;
+         private Iterator<QueryResultRecordType> records = Iterators.emptyIterator();
+
+         @Override
+         protected QueryResultRecordType computeNext() {
+            while (!records.hasNext()) {
+               if (lastPage) {
+                  return endOfData();
+               }
+               QueryResultRecords current = prefetched != null ? get(prefetched) : fetch(page + 1);
+               page++;
+               lastPage = isLastPage(current, page);
+               prefetched = lastPage || prefetcher == null ? null : prefetch(page + 1);
+               records = current.getRecords().iterator();
+            }
+            return records.next();
+         }
+      };
+   }
+
+   private boolean isLastPage(QueryResultRecords current, int page) {
+      if (current.getRecords().isEmpty()) {
+         return true;
+      }
+      // the server may serve smaller pages than asked for
+      int servedPageSize = current.getPageSize() != null ? current.getPageSize() : pageSize;
+      if (current.getTotal() != null) {
+         return (long) page * servedPageSize >= current.getTotal();
+      }
+      return current.getRecords().size() < servedPageSize;
+   }
+
+   private QueryResultRecords fetch(int page) {
+      return api.queryRecordsPage(type, filter, page, pageSize);
+   }
+
+   private ListenableFuture<QueryResultRecords> prefetch(final int page) {
+      return prefetcher.submit(new Callable<QueryResultRecords>() {
+         @Override
+         public QueryResultRecords call() {
+            return fetch(page);
+         }
+      });
+   }
+
+   private static QueryResultRecords get(ListenableFuture<QueryResultRecords> page) {
+      try {
+         return Uninterruptibles.getUninterruptibly(page);
+      } catch (ExecutionException e) {
+         throw Throwables.propagate(e.getCause());
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "PagedQueryResults(type=" + type + ", filter=" + filter + ", pageSize=" + pageSize + ")";
+   }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.vcloud.director.v1_5.functions;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Map;
+
+import javax.inject.Singleton;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlSeeAlso;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jclouds.http.HttpResponse;
+import org.jclouds.vcloud.director.v1_5.domain.Link;
+import org.jclouds.vcloud.director.v1_5.domain.query.QueryResultRecordType;
+import org.jclouds.vcloud.director.v1_5.domain.query.QueryResultRecords;
+
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Closeables;
+
+/**
+ * Parses a page of {@link QueryResultRecords} as it is read, one record at a time, rather than
+ * reading the whole response before unmarshalling it. Records of unknown types are skipped.
+ *
+ * @see org.jclouds.vcloud.director.v1_5.features.QueryApi#queryRecordsPage(String, String, int, int)
+ */
+@Singleton
+public class ParseQueryResultRecords implements Function<HttpResponse, QueryResultRecords> {
+
+   private static final Class<?>[] RECORD_TYPES = QueryResultRecordType.class.getAnnotation(XmlSeeAlso.class)
+            .value();
+
+   private final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+   private final JAXBContext context;
+   private final Map<String, Class<? extends QueryResultRecordType>> recordTypes;
+
+   public ParseQueryResultRecords() {
+      ImmutableMap.Builder<String, Class<? extends QueryResultRecordType>> recordTypes = ImmutableMap.builder();
+      for (Class<?> type : RECORD_TYPES) {
+         recordTypes.put(type.getAnnotation(XmlRootElement.class).name(),
+                  type.asSubclass(QueryResultRecordType.class));
+      }
+      this.recordTypes = recordTypes.build();
+      // responses never need a DTD, and resolving entities would let them read local files
+      inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+      inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+      try {
+         this.context = JAXBContext.newInstance(ImmutableSet.<Class<?>> builder().add(Link.class).add(RECORD_TYPES)
+                  .build().toArray(new Class<?>[0]));
+      } catch (JAXBException e) {
+         throw Throwables.propagate(e);
+      }
+   }
+
+   @Override
+   public QueryResultRecords apply(HttpResponse response) {
+      InputStream in = checkNotNull(response.getPayload(), "payload").getInput();
+      try {
+         XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+         try {
+            return parse(reader);
+         } finally {
+            reader.close();
+         }
+      } catch (XMLStreamException e) {
+         throw Throwables.propagate(e);
+      } catch (JAXBException e) {
+         throw Throwables.propagate(e);
+      } finally {
+         Closeables.closeQuietly(in);
+      }
+   }
+
+   private QueryResultRecords parse(XMLStreamReader reader) throws XMLStreamException, JAXBException {
+      QueryResultRecords.Builder<?> builder = QueryResultRecords.builder();
+      reader.nextTag();
+      String href = reader.getAttributeValue(null, "href");
+      String page = reader.getAttributeValue(null, "page");
+      String pageSize = reader.getAttributeValue(null, "pageSize");
+      String total = reader.getAttributeValue(null, "total");
+      builder.name(reader.getAttributeValue(null, "name")).type(reader.getAttributeValue(null, "type"))
+               .href(href == null ? null : URI.create(href))
+               .page(page == null ? null : Integer.valueOf(page))
+               .pageSize(pageSize == null ? null : Integer.valueOf(pageSize))
+               .total(total == null ? null : Long.valueOf(total));
+
+      Unmarshaller unmarshaller = context.createUnmarshaller();
+      reader.next();
+      while (nextTag(reader) == START_ELEMENT) {
+         String element = reader.getLocalName();
+         if ("Link".equals(element)) {
+            builder.link(unmarshaller.unmarshal(reader, Link.class).getValue());
+         } else if (recordTypes.containsKey(element)) {
+            // leaves the reader after the end of the record
+            builder.record(unmarshaller.unmarshal(reader, recordTypes.get(element)).getValue());
+         } else {
+            skipElement(reader);
+         }
+      }
+      return builder.build();
+   }
+
+   /**
+    * Moves to the current or next start or end of an element, skipping text and comments.
+    */
+   private static int nextTag(XMLStreamReader reader) throws XMLStreamException {
+      int event = reader.getEventType();
+      while (event != START_ELEMENT && event != END_ELEMENT) {
+         event = reader.next();
+      }
+      return event;
+   }
+
+   private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+      for (int depth = 1; depth > 0;) {
+         int event = reader.next();
+         if (event == START_ELEMENT) {
+            depth++;
+         } else if (event == END_ELEMENT) {
+            depth--;
+         }
+      }
+      reader.next();
+   }
+}
@@ -24,24 +24,20 @@ import org.jclouds.vcloud.director.v1_5.domain.AbstractVAppType;
 import com.google.common.base.Function;
 
 /**
+ * Finds the section of a type in a vApp, see {@link AbstractVAppType#getSection(Class)}.
+ * 
  * @author danikov
  */
 public class SectionForVApp<S extends SectionType> implements Function<AbstractVAppType, S> {
    
-   private final Class<? extends SectionType> sectionType;
+   private final Class<S> sectionType;
 
    public SectionForVApp(Class<S> sectionType) {
       this.sectionType = sectionType;
    }
 
-   @SuppressWarnings("unchecked")
    @Override
    public S apply(AbstractVAppType from) {
-      for (SectionType section : from.getSections()) {
-         if (sectionType.isAssignableFrom(section.getClass())) {
-            return (S)section;
-         }
-      }
-      return null;
+      return from.getSection(sectionType);
    }
 }
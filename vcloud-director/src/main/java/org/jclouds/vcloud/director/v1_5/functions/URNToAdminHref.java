@@ -33,7 +33,6 @@ import org.jclouds.vcloud.director.v1_5.domain.Link;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
-import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Iterables;
 
 /**
@@ -43,17 +42,18 @@ import com.google.common.collect.Iterables;
  */
 @Singleton
 public final class URNToAdminHref implements Function<Object, URI> {
-   private final LoadingCache<String, Entity> resolveEntityCache;
+   private final EntityResolver resolver;
 
    @Inject
-   public URNToAdminHref(LoadingCache<String, Entity> resolveEntityCache) {
-      this.resolveEntityCache = checkNotNull(resolveEntityCache, "resolveEntityCache");
+   public URNToAdminHref(EntityResolver resolver) {
+      this.resolver = checkNotNull(resolver, "resolver");
    }
 
    @Override
    public URI apply(@Nullable Object from) {
       checkArgument(checkNotNull(from, "urn") instanceof String, "urn is a String argument");
-      Entity entity = resolveEntityCache.getUnchecked(from.toString());
+      Entity entity = resolver.resolve(from.toString());
+      checkArgument(entity != null, "no entity found for urn %s", from);
       Optional<Link> link = Iterables.tryFind(entity.getLinks(), typeContainsAdmin);
       checkArgument(link.isPresent(), "no admin link found for entity %s", entity);
       return link.get().getHref();
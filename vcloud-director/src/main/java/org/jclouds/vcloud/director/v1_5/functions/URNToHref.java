@@ -31,7 +31,6 @@ import org.jclouds.javax.annotation.Nullable;
 import org.jclouds.vcloud.director.v1_5.domain.Entity;
 
 import com.google.common.base.Function;
-import com.google.common.cache.LoadingCache;
 
 /**
  * Resolves URN to its HREF via the entity Resolver
@@ -40,17 +39,18 @@ import com.google.common.cache.LoadingCache;
  */
 @Singleton
 public final class URNToHref implements Function<Object, URI> {
-   private final LoadingCache<String, Entity> resolveEntityCache;
+   private final EntityResolver resolver;
 
    @Inject
-   public URNToHref(LoadingCache<String, Entity> resolveEntityCache) {
-      this.resolveEntityCache = checkNotNull(resolveEntityCache, "resolveEntityCache");
+   public URNToHref(EntityResolver resolver) {
+      this.resolver = checkNotNull(resolver, "resolver");
    }
 
    @Override
    public URI apply(@Nullable Object from) {
       checkArgument(checkNotNull(from, "urn") instanceof String, "urn is a String argument");
-      Entity entity = resolveEntityCache.getUnchecked(from.toString());
+      Entity entity = resolver.resolve(from.toString());
+      checkArgument(entity != null, "no entity found for urn %s", from);
       checkArgument(entity.getLinks().size()  >0,"no links found for entity %s", entity);
       return get(entity.getLinks(), 0).getHref();
    }
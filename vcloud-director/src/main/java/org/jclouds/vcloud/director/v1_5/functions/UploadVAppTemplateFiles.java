@@ -0,0 +1,369 @@
+/*
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.vcloud.director.v1_5.functions;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Resource;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.jclouds.io.payloads.BasePayload;
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.logging.Logger;
+import org.jclouds.vcloud.director.v1_5.domain.File;
+import org.jclouds.vcloud.director.v1_5.domain.Link;
+import org.jclouds.vcloud.director.v1_5.domain.VAppTemplate;
+import org.jclouds.vcloud.director.v1_5.features.UploadAsyncApi;
+import org.jclouds.vcloud.director.v1_5.features.VAppTemplateApi;
+import org.jclouds.vcloud.director.v1_5.predicates.LinkPredicates;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Uploads the files of a vApp template created with {@code VdcApi.uploadVAppTemplate}.
+ * <p/>
+ * The OVF descriptor is uploaded first, then all the files it references at the same time, once
+ * vCloud Director has listed them in the template. Files larger than a chunk are sent as ranges of
+ * {@link #DEFAULT_CHUNK_SIZE} bytes, one after the other: a range which fails is sent again, and an
+ * upload started earlier is resumed from the bytes the template says were transferred.
+ * <p/>
+ * Only the calling thread waits for the upload. The ranges are sent asynchronously, each one from
+ * the completion of the previous, so that no thread is held per file.
+ *
+ * @see org.jclouds.vcloud.director.v1_5.features.VdcApi#uploadVAppTemplate(URI,
+ *      org.jclouds.vcloud.director.v1_5.domain.params.UploadVAppTemplateParams)
+ */
+@Singleton
+public class UploadVAppTemplateFiles {
+
+   public static final long DEFAULT_CHUNK_SIZE = 64L * 1024 * 1024;
+   public static final int MAX_ATTEMPTS_PER_CHUNK = 3;
+   public static final long POLL_PERIOD_MILLIS = 5000;
+   public static final long FILES_LISTED_TIMEOUT_MILLIS = 10L * 60 * 1000;
+
+   /**
+    * Told the bytes of each file received by vCloud Director, while the files are uploaded.
+    */
+   public interface Progress {
+      void transferred(VAppTemplate template, Map<String, Long> bytesTransferredByFile);
+   }
+
+   @Resource
+   protected Logger logger = Logger.NULL;
+
+   private final UploadAsyncApi uploadApi;
+   private final VAppTemplateApi templateApi;
+
+   @Inject
+   public UploadVAppTemplateFiles(UploadAsyncApi uploadApi, VAppTemplateApi templateApi) {
+      this.uploadApi = checkNotNull(uploadApi, "uploadApi");
+      this.templateApi = checkNotNull(templateApi, "templateApi");
+   }
+
+   /**
+    * Uploads the local files to the template, in chunks of {@link #DEFAULT_CHUNK_SIZE} bytes.
+    *
+    * @param localFiles
+    *           the local files by the name the OVF descriptor gives them, including the descriptor
+    *           itself, whose name ends with {@code .ovf}
+    * @return the template once all the files are uploaded
+    */
+   public VAppTemplate upload(URI templateHref, Map<String, java.io.File> localFiles, @Nullable Progress progress) {
+      return upload(templateHref, localFiles, DEFAULT_CHUNK_SIZE, progress);
+   }
+
+   public VAppTemplate upload(URI templateHref, Map<String, java.io.File> localFiles, long chunkSize,
+            @Nullable Progress progress) {
+      checkNotNull(templateHref, "templateHref");
+      checkArgument(chunkSize > 0, "chunkSize must be positive");
+      Map<String, java.io.File> files = ImmutableMap.copyOf(checkNotNull(localFiles, "localFiles"));
+      String descriptor = descriptorName(files);
+
+      VAppTemplate template = templateApi.get(templateHref);
+      get(uploadFile(templateHref, find(template, descriptor), files.get(descriptor), chunkSize));
+
+      template = awaitListed(templateHref, files.keySet());
+      List<ListenableFuture<Void>> uploads = Lists.newArrayList();
+      for (Map.Entry<String, java.io.File> file : files.entrySet()) {
+         if (!file.getKey().equals(descriptor)) {
+            uploads.add(uploadFile(templateHref, find(template, file.getKey()), file.getValue(), chunkSize));
+         }
+      }
+      ListenableFuture<List<Void>> all = Futures.allAsList(uploads);
+      while (!isDone(all, POLL_PERIOD_MILLIS)) {
+         template = templateApi.get(templateHref);
+         if (progress != null && template != null) {
+            progress.transferred(template, bytesTransferred(template));
+         }
+      }
+      get(all);
+      return templateApi.get(templateHref);
+   }
+
+   /**
+    * Waits for vCloud Director to read the descriptor and list the files it references.
+    */
+   private VAppTemplate awaitListed(URI templateHref, Iterable<String> names) {
+      long deadline = System.currentTimeMillis() + FILES_LISTED_TIMEOUT_MILLIS;
+      while (true) {
+         VAppTemplate template = templateApi.get(templateHref);
+         List<String> missing = Lists.newArrayList();
+         for (String name : names) {
+            if (!tryFind(template, name).isPresent()) {
+               missing.add(name);
+            }
+         }
+         if (missing.isEmpty()) {
+            return template;
+         }
+         checkState(System.currentTimeMillis() < deadline, "files %s of template %s not listed after %sms", missing,
+                  templateHref, FILES_LISTED_TIMEOUT_MILLIS);
+         Uninterruptibles.sleepUninterruptibly(POLL_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+      }
+   }
+
+   /**
+    * Uploads the file from the bytes vCloud Director already has, one chunk after the other.
+    */
+   private ListenableFuture<Void> uploadFile(URI templateHref, File file, java.io.File local, long chunkSize) {
+      Optional<Link> uploadLink = Iterables.tryFind(file.getLinks(), LinkPredicates.relEquals(Link.Rel.UPLOAD_DEFAULT));
+      long length = local.length();
+      long transferred = file.getBytesTransferred() != null ? file.getBytesTransferred() : 0;
+      if (!uploadLink.isPresent() || (length > 0 && transferred >= length)) {
+         checkState(transferred >= length, "file %s of template %s has no upload link", file.getName(), templateHref);
+         return Futures.immediateFuture(null);
+      }
+      // a file sent in one request is sent again whole
+      long from = length > chunkSize && transferred < length ? transferred : 0;
+      if (from > 0) {
+         logger.debug(">> resuming upload of %s at %s of %s bytes", file.getName(), from, length);
+      }
+      return new Transfer(file.getName(), uploadLink.get().getHref(), local, length, chunkSize, from).start();
+   }
+
+   private static Map<String, Long> bytesTransferred(VAppTemplate template) {
+      Map<String, Long> transferred = Maps.newLinkedHashMap();
+      for (File file : template.getFiles()) {
+         transferred.put(file.getName(), file.getBytesTransferred() != null ? file.getBytesTransferred() : 0L);
+      }
+      return transferred;
+   }
+
+   private static String descriptorName(Map<String, java.io.File> files) {
+      for (String name : files.keySet()) {
+         if (name.endsWith(".ovf")) {
+            return name;
+         }
+      }
+      throw new IllegalArgumentException("no OVF descriptor in " + files.keySet());
+   }
+
+   private static File find(VAppTemplate template, String name) {
+      Optional<File> file = tryFind(template, name);
+      checkState(file.isPresent(), "file %s not in template %s", name, template.getHref());
+      return file.get();
+   }
+
+   private static Optional<File> tryFind(VAppTemplate template, String name) {
+      if (template == null) {
+         return Optional.absent();
+      }
+      for (File file : template.getFiles()) {
+         if (name.equals(file.getName())) {
+            return Optional.of(file);
+         }
+      }
+      return Optional.absent();
+   }
+
+   private static boolean isDone(ListenableFuture<?> future, long millis) {
+      try {
+         Uninterruptibles.getUninterruptibly(future, millis, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+         return false;
+      } catch (ExecutionException e) {
+         // thrown by get(future)
+      }
+      return true;
+   }
+
+   private static <T> T get(ListenableFuture<T> future) {
+      try {
+         return Uninterruptibles.getUninterruptibly(future);
+      } catch (ExecutionException e) {
+         throw Throwables.propagate(e.getCause());
+      }
+   }
+
+   /**
+    * Sends the chunks of a file one after the other. Chunks which are sent at once are sent in a
+    * loop, and the others continue it from their completion, so that neither a thread nor the stack
+    * grows with the number of chunks.
+    */
+   private class Transfer {
+      private final String name;
+      private final URI href;
+      private final java.io.File local;
+      private final long length;
+      private final long chunkSize;
+      private final SettableFuture<Void> done = SettableFuture.create();
+      // only used by the chunk being sent
+      private long offset;
+      private long count;
+      private int attempt = 1;
+
+      private Transfer(String name, URI href, java.io.File local, long length, long chunkSize, long offset) {
+         this.name = name;
+         this.href = href;
+         this.local = local;
+         this.length = length;
+         this.chunkSize = chunkSize;
+         this.offset = offset;
+      }
+
+      private ListenableFuture<Void> start() {
+         sendChunks();
+         return done;
+      }
+
+      private void sendChunks() {
+         try {
+            while (offset < length || offset == 0) {
+               final ListenableFuture<Void> chunk = sendChunk();
+               if (!chunk.isDone()) {
+                  chunk.addListener(new Runnable() {
+                     @Override
+                     public void run() {
+                        if (chunkSent(chunk)) {
+                           sendChunks();
+                        }
+                     }
+                  }, MoreExecutors.sameThreadExecutor());
+                  return;
+               }
+               if (!chunkSent(chunk)) {
+                  return;
+               }
+            }
+         } catch (RuntimeException e) {
+            done.setException(e);
+            return;
+         }
+         logger.debug("<< uploaded %s (%s bytes)", name, length);
+         done.set(null);
+      }
+
+      private ListenableFuture<Void> sendChunk() {
+         if (length <= chunkSize) {
+            count = length;
+            return uploadApi.upload(href, new FileRegionPayload(local, 0, length));
+         }
+         count = Math.min(chunkSize, length - offset);
+         String range = String.format("bytes %d-%d/%d", offset, offset + count - 1, length);
+         return uploadApi.uploadRange(href, range, new FileRegionPayload(local, offset, count));
+      }
+
+      /**
+       * Moves to the next chunk, or to sending this one again if it failed.
+       * 
+       * @return false if the upload failed
+       */
+      private boolean chunkSent(ListenableFuture<Void> chunk) {
+         try {
+            Uninterruptibles.getUninterruptibly(chunk);
+         } catch (ExecutionException e) {
+            if (attempt >= MAX_ATTEMPTS_PER_CHUNK) {
+               done.setException(e.getCause());
+               return false;
+            }
+            logger.warn("error uploading %s at %s (try %s), sending it again: %s", name, offset, attempt, e.getCause()
+                     .getMessage());
+            attempt++;
+            return true;
+         } catch (RuntimeException e) {
+            done.setException(e);
+            return false;
+         }
+         // an empty file is sent once
+         offset += Math.max(count, 1);
+         attempt = 1;
+         return true;
+      }
+   }
+
+   /**
+    * The bytes of a region of a file, read from a {@link FileChannel} positioned at the start of the
+    * region, so that the bytes before it are neither read nor skipped.
+    */
+   static class FileRegionPayload extends BasePayload<java.io.File> {
+      private final long offset;
+      private final long count;
+
+      FileRegionPayload(java.io.File file, long offset, long count) {
+         super(file);
+         checkArgument(offset >= 0 && count >= 0, "offset and count must not be negative");
+         this.offset = offset;
+         this.count = count;
+         getContentMetadata().setContentLength(count);
+      }
+
+      @Override
+      public InputStream getInput() {
+         try {
+            FileChannel channel = new RandomAccessFile(content, "r").getChannel();
+            channel.position(offset);
+            // closing the stream closes the channel, and the file with it
+            return ByteStreams.limit(Channels.newInputStream(channel), count);
+         } catch (IOException e) {
+            throw Throwables.propagate(e);
+         }
+      }
+
+      @Override
+      public boolean isRepeatable() {
+         return true;
+      }
+   }
+}
@@ -20,26 +20,146 @@ package org.jclouds.vcloud.director.v1_5.loaders;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.jclouds.vcloud.director.v1_5.domain.Entity;
-import org.jclouds.vcloud.director.v1_5.user.VCloudDirectorApi;
+import org.jclouds.vcloud.director.v1_5.user.VCloudDirectorAsyncApi;
 
+import com.google.common.base.Throwables;
 import com.google.common.cache.CacheLoader;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 
+/**
+ * Loads the entity of a URN, and reloads it asynchronously, so that a stale entity is still
+ * returned while it is refreshed.
+ * <p/>
+ * The URNs loaded together are looked up at the same time, and a URN being looked up is looked up
+ * once, however many loads ask for it meanwhile.
+ */
 @Singleton
 public class ResolveEntity extends CacheLoader<String, Entity> {
-   private final VCloudDirectorApi api;
+   private final VCloudDirectorAsyncApi asyncApi;
+   private final ConcurrentMap<String, ListenableFuture<Entity>> lookups = Maps.newConcurrentMap();
+   private final AtomicLong lookupCount = new AtomicLong();
+   private final AtomicLong joinedCount = new AtomicLong();
+   private final AtomicLong prefetchCount = new AtomicLong();
 
    @Inject
-   public ResolveEntity(VCloudDirectorApi api) {
-      this.api = checkNotNull(api, "api");
+   public ResolveEntity(VCloudDirectorAsyncApi asyncApi) {
+      this.asyncApi = checkNotNull(asyncApi, "asyncApi");
    }
 
    @Override
    public Entity load(String input) {
-      return api.resolveEntity(checkNotNull(input, "urn"));
+      return get(lookup(checkNotNull(input, "urn")));
+   }
+
+   /**
+    * @return the entities by URN, without the URNs which have no entity
+    */
+   @Override
+   public Map<String, Entity> loadAll(Iterable<? extends String> keys) {
+      Map<String, ListenableFuture<Entity>> pending = Maps.newLinkedHashMap();
+      for (String urn : keys) {
+         if (!pending.containsKey(urn)) {
+            pending.put(urn, lookup(urn));
+         }
+      }
+      Map<String, Entity> entities = Maps.newLinkedHashMap();
+      for (Map.Entry<String, ListenableFuture<Entity>> lookup : pending.entrySet()) {
+         Entity entity = get(lookup.getValue());
+         if (entity != null) {
+            entities.put(lookup.getKey(), entity);
+         }
+      }
+      return entities;
+   }
+
+   @Override
+   public ListenableFuture<Entity> reload(String input, Entity oldValue) {
+      return lookup(checkNotNull(input, "urn"));
+   }
+
+   /**
+    * Starts looking up the URN ahead of time, unless it is being looked up already.
+    */
+   public ListenableFuture<Entity> prefetch(String urn) {
+      prefetchCount.incrementAndGet();
+      return lookup(checkNotNull(urn, "urn"));
+   }
+
+   /**
+    * @return the number of URNs looked up
+    */
+   public long lookupCount() {
+      return lookupCount.get();
+   }
+
+   /**
+    * @return the number of times a URN was asked for while it was being looked up already
+    */
+   public long joinedCount() {
+      return joinedCount.get();
+   }
+
+   /**
+    * @return the number of URNs looked up ahead of time
+    */
+   public long prefetchCount() {
+      return prefetchCount.get();
+   }
+
+   /**
+    * Returns the lookup of the URN in progress, or starts one.
+    */
+   private ListenableFuture<Entity> lookup(String urn) {
+      ListenableFuture<Entity> existing = lookups.get(urn);
+      if (existing == null) {
+         SettableFuture<Entity> created = SettableFuture.create();
+         existing = lookups.putIfAbsent(urn, created);
+         if (existing == null) {
+            lookupCount.incrementAndGet();
+            forward(urn, asyncApi.resolveEntity(urn), created);
+            return created;
+         }
+      }
+      joinedCount.incrementAndGet();
+      return existing;
+   }
+
+   private void forward(final String urn, ListenableFuture<Entity> lookup, final SettableFuture<Entity> to) {
+      Futures.addCallback(lookup, new FutureCallback<Entity>() {
+         @Override
+         public void onSuccess(Entity entity) {
+            lookups.remove(urn, to);
+            to.set(entity);
+         }
+
+         @Override
+         public void onFailure(Throwable t) {
+            lookups.remove(urn, to);
+            to.setException(t);
+         }
+      });
+   }
+
+   private static Entity get(ListenableFuture<Entity> lookup) {
+      try {
+         return Uninterruptibles.getUninterruptibly(lookup);
+      } catch (ExecutionException e) {
+         throw Throwables.propagate(e.getCause());
+      }
    }
 
    @Override
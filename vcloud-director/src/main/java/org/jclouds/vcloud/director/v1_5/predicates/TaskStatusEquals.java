@@ -66,8 +66,10 @@ public class TaskStatusEquals implements Predicate<Task> {
       checkNotNull(task, "task");
       logger.trace("looking for status on task %s", task);
 
-      // TODO shouldn't we see if it's already done before getting it from API server?
-      task = taskApi.get(task.getHref());
+      // a complete task won't change, so there is no need to get it from the API server
+      if (!TaskWatcher.isComplete(task)) {
+         task = taskApi.get(task.getHref());
+      }
       
       // perhaps task isn't available, yet
       if (task == null) return false;
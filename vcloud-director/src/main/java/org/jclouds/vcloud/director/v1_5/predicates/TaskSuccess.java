@@ -35,6 +35,8 @@ import com.google.common.base.Predicate;
 
 /**
  * Test a {@link Task} to see if it has {@link Task.Status#SUCCESS succeeded}.
+ * <p/>
+ * Each test polls the task on its own; many tasks are better waited for with the {@link TaskWatcher}.
  * 
  * @author grkvlt@apache.org
  */
@@ -57,8 +59,10 @@ public class TaskSuccess implements Predicate<Task> {
       checkNotNull(task, "task");
       logger.trace("looking for status on task %s", task.getOperationName());
 
-      // TODO shouldn't we see if it's already done before getting it from API server?
-      task = taskApi.get(task.getHref());
+      // a complete task won't change, so there is no need to get it from the API server
+      if (!TaskWatcher.isComplete(task)) {
+         task = taskApi.get(task.getHref());
+      }
       
       // perhaps task isn't available, yet
       if (task == null) return false;
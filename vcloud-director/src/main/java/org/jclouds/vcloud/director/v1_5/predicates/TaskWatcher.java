@@ -0,0 +1,283 @@
+/*
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.vcloud.director.v1_5.predicates;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.vcloud.director.v1_5.VCloudDirectorConstants.PROPERTY_VCLOUD_DIRECTOR_TASK_POLL_PERIOD;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.logging.Logger;
+import org.jclouds.vcloud.director.v1_5.VCloudDirectorException;
+import org.jclouds.vcloud.director.v1_5.VCloudDirectorMediaType;
+import org.jclouds.vcloud.director.v1_5.domain.Link;
+import org.jclouds.vcloud.director.v1_5.domain.Reference;
+import org.jclouds.vcloud.director.v1_5.domain.Task;
+import org.jclouds.vcloud.director.v1_5.domain.org.Org;
+import org.jclouds.vcloud.director.v1_5.features.OrgApi;
+import org.jclouds.vcloud.director.v1_5.features.TaskApi;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+
+/**
+ * Waits for {@link Task tasks} to complete, on behalf of any number of threads.
+ * <p/>
+ * The tasks being watched are polled together, once every period: the {@link Task#get() org} of
+ * each task is asked for its {@link VCloudDirectorMediaType#TASKS_LIST tasks list} once per sweep,
+ * and only the tasks which are missing from it are asked for one by one. A task already complete
+ * when it is watched is not polled at all.
+ */
+@Singleton
+public class TaskWatcher {
+
+   public static final long DEFAULT_POLL_PERIOD_MILLIS = 1000;
+
+   private static final Set<Task.Status> FAILED = EnumSet.of(Task.Status.ERROR, Task.Status.CANCELED,
+            Task.Status.ABORTED);
+
+   /**
+    * Returns true if the task will not change anymore, whether it succeeded or not.
+    */
+   public static boolean isComplete(Task task) {
+      return task.getStatus() == Task.Status.SUCCESS || FAILED.contains(task.getStatus());
+   }
+
+   @Resource
+   protected Logger logger = Logger.NULL;
+
+   @Inject(optional = true)
+   @Named(PROPERTY_VCLOUD_DIRECTOR_TASK_POLL_PERIOD)
+   protected long pollPeriodMillis = DEFAULT_POLL_PERIOD_MILLIS;
+
+   private final TaskApi taskApi;
+   private final OrgApi orgApi;
+   private final ConcurrentMap<URI, Watched> watched = Maps.newConcurrentMap();
+   // org href to the href of its tasks list, absent when the org has none
+   private final ConcurrentMap<URI, Optional<URI>> tasksLists = Maps.newConcurrentMap();
+   private ScheduledExecutorService poller;
+
+   @Inject
+   public TaskWatcher(TaskApi taskApi, OrgApi orgApi) {
+      this.taskApi = checkNotNull(taskApi, "taskApi");
+      this.orgApi = checkNotNull(orgApi, "orgApi");
+   }
+
+   /**
+    * Returns a future of the task once complete. The future fails with a
+    * {@link VCloudDirectorException} if the task was not successful.
+    */
+   public ListenableFuture<Task> watch(Task task) {
+      checkNotNull(task, "task");
+      if (isComplete(task)) {
+         return complete(task);
+      }
+      URI href = checkNotNull(task.getHref(), "href of task %s", task.getOperationName());
+      Watched created = new Watched(task);
+      Watched existing = watched.putIfAbsent(href, created);
+      if (existing != null) {
+         return existing.future;
+      }
+      startPolling();
+      return created.future;
+   }
+
+   /**
+    * The number of tasks being watched.
+    */
+   public int size() {
+      return watched.size();
+   }
+
+   /**
+    * Polls every task being watched, completing those which are.
+    */
+   @VisibleForTesting
+   void sweep() {
+      Multimap<URI, Watched> byTasksList = ArrayListMultimap.create();
+      for (Map.Entry<URI, Watched> entry : watched.entrySet()) {
+         // the caller may have cancelled the future
+         if (entry.getValue().future.isDone()) {
+            watched.remove(entry.getKey(), entry.getValue());
+            continue;
+         }
+         Optional<URI> tasksList = tasksList(entry.getValue().task.get());
+         byTasksList.put(tasksList.isPresent() ? tasksList.get() : null, entry.getValue());
+      }
+      for (URI tasksList : byTasksList.keySet()) {
+         Collection<Watched> tasks = byTasksList.get(tasksList);
+         if (tasksList != null) {
+            tasks = pollTasksList(tasksList, tasks);
+         }
+         for (Watched missing : tasks) {
+            pollTask(missing);
+         }
+      }
+   }
+
+   /**
+    * Updates the tasks found in the tasks list and returns the others.
+    */
+   private Collection<Watched> pollTasksList(URI tasksListHref, Collection<Watched> tasks) {
+      Map<URI, Task> listed = Maps.newHashMap();
+      try {
+         for (Task task : taskApi.getTasksList(tasksListHref)) {
+            listed.put(task.getHref(), task);
+         }
+      } catch (RuntimeException e) {
+         logger.warn(e, "could not get tasks list %s, polling its %d tasks one by one", tasksListHref, tasks.size());
+         return tasks;
+      }
+      Collection<Watched> missing = Lists.newArrayList();
+      for (Watched task : tasks) {
+         Task current = listed.get(task.task.getHref());
+         if (current != null) {
+            update(task, current);
+         } else {
+            missing.add(task);
+         }
+      }
+      return missing;
+   }
+
+   private void pollTask(Watched task) {
+      try {
+         Task current = taskApi.get(task.task.getHref());
+         // perhaps task isn't available, yet
+         if (current != null) {
+            update(task, current);
+         }
+      } catch (RuntimeException e) {
+         logger.warn(e, "could not get task %s, will try again", task.task.getHref());
+      }
+   }
+
+   private void update(Watched task, Task current) {
+      logger.trace("%s: status %s", current.getOperationName(), current.getStatus());
+      task.task = current;
+      if (isComplete(current)) {
+         watched.remove(current.getHref(), task);
+         if (FAILED.contains(current.getStatus())) {
+            task.future.setException(new VCloudDirectorException(current));
+         } else {
+            task.future.set(current);
+         }
+      }
+   }
+
+   /**
+    * Returns the href of the tasks list of the org, looking it up the first time the org is seen.
+    */
+   private Optional<URI> tasksList(Reference org) {
+      if (org == null || org.getHref() == null) {
+         return Optional.absent();
+      }
+      Optional<URI> tasksList = tasksLists.get(org.getHref());
+      if (tasksList == null) {
+         try {
+            Org found = orgApi.get(org.getHref());
+            Optional<Link> link = found == null ? Optional.<Link> absent() : Iterables.tryFind(found.getLinks(),
+                     LinkPredicates.typeEquals(VCloudDirectorMediaType.TASKS_LIST));
+            tasksList = link.isPresent() ? Optional.of(link.get().getHref()) : Optional.<URI> absent();
+         } catch (RuntimeException e) {
+            // not remembered, so that it is looked up again next sweep
+            logger.warn(e, "could not get org %s, polling its tasks one by one", org.getHref());
+            return Optional.absent();
+         }
+         tasksLists.put(org.getHref(), tasksList);
+      }
+      return tasksList;
+   }
+
+   private static ListenableFuture<Task> complete(Task task) {
+      if (FAILED.contains(task.getStatus())) {
+         return Futures.immediateFailedFuture(new VCloudDirectorException(task));
+      }
+      return Futures.immediateFuture(task);
+   }
+
+   private synchronized void startPolling() {
+      if (poller != null) {
+         return;
+      }
+      poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+               .setNameFormat("vcloud-director-task-watcher-%d").build());
+      poller.scheduleWithFixedDelay(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               sweep();
+            } catch (RuntimeException e) {
+               // a failed run would cancel the following ones
+               logger.error(e, "error polling %d tasks", watched.size());
+            }
+         }
+      }, pollPeriodMillis, pollPeriodMillis, TimeUnit.MILLISECONDS);
+   }
+
+   @PreDestroy
+   public synchronized void stop() {
+      if (poller != null) {
+         poller.shutdownNow();
+         poller = null;
+      }
+      for (Watched task : watched.values()) {
+         task.future.cancel(false);
+      }
+      watched.clear();
+   }
+
+   private static class Watched {
+      // the latest state of the task, only changed by the polling thread
+      private volatile Task task;
+      private final SettableFuture<Task> future = SettableFuture.create();
+
+      private Watched(Task task) {
+         this.task = task;
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "taskWatcher(" + watched.size() + " tasks)";
+   }
+}
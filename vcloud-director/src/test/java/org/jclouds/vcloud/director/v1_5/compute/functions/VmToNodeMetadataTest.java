@@ -0,0 +1,112 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.vcloud.director.v1_5.compute.functions;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.testng.Assert.assertEquals;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.compute.domain.Hardware;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.functions.GroupNamingConvention;
+import org.jclouds.domain.Credentials;
+import org.jclouds.domain.Location;
+import org.jclouds.domain.LocationBuilder;
+import org.jclouds.domain.LocationScope;
+import org.jclouds.vcloud.director.v1_5.VCloudDirectorMediaType;
+import org.jclouds.vcloud.director.v1_5.domain.Link;
+import org.jclouds.vcloud.director.v1_5.domain.Reference;
+import org.jclouds.vcloud.director.v1_5.domain.ResourceEntity.Status;
+import org.jclouds.vcloud.director.v1_5.domain.VApp;
+import org.jclouds.vcloud.director.v1_5.domain.VAppChildren;
+import org.jclouds.vcloud.director.v1_5.domain.Vm;
+import org.jclouds.vcloud.director.v1_5.domain.section.OperatingSystemSection;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Functions;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+/**
+ * Tests the VmToNodeMetadata
+ */
+@Test(groups = "unit", testName = "VmToNodeMetadataTest")
+public class VmToNodeMetadataTest {
+
+   private static final URI VDC = URI.create("https://vcloud.example.com/api/vdc/6f312e42-0000-1111-2222-333344445555");
+
+   private final Location location = new LocationBuilder().scope(LocationScope.ZONE).id(VDC.toASCIIString())
+            .description("vdc").build();
+
+   public void testLocationOfTheVdcIsFoundOnceForAllTheVmsOfTheVApp() {
+      final AtomicInteger lookups = new AtomicInteger();
+      FindLocationForResource findLocation = new FindLocationForResource(
+               Suppliers.<Set<? extends Location>> ofInstance(ImmutableSet.of(location))) {
+         @Override
+         public Location apply(Reference resource) {
+            lookups.incrementAndGet();
+            return super.apply(resource);
+         }
+      };
+      VApp vApp = VApp.builder().children(VAppChildren.builder().vm(vm("vm1")).vm(vm("vm2")).vm(vm("vm3")).build())
+               .build();
+
+      List<NodeMetadata> nodes = vmToNodeMetadata(findLocation).nodesIn(vApp);
+      assertEquals(nodes.size(), 3);
+      for (NodeMetadata node : nodes) {
+         assertEquals(node.getLocation(), location);
+         assertEquals(node.getStatus(), NodeMetadata.Status.RUNNING);
+      }
+      assertEquals(nodes.get(1).getName(), "vm2");
+      assertEquals(lookups.get(), 1);
+   }
+
+   public void testVAppWithoutChildrenHasNoNodes() {
+      VApp vApp = VApp.builder().build();
+
+      FindLocationForResource findLocation = new FindLocationForResource(
+               Suppliers.<Set<? extends Location>> ofInstance(ImmutableSet.of(location)));
+      assertEquals(vmToNodeMetadata(findLocation).nodesIn(vApp).size(), 0);
+   }
+
+   private static VmToNodeMetadata vmToNodeMetadata(FindLocationForResource findLocation) {
+      GroupNamingConvention.Factory namingConvention = createNiceMock(GroupNamingConvention.Factory.class);
+      expect(namingConvention.createWithoutPrefix()).andReturn(createNiceMock(GroupNamingConvention.class));
+      replay(namingConvention);
+      return new VmToNodeMetadata(ImmutableMap.of(Status.POWERED_ON, NodeMetadata.Status.RUNNING),
+               Maps.<String, Credentials> newHashMap(), findLocation, Functions.<Hardware> constant(null),
+               namingConvention);
+   }
+
+   private static Vm vm(String name) {
+      return Vm.builder().name(name).href(URI.create("https://vcloud.example.com/api/vApp/" + name))
+               .status(Status.POWERED_ON)
+               .link(Link.builder().rel(Link.Rel.UP).type(VCloudDirectorMediaType.VDC).href(VDC).build())
+               .section(OperatingSystemSection.builder().info("os").id(94).build())
+               .build();
+   }
+}
@@ -21,6 +21,7 @@ package org.jclouds.vcloud.director.v1_5.features;
 import static org.testng.Assert.assertEquals;
 
 import java.net.URI;
+import java.util.concurrent.Executors;
 
 import javax.ws.rs.core.HttpHeaders;
 
@@ -32,10 +33,16 @@ import org.jclouds.vcloud.director.v1_5.domain.Link;
 import org.jclouds.vcloud.director.v1_5.domain.query.CatalogReferences;
 import org.jclouds.vcloud.director.v1_5.domain.query.QueryResultCatalogRecord;
 import org.jclouds.vcloud.director.v1_5.domain.query.QueryResultRecords;
+import org.jclouds.vcloud.director.v1_5.functions.PagedQueryResults;
 import org.jclouds.vcloud.director.v1_5.internal.VCloudDirectorAdminApiExpectTest;
 import org.jclouds.vcloud.director.v1_5.user.VCloudDirectorApi;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
 /**
  * Test the {@link QueryApi} by observing its side effects.
  * 
@@ -177,5 +184,137 @@ public class QueryApiExpectTest extends VCloudDirectorAdminApiExpectTest {
       
       assertEquals(api.getQueryApi().catalogReferencesQueryAll(), expected);
    }
+
+   @Test
+   public void testQueryRecordsPage() {
+      VCloudDirectorApi api = requestsSendResponses(loginRequest, sessionResponse, catalogRecordsPageRequest(),
+            allCatalogsResponse());
+
+      // parsed one record at a time, the page is the same as when unmarshalled at once
+      assertEquals(api.getQueryApi().queryRecordsPage("catalog", null, 1, 25), allCatalogs());
+   }
+
+   @Test
+   public void testPagedQueryResultsStopAtTheTotal() {
+      VCloudDirectorApi api = requestsSendResponses(loginRequest, sessionResponse, catalogRecordsPageRequest(),
+            allCatalogsResponse());
+
+      // a single page holds the 3 records, so no other page is asked for
+      assertEquals(PagedQueryResults.of(api.getQueryApi(), "catalog", null, 25).toList(),
+            ImmutableList.copyOf(allCatalogs().getRecords()));
+   }
+
+   @Test
+   public void testPagedQueryResultsFollowTheNextPages() {
+      VCloudDirectorApi api = requestsSendResponses(catalogsInPagesOfOne());
+
+      assertEquals(PagedQueryResults.of(api.getQueryApi(), "catalog", null, 1).toList(),
+            ImmutableList.copyOf(allCatalogs().getRecords()));
+   }
+
+   @Test
+   public void testPagedQueryResultsPrefetchingTheNextPages() {
+      VCloudDirectorApi api = requestsSendResponses(catalogsInPagesOfOne());
+      ListeningExecutorService prefetcher = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+      try {
+         assertEquals(PagedQueryResults.of(api.getQueryApi(), "catalog", null, 1).prefetchingWith(prefetcher).toList(),
+               ImmutableList.copyOf(allCatalogs().getRecords()));
+      } finally {
+         prefetcher.shutdownNow();
+      }
+   }
+
+   /**
+    * The 3 catalogs, one per page, and no fourth page as the total is reached.
+    */
+   private ImmutableMap<HttpRequest, HttpResponse> catalogsInPagesOfOne() {
+      ImmutableMap.Builder<HttpRequest, HttpResponse> pages = ImmutableMap.builder();
+      pages.put(loginRequest, sessionResponse);
+      for (int page = 1; page <= 3; page++) {
+         pages.put(catalogRecordsPageRequest(page, 1), HttpResponse.builder()
+              .statusCode(200)
+              .payload(payloadFromResourceWithContentType("/query/catalogsPage" + page + ".xml", VCloudDirectorMediaType.QUERY_RESULT_RECORDS + ";version=1.5"))
+              .build());
+      }
+      return pages.build();
+   }
+
+   private HttpRequest catalogRecordsPageRequest() {
+      return catalogRecordsPageRequest(1, 25);
+   }
+
+   private HttpRequest catalogRecordsPageRequest(int page, int pageSize) {
+      return HttpRequest.builder()
+              .method("GET")
+              .endpoint(endpoint + "/query?format=records&type=catalog&page=" + page + "&pageSize=" + pageSize)
+              .addHeader("Accept", "*/*")
+              .addHeader("x-vcloud-authorization", token)
+              .addHeader(HttpHeaders.COOKIE, "vcloud-token=" + token)
+              .build();
+   }
+
+   private HttpResponse allCatalogsResponse() {
+      return HttpResponse.builder()
+              .statusCode(200)
+              .payload(payloadFromResourceWithContentType("/query/allCatalogs.xml", VCloudDirectorMediaType.QUERY_RESULT_RECORDS + ";version=1.5"))
+              .build();
+   }
+
+   private QueryResultRecords allCatalogs() {
+      return QueryResultRecords.builder()
+            .href(URI.create("https://vcloudbeta.bluelock.com/api/catalogs/query?page=1&pageSize=25&format=records"))
+            .type("application/vnd.vmware.vcloud.query.records+xml")
+            .name("catalog")
+            .page(1)
+            .pageSize(25)
+            .total(3L)
+            .link(Link.builder()
+                        .rel("alternate")
+                        .type("application/vnd.vmware.vcloud.query.references+xml")
+                        .href(URI.create("https://vcloudbeta.bluelock.com/api/catalogs/query?page=1&pageSize=25&format=references"))
+                        .build())
+            .link(Link.builder()
+                        .rel("alternate")
+                        .type("application/vnd.vmware.vcloud.query.idrecords+xml")
+                        .href(URI.create("https://vcloudbeta.bluelock.com/api/catalogs/query?page=1&pageSize=25&format=idrecords"))
+                        .build())
+            .record(QueryResultCatalogRecord.builder()
+                        .ownerName("qunying.huang@enstratus.com")
+                        .owner(URI.create("https://vcloudbeta.bluelock.com/api/admin/user/967d317c-4273-4a95-b8a4-bf63b78e9c69"))
+                        .orgName("JClouds")
+                        .numberOfVAppTemplates(0)
+                        .numberOfMedia(0)
+                        .name("QunyingTestCatalog")
+                        .shared()
+                        .notPublished()
+                        .creationDate(dateService.iso8601DateParse("2012-02-07T00:16:28.323-05:00"))
+                        .href(URI.create("https://vcloudbeta.bluelock.com/api/catalog/7212e451-76e1-4631-b2de-ba1dfd8080e4"))
+                        .build())
+            .record(QueryResultCatalogRecord.builder()
+                        .ownerName("system")
+                        .owner(URI.create("https://vcloudbeta.bluelock.com/api/admin/user/0ebf2453-5e95-48ab-b223-02671965ee91"))
+                        .orgName("Bluelock")
+                        .numberOfVAppTemplates(0)
+                        .numberOfMedia(0)
+                        .name("Public")
+                        .notShared()
+                        .published()
+                        .creationDate(dateService.iso8601DateParse("2011-09-28T13:45:44.207-04:00"))
+                        .href(URI.create("https://vcloudbeta.bluelock.com/api/catalog/9e08c2f6-077a-42ce-bece-d5332e2ebb5c"))
+                        .build())
+            .record(QueryResultCatalogRecord.builder()
+                        .ownerName("adk@cloudsoftcorp.com")
+                        .owner(URI.create("https://vcloudbeta.bluelock.com/api/admin/user/e9eb1b29-0404-4c5e-8ef7-e584acc51da9"))
+                        .orgName("JClouds")
+                        .numberOfVAppTemplates(0)
+                        .numberOfMedia(0)
+                        .name("test")
+                        .shared()
+                        .notPublished()
+                        .creationDate(dateService.iso8601DateParse("2012-02-09T12:32:17.723-05:00"))
+                        .href(URI.create("https://vcloudbeta.bluelock.com/api/catalog/b7289d54-4ca4-497f-9a93-2d4afc97e3da"))
+                        .build())
+            .build();
+   }
 }
 		
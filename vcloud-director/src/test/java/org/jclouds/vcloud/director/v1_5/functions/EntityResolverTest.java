@@ -0,0 +1,183 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.vcloud.director.v1_5.functions;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.vcloud.director.v1_5.domain.Entity;
+import org.jclouds.vcloud.director.v1_5.domain.Link;
+import org.jclouds.vcloud.director.v1_5.loaders.ResolveEntity;
+import org.jclouds.vcloud.director.v1_5.user.VCloudDirectorAsyncApi;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Tests the EntityResolver
+ */
+@Test(groups = "unit", testName = "EntityResolverTest")
+public class EntityResolverTest {
+
+   private static final String VM = "urn:vcloud:vm:1a2b3c4d-0000-1111-2222-333344445555";
+   private static final String VDC = "urn:vcloud:vdc:6f312e42-0000-1111-2222-333344445555";
+   private static final String NETWORK = "urn:vcloud:network:0c0c0c0c-0000-1111-2222-333344445555";
+   private static final String VM_HREF = "https://vcloud.example.com/api/vApp/vm-1a2b3c4d-0000-1111-2222-333344445555";
+   private static final String VDC_HREF = "https://vcloud.example.com/api/vdc/6f312e42-0000-1111-2222-333344445555";
+
+   private ListeningExecutorService callers;
+
+   @BeforeMethod
+   public void createCallers() {
+      callers = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool());
+   }
+
+   @AfterMethod(alwaysRun = true)
+   public void shutdownCallers() {
+      callers.shutdownNow();
+   }
+
+   public void testLookupInProgressIsJoined() throws Exception {
+      SettableFuture<Entity> lookup = SettableFuture.create();
+      VCloudDirectorAsyncApi api = createMock(VCloudDirectorAsyncApi.class);
+      expect(api.resolveEntity(VM)).andReturn(lookup).once();
+      replay(api);
+      ResolveEntity loader = new ResolveEntity(api);
+      final EntityResolver resolver = new EntityResolver(cache(loader), loader);
+
+      Callable<Map<String, Entity>> resolveVm = new Callable<Map<String, Entity>>() {
+         @Override
+         public Map<String, Entity> call() {
+            return resolver.resolveAll(ImmutableList.of(VM));
+         }
+      };
+      Future<Map<String, Entity>> first = callers.submit(resolveVm);
+      while (loader.lookupCount() == 0) {
+         Uninterruptibles.sleepUninterruptibly(10, TimeUnit.MILLISECONDS);
+      }
+      Future<Map<String, Entity>> second = callers.submit(resolveVm);
+      while (loader.joinedCount() == 0) {
+         Uninterruptibles.sleepUninterruptibly(10, TimeUnit.MILLISECONDS);
+      }
+      Entity vm = entity(VM, VM_HREF);
+      lookup.set(vm);
+
+      assertSame(first.get(10, TimeUnit.SECONDS).get(VM), vm);
+      assertSame(second.get(10, TimeUnit.SECONDS).get(VM), vm);
+      assertSame(resolver.resolve(VM), vm);
+      verify(api);
+      EntityResolver.Stats stats = resolver.stats();
+      assertEquals(stats.getLookupCount(), 1);
+      assertEquals(stats.getJoinedCount(), 1);
+      // the lookups were loads of the cache, and the last resolve found the entity there
+      assertEquals(stats.getCacheStats().missCount(), 2);
+      assertEquals(stats.getCacheStats().loadSuccessCount(), 2);
+      assertEquals(stats.getCacheStats().hitCount(), 1);
+   }
+
+   public void testOnlyMissingUrnsAreLookedUp() {
+      Entity vdc = entity(VDC, VDC_HREF);
+      Entity vm = entity(VM, VM_HREF);
+      VCloudDirectorAsyncApi api = createMock(VCloudDirectorAsyncApi.class);
+      expect(api.resolveEntity(VM)).andReturn(Futures.immediateFuture(vm));
+      expect(api.resolveEntity(NETWORK)).andReturn(Futures.<Entity> immediateFuture(null));
+      replay(api);
+      ResolveEntity loader = new ResolveEntity(api);
+      LoadingCache<String, Entity> cache = cache(loader);
+      cache.put(VDC, vdc);
+      EntityResolver resolver = new EntityResolver(cache, loader);
+
+      Map<String, Entity> entities = resolver.resolveAll(ImmutableList.of(VDC, VM, NETWORK, VM));
+      assertEquals(entities.size(), 2);
+      assertSame(entities.get(VDC), vdc);
+      assertSame(entities.get(VM), vm);
+      assertSame(cache.getIfPresent(VM), vm);
+      verify(api);
+      assertEquals(resolver.stats().getLookupCount(), 2);
+   }
+
+   public void testUnknownUrnResolvesToNull() {
+      VCloudDirectorAsyncApi api = createMock(VCloudDirectorAsyncApi.class);
+      expect(api.resolveEntity(NETWORK)).andReturn(Futures.<Entity> immediateFuture(null));
+      replay(api);
+      ResolveEntity loader = new ResolveEntity(api);
+
+      assertNull(new EntityResolver(cache(loader), loader).resolve(NETWORK));
+      verify(api);
+   }
+
+   public void testLinkedEntitiesArePrefetched() {
+      SettableFuture<Entity> vmLookup = SettableFuture.create();
+      VCloudDirectorAsyncApi api = createMock(VCloudDirectorAsyncApi.class);
+      expect(api.resolveEntity(VDC)).andReturn(Futures.immediateFuture(entity(VDC, VM_HREF)));
+      expect(api.resolveEntity(VM)).andReturn(vmLookup).once();
+      replay(api);
+      ResolveEntity loader = new ResolveEntity(api);
+      EntityResolver resolver = new EntityResolver(cache(loader), loader);
+
+      resolver.resolve(VDC);
+      // the vm is looked up without the resolve waiting for it
+      assertEquals(resolver.stats().getPrefetchCount(), 1);
+      Entity vm = entity(VM, VM_HREF);
+      vmLookup.set(vm);
+
+      assertSame(resolver.resolve(VM), vm);
+      verify(api);
+      EntityResolver.Stats stats = resolver.stats();
+      assertEquals(stats.getLookupCount(), 2);
+      assertEquals(stats.getCacheStats().missCount(), 1);
+      assertEquals(stats.getCacheStats().hitCount(), 1);
+   }
+
+   public void testUrnOfHref() {
+      assertEquals(EntityResolver.urn(URI.create(VM_HREF)), VM);
+      assertEquals(EntityResolver.urn(URI.create(VDC_HREF)), VDC);
+      assertNull(EntityResolver.urn(URI.create("https://vcloud.example.com/api/entity/" + VM)));
+   }
+
+   private static LoadingCache<String, Entity> cache(ResolveEntity loader) {
+      return CacheBuilder.newBuilder().recordStats().build(loader);
+   }
+
+   private static Entity entity(String urn, String linkHref) {
+      return Entity.builder().id(urn).name(urn).href(URI.create("https://vcloud.example.com/api/entity/" + urn))
+               .link(Link.builder().rel(Link.Rel.ALTERNATE).href(URI.create(linkHref)).build()).build();
+   }
+}
@@ -0,0 +1,55 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.vcloud.director.v1_5.functions;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.jclouds.dmtf.ovf.SectionType;
+import org.jclouds.vcloud.director.v1_5.domain.Vm;
+import org.jclouds.vcloud.director.v1_5.domain.section.GuestCustomizationSection;
+import org.jclouds.vcloud.director.v1_5.domain.section.NetworkConnectionSection;
+import org.jclouds.vcloud.director.v1_5.domain.section.OperatingSystemSection;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the SectionForVApp
+ */
+@Test(groups = "unit", testName = "SectionForVAppTest")
+public class SectionForVAppTest {
+
+   private final OperatingSystemSection os = OperatingSystemSection.builder().info("os").build();
+   private final GuestCustomizationSection customization = GuestCustomizationSection.builder().info("guest")
+            .adminPassword("secret").build();
+   private final Vm vm = Vm.builder().section(os).section(customization).build();
+
+   public void testSectionOfType() {
+      assertEquals(new SectionForVApp<OperatingSystemSection>(OperatingSystemSection.class).apply(vm), os);
+      assertEquals(vm.getSection(GuestCustomizationSection.class), customization);
+   }
+
+   public void testSectionOfSupertypeIsTheFirst() {
+      assertEquals(vm.getSection(SectionType.class), os);
+   }
+
+   public void testMissingSectionIsNull() {
+      assertNull(vm.getSection(NetworkConnectionSection.class));
+      assertNull(Vm.builder().build().getSection(OperatingSystemSection.class));
+   }
+}
@@ -0,0 +1,165 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.vcloud.director.v1_5.functions;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.contains;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.testng.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.io.Payload;
+import org.jclouds.vcloud.director.v1_5.domain.File;
+import org.jclouds.vcloud.director.v1_5.domain.Link;
+import org.jclouds.vcloud.director.v1_5.domain.VAppTemplate;
+import org.jclouds.vcloud.director.v1_5.features.UploadAsyncApi;
+import org.jclouds.vcloud.director.v1_5.features.VAppTemplateApi;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Tests the UploadVAppTemplateFiles
+ */
+@Test(groups = "unit", testName = "UploadVAppTemplateFilesTest")
+public class UploadVAppTemplateFilesTest {
+
+   private static final URI TEMPLATE = URI.create("https://vcloud.example.com/api/vAppTemplate/vappTemplate-1");
+   private static final URI OVF_UPLOAD = URI.create("https://vcloud.example.com/transfer/1/descriptor.ovf");
+   private static final URI DISK_UPLOAD = URI.create("https://vcloud.example.com/transfer/1/disk1.vmdk");
+
+   public void testLargeFileIsSentInRangesAndFailedRangeAgain() throws Exception {
+      Map<String, java.io.File> local = localFiles();
+      UploadAsyncApi uploadApi = createMock(UploadAsyncApi.class);
+      VAppTemplateApi templateApi = createMock(VAppTemplateApi.class);
+      expect(templateApi.get(TEMPLATE)).andReturn(template(null)).once();
+      expect(uploadApi.upload(eq(OVF_UPLOAD), anyObject(Payload.class))).andReturn(done());
+      expect(templateApi.get(TEMPLATE)).andReturn(template(0L)).times(2);
+      expect(uploadApi.uploadRange(eq(DISK_UPLOAD), eq("bytes 0-3/10"), anyObject(Payload.class))).andReturn(done());
+      expect(uploadApi.uploadRange(eq(DISK_UPLOAD), eq("bytes 4-7/10"), anyObject(Payload.class))).andReturn(
+               Futures.<Void> immediateFailedFuture(new IOException("connection reset")));
+      expect(uploadApi.uploadRange(eq(DISK_UPLOAD), eq("bytes 4-7/10"), anyObject(Payload.class))).andReturn(done());
+      expect(uploadApi.uploadRange(eq(DISK_UPLOAD), eq("bytes 8-9/10"), anyObject(Payload.class))).andReturn(done());
+      replay(uploadApi, templateApi);
+
+      new UploadVAppTemplateFiles(uploadApi, templateApi).upload(TEMPLATE, local, 4, null);
+      verify(uploadApi, templateApi);
+   }
+
+   public void testUploadIsResumedFromTheBytesTransferred() throws Exception {
+      Map<String, java.io.File> local = localFiles();
+      UploadAsyncApi uploadApi = createMock(UploadAsyncApi.class);
+      VAppTemplateApi templateApi = createMock(VAppTemplateApi.class);
+      expect(templateApi.get(TEMPLATE)).andReturn(template(8L)).times(3);
+      expect(uploadApi.uploadRange(eq(DISK_UPLOAD), eq("bytes 8-9/10"), anyObject(Payload.class))).andReturn(done());
+      replay(uploadApi, templateApi);
+
+      new UploadVAppTemplateFiles(uploadApi, templateApi).upload(TEMPLATE, local, 4, null);
+      verify(uploadApi, templateApi);
+   }
+
+   public void testChunksAreSentOneAfterTheOtherWithoutGrowingTheStack() throws Exception {
+      int chunks = 10000;
+      Map<String, java.io.File> local = localFiles(Strings.repeat("0", chunks));
+      UploadAsyncApi uploadApi = createMock(UploadAsyncApi.class);
+      VAppTemplateApi templateApi = createMock(VAppTemplateApi.class);
+      expect(templateApi.get(TEMPLATE)).andReturn(template(0L)).times(3);
+      // the first chunk completes later, from another thread, the others at once
+      final SettableFuture<Void> first = SettableFuture.create();
+      expect(uploadApi.uploadRange(eq(DISK_UPLOAD), eq("bytes 0-0/" + chunks), anyObject(Payload.class))).andReturn(
+               first);
+      expect(uploadApi.uploadRange(eq(DISK_UPLOAD), contains("/" + chunks), anyObject(Payload.class))).andReturn(
+               done()).times(chunks - 1);
+      replay(uploadApi, templateApi);
+
+      new Thread() {
+         @Override
+         public void run() {
+            Uninterruptibles.sleepUninterruptibly(100, TimeUnit.MILLISECONDS);
+            first.set(null);
+         }
+      }.start();
+      new UploadVAppTemplateFiles(uploadApi, templateApi).upload(TEMPLATE, local, 1, null);
+      verify(uploadApi, templateApi);
+   }
+
+   public void testFileRegionPayloadReadsOnlyTheRegion() throws Exception {
+      java.io.File file = localFiles().get("disk1.vmdk");
+      Payload payload = new UploadVAppTemplateFiles.FileRegionPayload(file, 4, 4);
+      assertEquals(payload.getContentMetadata().getContentLength(), Long.valueOf(4));
+      assertEquals(new String(ByteStreams.toByteArray(payload.getInput()), Charsets.US_ASCII), "4567");
+   }
+
+   private static Map<String, java.io.File> localFiles() throws IOException {
+      return localFiles("0123456789");
+   }
+
+   private static Map<String, java.io.File> localFiles(String diskContent) throws IOException {
+      java.io.File dir = Files.createTempDir();
+      dir.deleteOnExit();
+      java.io.File ovf = new java.io.File(dir, "descriptor.ovf");
+      java.io.File disk = new java.io.File(dir, "disk1.vmdk");
+      Files.write("ovf", ovf, Charsets.US_ASCII);
+      Files.write(diskContent, disk, Charsets.US_ASCII);
+      ovf.deleteOnExit();
+      disk.deleteOnExit();
+      return ImmutableMap.of("descriptor.ovf", ovf, "disk1.vmdk", disk);
+   }
+
+   /**
+    * The template before the descriptor is uploaded, or after with the bytes of the disk received.
+    */
+   private static VAppTemplate template(Long diskBytesTransferred) {
+      File ovf = File.builder().name("descriptor.ovf").size(diskBytesTransferred == null ? -1L : 3L)
+               .bytesTransferred(diskBytesTransferred == null ? 0L : 3L)
+               .links(diskBytesTransferred == null ? ImmutableSet.of(upload(OVF_UPLOAD)) : ImmutableSet.<Link> of())
+               .build();
+      if (diskBytesTransferred == null) {
+         return VAppTemplate.builder().href(TEMPLATE).files(ImmutableSet.of(ovf)).build();
+      }
+      File disk = File.builder().name("disk1.vmdk").size(10L).bytesTransferred(diskBytesTransferred)
+               .links(ImmutableSet.of(upload(DISK_UPLOAD))).build();
+      return VAppTemplate.builder().href(TEMPLATE).files(ImmutableSet.of(ovf, disk)).build();
+   }
+
+   private static Link upload(URI href) {
+      return Link.builder().rel(Link.Rel.UPLOAD_DEFAULT).href(href).build();
+   }
+
+   private static ListenableFuture<Void> done() {
+      return Futures.immediateFuture(null);
+   }
+}
@@ -0,0 +1,135 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.vcloud.director.v1_5.predicates;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+
+import org.jclouds.vcloud.director.v1_5.VCloudDirectorException;
+import org.jclouds.vcloud.director.v1_5.VCloudDirectorMediaType;
+import org.jclouds.vcloud.director.v1_5.domain.Link;
+import org.jclouds.vcloud.director.v1_5.domain.Reference;
+import org.jclouds.vcloud.director.v1_5.domain.Task;
+import org.jclouds.vcloud.director.v1_5.domain.TasksList;
+import org.jclouds.vcloud.director.v1_5.domain.org.Org;
+import org.jclouds.vcloud.director.v1_5.features.OrgApi;
+import org.jclouds.vcloud.director.v1_5.features.TaskApi;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Tests the TaskWatcher
+ */
+@Test(groups = "unit", testName = "TaskWatcherTest")
+public class TaskWatcherTest {
+
+   private static final URI ORG = URI.create("https://vcloud.example.com/api/org/6f312e42");
+   private static final URI TASKS_LIST = URI.create("https://vcloud.example.com/api/tasksList/6f312e42");
+
+   public void testCompleteTaskIsNotPolled() throws Exception {
+      TaskApi taskApi = createMock(TaskApi.class);
+      OrgApi orgApi = createMock(OrgApi.class);
+      replay(taskApi, orgApi);
+      TaskWatcher watcher = new TaskWatcher(taskApi, orgApi);
+
+      Task done = task("1", Task.Status.SUCCESS);
+      assertSame(watcher.watch(done).get(), done);
+      assertEquals(watcher.size(), 0);
+      verify(taskApi, orgApi);
+   }
+
+   public void testTasksOfAnOrgArePolledInOneSweep() throws Exception {
+      TaskApi taskApi = createMock(TaskApi.class);
+      OrgApi orgApi = createMock(OrgApi.class);
+      expect(orgApi.get(ORG)).andReturn(org()).once();
+      expect(taskApi.getTasksList(TASKS_LIST)).andReturn(
+               tasksList(task("1", Task.Status.RUNNING), task("2", Task.Status.QUEUED)));
+      expect(taskApi.getTasksList(TASKS_LIST)).andReturn(
+               tasksList(task("1", Task.Status.SUCCESS), task("2", Task.Status.ERROR)));
+      replay(taskApi, orgApi);
+      TaskWatcher watcher = new TaskWatcher(taskApi, orgApi);
+      try {
+         ListenableFuture<Task> first = watcher.watch(task("1", Task.Status.QUEUED));
+         ListenableFuture<Task> second = watcher.watch(task("2", Task.Status.QUEUED));
+         assertSame(watcher.watch(task("1", Task.Status.RUNNING)), first);
+
+         watcher.sweep();
+         assertFalse(first.isDone());
+         assertFalse(second.isDone());
+
+         watcher.sweep();
+         assertEquals(first.get().getStatus(), Task.Status.SUCCESS);
+         try {
+            second.get();
+            fail("the task failed");
+         } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof VCloudDirectorException);
+         }
+         assertEquals(watcher.size(), 0);
+      } finally {
+         watcher.stop();
+      }
+      verify(taskApi, orgApi);
+   }
+
+   public void testTaskMissingFromTasksListIsPolledOnItsOwn() throws Exception {
+      TaskApi taskApi = createMock(TaskApi.class);
+      OrgApi orgApi = createMock(OrgApi.class);
+      expect(orgApi.get(ORG)).andReturn(org());
+      expect(taskApi.getTasksList(TASKS_LIST)).andReturn(tasksList());
+      Task done = task("3", Task.Status.SUCCESS);
+      expect(taskApi.get(done.getHref())).andReturn(done);
+      replay(taskApi, orgApi);
+      TaskWatcher watcher = new TaskWatcher(taskApi, orgApi);
+      try {
+         ListenableFuture<Task> future = watcher.watch(task("3", Task.Status.RUNNING));
+         watcher.sweep();
+         assertSame(future.get(), done);
+      } finally {
+         watcher.stop();
+      }
+      verify(taskApi, orgApi);
+   }
+
+   private static Task task(String id, Task.Status status) {
+      return Task.builder().href(URI.create("https://vcloud.example.com/api/task/" + id)).status(status)
+               .org(Reference.builder().href(ORG).type(VCloudDirectorMediaType.ORG).build()).build();
+   }
+
+   private static Org org() {
+      return Org.builder().href(ORG).name("org").fullName("org").link(Link.builder().rel(Link.Rel.DOWN)
+               .type(VCloudDirectorMediaType.TASKS_LIST).href(TASKS_LIST).build()).build();
+   }
+
+   private static TasksList tasksList(Task... tasks) {
+      return TasksList.builder().href(TASKS_LIST).name("tasks").tasks(ImmutableSet.copyOf(tasks)).build();
+   }
+}
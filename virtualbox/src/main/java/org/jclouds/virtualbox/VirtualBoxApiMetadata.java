@@ -22,6 +22,7 @@ import static org.jclouds.compute.config.ComputeServiceProperties.TEMPLATE;
 import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_DEFAULT_DIR;
 import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_GUEST_MEMORY;
 import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_IMAGES_DESCRIPTOR;
+import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_MAX_CONCURRENT_CLONES;
 import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_PRECONFIGURATION_URL;
 import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_WORKINGDIR;
 
@@ -66,6 +67,7 @@ public class VirtualBoxApiMetadata extends BaseApiMetadata {
 
       String ram = System.getProperty(VIRTUALBOX_GUEST_MEMORY, "512");
       properties.put(VIRTUALBOX_GUEST_MEMORY, ram);
+      properties.put(VIRTUALBOX_MAX_CONCURRENT_CLONES, "4");
       
       String yamlDescriptor = System.getProperty("test.virtualbox.image.descriptor.yaml", VIRTUALBOX_WORKINGDIR
                + File.separator + "images.yaml");
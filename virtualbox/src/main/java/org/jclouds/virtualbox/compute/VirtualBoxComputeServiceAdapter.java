@@ -27,6 +27,7 @@ import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_IMAGE
 import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_NODE_NAME_SEPARATOR;
 import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_NODE_PREFIX;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -43,11 +44,13 @@ import org.jclouds.compute.reference.ComputeServiceConstants;
 import org.jclouds.domain.Location;
 import org.jclouds.javax.annotation.Nullable;
 import org.jclouds.logging.Logger;
+import org.jclouds.virtualbox.domain.MachineSnapshot;
 import org.jclouds.virtualbox.domain.Master;
 import org.jclouds.virtualbox.domain.NodeSpec;
 import org.jclouds.virtualbox.domain.YamlImage;
 import org.jclouds.virtualbox.functions.admin.UnregisterMachineIfExistsAndForceDeleteItsMedia;
 import org.jclouds.virtualbox.util.MachineController;
+import org.jclouds.virtualbox.util.MachineSnapshots;
 import org.virtualbox_4_2.IMachine;
 import org.virtualbox_4_2.IProgress;
 import org.virtualbox_4_2.ISession;
@@ -62,6 +65,7 @@ import com.google.common.base.Throwables;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.inject.Singleton;
 
@@ -84,19 +88,21 @@ public class VirtualBoxComputeServiceAdapter implements ComputeServiceAdapter<IM
    private final Function<NodeSpec, NodeAndInitialCredentials<IMachine>> cloneCreator;
    private final Function<IMachine, Image> imachineToImage;
    private final MachineController machineController;
+   private final MachineSnapshots machineSnapshots;
 
    @Inject
    public VirtualBoxComputeServiceAdapter(Supplier<VirtualBoxManager> manager,
             Supplier<Map<Image, YamlImage>> imagesMapper, LoadingCache<Image, Master> mastersLoader,
             Function<NodeSpec, NodeAndInitialCredentials<IMachine>> cloneCreator,
             Function<IMachine, Image> imachineToImage,
-            MachineController machineController) {
+            MachineController machineController, MachineSnapshots machineSnapshots) {
       this.manager = checkNotNull(manager, "virtualbox manager can't be null");
       this.imagesToYamlImages = imagesMapper.get();
       this.mastersLoader = mastersLoader;
       this.cloneCreator = cloneCreator;
       this.imachineToImage = imachineToImage;
       this.machineController = machineController;
+      this.machineSnapshots = machineSnapshots;
    }
 
    @Override
@@ -118,25 +124,54 @@ public class VirtualBoxComputeServiceAdapter implements ComputeServiceAdapter<IM
 
    @Override
    public Iterable<IMachine> listNodes() {
-      return Iterables.filter(manager.get().getVBox().getMachines(), new Predicate<IMachine>() {
+      return listNodesMatching(new Predicate<MachineSnapshot>() {
          @Override
-         public boolean apply(IMachine arg0) {
-            return arg0.getName().startsWith(VIRTUALBOX_NODE_PREFIX);
+         public boolean apply(MachineSnapshot machine) {
+            return true;
          }
       });
    }
 
    @Override
    public Iterable<IMachine> listNodesByIds(final Iterable<String> ids) {
-      return filter(listNodes(), new Predicate<IMachine>() {
+      return listNodesMatching(new Predicate<MachineSnapshot>() {
 
          @Override
-         public boolean apply(IMachine machine) {
-            return contains(ids, machine.getId());
+         public boolean apply(MachineSnapshot machine) {
+            return contains(ids, machine.getName()) || contains(ids, machine.getId());
          }
       });
    }
 
+   /**
+    * Reads all the nodes at once, so that transforming them to nodes doesn't call vbox again. Only
+    * the name of the other machines, such as the masters, is read.
+    */
+   private Iterable<IMachine> listNodesMatching(Predicate<MachineSnapshot> filter) {
+      List<IMachine> candidates = Lists.newArrayList();
+      for (IMachine machine : manager.get().getVBox().getMachines()) {
+         if (isNode(machine)) {
+            candidates.add(machine);
+         }
+      }
+      List<IMachine> nodes = Lists.newArrayList();
+      for (Map.Entry<IMachine, MachineSnapshot> machine : machineSnapshots.getAll(candidates).entrySet()) {
+         if (filter.apply(machine.getValue())) {
+            nodes.add(machine.getKey());
+         }
+      }
+      return nodes;
+   }
+
+   private boolean isNode(IMachine machine) {
+      try {
+         return machine.getName().startsWith(VIRTUALBOX_NODE_PREFIX);
+      } catch (RuntimeException e) {
+         logger.debug("could not read the name of machine %s: %s", machine, e.getMessage());
+         return false;
+      }
+   }
+
    @Override
    public Iterable<Hardware> listHardwareProfiles() {
       Set<Hardware> hardware = Sets.newLinkedHashSet();
@@ -51,6 +51,11 @@ public interface VirtualBoxConstants {
    
    public static final String VIRTUALBOX_GUEST_MEMORY = "jclouds.virtualbox.guest.memory";
 
+   /**
+    * how many nodes can be cloned, booted and configured at the same time
+    */
+   public static final String VIRTUALBOX_MAX_CONCURRENT_CLONES = "jclouds.virtualbox.clones.max-concurrent";
+
    public static final String VIRTUALBOX_HOST_ID = "jclouds.virtualbox.hostid";
 
    public static final String VIRTUALBOX_WEBSERVER_IDENTITY = "jclouds.virtualbox.webserver.identity";
@@ -0,0 +1,214 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.virtualbox.domain;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.virtualbox_4_2.MachineState;
+import org.virtualbox_4_2.NetworkAttachmentType;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The attributes of an {@link org.virtualbox_4_2.IMachine} needed to describe it as a node, read
+ * once. Each getter of an IMachine is a call to vbox, these are not.
+ */
+public class MachineSnapshot {
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static class Builder {
+
+      private String id;
+      private String name;
+      private MachineState state;
+      private String osTypeId;
+      private String osDescription;
+      private boolean is64Bit;
+      private String guestUser;
+      private String guestPassword;
+      private ImmutableList.Builder<Nic> nics = ImmutableList.builder();
+
+      public Builder id(String id) {
+         this.id = id;
+         return this;
+      }
+
+      public Builder name(String name) {
+         this.name = name;
+         return this;
+      }
+
+      public Builder state(MachineState state) {
+         this.state = state;
+         return this;
+      }
+
+      public Builder osTypeId(String osTypeId) {
+         this.osTypeId = osTypeId;
+         return this;
+      }
+
+      public Builder osDescription(String osDescription) {
+         this.osDescription = osDescription;
+         return this;
+      }
+
+      public Builder is64Bit(boolean is64Bit) {
+         this.is64Bit = is64Bit;
+         return this;
+      }
+
+      public Builder guestUser(String guestUser) {
+         this.guestUser = guestUser;
+         return this;
+      }
+
+      public Builder guestPassword(String guestPassword) {
+         this.guestPassword = guestPassword;
+         return this;
+      }
+
+      public Builder addNic(Nic nic) {
+         this.nics.add(nic);
+         return this;
+      }
+
+      public MachineSnapshot build() {
+         return new MachineSnapshot(id, name, state, osTypeId, osDescription, is64Bit, guestUser, guestPassword,
+                  nics.build());
+      }
+   }
+
+   /**
+    * A network adapter of the machine, with its nat redirects when it is a NAT one.
+    */
+   public static class Nic {
+
+      private final long slot;
+      private final NetworkAttachmentType attachmentType;
+      private final String natHostIp;
+      private final List<String> natRedirects;
+
+      public Nic(long slot, NetworkAttachmentType attachmentType, @Nullable String natHostIp,
+               List<String> natRedirects) {
+         this.slot = slot;
+         this.attachmentType = checkNotNull(attachmentType, "attachmentType");
+         this.natHostIp = natHostIp;
+         this.natRedirects = ImmutableList.copyOf(checkNotNull(natRedirects, "natRedirects"));
+      }
+
+      public long getSlot() {
+         return slot;
+      }
+
+      public NetworkAttachmentType getAttachmentType() {
+         return attachmentType;
+      }
+
+      @Nullable
+      public String getNatHostIp() {
+         return natHostIp;
+      }
+
+      /**
+       * @return the redirects, as {@code name,protocol,hostAddress,hostPort,guestAddress,guestPort}
+       */
+      public List<String> getNatRedirects() {
+         return natRedirects;
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).omitNullValues().add("slot", slot).add("attachmentType", attachmentType)
+                  .add("natHostIp", natHostIp).add("natRedirects", natRedirects).toString();
+      }
+   }
+
+   private final String id;
+   private final String name;
+   private final MachineState state;
+   private final String osTypeId;
+   private final String osDescription;
+   private final boolean is64Bit;
+   private final String guestUser;
+   private final String guestPassword;
+   private final List<Nic> nics;
+
+   private MachineSnapshot(String id, String name, MachineState state, String osTypeId, String osDescription,
+            boolean is64Bit, String guestUser, String guestPassword, List<Nic> nics) {
+      this.id = checkNotNull(id, "id");
+      this.name = checkNotNull(name, "name");
+      this.state = checkNotNull(state, "state");
+      this.osTypeId = osTypeId;
+      this.osDescription = osDescription;
+      this.is64Bit = is64Bit;
+      this.guestUser = guestUser;
+      this.guestPassword = guestPassword;
+      this.nics = nics;
+   }
+
+   public String getId() {
+      return id;
+   }
+
+   public String getName() {
+      return name;
+   }
+
+   public MachineState getState() {
+      return state;
+   }
+
+   public String getOsTypeId() {
+      return osTypeId;
+   }
+
+   public String getOsDescription() {
+      return osDescription;
+   }
+
+   public boolean is64Bit() {
+      return is64Bit;
+   }
+
+   public String getGuestUser() {
+      return guestUser;
+   }
+
+   public String getGuestPassword() {
+      return guestPassword;
+   }
+
+   public List<Nic> getNics() {
+      return nics;
+   }
+
+   @Override
+   public String toString() {
+      return Objects.toStringHelper(this).add("id", id).add("name", name).add("state", state)
+               .add("osTypeId", osTypeId).add("nics", nics).toString();
+   }
+}
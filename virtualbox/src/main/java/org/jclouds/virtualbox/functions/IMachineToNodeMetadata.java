@@ -22,8 +22,6 @@ package org.jclouds.virtualbox.functions;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.jclouds.compute.util.ComputeServiceUtils.parseOsFamilyOrUnrecognized;
 import static org.jclouds.compute.util.ComputeServiceUtils.parseVersionOrReturnEmptyString;
-import static org.jclouds.virtualbox.config.VirtualBoxConstants.GUEST_OS_PASSWORD;
-import static org.jclouds.virtualbox.config.VirtualBoxConstants.GUEST_OS_USER;
 import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_NODE_NAME_SEPARATOR;
 import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_NODE_PREFIX;
 
@@ -44,17 +42,15 @@ import org.jclouds.domain.LocationScope;
 import org.jclouds.domain.LoginCredentials;
 import org.jclouds.javax.annotation.Nullable;
 import org.jclouds.logging.Logger;
+import org.jclouds.virtualbox.domain.MachineSnapshot;
+import org.jclouds.virtualbox.util.MachineSnapshots;
 import org.jclouds.virtualbox.util.NetworkUtils;
-import org.virtualbox_4_2.IGuestOSType;
 import org.virtualbox_4_2.IMachine;
-import org.virtualbox_4_2.INetworkAdapter;
 import org.virtualbox_4_2.MachineState;
 import org.virtualbox_4_2.NetworkAttachmentType;
-import org.virtualbox_4_2.VirtualBoxManager;
 
 import com.google.common.base.Function;
 import com.google.common.base.Splitter;
-import com.google.common.base.Supplier;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
@@ -67,22 +63,24 @@ public class IMachineToNodeMetadata implements Function<IMachine, NodeMetadata>
    @Named(ComputeServiceConstants.COMPUTE_LOGGER)
    protected Logger logger = Logger.NULL;
    
-   private final Supplier<VirtualBoxManager> virtualboxManager;
+   private final MachineSnapshots machineSnapshots;
    private final Map<MachineState, Status> toPortableNodeStatus;
    private final NetworkUtils networkUtils;
    private final Map<OsFamily, Map<String, String>> osVersionMap;
 
    @Inject
-   public IMachineToNodeMetadata(Supplier<VirtualBoxManager> virtualboxManager, Map<MachineState, NodeMetadata.Status> toPortableNodeStatus, 
-         NetworkUtils networkUtils, Map<OsFamily, Map<String, String>> osVersionMap) {
-      this.virtualboxManager = checkNotNull(virtualboxManager, "virtualboxManager");
+   public IMachineToNodeMetadata(MachineSnapshots machineSnapshots,
+         Map<MachineState, NodeMetadata.Status> toPortableNodeStatus, NetworkUtils networkUtils,
+         Map<OsFamily, Map<String, String>> osVersionMap) {
+      this.machineSnapshots = checkNotNull(machineSnapshots, "machineSnapshots");
       this.toPortableNodeStatus = checkNotNull(toPortableNodeStatus, "toPortableNodeStatus");
       this.networkUtils = checkNotNull(networkUtils, "networkUtils");
       this.osVersionMap = checkNotNull(osVersionMap, "osVersionMap");
    }
    
    @Override
-   public NodeMetadata apply(@Nullable IMachine vm) {
+   public NodeMetadata apply(@Nullable IMachine machine) {
+      MachineSnapshot vm = machineSnapshots.get(machine);
 
       String group = "";
       String name = "";
@@ -111,15 +109,14 @@ public class IMachineToNodeMetadata implements Function<IMachine, NodeMetadata>
       nodeMetadataBuilder.status(nodeState);
       nodeMetadataBuilder = getIpAddresses(vm, nodeMetadataBuilder);
       
-      IGuestOSType guestOSType = virtualboxManager.get().getVBox().getGuestOSType(vm.getOSTypeId());
-      OsFamily family = parseOsFamilyOrUnrecognized(guestOSType.getDescription());
-      String version = parseVersionOrReturnEmptyString(family, guestOSType.getDescription(), osVersionMap);
-      OperatingSystem os = OperatingSystem.builder().description(guestOSType.getDescription()).family(family)
-               .version(version).is64Bit(guestOSType.getIs64Bit()).build();
+      OsFamily family = parseOsFamilyOrUnrecognized(vm.getOsDescription());
+      String version = parseVersionOrReturnEmptyString(family, vm.getOsDescription(), osVersionMap);
+      OperatingSystem os = OperatingSystem.builder().description(vm.getOsDescription()).family(family)
+               .version(version).is64Bit(vm.is64Bit()).build();
       nodeMetadataBuilder.operatingSystem(os);
 
-      String guestOsUser = vm.getExtraData(GUEST_OS_USER);
-      String guestOsPassword = vm.getExtraData(GUEST_OS_PASSWORD);
+      String guestOsUser = vm.getGuestUser();
+      String guestOsPassword = vm.getGuestPassword();
       nodeMetadataBuilder.credentials(LoginCredentials.builder()
                                                       .user(guestOsUser)
                                                       .password(guestOsPassword)
@@ -127,36 +124,35 @@ public class IMachineToNodeMetadata implements Function<IMachine, NodeMetadata>
       return nodeMetadataBuilder.build();
    }
    
-   private NodeMetadataBuilder getIpAddresses(IMachine vm, NodeMetadataBuilder nodeMetadataBuilder) {
+   private NodeMetadataBuilder getIpAddresses(MachineSnapshot vm, NodeMetadataBuilder nodeMetadataBuilder) {
       List<String> publicIpAddresses = Lists.newArrayList();
       List<String> privateIpAddresses = Lists.newArrayList();
-      for(long slot = 0; slot < 4; slot ++) {
-         INetworkAdapter adapter = vm.getNetworkAdapter(slot);
-         if(adapter != null) {
-            if (adapter.getAttachmentType() == NetworkAttachmentType.NAT) {
-               String hostIP = adapter.getNATEngine().getHostIP();
-               if(!hostIP.isEmpty())
-                  publicIpAddresses.add(hostIP);
-               for (String nameProtocolnumberAddressInboudportGuestTargetport : adapter.getNATEngine().getRedirects()) {
-                  Iterable<String> stuff = Splitter.on(',').split(nameProtocolnumberAddressInboudportGuestTargetport);
-                  String protocolNumber = Iterables.get(stuff, 1);
-                  String hostAddress = Iterables.get(stuff, 2);
-                  String inboundPort = Iterables.get(stuff, 3);
-                  String targetPort = Iterables.get(stuff, 5);
-                  if ("1".equals(protocolNumber) && "22".equals(targetPort)) {
-                     int inPort = Integer.parseInt(inboundPort);
-                     publicIpAddresses.add(hostAddress);
-                     nodeMetadataBuilder.loginPort(inPort);
-                  }
+      for (MachineSnapshot.Nic adapter : vm.getNics()) {
+         if (adapter.getAttachmentType() == NetworkAttachmentType.NAT) {
+            String hostIP = adapter.getNatHostIp();
+            if(hostIP != null && !hostIP.isEmpty())
+               publicIpAddresses.add(hostIP);
+            for (String nameProtocolnumberAddressInboudportGuestTargetport : adapter.getNatRedirects()) {
+               Iterable<String> stuff = Splitter.on(',').split(nameProtocolnumberAddressInboudportGuestTargetport);
+               String protocolNumber = Iterables.get(stuff, 1);
+               String hostAddress = Iterables.get(stuff, 2);
+               String inboundPort = Iterables.get(stuff, 3);
+               String targetPort = Iterables.get(stuff, 5);
+               if ("1".equals(protocolNumber) && "22".equals(targetPort)) {
+                  int inPort = Integer.parseInt(inboundPort);
+                  publicIpAddresses.add(hostAddress);
+                  nodeMetadataBuilder.loginPort(inPort);
                }
-            } else if (adapter.getAttachmentType() == NetworkAttachmentType.Bridged) {
-               String clientIpAddress = networkUtils.getIpAddressFromNicSlot(vm.getName(), adapter.getSlot());
-               privateIpAddresses.add(clientIpAddress);
+            }
+         } else if (adapter.getAttachmentType() == NetworkAttachmentType.Bridged) {
+            String clientIpAddress = networkUtils.getIpAddressFromNicSlot(vm.getName(), adapter.getSlot());
+            privateIpAddresses.add(clientIpAddress);
 
-            } else if (adapter.getAttachmentType() == NetworkAttachmentType.HostOnly) {
-               String clientIpAddress = networkUtils.getValidHostOnlyIpFromVm(vm.getName());             
+         } else if (adapter.getAttachmentType() == NetworkAttachmentType.HostOnly) {
+            // the guest may not have reported it yet, don't wait for it when listing nodes
+            String clientIpAddress = networkUtils.getValidHostOnlyIpFromVmIfPresent(vm.getName());
+            if (clientIpAddress != null)
                publicIpAddresses.add(clientIpAddress);
-            }
          }
       }
       nodeMetadataBuilder.publicAddresses(publicIpAddresses);
@@ -16,13 +16,19 @@
  * specific language governing permissions and limitations
  * under the License.
  */
-
 package org.jclouds.virtualbox.functions;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.annotation.Resource;
 import javax.inject.Inject;
@@ -32,56 +38,161 @@ import javax.inject.Singleton;
 import org.jclouds.compute.reference.ComputeServiceConstants;
 import org.jclouds.logging.Logger;
 import org.jclouds.virtualbox.util.MachineNameOrIdAndNicSlot;
+import org.virtualbox_4_2.Holder;
+import org.virtualbox_4_2.IMachine;
 import org.virtualbox_4_2.VirtualBoxManager;
 
 import com.google.common.base.Strings;
 import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
 import com.google.common.cache.AbstractLoadingCache;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Striped;
 
 /**
  * A {@link LoadingCache} for ip addresses. If the requested ip address has been
- * previously extracted this returns it, if not it calls vbox api.
- * 
+ * previously extracted this returns it, if not it calls vbox api. Addresses are also put here as
+ * the guests report them, see {@link org.jclouds.virtualbox.util.GuestIpDiscovery}.
+ * <p/>
+ * A miss reads the addresses of all the nic slots of the machine in one call, so that the other
+ * slots are then hits. Entries expire after {@link #DEFAULT_TTL_SECONDS} seconds, or after
+ * {@link #DEFAULT_NEGATIVE_TTL_SECONDS} seconds when the guest didn't report an address, which
+ * is cached as an empty string. Misses for different machines are loaded concurrently.
+ *
  * @author Andrea Turli
- * 
+ *
  */
 @Singleton
 public class IpAddressesLoadingCache extends
       AbstractLoadingCache<MachineNameOrIdAndNicSlot, String> {
-  
+
+   public static final long DEFAULT_TTL_SECONDS = 60;
+   public static final long DEFAULT_NEGATIVE_TTL_SECONDS = 5;
+   public static final String IP_PROPERTIES = "/VirtualBox/GuestInfo/Net/*/V4/IP";
+   public static final Pattern IP_PROPERTY = Pattern.compile("/VirtualBox/GuestInfo/Net/([0-3])/V4/IP");
+
    @Resource
    @Named(ComputeServiceConstants.COMPUTE_LOGGER)
    protected Logger logger = Logger.NULL;
 
-   private final Map<MachineNameOrIdAndNicSlot, String> masters = Maps.newHashMap();
+   private final ConcurrentMap<MachineNameOrIdAndNicSlot, Entry> masters = Maps.newConcurrentMap();
+   // loads of the same machine wait for each other, so that it is only read once
+   private final Striped<Lock> loads = Striped.lock(16);
    private final Supplier<VirtualBoxManager> manager;
+   private final long ttlNanos;
+   private final long negativeTtlNanos;
+   private final Ticker ticker;
+
+   private final AtomicLong hits = new AtomicLong();
+   private final AtomicLong misses = new AtomicLong();
+   private final AtomicLong loadSuccesses = new AtomicLong();
+   private final AtomicLong loadFailures = new AtomicLong();
+   private final AtomicLong loadNanos = new AtomicLong();
+   private final AtomicLong expirations = new AtomicLong();
 
    @Inject
    public IpAddressesLoadingCache(Supplier<VirtualBoxManager> manager) {
+      this(manager, DEFAULT_TTL_SECONDS, DEFAULT_NEGATIVE_TTL_SECONDS, TimeUnit.SECONDS, Ticker.systemTicker());
+   }
+
+   public IpAddressesLoadingCache(Supplier<VirtualBoxManager> manager, long ttl, long negativeTtl, TimeUnit unit,
+            Ticker ticker) {
       this.manager = checkNotNull(manager, "vboxmanager");
+      this.ttlNanos = unit.toNanos(ttl);
+      this.negativeTtlNanos = unit.toNanos(negativeTtl);
+      this.ticker = checkNotNull(ticker, "ticker");
    }
 
    @Override
-   public synchronized String get(MachineNameOrIdAndNicSlot machineNameOrIdAndNicPort) throws ExecutionException {
-      if (masters.containsKey(machineNameOrIdAndNicPort)) {
-         return masters.get(machineNameOrIdAndNicPort);
+   public String get(MachineNameOrIdAndNicSlot machineNameOrIdAndNicPort) throws ExecutionException {
+      String ipAddress = getIfPresent(machineNameOrIdAndNicPort);
+      if (ipAddress != null) {
+         return ipAddress;
       }
-      String query = String.format("/VirtualBox/GuestInfo/Net/%s/V4/IP", machineNameOrIdAndNicPort.getSlotText());
-      String ipAddress = Strings.nullToEmpty(manager.get().getVBox()
-            .findMachine(machineNameOrIdAndNicPort.getMachineNameOrId()).getGuestPropertyValue(query));
-      if(!ipAddress.isEmpty()) {
-         logger.debug("<< vm(%s) has IP address(%s) at slot(%s)", machineNameOrIdAndNicPort.getMachineNameOrId(),
-            ipAddress, machineNameOrIdAndNicPort.getSlotText());
+      Lock lock = loads.get(machineNameOrIdAndNicPort.getMachineNameOrId());
+      lock.lock();
+      try {
+         // another thread may have loaded the machine in the meantime
+         Entry entry = masters.get(machineNameOrIdAndNicPort);
+         if (entry != null && !entry.isExpired(ticker.read())) {
+            return entry.ipAddress;
+         }
+         long start = ticker.read();
+         try {
+            IMachine machine = manager.get().getVBox().findMachine(machineNameOrIdAndNicPort.getMachineNameOrId());
+            load(machineNameOrIdAndNicPort.getMachineNameOrId(), machine);
+            loadSuccesses.incrementAndGet();
+         } catch (RuntimeException e) {
+            loadFailures.incrementAndGet();
+            throw new ExecutionException(e);
+         } finally {
+            loadNanos.addAndGet(ticker.read() - start);
+         }
+         return masters.get(machineNameOrIdAndNicPort).ipAddress;
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Reads the addresses of all the nic slots of the machine again, in one call.
+    */
+   public void refresh(IMachine machine) {
+      load(machine.getName(), machine);
+   }
+
+   @Override
+   public void refresh(MachineNameOrIdAndNicSlot machineNameOrIdAndNicPort) {
+      invalidate(machineNameOrIdAndNicPort);
+      getUnchecked(machineNameOrIdAndNicPort);
+   }
+
+   private void load(String machineNameOrId, IMachine machine) {
+      Holder<List<String>> names = new Holder<List<String>>();
+      Holder<List<String>> values = new Holder<List<String>>();
+      Holder<List<Long>> timestamps = new Holder<List<Long>>();
+      Holder<List<String>> flags = new Holder<List<String>>();
+      machine.enumerateGuestProperties(IP_PROPERTIES, names, values, timestamps, flags);
+
+      Map<Long, String> reported = Maps.newHashMap();
+      for (int i = 0; names.value != null && i < names.value.size(); i++) {
+         Matcher matcher = IP_PROPERTY.matcher(names.value.get(i));
+         if (matcher.matches()) {
+            reported.put(Long.valueOf(matcher.group(1)), Strings.nullToEmpty(values.value.get(i)));
+         }
+      }
+      for (long slot = 0; slot < 4; slot++) {
+         String ipAddress = Strings.nullToEmpty(reported.get(slot));
+         if (!ipAddress.isEmpty()) {
+            logger.debug("<< vm(%s) has IP address(%s) at slot(%s)", machineNameOrId, ipAddress, slot);
+         }
+         put(MachineNameOrIdAndNicSlot.fromParts(machineNameOrId, slot), ipAddress);
       }
-      masters.put(machineNameOrIdAndNicPort, ipAddress);
-      return ipAddress;
    }
 
    @Override
    public String getIfPresent(Object key) {
-      return masters.get((MachineNameOrIdAndNicSlot) key);
+      Entry entry = masters.get(key);
+      if (entry != null && entry.isExpired(ticker.read())) {
+         if (masters.remove(key, entry)) {
+            expirations.incrementAndGet();
+         }
+         entry = null;
+      }
+      if (entry == null) {
+         misses.incrementAndGet();
+         return null;
+      }
+      hits.incrementAndGet();
+      return entry.ipAddress;
+   }
+
+   @Override
+   public void put(MachineNameOrIdAndNicSlot machineNameOrIdAndNicPort, String ipAddress) {
+      long ttl = Strings.isNullOrEmpty(ipAddress) ? negativeTtlNanos : ttlNanos;
+      masters.put(machineNameOrIdAndNicPort, new Entry(Strings.nullToEmpty(ipAddress), ticker.read() + ttl));
    }
 
    @Override
@@ -89,4 +200,34 @@ public class IpAddressesLoadingCache extends
       masters.remove(key);
    }
 
+   @Override
+   public void invalidateAll() {
+      masters.clear();
+   }
+
+   @Override
+   public long size() {
+      return masters.size();
+   }
+
+   @Override
+   public CacheStats stats() {
+      return new CacheStats(hits.get(), misses.get(), loadSuccesses.get(), loadFailures.get(), loadNanos.get(),
+               expirations.get());
+   }
+
+   private static class Entry {
+      private final String ipAddress;
+      private final long expiresAt;
+
+      private Entry(String ipAddress, long expiresAt) {
+         this.ipAddress = ipAddress;
+         this.expiresAt = expiresAt;
+      }
+
+      private boolean isExpired(long now) {
+         return now - expiresAt >= 0;
+      }
+   }
+
 }
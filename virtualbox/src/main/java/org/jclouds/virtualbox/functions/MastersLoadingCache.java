@@ -22,7 +22,6 @@ package org.jclouds.virtualbox.functions;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
-import static org.jclouds.compute.options.RunScriptOptions.Builder.runAsRoot;
 import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_DEFAULT_DIR;
 import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_IMAGE_PREFIX;
 import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_NODE_NAME_SEPARATOR;
@@ -32,10 +31,9 @@ import static org.jclouds.virtualbox.util.MachineUtils.machineNotFoundException;
 
 import java.io.File;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 
 import javax.annotation.PostConstruct;
@@ -44,18 +42,12 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
-import org.jclouds.compute.callables.RunScriptOnNode.Factory;
-import org.jclouds.compute.domain.ExecResponse;
 import org.jclouds.compute.domain.Image;
-import org.jclouds.compute.domain.NodeMetadata;
 import org.jclouds.compute.reference.ComputeServiceConstants;
 import org.jclouds.domain.LoginCredentials;
 import org.jclouds.location.Provider;
 import org.jclouds.logging.Logger;
 import org.jclouds.rest.annotations.BuildVersion;
-import org.jclouds.scriptbuilder.domain.Statement;
-import org.jclouds.scriptbuilder.domain.StatementList;
-import org.jclouds.scriptbuilder.domain.Statements;
 import org.jclouds.virtualbox.domain.HardDisk;
 import org.jclouds.virtualbox.domain.IsoSpec;
 import org.jclouds.virtualbox.domain.Master;
@@ -66,9 +58,8 @@ import org.jclouds.virtualbox.domain.NetworkSpec;
 import org.jclouds.virtualbox.domain.StorageController;
 import org.jclouds.virtualbox.domain.VmSpec;
 import org.jclouds.virtualbox.domain.YamlImage;
+import org.jclouds.virtualbox.functions.admin.IsoCache;
 import org.jclouds.virtualbox.functions.admin.PreseedCfgServer;
-import org.jclouds.virtualbox.predicates.RetryIfSocketNotYetOpen;
-import org.jclouds.virtualbox.statements.Md5;
 import org.jclouds.virtualbox.util.NetworkUtils;
 import org.virtualbox_4_2.CleanupMode;
 import org.virtualbox_4_2.IMachine;
@@ -81,21 +72,26 @@ import com.google.common.base.CaseFormat;
 import com.google.common.base.Function;
 import com.google.common.base.Splitter;
 import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
 import com.google.common.cache.AbstractLoadingCache;
 import com.google.common.cache.LoadingCache;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
-import com.google.common.net.HostAndPort;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
  * A {@link LoadingCache} for masters. If the requested master has been
  * previously created this returns it, if not it coordinates its creation
- * including downloading isos and creating cache/config directories. This also
- * implements {@link Supplier} in order to provide jetty with the current image
- * (only one master can be created at a time).
+ * including downloading isos and creating cache/config directories.
+ * <p/>
+ * Each master is loaded once: callers asking for a master that is being built
+ * wait for that build, while masters of other images are built at the same
+ * time: the {@link PreseedCfgServer} serves the preseed.cfg of each image at its
+ * own url, and the {@link IsoCache} downloads the isos of all of them at once.
  * 
  * @author dralves, andrea turli
  * 
@@ -107,45 +103,35 @@ public class MastersLoadingCache extends AbstractLoadingCache<Image, Master> {
    @Named(ComputeServiceConstants.COMPUTE_LOGGER)
    protected Logger logger = Logger.NULL;
 
-   private final Map<String, Master> masters = Maps.newHashMap();
+   private final ConcurrentMap<String, ListenableFuture<Master>> masters = Maps.newConcurrentMap();
+   private final PreseedCfgServer preseedCfgServer;
+   private final IsoCache isoCache;
    private final Function<MasterSpec, IMachine> masterCreatorAndInstaller;
    private final Map<String, YamlImage> imageMapping;
    private final String workingDir;
-   private final String isosDir;
    private final Supplier<VirtualBoxManager> manager;
    private final String version;
    private final String preconfigurationUrl;
-
-   private final Factory runScriptOnNodeFactory;
-   private final RetryIfSocketNotYetOpen socketTester;
-   private final Supplier<NodeMetadata> host;
    private final Supplier<URI> providerSupplier;
-   private final HardcodedHostToHostNodeMetadata hardcodedHostToHostNodeMetadata;
 
    @Inject
    public MastersLoadingCache(@BuildVersion String version,
          @Named(VIRTUALBOX_PRECONFIGURATION_URL) String preconfigurationUrl,
          @Named(VIRTUALBOX_WORKINGDIR) String workingDir, Function<MasterSpec, IMachine> masterLoader,
          Supplier<Map<Image, YamlImage>> yamlMapper, Supplier<VirtualBoxManager> manager,
-         Factory runScriptOnNodeFactory, RetryIfSocketNotYetOpen socketTester, Supplier<NodeMetadata> host,
-         @Provider Supplier<URI> providerSupplier, HardcodedHostToHostNodeMetadata hardcodedHostToHostNodeMetadata) {
+         @Provider Supplier<URI> providerSupplier, PreseedCfgServer preseedCfgServer, IsoCache isoCache) {
       this.manager = checkNotNull(manager, "vboxmanager can't be null");
       this.masterCreatorAndInstaller = masterLoader;
       this.workingDir = workingDir == null ? VIRTUALBOX_DEFAULT_DIR : workingDir;
-      this.isosDir = workingDir + File.separator + "isos";
       this.imageMapping = Maps.newLinkedHashMap();
       for (Entry<Image, YamlImage> entry : yamlMapper.get().entrySet()) {
          this.imageMapping.put(entry.getKey().getId(), entry.getValue());
       }
       this.version = Iterables.get(Splitter.on('r').split(checkNotNull(version, "version")), 0);
       this.preconfigurationUrl = preconfigurationUrl;
-
-      this.runScriptOnNodeFactory = checkNotNull(runScriptOnNodeFactory, "runScriptOnNodeFactory");
-      this.socketTester = checkNotNull(socketTester, "socketTester");
-      this.socketTester.seconds(3L);
-      this.host = checkNotNull(host, "host");
       this.providerSupplier = checkNotNull(providerSupplier, "endpoint to virtualbox websrvd is needed");
-      this.hardcodedHostToHostNodeMetadata = hardcodedHostToHostNodeMetadata;
+      this.preseedCfgServer = checkNotNull(preseedCfgServer, "preseedCfgServer");
+      this.isoCache = checkNotNull(isoCache, "isoCache");
    }
 
    @PostConstruct
@@ -156,61 +142,60 @@ public class MastersLoadingCache extends AbstractLoadingCache<Image, Master> {
    }
 
    @Override
-   public synchronized Master get(Image key) throws ExecutionException {
-      // check if we have loaded this machine before
-      if (masters.containsKey(key.getId())) {
-         return masters.get(key.getId());
+   public Master get(Image key) throws ExecutionException {
+      SettableFuture<Master> building = SettableFuture.create();
+      ListenableFuture<Master> existing = masters.putIfAbsent(key.getId(), building);
+      if (existing != null) {
+         // loaded before, or being built by another thread
+         return Uninterruptibles.getUninterruptibly(existing);
       }
+      try {
+         building.set(loadMaster(key));
+      } catch (Throwable e) {
+         // let the next caller try again
+         masters.remove(key.getId(), building);
+         building.setException(e);
+         Throwables.propagateIfPossible(e, ExecutionException.class);
+         throw Throwables.propagate(e);
+      }
+      return Uninterruptibles.getUninterruptibly(building);
+   }
+
+   private Master loadMaster(Image key) throws ExecutionException {
       checkState(!key.getId().contains(VIRTUALBOX_NODE_NAME_SEPARATOR), "master image names cannot contain \""
             + VIRTUALBOX_NODE_NAME_SEPARATOR + "\"");
       String vmName = VIRTUALBOX_IMAGE_PREFIX + key.getId();
-      IMachine masterMachine;
-      Master master;
-      // ready the preseed file server
-      PreseedCfgServer server = new PreseedCfgServer();
       try {
          // try and find a master machine in vbox
-         masterMachine = manager.get().getVBox().findMachine(vmName);
-         master = Master.builder().machine(masterMachine).build();
+         IMachine masterMachine = manager.get().getVBox().findMachine(vmName);
+         return Master.builder().machine(masterMachine).build();
       } catch (VBoxException e) {
-         if (machineNotFoundException(e)) {
-            // machine was not found try to build one from a yaml file
-            YamlImage currentImage = checkNotNull(imageMapping.get(key.getId()), "currentImage");
-            URI preseedServer;
-            try {
-               preseedServer = new URI(preconfigurationUrl);
-               if (!socketTester.apply(HostAndPort.fromParts(preseedServer.getHost(), preseedServer.getPort()))) {
-                  server.start(preconfigurationUrl, currentImage.preseed_cfg);
-               }
-            } catch (URISyntaxException e1) {
-               logger.error("Cannot start the preseed server", e);
-               throw e;
-            }
-
-            MasterSpec masterSpec = buildMasterSpecFromYaml(currentImage, vmName);
-            masterMachine = masterCreatorAndInstaller.apply(masterSpec);
-            master = Master.builder().machine(masterMachine).spec(masterSpec).build();
-         } else {
+         if (!machineNotFoundException(e)) {
             logger.error("Problem during master creation", e);
             throw e;
          }
+      }
+      // machine was not found try to build one from a yaml file, isos are fetched and checked concurrently
+      YamlImage currentImage = checkNotNull(imageMapping.get(key.getId()), "currentImage");
+      String preseedUrl = preseedCfgServer.register(preconfigurationUrl, key.getId(), currentImage.preseed_cfg);
+      try {
+         MasterSpec masterSpec = buildMasterSpecFromYaml(currentImage, vmName, preseedUrl);
+         IMachine masterMachine = masterCreatorAndInstaller.apply(masterSpec);
+         return Master.builder().machine(masterMachine).spec(masterSpec).build();
       } finally {
-         server.stop();
+         preseedCfgServer.unregister(key.getId());
       }
-
-      masters.put(key.getId(), master);
-      return master;
    }
 
-   private MasterSpec buildMasterSpecFromYaml(YamlImage currentImage, String vmName) throws ExecutionException {
+   private MasterSpec buildMasterSpecFromYaml(YamlImage currentImage, String vmName, String preseedUrl)
+         throws ExecutionException {
       String guestAdditionsFileName = String.format("VBoxGuestAdditions_%s.iso", version);
-      String guestAdditionsIso = String.format("%s/%s", isosDir, guestAdditionsFileName);
       String guestAdditionsUri = "http://download.virtualbox.org/virtualbox/" + version + "/" + guestAdditionsFileName;
-      if (!new File(guestAdditionsIso).exists()) {
-         getFilePathOrDownload(guestAdditionsUri, null);
-      }
-      // check if the iso is here, download if not
-      String localIsoUrl = checkNotNull(getFilePathOrDownload(currentImage.iso, currentImage.iso_md5), "distro iso");
+      // check if the isos are here, download them at the same time if not
+      ListenableFuture<File> guestAdditionsIso = isoCache.fetch(URI.create(guestAdditionsUri), null);
+      ListenableFuture<File> distroIso = isoCache.fetch(URI.create(currentImage.iso), currentImage.iso_md5);
+      Uninterruptibles.getUninterruptibly(guestAdditionsIso);
+      String localIsoUrl = Uninterruptibles.getUninterruptibly(distroIso).getAbsolutePath();
       String adminDisk = workingDir + File.separator + vmName + ".vdi";
       HardDisk hardDisk = HardDisk.builder().diskpath(adminDisk).autoDelete(true).controllerPort(0).deviceSlot(1)
             .build();
@@ -231,7 +216,8 @@ public class MastersLoadingCache extends AbstractLoadingCache<Image, Master> {
 
       NetworkSpec networkSpec = NetworkSpec.builder().addNIC(networkInterfaceCard).build();
 
-      String installationSequence = currentImage.keystroke_sequence.replace("HOSTNAME", vmSpecification.getVmName());
+      String installationSequence = currentImage.keystroke_sequence.replace("HOSTNAME", vmSpecification.getVmName())
+            .replace("PRECONFIGURATION_URL", preseedUrl);
       return MasterSpec.builder()
                        .vm(vmSpecification)
                        .iso(IsoSpec.builder()
@@ -248,42 +234,18 @@ public class MastersLoadingCache extends AbstractLoadingCache<Image, Master> {
    }
 
    @Override
-   public synchronized Master getIfPresent(Object key) {
+   public Master getIfPresent(Object key) {
       checkArgument(key instanceof Image, "this cache is for entries who's keys are Images");
       Image image = Image.class.cast(key);
-      if (masters.containsKey(image.getId())) {
-         return masters.get(image.getId());
-      }
-      return null;
-   }
-
-   private String getFilePathOrDownload(String httpUrl, String expectedMd5) throws ExecutionException {
-      String fileName = httpUrl.substring(httpUrl.lastIndexOf('/') + 1, httpUrl.length());
-      URI provider = providerSupplier.get();
-      if (!socketTester.apply(HostAndPort.fromParts(provider.getHost(), provider.getPort()))) {
-         throw new RuntimeException("could not connect to virtualbox");
+      ListenableFuture<Master> master = masters.get(image.getId());
+      if (master == null || !master.isDone()) {
+         return null;
       }
-      File file = new File(isosDir, fileName);
-      List<Statement> statements = new ImmutableList.Builder<Statement>().add(
-            Statements.saveHttpResponseTo(URI.create(httpUrl), isosDir, fileName)).build();
-      StatementList statementList = new StatementList(statements);
-      NodeMetadata hostNode = checkNotNull(hardcodedHostToHostNodeMetadata.apply(host.get()), "hostNode");
-      ListenableFuture<ExecResponse> future = runScriptOnNodeFactory.submit(hostNode, statementList,
-            runAsRoot(false));
-      Futures.getUnchecked(future);
-
-      if (expectedMd5 != null) {
-         String filePath = isosDir + File.separator + fileName;
-         ListenableFuture<ExecResponse> md5future = runScriptOnNodeFactory.submit(hostNode, new Md5(filePath),
-               runAsRoot(false));
-
-         ExecResponse responseMd5 = Futures.getUnchecked(md5future);
-         assert responseMd5.getExitStatus() == 0 : hostNode.getId() + ": " + responseMd5;
-         checkNotNull(responseMd5.getOutput(), "iso_md5 missing");
-         String actualMd5 = responseMd5.getOutput().trim();
-         checkState(actualMd5.equals(expectedMd5), "md5 of %s is %s but expected %s", filePath, actualMd5, expectedMd5);
+      try {
+         return Futures.getUnchecked(master);
+      } catch (UncheckedExecutionException e) {
+         return null;
       }
-      return file.getAbsolutePath();
    }
 
    private String getOsTypeId(String os_family, boolean os_64bit) {
@@ -19,6 +19,7 @@
 
 package org.jclouds.virtualbox.functions;
 
+ import com.google.common.annotations.VisibleForTesting;
  import com.google.common.base.*;
  import com.google.common.collect.ImmutableSet;
  import com.google.common.collect.Iterables;
@@ -40,6 +41,7 @@ package org.jclouds.virtualbox.functions;
  import org.jclouds.virtualbox.util.NetworkUtils;
  import org.virtualbox_4_2.*;
  import com.google.common.collect.ImmutableList;
+ import com.google.common.collect.Maps;
 
  import javax.annotation.Resource;
  import javax.inject.Inject;
@@ -48,14 +50,20 @@ package org.jclouds.virtualbox.functions;
 
  import java.io.File;
  import java.io.IOException;
+ import java.util.concurrent.ConcurrentMap;
+ import java.util.concurrent.Semaphore;
 
  import static com.google.common.base.Preconditions.checkNotNull;
  import static com.google.common.base.Preconditions.checkState;
  import static org.jclouds.virtualbox.config.VirtualBoxConstants.*;
 
 /**
- * Creates nodes, by cloning a master vm and based on the provided {@link NodeSpec}. Must be
- * synchronized mainly because of snapshot creation (must be synchronized on a per-master-basis).
+ * Creates nodes, by cloning a master vm and based on the provided {@link NodeSpec}.
+ * <p/>
+ * Each master is snapshotted once, and all its nodes are linked clones of that snapshot. Taking the
+ * snapshot is the only step synchronized (per master): cloning, booting and configuring nodes run
+ * concurrently, at most {@link org.jclouds.virtualbox.config.VirtualBoxConstants#VIRTUALBOX_MAX_CONCURRENT_CLONES}
+ * at a time.
  * 
  * @author David Alves, Andrea Turli
  * 
@@ -74,13 +82,16 @@ public class NodeCreator implements Function<NodeSpec, NodeAndInitialCredentials
    private final NetworkUtils networkUtils;
    private final int ram;
    private final String workingDir;
+   private final Semaphore clonePermits;
+   private final ConcurrentMap<String, Object> snapshotLocks = Maps.newConcurrentMap();
    
    @Inject
    public NodeCreator(Supplier<VirtualBoxManager> manager, Function<CloneSpec, IMachine> cloner,
             MachineUtils machineUtils, MachineController machineController,
             NetworkUtils networkUtils,
             @Named(VIRTUALBOX_GUEST_MEMORY) String ram,
-            @Named(VIRTUALBOX_WORKINGDIR) String workingDir) {
+            @Named(VIRTUALBOX_WORKINGDIR) String workingDir,
+            @Named(VIRTUALBOX_MAX_CONCURRENT_CLONES) String maxConcurrentClones) {
       this.manager = checkNotNull(manager, "manager");
       this.cloner = checkNotNull(cloner, "cloner");
       this.networkUtils = checkNotNull(networkUtils, "networkUtils");
@@ -88,17 +99,29 @@ public class NodeCreator implements Function<NodeSpec, NodeAndInitialCredentials
       this.machineController = checkNotNull(machineController, "machineController");
       this.ram = checkNotNull(Integer.valueOf(ram), "ram");
       this.workingDir = checkNotNull(workingDir, "workingDir");
+      this.clonePermits = new Semaphore(Integer.parseInt(checkNotNull(maxConcurrentClones, "maxConcurrentClones")),
+               true);
    }
 
    @Override
-   public synchronized NodeAndInitialCredentials<IMachine> apply(NodeSpec nodeSpec) {
+   public NodeAndInitialCredentials<IMachine> apply(NodeSpec nodeSpec) {
       checkNotNull(nodeSpec, "NodeSpec");
       Master master = checkNotNull(nodeSpec.getMaster(), "Master");
+      snapshotMaster(master);
+      clonePermits.acquireUninterruptibly();
+      try {
+         return cloneAndConfigure(nodeSpec, master);
+      } finally {
+         clonePermits.release();
+      }
+   }
+
+   @VisibleForTesting
+   NodeAndInitialCredentials<IMachine> cloneAndConfigure(NodeSpec nodeSpec, Master master) {
       IMachine masterMachine = master.getMachine();
       String guestOsUser = masterMachine.getExtraData(GUEST_OS_USER);
       String guestOsPassword = masterMachine.getExtraData(GUEST_OS_PASSWORD);
 
-      cleanUpMaster(master);
       CloneSpec cloneSpec = configureCloneSpec(nodeSpec, guestOsUser, guestOsPassword);
       IMachine clone = cloner.apply(cloneSpec);
       String cloneName =  cloneSpec.getVmSpec().getVmName();
@@ -164,8 +187,24 @@ public class NodeCreator implements Function<NodeSpec, NodeAndInitialCredentials
               .vm(cloneVmSpec).build();
    }
 
-   private void cleanUpMaster(Master master) {
-      deleteExistingSnapshot(master);
+   /**
+    * Takes the snapshot the nodes of the master are linked to, unless it was already taken. Nodes
+    * of the same master wait for each other here, nodes of different masters don't.
+    */
+   private void snapshotMaster(Master master) {
+      String masterName = master.getMachine().getName();
+      Object lock = snapshotLocks.get(masterName);
+      if (lock == null) {
+         Object newLock = new Object();
+         lock = snapshotLocks.putIfAbsent(masterName, newLock);
+         if (lock == null) {
+            lock = newLock;
+         }
+      }
+      synchronized (lock) {
+         new TakeSnapshotIfNotAlreadyAttached(manager, "snapshotName", "snapshotDesc", logger).apply(master
+                  .getMachine());
+      }
    }
 
    private void reconfigureHostOnlyInterfaceIfNeeded(final String username, final String password,
@@ -204,7 +243,7 @@ public class NodeCreator implements Function<NodeSpec, NodeAndInitialCredentials
       }
    }
 
-   private File copyScriptToWorkingDir(String folder, String scriptName) {
+   private synchronized File copyScriptToWorkingDir(String folder, String scriptName) {
       File scriptFile = new File(workingDir + "/conf/" + "/" + folder + "/" + scriptName);
       scriptFile.getParentFile().mkdirs();
       if (!scriptFile.exists()) {
@@ -226,15 +265,15 @@ public class NodeCreator implements Function<NodeSpec, NodeAndInitialCredentials
          public Void apply(ISession session) {
             String scriptName = scriptFile.getName();
 
-            manager.get().getSessionObject().getConsole().getGuest()
+            session.getConsole().getGuest()
                     .createSession(username, password, null, null)
                     .copyTo(scriptFile.getAbsolutePath(), "/tmp/" + scriptName, null);
 
-            manager.get().getSessionObject().getConsole().getGuest()
+            session.getConsole().getGuest()
                     .createSession(username, password, null, null)
                     .processCreate("/bin/chmod", ImmutableList.of("777", "/tmp/" + scriptName), null, null, 5 * 1000l);
 
-            manager.get().getSessionObject().getConsole().getGuest()
+            session.getConsole().getGuest()
                     .createSession(username, password, null, null)
                     .processCreate("/bin/sh", ImmutableList.of("/tmp/" + scriptName), null, null, 5 * 1000l);
             return null;
@@ -248,22 +287,6 @@ public class NodeCreator implements Function<NodeSpec, NodeAndInitialCredentials
                + nodeSpec.getTag() + VIRTUALBOX_NODE_NAME_SEPARATOR + nodeSpec.getName();
    }
 
-   private void deleteExistingSnapshot(Master master) {
-      if (master.getMachine().getCurrentSnapshot() != null) {
-         ISession session;
-         try {
-            session = manager.get().getSessionObject();
-            master.getMachine().lockMachine(session, LockType.Write);
-            IProgress progress = session.getConsole().deleteSnapshot(master.getMachine().getCurrentSnapshot().getId());
-            progress.waitForCompletion(-1);
-            session.unlockMachine();
-         } catch (Exception e) {
-            throw new RuntimeException("error opening vbox machine session: " + e.getMessage(), e);
-         }
-         logger.debug("<< deleted an existing snapshot of vm(%s)", master.getMachine().getName());
-      }
-   }
-
    private NodeMetadata buildPartialNodeMetadata(IMachine clone, String guestOsUser, String guestOsPassword) {
       NodeMetadataBuilder nodeMetadataBuilder = new NodeMetadataBuilder();
       nodeMetadataBuilder.id(clone.getName());
@@ -0,0 +1,242 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.virtualbox.functions.admin;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_WORKINGDIR;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Resource;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.Constants;
+import org.jclouds.compute.reference.ComputeServiceConstants;
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.logging.Logger;
+import org.jclouds.rest.HttpClient;
+import org.jclouds.virtualbox.util.Backoff;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import com.google.common.net.HttpHeaders;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Downloads the isos into {@code <workingDir>/isos}, each one once however many masters need it.
+ * An iso is stored under its md5 when it is known, else under its url.
+ * <p/>
+ * Isos are downloaded in the background, several at a time. A transfer goes to a {@code .part}
+ * file which is resumed with a ranged request if the transfer breaks, even by a later process, and
+ * the md5 is computed while the bytes are written. Isos are recorded in the {@link IsoManifest} by
+ * md5, so an iso whose md5 is known is not downloaded again even from another url.
+ */
+@Singleton
+public class IsoCache {
+
+   public static final int MAX_ATTEMPTS = 3;
+
+   @Resource
+   @Named(ComputeServiceConstants.COMPUTE_LOGGER)
+   protected Logger logger = Logger.NULL;
+
+   private final File isosDir;
+   private final HttpClient http;
+   private final IsoManifest isoManifest;
+   private final ListeningExecutorService userExecutor;
+   private final ConcurrentMap<String, ListenableFuture<File>> fetches = Maps.newConcurrentMap();
+
+   @Inject
+   public IsoCache(@Named(VIRTUALBOX_WORKINGDIR) String workingDir, HttpClient http, IsoManifest isoManifest,
+            @Named(Constants.PROPERTY_USER_THREADS) ListeningExecutorService userExecutor) {
+      this.isosDir = new File(checkNotNull(workingDir, "workingDir"), "isos");
+      this.http = checkNotNull(http, "http");
+      this.isoManifest = checkNotNull(isoManifest, "isoManifest");
+      this.userExecutor = checkNotNull(userExecutor, "userExecutor");
+   }
+
+   /**
+    * Returns the iso at the url, downloading it in the background unless it is already here. When
+    * an md5 is given, the iso is checked against it, and downloaded again if it does not match.
+    */
+   public ListenableFuture<File> fetch(final URI uri, @Nullable final String md5) {
+      // isos of different urls may have the same name
+      final String key = md5 != null ? md5 : uri.toString();
+      final String fileName = fileName(uri, md5);
+      ListenableFuture<File> existing = fetches.get(key);
+      if (existing != null) {
+         return existing;
+      }
+      ListenableFutureTask<File> fetch = ListenableFutureTask.create(new Callable<File>() {
+         @Override
+         public File call() throws IOException {
+            return fetch(uri, fileName, md5);
+         }
+      });
+      existing = fetches.putIfAbsent(key, fetch);
+      if (existing != null) {
+         return existing;
+      }
+      final ListenableFuture<File> fetching = fetch;
+      Futures.addCallback(fetching, new FutureCallback<File>() {
+         @Override
+         public void onSuccess(File result) {
+         }
+
+         @Override
+         public void onFailure(Throwable t) {
+            // let the next caller try again
+            fetches.remove(key, fetching);
+         }
+      });
+      userExecutor.execute(fetch);
+      return fetch;
+   }
+
+   /**
+    * Names the iso after its md5 when it is known, else after its url, followed by the name in the
+    * url.
+    */
+   static String fileName(URI uri, @Nullable String md5) {
+      String prefix = md5 != null ? md5 : Hashing.md5().hashString(uri.toString(), Charsets.UTF_8).toString();
+      return prefix + "-" + new File(uri.getPath()).getName();
+   }
+
+   private File fetch(URI uri, String fileName, String md5) throws IOException {
+      File iso = new File(isosDir, fileName);
+      if (iso.isFile()) {
+         if (md5 == null || md5.equals(isoManifest.md5(iso))) {
+            return iso;
+         }
+         logger.warn("md5 of %s does not match %s, downloading it again", iso, md5);
+         isoManifest.forget(iso);
+      }
+      if (md5 != null) {
+         File same = isoManifest.find(md5);
+         if (same != null) {
+            logger.debug("<< %s has the md5 of %s, not downloading it", same, uri);
+            return same;
+         }
+      }
+      download(uri, iso, md5);
+      return iso;
+   }
+
+   private void download(URI uri, File iso, String expectedMd5) throws IOException {
+      File part = new File(iso.getPath() + ".part");
+      Files.createParentDirs(part);
+      Backoff backoff = new Backoff(1, 30, TimeUnit.SECONDS);
+      for (int attempt = 1;; attempt++) {
+         boolean resumed = part.length() > 0;
+         String md5;
+         try {
+            md5 = transfer(uri, part);
+         } catch (IOException e) {
+            if (attempt == MAX_ATTEMPTS) {
+               throw e;
+            }
+            logger.warn("download of %s broke at %s bytes, resuming it: %s", uri, part.length(), e.getMessage());
+            // the network or the server may need a moment to recover
+            backoff.pause();
+            continue;
+         } catch (HttpResponseException e) {
+            // the part may be longer than the file now is, so start again
+            if (!resumed || attempt == MAX_ATTEMPTS) {
+               throw e;
+            }
+            logger.warn("could not resume the download of %s, starting again: %s", uri, e.getMessage());
+            part.delete();
+            continue;
+         }
+         if (expectedMd5 != null && !expectedMd5.equals(md5)) {
+            part.delete();
+            // the part may have been written by another version of the file
+            if (!resumed || attempt == MAX_ATTEMPTS) {
+               throw new IllegalStateException(String.format("md5 of %s is %s but expected %s", uri, md5,
+                        expectedMd5));
+            }
+            logger.warn("md5 of %s is %s but expected %s, downloading it again", uri, md5, expectedMd5);
+            continue;
+         }
+         iso.delete();
+         Files.move(part, iso);
+         isoManifest.record(iso, md5);
+         logger.debug("<< downloaded %s to %s, md5 %s", uri, iso, md5);
+         return;
+      }
+   }
+
+   /**
+    * Transfers the rest of the file into the part, asking only for the bytes it does not have yet.
+    *
+    * @return the md5 of the whole file
+    */
+   private String transfer(URI uri, File part) throws IOException {
+      long offset = part.length();
+      HttpRequest.Builder<?> request = HttpRequest.builder().method("GET").endpoint(uri);
+      if (offset > 0) {
+         request.addHeader(HttpHeaders.RANGE, "bytes=" + offset + "-");
+      }
+      logger.debug(">> downloading %s from byte %s", uri, offset);
+      HttpResponse response = http.invoke(request.build());
+      InputStream in = checkNotNull(response.getPayload(), "%s has no content", uri).getInput();
+      OutputStream out = null;
+      try {
+         Hasher md5 = Hashing.md5().newHasher();
+         // a server which does not support ranges sends the whole file
+         boolean append = offset > 0 && response.getStatusCode() == 206;
+         if (append) {
+            Files.copy(part, Funnels.asOutputStream(md5));
+         }
+         out = new FileOutputStream(part, append);
+         byte[] buffer = new byte[64 * 1024];
+         for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+            md5.putBytes(buffer, 0, read);
+         }
+         out.close();
+         return md5.hash().toString();
+      } finally {
+         Closeables.closeQuietly(out);
+         Closeables.closeQuietly(in);
+      }
+   }
+}
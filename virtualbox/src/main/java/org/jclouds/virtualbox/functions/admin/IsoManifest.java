@@ -0,0 +1,170 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.virtualbox.functions.admin;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_WORKINGDIR;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Properties;
+
+import javax.annotation.Resource;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.compute.reference.ComputeServiceConstants;
+import org.jclouds.logging.Logger;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+/**
+ * Remembers the md5 of the isos in {@code <workingDir>/isos}, in {@code isos/manifest.properties},
+ * so that an iso is only hashed again when its size or modification time changed. The isos can
+ * also be looked up by md5.
+ */
+@Singleton
+public class IsoManifest {
+
+   public static final String MANIFEST = "manifest.properties";
+
+   @Resource
+   @Named(ComputeServiceConstants.COMPUTE_LOGGER)
+   protected Logger logger = Logger.NULL;
+
+   private final File isosDir;
+   private final File manifestFile;
+
+   // guarded by this
+   private Properties entries;
+
+   @Inject
+   public IsoManifest(@Named(VIRTUALBOX_WORKINGDIR) String workingDir) {
+      this.isosDir = new File(checkNotNull(workingDir, "workingDir"), "isos");
+      this.manifestFile = new File(isosDir, MANIFEST);
+   }
+
+   /**
+    * Returns the md5 of the iso, hashing it only if it is not in the manifest or changed since it
+    * was recorded.
+    */
+   public String md5(File iso) {
+      String recorded = recordedMd5(iso);
+      if (recorded != null) {
+         return recorded;
+      }
+      logger.debug(">> hashing %s", iso);
+      String md5;
+      try {
+         md5 = Files.hash(iso, Hashing.md5()).toString();
+      } catch (IOException e) {
+         throw Throwables.propagate(e);
+      }
+      record(iso, md5);
+      logger.debug("<< md5 of %s is %s", iso, md5);
+      return md5;
+   }
+
+   /**
+    * Returns the md5 recorded for the iso, or null if there is none or the iso changed since.
+    */
+   public synchronized String recordedMd5(File iso) {
+      String entry = load().getProperty(iso.getName());
+      if (entry == null || !iso.isFile()) {
+         return null;
+      }
+      List<String> fields = ImmutableList.copyOf(Splitter.on(',').split(entry));
+      if (fields.size() != 3 || !fields.get(1).equals(String.valueOf(iso.length()))
+               || !fields.get(2).equals(String.valueOf(iso.lastModified()))) {
+         return null;
+      }
+      return fields.get(0);
+   }
+
+   /**
+    * Returns an iso of the directory recorded with the given md5, or null if there is none. The
+    * same content is then never downloaded twice, even from different urls.
+    */
+   public synchronized File find(String md5) {
+      for (String name : load().stringPropertyNames()) {
+         File iso = new File(isosDir, name);
+         if (md5.equals(recordedMd5(iso))) {
+            return iso;
+         }
+      }
+      return null;
+   }
+
+   public synchronized void record(File iso, String md5) {
+      load().setProperty(iso.getName(), Joiner.on(',').join(md5, iso.length(), iso.lastModified()));
+      save();
+   }
+
+   public synchronized void forget(File iso) {
+      if (load().remove(iso.getName()) != null) {
+         save();
+      }
+   }
+
+   private Properties load() {
+      if (entries == null) {
+         entries = new Properties();
+         if (manifestFile.isFile()) {
+            InputStream in = null;
+            try {
+               in = new FileInputStream(manifestFile);
+               entries.load(in);
+            } catch (IOException e) {
+               logger.warn(e, "could not read %s, isos will be hashed again", manifestFile);
+            } finally {
+               Closeables.closeQuietly(in);
+            }
+         }
+      }
+      return entries;
+   }
+
+   private void save() {
+      File temp = new File(manifestFile.getPath() + ".tmp");
+      OutputStream out = null;
+      try {
+         isosDir.mkdirs();
+         out = new FileOutputStream(temp);
+         entries.store(out, "md5,length,lastModified of the isos in this directory");
+         out.close();
+         Files.move(temp, manifestFile);
+      } catch (IOException e) {
+         logger.warn(e, "could not write %s", manifestFile);
+      } finally {
+         Closeables.closeQuietly(out);
+      }
+   }
+}
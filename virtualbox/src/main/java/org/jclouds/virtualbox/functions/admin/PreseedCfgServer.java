@@ -21,7 +21,12 @@ package org.jclouds.virtualbox.functions.admin;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.inject.Named;
+import javax.inject.Singleton;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -29,43 +34,123 @@ import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.jclouds.compute.reference.ComputeServiceConstants;
+import org.jclouds.logging.Logger;
 
+import com.google.common.base.Splitter;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 
 /**
  * Sets up jetty so that it can serve the preseed.cfg file to automate master creation.
+ * <p/>
+ * Jetty is started once and serves the preseed.cfg of every image being installed, at
+ * {@code <preconfigurationUrl>/<imageId>/preseed.cfg}, so that masters of different images can be
+ * installed at the same time.
  * 
  * @author Andrea Turli, David Alves
  */
+@Singleton
 public class PreseedCfgServer {
 
+   public static final String PRESEED_CFG = "preseed.cfg";
+
+   @Resource
+   @Named(ComputeServiceConstants.COMPUTE_LOGGER)
+   protected Logger logger = Logger.NULL;
+
+   private final ConcurrentMap<String, String> preseedCfgs = Maps.newConcurrentMap();
+   // served on any other path
+   private volatile String defaultPreseedCfg;
+   // guarded by this
    private Server jetty;
 
-   public void start(String preconfigurationUrl, final String preseedCfg) {
-      this.jetty = new Server(URI.create(preconfigurationUrl).getPort());
+   /**
+    * Serves the preseed.cfg on any path.
+    * 
+    * @throws IllegalStateException
+    *            if jetty could not be started, for instance because the port is in use
+    */
+   public void start(String preconfigurationUrl, String preseedCfg) {
+      this.defaultPreseedCfg = preseedCfg;
+      start(URI.create(preconfigurationUrl).getPort());
+   }
+
+   /**
+    * Serves the preseed.cfg of the image until it is {@link #unregister(String) unregistered},
+    * starting jetty if needed.
+    * 
+    * @return the url the preseed.cfg of the image is served at
+    * @throws IllegalStateException
+    *            if jetty could not be started, for instance because the port is in use
+    */
+   public String register(String preconfigurationUrl, String imageId, String preseedCfg) {
+      preseedCfgs.put(imageId, preseedCfg);
       try {
-         // since we're only serving the preseed.cfg file respond to all requests with it
-         jetty.setHandler(new AbstractHandler() {
-            @Override
-            public void handle(String target, Request baseRequest, HttpServletRequest request,
-                     HttpServletResponse response) throws IOException, ServletException {
-               response.setContentType("text/plain;charset=utf-8");
-               response.setStatus(HttpServletResponse.SC_OK);
-               baseRequest.setHandled(true);
-               response.getWriter().println(preseedCfg);
+         start(URI.create(preconfigurationUrl).getPort());
+      } catch (IllegalStateException e) {
+         preseedCfgs.remove(imageId);
+         throw e;
+      }
+      return preconfigurationUrl + "/" + imageId + "/" + PRESEED_CFG;
+   }
+
+   public void unregister(String imageId) {
+      preseedCfgs.remove(imageId);
+   }
+
+   private synchronized void start(int port) {
+      if (jetty != null) {
+         return;
+      }
+      Server server = new Server(port);
+      server.setHandler(new AbstractHandler() {
+         @Override
+         public void handle(String target, Request baseRequest, HttpServletRequest request,
+                  HttpServletResponse response) throws IOException, ServletException {
+            baseRequest.setHandled(true);
+            String preseedCfg = preseedCfg(target);
+            if (preseedCfg == null) {
+               response.sendError(HttpServletResponse.SC_NOT_FOUND);
+               return;
             }
-         });
-         jetty.start();
+            response.setContentType("text/plain;charset=utf-8");
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.getWriter().println(preseedCfg);
+         }
+      });
+      try {
+         server.start();
       } catch (Exception e) {
-         throw Throwables.propagate(e);
+         // without it the installer would wait for the preseed.cfg forever
+         try {
+            server.stop();
+         } catch (Exception stopping) {
+            logger.debug("could not stop the preseed server on port %s: %s", port, stopping.getMessage());
+         }
+         throw new IllegalStateException(String.format("could not start the preseed server on port %s", port), e);
+      }
+      jetty = server;
+   }
+
+   private String preseedCfg(String target) {
+      String imageId = Iterables.getFirst(Splitter.on('/').omitEmptyStrings().split(target), null);
+      String preseedCfg = imageId == null ? null : preseedCfgs.get(imageId);
+      return preseedCfg != null ? preseedCfg : defaultPreseedCfg;
+   }
+
+   @PreDestroy
+   public synchronized void stop() {
+      if (jetty != null) {
+         stop(jetty);
+         jetty = null;
       }
    }
 
-   public void stop() {
+   private static void stop(Server server) {
       try {
-         if (jetty != null) {
-            jetty.stop();
-         }
+         server.stop();
       } catch (Exception e) {
          throw Throwables.propagate(e);
       }
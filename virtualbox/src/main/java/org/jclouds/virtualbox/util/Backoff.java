@@ -0,0 +1,54 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.virtualbox.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Periods to wait between tries, each twice as long as the previous one up to a maximum, so that
+ * what is ready soon is not waited for long, and what is not does not cost many calls.
+ */
+public class Backoff {
+
+   private final long maxNanos;
+   private long nextNanos;
+
+   public Backoff(long initial, long max, TimeUnit unit) {
+      checkArgument(initial > 0 && initial <= max, "initial period must be positive and at most the maximum");
+      this.nextNanos = unit.toNanos(initial);
+      this.maxNanos = unit.toNanos(max);
+   }
+
+   /**
+    * Returns the period to wait next, in nanoseconds.
+    */
+   public long next() {
+      long period = nextNanos;
+      nextNanos = Math.min(nextNanos * 2, maxNanos);
+      return period;
+   }
+
+   public void pause() {
+      Uninterruptibles.sleepUninterruptibly(next(), TimeUnit.NANOSECONDS);
+   }
+}
@@ -0,0 +1,253 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.virtualbox.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.compute.reference.ComputeServiceConstants;
+import org.jclouds.logging.Logger;
+import org.jclouds.virtualbox.functions.IpAddressesLoadingCache;
+import org.virtualbox_4_2.IEvent;
+import org.virtualbox_4_2.IEventListener;
+import org.virtualbox_4_2.IEventSource;
+import org.virtualbox_4_2.IGuestPropertyChangedEvent;
+import org.virtualbox_4_2.IMachine;
+import org.virtualbox_4_2.MachineState;
+import org.virtualbox_4_2.VBoxEventType;
+import org.virtualbox_4_2.VirtualBoxManager;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Keeps the {@link IpAddressesLoadingCache} up to date with the ip addresses the guests report,
+ * so that they can be read without asking vbox, nor waiting for them.
+ * <p/>
+ * When first used, the ip addresses of all the running machines are read in one sweep. From then
+ * on a vbox event listener updates them as the guest properties change. If the events can't be
+ * listened to, the machines are swept again every {@link #SWEEP_PERIOD_SECONDS} seconds.
+ *
+ * @see <a href="https://www.virtualbox.org/manual/ch04.html#guestadd-guestprops">guest properties</a>
+ */
+@Singleton
+public class GuestIpDiscovery {
+
+   public static final int SWEEP_PERIOD_SECONDS = 5;
+
+   @Resource
+   @Named(ComputeServiceConstants.COMPUTE_LOGGER)
+   protected Logger logger = Logger.NULL;
+
+   private final Supplier<VirtualBoxManager> manager;
+   private final IpAddressesLoadingCache ipAddresses;
+   private final AtomicBoolean started = new AtomicBoolean();
+   private final ExecutorService listener = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("vbox-guest-ip-discovery").setDaemon(true).build());
+   // notified whenever an ip address changes
+   private final Object changes = new Object();
+
+   @Inject
+   public GuestIpDiscovery(Supplier<VirtualBoxManager> manager, IpAddressesLoadingCache ipAddresses) {
+      this.manager = checkNotNull(manager, "manager");
+      this.ipAddresses = checkNotNull(ipAddresses, "ipAddresses");
+   }
+
+   /**
+    * Returns the ip address last reported by the machine for the nic slot, or null if none was.
+    * Never waits for the guest: at most the machine is read once, if its addresses expired.
+    */
+   public String getIpAddress(String machineName, long slot) {
+      start();
+      try {
+         return Strings.emptyToNull(ipAddresses.get(MachineNameOrIdAndNicSlot.fromParts(machineName, slot)));
+      } catch (ExecutionException e) {
+         logger.debug("could not read the ip addresses of vm(%s): %s", machineName, e.getCause().getMessage());
+         return null;
+      }
+   }
+
+   /**
+    * Returns the first ip address reported by the machine, in nic slot order, that the predicate
+    * accepts. Waits for the guest to report one if needed, at most for the given time.
+    *
+    * @return the ip address, or null if none was reported in time
+    */
+   public String awaitIpAddress(String machineName, Predicate<String> accept, long timeout, TimeUnit unit) {
+      start();
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      while (true) {
+         String ipAddress = findIpAddress(machineName, accept);
+         if (ipAddress != null) {
+            return ipAddress;
+         }
+         long remaining = deadline - System.nanoTime();
+         if (remaining <= 0) {
+            return null;
+         }
+         synchronized (changes) {
+            try {
+               // wake up once in a while, so that a missed event costs a sweep of this machine
+               TimeUnit.NANOSECONDS.timedWait(changes,
+                        Math.min(remaining, TimeUnit.SECONDS.toNanos(SWEEP_PERIOD_SECONDS)));
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               return null;
+            }
+         }
+         if (System.nanoTime() - deadline < 0 && findIpAddress(machineName, accept) == null) {
+            sweep(manager.get().getVBox().findMachine(machineName));
+         }
+      }
+   }
+
+   private String findIpAddress(String machineName, Predicate<String> accept) {
+      for (long slot = 0; slot < 4; slot++) {
+         String ipAddress = ipAddresses.getIfPresent(MachineNameOrIdAndNicSlot.fromParts(machineName, slot));
+         if (!Strings.isNullOrEmpty(ipAddress) && accept.apply(ipAddress)) {
+            return ipAddress;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Starts listening to ip address changes in the background. The listener reads the ip addresses
+    * of all the running machines once it is registered.
+    */
+   public void start() {
+      if (started.compareAndSet(false, true)) {
+         listener.submit(new Runnable() {
+            @Override
+            public void run() {
+               listen();
+            }
+         });
+      }
+   }
+
+   @PreDestroy
+   public void stop() {
+      listener.shutdownNow();
+   }
+
+   void sweep() {
+      for (IMachine machine : manager.get().getVBox().getMachines()) {
+         if (machine.getState() == MachineState.Running) {
+            sweep(machine);
+         }
+      }
+   }
+
+   /**
+    * Reads all the ip addresses of the machine in a single call.
+    */
+   void sweep(IMachine machine) {
+      try {
+         ipAddresses.refresh(machine);
+      } catch (RuntimeException e) {
+         logger.debug("could not read the guest properties of vm(%s): %s", machine.getName(), e.getMessage());
+         return;
+      }
+      synchronized (changes) {
+         changes.notifyAll();
+      }
+   }
+
+   private void listen() {
+      while (!Thread.currentThread().isInterrupted()) {
+         try {
+            IEventSource source = manager.get().getVBox().getEventSource();
+            IEventListener eventListener = source.createListener();
+            source.registerListener(eventListener, ImmutableList.of(VBoxEventType.OnGuestPropertyChanged), false);
+            try {
+               // events that happened before registering are missed
+               sweep();
+               while (!Thread.currentThread().isInterrupted()) {
+                  IEvent event = source.getEvent(eventListener, 1000);
+                  if (event != null) {
+                     try {
+                        guestPropertyChanged(IGuestPropertyChangedEvent.queryInterface(event));
+                     } finally {
+                        source.eventProcessed(eventListener, event);
+                     }
+                  }
+               }
+            } finally {
+               source.unregisterListener(eventListener);
+            }
+         } catch (RuntimeException e) {
+            logger.warn(e, "could not listen to guest property changes, sweeping every %ss", SWEEP_PERIOD_SECONDS);
+            Uninterruptibles.sleepUninterruptibly(SWEEP_PERIOD_SECONDS, TimeUnit.SECONDS);
+            sweepQuietly();
+         }
+      }
+   }
+
+   private void guestPropertyChanged(IGuestPropertyChangedEvent event) {
+      if (IpAddressesLoadingCache.IP_PROPERTY.matcher(event.getName()).matches()) {
+         String machineName = manager.get().getVBox().findMachine(event.getMachineId()).getName();
+         update(machineName, event.getName(), event.getValue());
+      }
+   }
+
+   private void sweepQuietly() {
+      try {
+         sweep();
+      } catch (RuntimeException e) {
+         logger.debug("could not sweep the guest ip addresses: %s", e.getMessage());
+      }
+   }
+
+   /**
+    * Records the value of a guest ip address property, an empty value meaning the address is gone.
+    */
+   void update(String machineName, String property, String ipAddress) {
+      Matcher matcher = IpAddressesLoadingCache.IP_PROPERTY.matcher(property);
+      if (!matcher.matches()) {
+         return;
+      }
+      MachineNameOrIdAndNicSlot key = MachineNameOrIdAndNicSlot.fromParts(machineName,
+               Long.parseLong(matcher.group(1)));
+      if (!Strings.isNullOrEmpty(ipAddress)) {
+         logger.debug("<< vm(%s) has IP address(%s) at slot(%s)", machineName, ipAddress, key.getSlotText());
+      }
+      // an empty address is cached too, as a known miss
+      ipAddresses.put(key, ipAddress);
+      synchronized (changes) {
+         changes.notifyAll();
+      }
+   }
+}
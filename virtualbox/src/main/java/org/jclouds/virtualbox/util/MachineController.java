@@ -20,6 +20,7 @@ package org.jclouds.virtualbox.util;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.jclouds.util.Predicates2.retry;
 
@@ -80,6 +81,7 @@ public class MachineController {
    public ISession ensureMachineIsLaunched(String vmName) {
       ISession session = null;
       IMachine machine = manager.get().getVBox().findMachine(vmName);
+      Backoff backoff = new Backoff(100, 2000, MILLISECONDS);
       while (!machine.getState().equals(MachineState.Running)) {
          try {
             session = machineUtils.applyForMachine(vmName, new LaunchMachineIfNotAlreadyRunning(manager.get(),
@@ -89,6 +91,8 @@ public class MachineController {
                   "org.virtualbox_4_2.VBoxException: VirtualBox error: The given session is busy (0x80BB0007)")) {
                throw e;
             } else if (e.getMessage().contains("VirtualBox error: The object is not ready")) {
+               // the machine is changing state, ask again soon
+               backoff.pause();
                continue;
             } else {
                throw e;
@@ -146,6 +150,7 @@ public class MachineController {
    }
 
    public void ensureMachineIsPaused(String vmName) {
+      Backoff backoff = new Backoff(100, 2000, MILLISECONDS);
       while (!manager.get().getVBox().findMachine(vmName).getState().equals(MachineState.Paused)) {
          try {
             machineUtils.lockSessionOnMachineAndApply(vmName, LockType.Shared, new Function<ISession, Void>() {
@@ -162,6 +167,8 @@ public class MachineController {
             if (e.getMessage().contains("Invalid machine state: Paused")) {
                return;
             } else if (e.getMessage().contains("VirtualBox error: The object is not ready")) {
+               // the machine is changing state, ask again soon
+               backoff.pause();
                continue;
             } else {
                throw e;
@@ -171,6 +178,7 @@ public class MachineController {
    }
 
    public void ensureMachineIsResumed(String vmName) {
+      Backoff backoff = new Backoff(100, 2000, MILLISECONDS);
       while (!manager.get().getVBox().findMachine(vmName).getState().equals(MachineState.Running)) {
          try {
             machineUtils.lockSessionOnMachineAndApply(vmName, LockType.Shared, new Function<ISession, Void>() {
@@ -186,6 +194,8 @@ public class MachineController {
             if (e.getMessage().contains("Invalid machine state: Resumed")) {
                return;
             } else if (e.getMessage().contains("VirtualBox error: The object is not ready")) {
+               // the machine is changing state, ask again soon
+               backoff.pause();
                continue;
             } else {
                throw e;
@@ -0,0 +1,200 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.virtualbox.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.virtualbox.config.VirtualBoxConstants.GUEST_OS_PASSWORD;
+import static org.jclouds.virtualbox.config.VirtualBoxConstants.GUEST_OS_USER;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Resource;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.Constants;
+import org.jclouds.compute.reference.ComputeServiceConstants;
+import org.jclouds.logging.Logger;
+import org.jclouds.virtualbox.domain.MachineSnapshot;
+import org.virtualbox_4_2.IGuestOSType;
+import org.virtualbox_4_2.IMachine;
+import org.virtualbox_4_2.INATEngine;
+import org.virtualbox_4_2.INetworkAdapter;
+import org.virtualbox_4_2.NetworkAttachmentType;
+import org.virtualbox_4_2.VirtualBoxManager;
+
+import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Reads the attributes of machines into {@link MachineSnapshot}s, so that describing a machine
+ * costs a fixed number of calls to vbox however many times its attributes are used.
+ * <p/>
+ * Machines listed together are read concurrently. A snapshot is kept for
+ * {@link #SNAPSHOT_TTL_SECONDS} seconds, as long as the {@link IMachine} instance it was read from
+ * is in use: listing the machines again gives new instances, so new snapshots. The guest os types
+ * never change, they are read once.
+ */
+@Singleton
+public class MachineSnapshots {
+
+   public static final long SNAPSHOT_TTL_SECONDS = 5;
+
+   @Resource
+   @Named(ComputeServiceConstants.COMPUTE_LOGGER)
+   protected Logger logger = Logger.NULL;
+
+   private final Supplier<VirtualBoxManager> manager;
+   private final ListeningExecutorService userExecutor;
+   // weak keys are compared by identity
+   private final Cache<IMachine, MachineSnapshot> snapshots = CacheBuilder.newBuilder().weakKeys()
+            .expireAfterWrite(SNAPSHOT_TTL_SECONDS, TimeUnit.SECONDS).build();
+   private final LoadingCache<String, GuestOsType> guestOsTypes = CacheBuilder.newBuilder().build(
+            new CacheLoader<String, GuestOsType>() {
+               @Override
+               public GuestOsType load(String osTypeId) {
+                  IGuestOSType guestOSType = manager.get().getVBox().getGuestOSType(osTypeId);
+                  return new GuestOsType(guestOSType.getDescription(), guestOSType.getIs64Bit());
+               }
+            });
+
+   @Inject
+   public MachineSnapshots(Supplier<VirtualBoxManager> manager,
+            @Named(Constants.PROPERTY_USER_THREADS) ListeningExecutorService userExecutor) {
+      this.manager = checkNotNull(manager, "manager");
+      this.userExecutor = checkNotNull(userExecutor, "userExecutor");
+   }
+
+   /**
+    * Returns the snapshot of the machine, reading it unless it was recently.
+    */
+   public MachineSnapshot get(IMachine machine) {
+      MachineSnapshot snapshot = snapshots.getIfPresent(machine);
+      if (snapshot == null) {
+         snapshot = read(machine);
+         snapshots.put(machine, snapshot);
+      }
+      return snapshot;
+   }
+
+   /**
+    * Reads the machines concurrently. Machines that can't be read, for instance because they were
+    * deleted meanwhile, are left out.
+    * <p/>
+    * The calling thread reads machines too, until none is left, so it only waits for the ones
+    * being read by user threads, never for user threads to become available.
+    *
+    * @return the snapshots of the machines, in the same order
+    */
+   public Map<IMachine, MachineSnapshot> getAll(final List<IMachine> machines) {
+      final AtomicReferenceArray<MachineSnapshot> read = new AtomicReferenceArray<MachineSnapshot>(machines.size());
+      final AtomicInteger next = new AtomicInteger();
+      final CountDownLatch done = new CountDownLatch(machines.size());
+      Runnable reader = new Runnable() {
+         @Override
+         public void run() {
+            for (int i = next.getAndIncrement(); i < machines.size(); i = next.getAndIncrement()) {
+               try {
+                  read.set(i, tryGet(machines.get(i)));
+               } finally {
+                  done.countDown();
+               }
+            }
+         }
+      };
+      try {
+         for (int helpers = 1; helpers < machines.size(); helpers++) {
+            userExecutor.execute(reader);
+         }
+      } catch (RejectedExecutionException e) {
+         logger.debug("reading the remaining machines on the calling thread: %s", e.getMessage());
+      }
+      reader.run();
+      Uninterruptibles.awaitUninterruptibly(done);
+      Map<IMachine, MachineSnapshot> result = Maps.newLinkedHashMap();
+      for (int i = 0; i < machines.size(); i++) {
+         if (read.get(i) != null) {
+            result.put(machines.get(i), read.get(i));
+         }
+      }
+      return result;
+   }
+
+   private MachineSnapshot tryGet(IMachine machine) {
+      try {
+         return get(machine);
+      } catch (RuntimeException e) {
+         logger.debug("could not read machine %s: %s", machine, e.getMessage());
+         return null;
+      }
+   }
+
+   private MachineSnapshot read(IMachine machine) {
+      MachineSnapshot.Builder builder = MachineSnapshot.builder()
+               .id(machine.getId())
+               .name(machine.getName())
+               .state(machine.getState())
+               .guestUser(machine.getExtraData(GUEST_OS_USER))
+               .guestPassword(machine.getExtraData(GUEST_OS_PASSWORD));
+      String osTypeId = machine.getOSTypeId();
+      if (osTypeId != null) {
+         GuestOsType guestOsType = guestOsTypes.getUnchecked(osTypeId);
+         builder.osTypeId(osTypeId).osDescription(guestOsType.description).is64Bit(guestOsType.is64Bit);
+      }
+      for (long slot = 0; slot < 4; slot++) {
+         INetworkAdapter adapter = machine.getNetworkAdapter(slot);
+         if (adapter == null) {
+            continue;
+         }
+         NetworkAttachmentType attachmentType = adapter.getAttachmentType();
+         if (attachmentType == NetworkAttachmentType.NAT) {
+            INATEngine natEngine = adapter.getNATEngine();
+            builder.addNic(new MachineSnapshot.Nic(slot, attachmentType, natEngine.getHostIP(), natEngine
+                     .getRedirects()));
+         } else if (attachmentType != null && attachmentType != NetworkAttachmentType.Null) {
+            builder.addNic(new MachineSnapshot.Nic(slot, attachmentType, null, ImmutableList.<String> of()));
+         }
+      }
+      return builder.build();
+   }
+
+   private static class GuestOsType {
+      private final String description;
+      private final boolean is64Bit;
+
+      private GuestOsType(String description, Boolean is64Bit) {
+         this.description = description;
+         this.is64Bit = Boolean.TRUE.equals(is64Bit);
+      }
+   }
+}
@@ -19,10 +19,8 @@
 package org.jclouds.virtualbox.util;
 
 import com.google.common.base.Function;
-import com.google.common.base.Predicate;
 import com.google.common.base.Supplier;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.inject.Inject;
 import org.jclouds.compute.callables.RunScriptOnNode;
 import org.jclouds.compute.callables.RunScriptOnNode.Factory;
@@ -32,17 +30,13 @@ import org.jclouds.compute.options.RunScriptOptions;
 import org.jclouds.compute.reference.ComputeServiceConstants;
 import org.jclouds.logging.Logger;
 import org.jclouds.scriptbuilder.domain.Statement;
-import org.jclouds.util.Throwables2;
 import org.virtualbox_4_2.*;
 
 import javax.annotation.Resource;
 import javax.inject.Named;
 import javax.inject.Singleton;
-import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.base.Preconditions.checkState;
-import static org.jclouds.util.Predicates2.retry;
 
 /**
  * Utilities for executing functions on a VirtualBox machine.
@@ -62,12 +56,14 @@ public class MachineUtils {
 
    private final Supplier<VirtualBoxManager> manager;
    private final Factory scriptRunner;
-   
+   private final SessionLocks sessionLocks;
 
    @Inject
-   public MachineUtils(Supplier<VirtualBoxManager> manager, RunScriptOnNode.Factory scriptRunner) {
+   public MachineUtils(Supplier<VirtualBoxManager> manager, RunScriptOnNode.Factory scriptRunner,
+            SessionLocks sessionLocks) {
       this.manager = manager;
       this.scriptRunner = scriptRunner;
+      this.sessionLocks = sessionLocks;
    }
 
    public ListenableFuture<ExecResponse> runScriptOnNode(NodeMetadata metadata, Statement statement,
@@ -172,8 +168,8 @@ public class MachineUtils {
     * <p/>
     * Unlocks the machine before returning.
     * 
-    * Tries to obtain a lock 15 times before giving up waiting 1 sec between tries. When no machine
-    * is found null is returned.
+    * Waits for the lock as told by {@link SessionLocks}, at most
+    * {@link SessionLocks#LOCK_TIMEOUT_SECONDS} seconds.
     * 
     * @param type
     *           the kind of lock to use when initially locking the machine.
@@ -184,52 +180,15 @@ public class MachineUtils {
     * @return the result from applying the function to the session.
     */
    protected <T> T lockSessionOnMachineAndApply(String machineId, LockType type, Function<ISession, T> function) {
-      int retries = 15;
-      ISession session = checkNotNull(lockSession(machineId, type, retries), "session");
+      ISession session = checkNotNull(sessionLocks.lock(machineId, type), "session");
       try {
          return function.apply(session);
       } catch (VBoxException e) {
          throw new RuntimeException(String.format("error applying %s to %s with %s lock: %s", function, machineId,
                   type, e.getMessage()), e);
       } finally {
-         // this is a workaround for shared lock type, where session state is not updated immediately
-         if(type == LockType.Shared) {
-            Uninterruptibles.sleepUninterruptibly(1, TimeUnit.SECONDS);
-         }
-         if (session.getState().equals(SessionState.Locked)) {
-            session.unlockMachine();
-         } 
-         if(!session.getState().equals(SessionState.Unlocked)) {
-            checkSessionIsUnlocked(session, 5, 3L, TimeUnit.SECONDS);
-         }
-      }
-   }
-
-   private ISession lockSession(String machineId, LockType type, int retries) {
-      int count = 0;
-      IMachine immutableMachine = manager.get().getVBox().findMachine(machineId);
-      ISession session;
-      while (true) {
-         try {
-            session = manager.get().getSessionObject();
-            immutableMachine.lockMachine(session, type);
-            break;
-         } catch (VBoxException e) {
-            VBoxException vbex = Throwables2.getFirstThrowableOfType(e, VBoxException.class);
-            if (vbex != null && machineNotFoundException(vbex)) {
-               return null;
-            }
-            count++;
-            logger.debug("Could not lock machine (try %d of %d). Error: %s", count, retries, e.getMessage());
-            if (count == retries) {
-               throw new RuntimeException(String.format("error locking %s with %s lock: %s", machineId, type,
-                        e.getMessage()), e);
-            }
-            Uninterruptibles.sleepUninterruptibly(1, TimeUnit.SECONDS);
-         }
+         sessionLocks.unlock(machineId, type, session);
       }
-      checkState(session.getState().equals(SessionState.Locked));
-      return checkNotNull(session, "session");
    }
 
    /**
@@ -257,23 +216,4 @@ public class MachineUtils {
                || e.getMessage().contains("Could not find a registered machine with UUID {");
    }
 
-   private void checkSessionIsUnlocked(ISession session, int attempts, long period, TimeUnit timeUnit) {
-      checkState(
-            retry(new SessionStatePredicate(session), attempts * period, period, timeUnit).apply(SessionState.Unlocked),
-            "timed out or number of retries(%s) reached waiting for session to be unlocked", attempts);
-   }
-
-   private static class SessionStatePredicate implements Predicate<SessionState> {
-      private final ISession session;
-      
-      SessionStatePredicate(ISession session) {
-         this.session = session;
-      }
-      
-      @Override
-      public boolean apply(SessionState input) {
-         return session.getState().equals(input);
-      }
-   }
-
 }
@@ -33,13 +33,13 @@ import javax.annotation.Resource;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
-import com.google.common.util.concurrent.Uninterruptibles;
 import org.jclouds.compute.callables.RunScriptOnNode;
 import org.jclouds.compute.domain.ExecResponse;
 import org.jclouds.compute.domain.NodeMetadata;
 import org.jclouds.compute.domain.NodeMetadataBuilder;
 import org.jclouds.compute.options.RunScriptOptions;
 import org.jclouds.compute.reference.ComputeServiceConstants;
+import org.jclouds.javax.annotation.Nullable;
 import org.jclouds.location.Provider;
 import org.jclouds.logging.Logger;
 import org.jclouds.scriptbuilder.domain.Statements;
@@ -60,7 +60,6 @@ import org.virtualbox_4_2.NetworkAttachmentType;
 import org.virtualbox_4_2.VirtualBoxManager;
 
 import com.google.common.base.Predicate;
-import com.google.common.base.Strings;
 import com.google.common.base.Supplier;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
@@ -81,6 +80,7 @@ public class NetworkUtils {
    // TODO parameterize
    public static final int MASTER_PORT = 2222;
    private static final String VIRTUALBOX_HOST_GATEWAY = "10.0.2.15";
+   private static final long HOST_ONLY_IP_TIMEOUT_SECONDS = 30;
 
    @Resource
    @Named(ComputeServiceConstants.COMPUTE_LOGGER)
@@ -93,11 +93,13 @@ public class NetworkUtils {
    private final IpAddressesLoadingCache ipAddressesLoadingCache;
    private final RunScriptOnNode.Factory scriptRunnerFactory;
    private final Supplier<NodeMetadata> hostSupplier;
+   private final GuestIpDiscovery guestIpDiscovery;
 
    @Inject
    public NetworkUtils(Supplier<VirtualBoxManager> manager, MachineUtils machineUtils, Supplier<NodeMetadata> host,
                        @Provider Supplier<URI> providerSupplier, IpAddressesLoadingCache ipAddressesLoadingCache,
-                       Supplier<NodeMetadata> hostSupplier, RunScriptOnNode.Factory scriptRunnerFactory) {
+                       Supplier<NodeMetadata> hostSupplier, RunScriptOnNode.Factory scriptRunnerFactory,
+                       GuestIpDiscovery guestIpDiscovery) {
       this.manager = manager;
       this.machineUtils = machineUtils;
       this.host = checkNotNull(host, "host can't be null");
@@ -105,6 +107,7 @@ public class NetworkUtils {
       this.ipAddressesLoadingCache = ipAddressesLoadingCache;
       this.scriptRunnerFactory = scriptRunnerFactory;
       this.hostSupplier = hostSupplier;
+      this.guestIpDiscovery = guestIpDiscovery;
    }
 
    public NetworkSpec createNetworkSpecWhenVboxIsLocalhost() {
@@ -143,7 +146,8 @@ public class NetworkUtils {
       return NetworkSpec.builder().addNIC(hostOnlyIfaceCard).addNIC(natIfaceCard).build();
    }
 
-   public String getHostOnlyIfOrCreate() {
+   // synchronized so that nodes created at the same time don't create one interface each
+   public synchronized String getHostOnlyIfOrCreate() {
       IHostNetworkInterface availableHostInterfaceIf = returnExistingHostNetworkInterfaceWithDHCPenabledOrNull(manager
             .get().getVBox().getHost().getNetworkInterfaces());
       if (availableHostInterfaceIf == null) {
@@ -229,28 +233,37 @@ public class NetworkUtils {
             });
    }
 
+   /**
+    * Waits for the vm to report a valid HostOnly ip address, if it didn't yet.
+    */
    public String getValidHostOnlyIpFromVm(String machineNameOrId) {
-      long nicSlot = 0;
-      int count = 0;
-      String ipAddress = "";
-      while (nicSlot < 4 && ipAddress.isEmpty()) {
-         MachineNameOrIdAndNicSlot machineNameOrIdAndNicSlot =
-                 MachineNameOrIdAndNicSlot.fromParts(machineNameOrId, nicSlot);
-         while (count < 10 && ipAddress.isEmpty()) {
-            Uninterruptibles.sleepUninterruptibly(3, TimeUnit.SECONDS);
-            ipAddress = getIpAddressFromNicSlot(machineNameOrIdAndNicSlot);
-            if (!isValidIpForHostOnly(ipAddress)) {
-               ipAddressesLoadingCache.invalidate(machineNameOrIdAndNicSlot);
-               ipAddress = "";
-            }
-            count++;
+      String ipAddress = guestIpDiscovery.awaitIpAddress(machineNameOrId, validHostOnlyIp, HOST_ONLY_IP_TIMEOUT_SECONDS,
+               TimeUnit.SECONDS);
+      return checkNotNull(ipAddress,
+              String.format("Cannot find a valid IP address for the %s's HostOnly NIC", machineNameOrId));
+   }
+
+   /**
+    * Returns the valid HostOnly ip address the vm reported, or null if it didn't report one yet.
+    */
+   @Nullable
+   public String getValidHostOnlyIpFromVmIfPresent(String machineNameOrId) {
+      for (long nicSlot = 0; nicSlot < 4; nicSlot++) {
+         String ipAddress = guestIpDiscovery.getIpAddress(machineNameOrId, nicSlot);
+         if (ipAddress != null && isValidIpForHostOnly(ipAddress)) {
+            return ipAddress;
          }
-         nicSlot++;
       }
-      return checkNotNull(Strings.emptyToNull(ipAddress),
-              String.format("Cannot find a valid IP address for the %s's HostOnly NIC", machineNameOrId));
+      return null;
    }
 
+   private final Predicate<String> validHostOnlyIp = new Predicate<String>() {
+      @Override
+      public boolean apply(String ipAddress) {
+         return isValidIpForHostOnly(ipAddress);
+      }
+   };
+
    public String getIpAddressFromNicSlot(String machineNameOrId, long nicSlot) {
       MachineNameOrIdAndNicSlot machineNameOrIdAndNicSlot = MachineNameOrIdAndNicSlot.fromParts(machineNameOrId,
             nicSlot);
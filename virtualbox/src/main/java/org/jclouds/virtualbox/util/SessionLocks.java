@@ -0,0 +1,329 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.virtualbox.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static org.jclouds.virtualbox.util.MachineUtils.machineNotFoundException;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Resource;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.compute.reference.ComputeServiceConstants;
+import org.jclouds.logging.Logger;
+import org.jclouds.util.Throwables2;
+import org.virtualbox_4_2.IMachine;
+import org.virtualbox_4_2.ISession;
+import org.virtualbox_4_2.LockType;
+import org.virtualbox_4_2.SessionState;
+import org.virtualbox_4_2.VBoxException;
+import org.virtualbox_4_2.VirtualBoxManager;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
+
+/**
+ * Locks machines with sessions, on behalf of {@link MachineUtils}.
+ * <p/>
+ * Threads of this process wait for each other in process: a write lock on a machine waits for the
+ * other locks this process holds on it, shared locks don't wait for each other. Only a machine
+ * locked by another process is retried, and woken up when this process unlocks a machine or after
+ * a period that doubles each try, up to {@link #LOCK_TIMEOUT_SECONDS} seconds. Unlocked sessions
+ * are kept to lock the same machine again, rather than asking vbox for a new one.
+ * <p/>
+ * The time spent waiting for locks is recorded, see {@link #stats(LockType)}.
+ */
+@Singleton
+public class SessionLocks {
+
+   public static final long LOCK_TIMEOUT_SECONDS = 15;
+   public static final int MAX_IDLE_SESSIONS_PER_MACHINE = 2;
+
+   @Resource
+   @Named(ComputeServiceConstants.COMPUTE_LOGGER)
+   protected Logger logger = Logger.NULL;
+
+   private final Supplier<VirtualBoxManager> manager;
+   private final ConcurrentMap<String, ReentrantReadWriteLock> machineLocks = Maps.newConcurrentMap();
+   private final ConcurrentMap<String, Queue<ISession>> idleSessions = Maps.newConcurrentMap();
+   private final Map<LockType, Recorder> recorders = Maps.newEnumMap(LockType.class);
+   // notified whenever this process unlocks a machine
+   private final Object unlocks = new Object();
+
+   @Inject
+   public SessionLocks(Supplier<VirtualBoxManager> manager) {
+      this.manager = checkNotNull(manager, "manager");
+      for (LockType type : LockType.values()) {
+         recorders.put(type, new Recorder());
+      }
+   }
+
+   /**
+    * Locks the machine with a session, waiting at most {@link #LOCK_TIMEOUT_SECONDS} seconds. The
+    * session must be given back to {@link #unlock(String, LockType, ISession)}.
+    *
+    * @return the locked session, or null if the machine was unregistered meanwhile
+    */
+   public ISession lock(String machineId, LockType type) {
+      long start = System.nanoTime();
+      Lock inProcess = inProcessLock(machineId, type);
+      if (inProcess != null) {
+         long remaining = start + TimeUnit.SECONDS.toNanos(LOCK_TIMEOUT_SECONDS) - System.nanoTime();
+         if (!tryLock(inProcess, remaining)) {
+            recorders.get(type).timedOut();
+            throw new RuntimeException(String.format("timed out after %ss waiting in process to lock %s with %s lock",
+                     LOCK_TIMEOUT_SECONDS, machineId, type));
+         }
+      }
+      boolean locked = false;
+      try {
+         ISession session = lockMachine(machineId, type, start);
+         locked = session != null;
+         return session;
+      } finally {
+         if (!locked && inProcess != null) {
+            inProcess.unlock();
+         }
+      }
+   }
+
+   /**
+    * Unlocks the session and waits for vbox to tell it is unlocked, so that it can be locked again.
+    */
+   public void unlock(String machineId, LockType type, ISession session) {
+      try {
+         Backoff backoff = new Backoff(10, 500, TimeUnit.MILLISECONDS);
+         long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(LOCK_TIMEOUT_SECONDS);
+         // the state of a shared session is not updated immediately
+         while (type == LockType.Shared && !isSettled(session.getState()) && System.nanoTime() - deadline < 0) {
+            backoff.pause();
+         }
+         if (session.getState() == SessionState.Locked) {
+            session.unlockMachine();
+         }
+         while (session.getState() != SessionState.Unlocked && System.nanoTime() - deadline < 0) {
+            backoff.pause();
+         }
+         checkState(session.getState() == SessionState.Unlocked,
+                  "timed out after %ss waiting for session of %s to be unlocked", LOCK_TIMEOUT_SECONDS, machineId);
+         idle(machineId, session);
+      } finally {
+         Lock inProcess = inProcessLock(machineId, type);
+         if (inProcess != null) {
+            inProcess.unlock();
+         }
+         synchronized (unlocks) {
+            unlocks.notifyAll();
+         }
+      }
+   }
+
+   /**
+    * Returns the lock waits recorded so far for the type of lock.
+    */
+   public Stats stats(LockType type) {
+      return recorders.get(type).snapshot();
+   }
+
+   /**
+    * Returns the lock this thread has to take before locking the machine, or null if it can't: a
+    * thread holding a shared lock asking for a write lock is left to vbox, rather than deadlock.
+    */
+   private Lock inProcessLock(String machineId, LockType type) {
+      ReentrantReadWriteLock lock = machineLocks.get(machineId);
+      if (lock == null) {
+         ReentrantReadWriteLock created = new ReentrantReadWriteLock(true);
+         lock = Objects.firstNonNull(machineLocks.putIfAbsent(machineId, created), created);
+      }
+      if (type == LockType.Shared) {
+         return lock.readLock();
+      }
+      return lock.getReadHoldCount() > 0 ? null : lock.writeLock();
+   }
+
+   private ISession lockMachine(String machineId, LockType type, long start) {
+      IMachine machine = manager.get().getVBox().findMachine(machineId);
+      Backoff backoff = new Backoff(50, 1000, TimeUnit.MILLISECONDS);
+      long deadline = start + TimeUnit.SECONDS.toNanos(LOCK_TIMEOUT_SECONDS);
+      for (int attempt = 1;; attempt++) {
+         ISession session = session(machineId);
+         try {
+            machine.lockMachine(session, type);
+            checkState(session.getState().equals(SessionState.Locked));
+            long waited = System.nanoTime() - start;
+            recorders.get(type).record(waited, attempt - 1);
+            if (waited > TimeUnit.SECONDS.toNanos(1)) {
+               logger.debug("<< locked %s with %s lock after %sms and %s tries", machineId, type,
+                        TimeUnit.NANOSECONDS.toMillis(waited), attempt);
+            }
+            return session;
+         } catch (VBoxException e) {
+            VBoxException vbex = Throwables2.getFirstThrowableOfType(e, VBoxException.class);
+            if (vbex != null && machineNotFoundException(vbex)) {
+               return null;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+               recorders.get(type).timedOut();
+               throw new RuntimeException(String.format("error locking %s with %s lock after %s tries: %s",
+                        machineId, type, attempt, e.getMessage()), e);
+            }
+            logger.debug("Could not lock machine %s (try %d). Error: %s", machineId, attempt, e.getMessage());
+            awaitUnlock(Math.min(backoff.next(), deadline - System.nanoTime()));
+         }
+      }
+   }
+
+   private static boolean tryLock(Lock lock, long nanos) {
+      try {
+         return lock.tryLock(nanos, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new RuntimeException("interrupted waiting for a lock", e);
+      }
+   }
+
+   private void awaitUnlock(long nanos) {
+      if (nanos <= 0) {
+         return;
+      }
+      synchronized (unlocks) {
+         try {
+            TimeUnit.NANOSECONDS.timedWait(unlocks, nanos);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted waiting for a lock", e);
+         }
+      }
+   }
+
+   private static boolean isSettled(SessionState state) {
+      return state == SessionState.Locked || state == SessionState.Unlocked;
+   }
+
+   private ISession session(String machineId) {
+      Queue<ISession> idle = idleSessions.get(machineId);
+      ISession session = idle == null ? null : idle.poll();
+      return session != null ? session : manager.get().getSessionObject();
+   }
+
+   private void idle(String machineId, ISession session) {
+      Queue<ISession> idle = idleSessions.get(machineId);
+      if (idle == null) {
+         Queue<ISession> created = new ConcurrentLinkedQueue<ISession>();
+         idle = Objects.firstNonNull(idleSessions.putIfAbsent(machineId, created), created);
+      }
+      // the size is only checked roughly, a session more or less does no harm
+      if (idle.size() < MAX_IDLE_SESSIONS_PER_MACHINE) {
+         idle.offer(session);
+      }
+   }
+
+   private static class Recorder {
+      private final AtomicLong lockCount = new AtomicLong();
+      private final AtomicLong retryCount = new AtomicLong();
+      private final AtomicLong timeoutCount = new AtomicLong();
+      private final AtomicLong totalWaitNanos = new AtomicLong();
+      private final AtomicLong maxWaitNanos = new AtomicLong();
+
+      void record(long waitNanos, int retries) {
+         lockCount.incrementAndGet();
+         retryCount.addAndGet(retries);
+         totalWaitNanos.addAndGet(waitNanos);
+         for (long max = maxWaitNanos.get(); waitNanos > max; max = maxWaitNanos.get()) {
+            if (maxWaitNanos.compareAndSet(max, waitNanos)) {
+               break;
+            }
+         }
+      }
+
+      void timedOut() {
+         timeoutCount.incrementAndGet();
+      }
+
+      Stats snapshot() {
+         return new Stats(lockCount.get(), retryCount.get(), timeoutCount.get(), totalWaitNanos.get(),
+                  maxWaitNanos.get());
+      }
+   }
+
+   /**
+    * The locks taken of a type, and how long they were waited for, including the in process wait.
+    */
+   public static class Stats {
+      private final long lockCount;
+      private final long retryCount;
+      private final long timeoutCount;
+      private final long totalWaitNanos;
+      private final long maxWaitNanos;
+
+      private Stats(long lockCount, long retryCount, long timeoutCount, long totalWaitNanos, long maxWaitNanos) {
+         this.lockCount = lockCount;
+         this.retryCount = retryCount;
+         this.timeoutCount = timeoutCount;
+         this.totalWaitNanos = totalWaitNanos;
+         this.maxWaitNanos = maxWaitNanos;
+      }
+
+      public long getLockCount() {
+         return lockCount;
+      }
+
+      /**
+       * @return the number of times vbox refused a lock that was then tried again
+       */
+      public long getRetryCount() {
+         return retryCount;
+      }
+
+      public long getTimeoutCount() {
+         return timeoutCount;
+      }
+
+      public long getTotalWaitNanos() {
+         return totalWaitNanos;
+      }
+
+      public long getMaxWaitNanos() {
+         return maxWaitNanos;
+      }
+
+      public double getAverageWaitNanos() {
+         return lockCount == 0 ? 0.0 : (double) totalWaitNanos / lockCount;
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).add("lockCount", lockCount).add("retryCount", retryCount)
+                  .add("timeoutCount", timeoutCount).add("averageWaitNanos", getAverageWaitNanos())
+                  .add("maxWaitNanos", maxWaitNanos).toString();
+      }
+   }
+}
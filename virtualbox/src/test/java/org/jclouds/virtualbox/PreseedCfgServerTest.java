@@ -20,6 +20,7 @@ package org.jclouds.virtualbox;
 
 import static org.testng.Assert.assertEquals;
 
+import java.net.ServerSocket;
 import java.net.URI;
 import java.net.URL;
 import java.util.Map;
@@ -67,6 +68,16 @@ public class PreseedCfgServerTest {
       starter.stop();
    }
 
+   @Test(expectedExceptions = IllegalStateException.class)
+   public void testStartFailsWhenThePortIsInUse() throws Exception {
+      ServerSocket inUse = new ServerSocket(0);
+      try {
+         new PreseedCfgServer().start("http://127.0.0.1:" + inUse.getLocalPort(), getDefaultImage().preseed_cfg);
+      } finally {
+         inUse.close();
+      }
+   }
+
    public static YamlImage getDefaultImage() {
       Map<Image, YamlImage> images = new ImagesToYamlImagesFromYamlDescriptor(new YamlImagesFromFileConfig(
             "/default-images.yaml")).get();
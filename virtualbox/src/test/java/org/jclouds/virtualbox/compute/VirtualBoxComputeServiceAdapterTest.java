@@ -19,10 +19,14 @@
 
 package org.jclouds.virtualbox.compute;
 
+import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.createNiceMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
 import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_IMAGE_PREFIX;
+import static org.jclouds.virtualbox.config.VirtualBoxConstants.VIRTUALBOX_NODE_PREFIX;
+import static org.testng.Assert.assertEquals;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -36,16 +40,22 @@ import org.jclouds.compute.reference.ComputeServiceConstants;
 import org.jclouds.json.Json;
 import org.jclouds.json.config.GsonModule;
 import org.jclouds.virtualbox.config.VirtualBoxComputeServiceContextModule;
+import org.jclouds.virtualbox.domain.MachineSnapshot;
+import org.jclouds.virtualbox.domain.YamlImage;
 import org.jclouds.virtualbox.functions.IMachineToImage;
+import org.jclouds.virtualbox.util.MachineSnapshots;
 import org.testng.annotations.Test;
 import org.virtualbox_4_2.IGuestOSType;
 import org.virtualbox_4_2.IMachine;
 import org.virtualbox_4_2.IVirtualBox;
+import org.virtualbox_4_2.MachineState;
 import org.virtualbox_4_2.VirtualBoxManager;
 
 import com.beust.jcommander.internal.Lists;
 import com.google.common.base.Function;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.Guice;
 
 @Test(groups = "unit")
@@ -85,4 +95,27 @@ public class VirtualBoxComputeServiceAdapterTest {
                VirtualBoxComputeServiceContextModule.toPortableImageStatus, Suppliers.ofInstance(manager), osMap);
 
    }
+
+   @Test
+   public void testListNodesReadsOnlyTheNodes() throws Exception {
+      IMachine master = createMock(IMachine.class);
+      expect(master.getName()).andReturn(VIRTUALBOX_IMAGE_PREFIX + "ubuntu-10.04");
+      String nodeName = VIRTUALBOX_NODE_PREFIX + "ubuntu-10.04-test-node1";
+      IMachine node = createMock(IMachine.class);
+      expect(node.getName()).andReturn(nodeName);
+      VirtualBoxManager manager = createNiceMock(VirtualBoxManager.class);
+      IVirtualBox vBox = createNiceMock(IVirtualBox.class);
+      expect(manager.getVBox()).andReturn(vBox).anyTimes();
+      expect(vBox.getMachines()).andReturn(ImmutableList.of(master, node));
+      MachineSnapshots machineSnapshots = createMock(MachineSnapshots.class);
+      MachineSnapshot snapshot = MachineSnapshot.builder().id("id").name(nodeName).state(MachineState.Running).build();
+      expect(machineSnapshots.getAll(ImmutableList.of(node))).andReturn(ImmutableMap.of(node, snapshot));
+      replay(master, node, manager, vBox, machineSnapshots);
+
+      VirtualBoxComputeServiceAdapter adapter = new VirtualBoxComputeServiceAdapter(Suppliers.ofInstance(manager),
+               Suppliers.ofInstance(ImmutableMap.<Image, YamlImage> of()), null, null, null, null, machineSnapshots);
+
+      assertEquals(ImmutableList.copyOf(adapter.listNodes()), ImmutableList.of(node));
+      verify(master, node, machineSnapshots);
+   }
 }
@@ -37,6 +37,7 @@ import org.jclouds.compute.reference.ComputeServiceConstants;
 import org.jclouds.json.Json;
 import org.jclouds.json.config.GsonModule;
 import org.jclouds.virtualbox.config.VirtualBoxComputeServiceContextModule;
+import org.jclouds.virtualbox.util.MachineSnapshots;
 import org.jclouds.virtualbox.util.NetworkUtils;
 import org.testng.annotations.Test;
 import org.virtualbox_4_2.IGuest;
@@ -52,6 +53,7 @@ import org.virtualbox_4_2.VirtualBoxManager;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Guice;
 
 public class IMachineToNodeMetadataTest {
@@ -89,8 +91,8 @@ public class IMachineToNodeMetadataTest {
 
       replay(vm, vBox, iGuestOSType, nat, natEng, hostOnly, networkUtils);
 
-      NodeMetadata node = new IMachineToNodeMetadata(Suppliers
-              .ofInstance(vbm), VirtualBoxComputeServiceContextModule.toPortableNodeStatus,
+      NodeMetadata node = new IMachineToNodeMetadata(new MachineSnapshots(Suppliers.ofInstance(vbm),
+            MoreExecutors.sameThreadExecutor()), VirtualBoxComputeServiceContextModule.toPortableNodeStatus,
             networkUtils, map).apply(vm);
 
       assertEquals(MASTER_NAME, node.getName());
@@ -133,8 +135,8 @@ public class IMachineToNodeMetadataTest {
 
       replay(vm, nat, natEng, hostOnly, networkUtils);
 
-      NodeMetadata node = new IMachineToNodeMetadata(Suppliers
-              .ofInstance(vbm), VirtualBoxComputeServiceContextModule.toPortableNodeStatus,
+      NodeMetadata node = new IMachineToNodeMetadata(new MachineSnapshots(Suppliers.ofInstance(vbm),
+            MoreExecutors.sameThreadExecutor()), VirtualBoxComputeServiceContextModule.toPortableNodeStatus,
             networkUtils, map).apply(vm);
 
       assertEquals(name, node.getName());
@@ -0,0 +1,129 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.virtualbox.functions;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.jclouds.virtualbox.util.MachineNameOrIdAndNicSlot;
+import org.testng.annotations.Test;
+import org.virtualbox_4_2.Holder;
+import org.virtualbox_4_2.IMachine;
+import org.virtualbox_4_2.IVirtualBox;
+import org.virtualbox_4_2.VirtualBoxManager;
+
+import com.google.common.base.Suppliers;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests the IpAddressesLoadingCache
+ */
+@Test(groups = "unit", testName = "IpAddressesLoadingCacheTest")
+public class IpAddressesLoadingCacheTest {
+
+   private static final MachineNameOrIdAndNicSlot SLOT_0 = MachineNameOrIdAndNicSlot.fromParts("vm1", 0);
+   private static final MachineNameOrIdAndNicSlot SLOT_1 = MachineNameOrIdAndNicSlot.fromParts("vm1", 1);
+
+   public void testAMissReadsAllTheSlotsOfTheMachineAtOnce() throws Exception {
+      IMachine machine = machine(1);
+      IpAddressesLoadingCache cache = new IpAddressesLoadingCache(Suppliers.ofInstance(manager(machine)), 60, 5,
+               TimeUnit.SECONDS, new FakeTicker());
+
+      assertEquals(cache.get(SLOT_1), "192.168.56.101");
+      assertEquals(cache.get(SLOT_0), "");
+      verify(machine);
+
+      CacheStats stats = cache.stats();
+      assertEquals(stats.missCount(), 1);
+      assertEquals(stats.hitCount(), 1);
+      assertEquals(stats.loadSuccessCount(), 1);
+   }
+
+   public void testMissesAreForgottenBeforeAddresses() throws Exception {
+      FakeTicker ticker = new FakeTicker();
+      IpAddressesLoadingCache cache = new IpAddressesLoadingCache(Suppliers.ofInstance(manager(machine(1))), 60, 5,
+               TimeUnit.SECONDS, ticker);
+      cache.get(SLOT_1);
+
+      ticker.advance(5, TimeUnit.SECONDS);
+      assertNull(cache.getIfPresent(SLOT_0));
+      assertEquals(cache.getIfPresent(SLOT_1), "192.168.56.101");
+
+      ticker.advance(55, TimeUnit.SECONDS);
+      assertNull(cache.getIfPresent(SLOT_1));
+      assertEquals(cache.stats().evictionCount(), 2);
+   }
+
+   private static VirtualBoxManager manager(IMachine machine) {
+      VirtualBoxManager manager = createNiceMock(VirtualBoxManager.class);
+      IVirtualBox vBox = createNiceMock(IVirtualBox.class);
+      expect(manager.getVBox()).andReturn(vBox).anyTimes();
+      expect(vBox.findMachine("vm1")).andReturn(machine).anyTimes();
+      replay(manager, vBox);
+      return manager;
+   }
+
+   /**
+    * A machine that only has an address at slot 1, and can be read the given number of times.
+    */
+   @SuppressWarnings("unchecked")
+   private static IMachine machine(int reads) {
+      IMachine machine = createNiceMock(IMachine.class);
+      expect(machine.getName()).andReturn("vm1").anyTimes();
+      machine.enumerateGuestProperties(eq(IpAddressesLoadingCache.IP_PROPERTIES), anyObject(Holder.class),
+               anyObject(Holder.class), anyObject(Holder.class), anyObject(Holder.class));
+      expectLastCall().andAnswer(new IAnswer<Void>() {
+         @Override
+         public Void answer() throws Throwable {
+            ((Holder<Object>) EasyMock.getCurrentArguments()[1]).value = ImmutableList
+                     .of("/VirtualBox/GuestInfo/Net/1/V4/IP");
+            ((Holder<Object>) EasyMock.getCurrentArguments()[2]).value = ImmutableList.of("192.168.56.101");
+            return null;
+         }
+      }).times(reads);
+      replay(machine);
+      return machine;
+   }
+
+   private static class FakeTicker extends Ticker {
+      private long nanos;
+
+      @Override
+      public long read() {
+         return nanos;
+      }
+
+      void advance(long time, TimeUnit unit) {
+         nanos += unit.toNanos(time);
+      }
+   }
+}
@@ -0,0 +1,152 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jclouds.virtualbox.functions;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.easymock.IAnswer;
+import org.jclouds.compute.ComputeServiceAdapter.NodeAndInitialCredentials;
+import org.jclouds.virtualbox.domain.Master;
+import org.jclouds.virtualbox.domain.NodeSpec;
+import org.jclouds.virtualbox.util.MachineController;
+import org.jclouds.virtualbox.util.MachineUtils;
+import org.jclouds.virtualbox.util.NetworkUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.virtualbox_4_2.IConsole;
+import org.virtualbox_4_2.IMachine;
+import org.virtualbox_4_2.IProgress;
+import org.virtualbox_4_2.ISession;
+import org.virtualbox_4_2.ISnapshot;
+import org.virtualbox_4_2.MachineState;
+import org.virtualbox_4_2.VirtualBoxManager;
+
+import com.google.common.base.Function;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Tests that nodes of the same master are created concurrently, snapshotting the master once.
+ */
+@Test(groups = "unit", testName = "NodeCreatorTest")
+public class NodeCreatorTest {
+
+   private static final int NODES = 8;
+   private static final int MAX_CONCURRENT_CLONES = 2;
+
+   private ListeningExecutorService userExecutor;
+
+   @BeforeMethod
+   public void createUserExecutor() {
+      userExecutor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(NODES));
+   }
+
+   @AfterMethod(alwaysRun = true)
+   public void shutdownUserExecutor() {
+      userExecutor.shutdownNow();
+   }
+
+   @SuppressWarnings("unchecked")
+   public void testConcurrentCreatesSnapshotTheMasterOnceAndRespectTheCloneLimit() throws Exception {
+      final AtomicInteger snapshotsTaken = new AtomicInteger();
+      final AtomicReference<ISnapshot> currentSnapshot = new AtomicReference<ISnapshot>();
+      final ISnapshot snapshot = createNiceMock(ISnapshot.class);
+      final IProgress progress = createNiceMock(IProgress.class);
+
+      IMachine machine = createNiceMock(IMachine.class);
+      expect(machine.getName()).andReturn("jclouds-image-master").anyTimes();
+      expect(machine.getState()).andReturn(MachineState.PoweredOff).anyTimes();
+      expect(machine.getCurrentSnapshot()).andAnswer(new IAnswer<ISnapshot>() {
+         @Override
+         public ISnapshot answer() throws Throwable {
+            return currentSnapshot.get();
+         }
+      }).anyTimes();
+
+      IConsole console = createNiceMock(IConsole.class);
+      expect(console.takeSnapshot("snapshotName", "snapshotDesc")).andAnswer(new IAnswer<IProgress>() {
+         @Override
+         public IProgress answer() throws Throwable {
+            snapshotsTaken.incrementAndGet();
+            // leaves time to the other nodes to look for the snapshot
+            Uninterruptibles.sleepUninterruptibly(50, TimeUnit.MILLISECONDS);
+            currentSnapshot.set(snapshot);
+            return progress;
+         }
+      }).anyTimes();
+      ISession session = createNiceMock(ISession.class);
+      expect(session.getConsole()).andReturn(console).anyTimes();
+      VirtualBoxManager manager = createNiceMock(VirtualBoxManager.class);
+      expect(manager.openMachineSession(machine)).andReturn(session).anyTimes();
+      replay(snapshot, progress, machine, console, session, manager);
+
+      final AtomicInteger cloning = new AtomicInteger();
+      final AtomicInteger mostCloning = new AtomicInteger();
+      final NodeCreator creator = new NodeCreator(Suppliers.ofInstance(manager),
+               createMock(Function.class), createMock(MachineUtils.class), createMock(MachineController.class),
+               createMock(NetworkUtils.class), "512", "/tmp", MAX_CONCURRENT_CLONES + "") {
+         @Override
+         NodeAndInitialCredentials<IMachine> cloneAndConfigure(NodeSpec nodeSpec, Master master) {
+            int now = cloning.incrementAndGet();
+            for (int most = mostCloning.get(); now > most && !mostCloning.compareAndSet(most, now);) {
+               most = mostCloning.get();
+            }
+            Uninterruptibles.sleepUninterruptibly(20, TimeUnit.MILLISECONDS);
+            cloning.decrementAndGet();
+            return new NodeAndInitialCredentials<IMachine>(master.getMachine(), nodeSpec.getName(), null);
+         }
+      };
+
+      final Master master = Master.builder().machine(machine).build();
+      List<ListenableFuture<NodeAndInitialCredentials<IMachine>>> creates = Lists.newArrayList();
+      for (int i = 0; i < NODES; i++) {
+         final String name = "node" + i;
+         creates.add(userExecutor.submit(new Callable<NodeAndInitialCredentials<IMachine>>() {
+            @Override
+            public NodeAndInitialCredentials<IMachine> call() {
+               return creator.apply(NodeSpec.builder().master(master).name(name).tag("test").build());
+            }
+         }));
+      }
+
+      assertEquals(Futures.allAsList(creates).get(10, TimeUnit.SECONDS).size(), NODES);
+      assertEquals(snapshotsTaken.get(), 1);
+      assertTrue(mostCloning.get() <= MAX_CONCURRENT_CLONES, "clones running at once: " + mostCloning.get());
+   }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.virtualbox.functions.admin;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+
+import java.io.File;
+import java.net.URI;
+
+import org.easymock.Capture;
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.io.Payloads;
+import org.jclouds.rest.HttpClient;
+import org.testng.annotations.Test;
+
+import com.google.common.io.Files;
+import com.google.common.net.HttpHeaders;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Tests the IsoCache
+ */
+@Test(groups = "unit", testName = "IsoCacheTest")
+public class IsoCacheTest {
+
+   private static final URI ISO = URI.create("http://mirror/test.iso");
+   private static final String HELLO_MD5 = "5d41402abc4b2a76b9719d911017c592";
+
+   public void testBrokenDownloadIsResumed() throws Exception {
+      File workingDir = Files.createTempDir();
+      File part = new File(workingDir, "isos/" + HELLO_MD5 + "-test.iso.part");
+      Files.createParentDirs(part);
+      Files.write("hel", part, UTF_8);
+      HttpClient http = createMock(HttpClient.class);
+      Capture<HttpRequest> request = new Capture<HttpRequest>();
+      expect(http.invoke(capture(request))).andReturn(
+               HttpResponse.builder().statusCode(206).payload(Payloads.newStringPayload("lo")).build());
+      replay(http);
+      IsoManifest manifest = new IsoManifest(workingDir.getPath());
+
+      File iso = isoCache(workingDir, http, manifest).fetch(ISO, HELLO_MD5).get();
+      assertEquals(request.getValue().getFirstHeaderOrNull(HttpHeaders.RANGE), "bytes=3-");
+      assertEquals(Files.toString(iso, UTF_8), "hello");
+      assertFalse(part.exists());
+      // the md5 computed during the download is recorded
+      assertEquals(manifest.recordedMd5(iso), HELLO_MD5);
+   }
+
+   public void testServerWithoutRangesSendsTheWholeIso() throws Exception {
+      File workingDir = Files.createTempDir();
+      File part = new File(workingDir, "isos/" + HELLO_MD5 + "-test.iso.part");
+      Files.createParentDirs(part);
+      Files.write("hel", part, UTF_8);
+      HttpClient http = createMock(HttpClient.class);
+      expect(http.invoke(anyObject(HttpRequest.class))).andReturn(
+               HttpResponse.builder().statusCode(200).payload(Payloads.newStringPayload("hello")).build());
+      replay(http);
+
+      File iso = isoCache(workingDir, http, new IsoManifest(workingDir.getPath())).fetch(ISO, HELLO_MD5).get();
+      assertEquals(Files.toString(iso, UTF_8), "hello");
+   }
+
+   public void testIsoWithAKnownMd5IsNotDownloaded() throws Exception {
+      File workingDir = Files.createTempDir();
+      File other = new File(workingDir, "isos/other.iso");
+      Files.createParentDirs(other);
+      Files.write("hello", other, UTF_8);
+      IsoManifest manifest = new IsoManifest(workingDir.getPath());
+      manifest.md5(other);
+      HttpClient http = createMock(HttpClient.class);
+      replay(http);
+
+      assertEquals(isoCache(workingDir, http, manifest).fetch(ISO, HELLO_MD5).get(), other);
+      verify(http);
+   }
+
+   public void testIsosWithTheSameNameAreKeptApart() throws Exception {
+      HttpClient http = createMock(HttpClient.class);
+      expect(http.invoke(anyObject(HttpRequest.class))).andReturn(
+               HttpResponse.builder().statusCode(200).payload(Payloads.newStringPayload("hello")).build());
+      expect(http.invoke(anyObject(HttpRequest.class))).andReturn(
+               HttpResponse.builder().statusCode(200).payload(Payloads.newStringPayload("world")).build());
+      replay(http);
+      File workingDir = Files.createTempDir();
+      IsoCache isoCache = isoCache(workingDir, http, new IsoManifest(workingDir.getPath()));
+
+      File iso = isoCache.fetch(ISO, null).get();
+      File other = isoCache.fetch(URI.create("http://other/test.iso"), null).get();
+      assertNotEquals(other, iso);
+      assertEquals(Files.toString(iso, UTF_8), "hello");
+      assertEquals(Files.toString(other, UTF_8), "world");
+      verify(http);
+   }
+
+   private static IsoCache isoCache(File workingDir, HttpClient http, IsoManifest manifest) {
+      return new IsoCache(workingDir.getPath(), http, manifest, MoreExecutors.sameThreadExecutor());
+   }
+}
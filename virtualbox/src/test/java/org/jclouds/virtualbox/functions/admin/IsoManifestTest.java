@@ -0,0 +1,74 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.virtualbox.functions.admin;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.testng.annotations.Test;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests the IsoManifest
+ */
+@Test(groups = "unit", testName = "IsoManifestTest")
+public class IsoManifestTest {
+
+   private static final String HELLO_MD5 = "5d41402abc4b2a76b9719d911017c592";
+
+   public void testMd5IsRecordedAndReadBack() throws IOException {
+      File workingDir = Files.createTempDir();
+      File iso = iso(workingDir, "hello");
+
+      assertEquals(new IsoManifest(workingDir.getPath()).md5(iso), HELLO_MD5);
+      assertEquals(new IsoManifest(workingDir.getPath()).recordedMd5(iso), HELLO_MD5);
+   }
+
+   public void testRecordedMd5IsNotTrustedOnceTheIsoChanged() throws IOException {
+      File workingDir = Files.createTempDir();
+      File iso = iso(workingDir, "hello");
+      IsoManifest manifest = new IsoManifest(workingDir.getPath());
+      manifest.record(iso, "not the md5");
+
+      Files.write("hello, again", iso, UTF_8);
+      assertNull(manifest.recordedMd5(iso));
+   }
+
+   public void testKnownIsosAreNotHashedAgain() throws IOException {
+      File workingDir = Files.createTempDir();
+      File iso = iso(workingDir, "hello");
+      IsoManifest manifest = new IsoManifest(workingDir.getPath());
+      // only the manifest is read, so the recorded md5 comes back even though it is wrong
+      manifest.record(iso, "recorded");
+
+      assertEquals(new IsoManifest(workingDir.getPath()).md5(iso), "recorded");
+   }
+
+   private static File iso(File workingDir, String content) throws IOException {
+      File iso = new File(new File(workingDir, "isos"), "test.iso");
+      Files.createParentDirs(iso);
+      Files.write(content, iso, UTF_8);
+      return iso;
+   }
+}
@@ -0,0 +1,162 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.virtualbox.util;
+
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.jclouds.virtualbox.functions.IpAddressesLoadingCache;
+import org.testng.annotations.Test;
+import org.virtualbox_4_2.Holder;
+import org.virtualbox_4_2.IEvent;
+import org.virtualbox_4_2.IEventListener;
+import org.virtualbox_4_2.IEventSource;
+import org.virtualbox_4_2.IMachine;
+import org.virtualbox_4_2.IVirtualBox;
+import org.virtualbox_4_2.MachineState;
+import org.virtualbox_4_2.VirtualBoxManager;
+
+import com.google.common.base.Predicates;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests the GuestIpDiscovery against a fake {@link VirtualBoxManager}
+ */
+@Test(groups = "unit", testName = "GuestIpDiscoveryTest")
+public class GuestIpDiscoveryTest {
+
+   public void testSweepReadsTheIpsOfRunningMachinesOnly() {
+      IMachine running = machine("vm1", MachineState.Running, ImmutableList.of("/VirtualBox/GuestInfo/Net/0/V4/IP",
+               "/VirtualBox/GuestInfo/Net/1/V4/IP"), ImmutableList.of("10.0.3.15", "192.168.56.101"));
+      IMachine poweredOff = machine("vm2", MachineState.PoweredOff,
+               ImmutableList.of("/VirtualBox/GuestInfo/Net/0/V4/IP"), ImmutableList.of("192.168.56.102"));
+      IpAddressesLoadingCache cache = new IpAddressesLoadingCache(Suppliers.ofInstance(manager(running, poweredOff)));
+      GuestIpDiscovery discovery = new GuestIpDiscovery(Suppliers.ofInstance(manager(running, poweredOff)), cache);
+
+      discovery.sweep();
+
+      assertEquals(cache.getIfPresent(MachineNameOrIdAndNicSlot.fromParts("vm1", 0)), "10.0.3.15");
+      assertEquals(cache.getIfPresent(MachineNameOrIdAndNicSlot.fromParts("vm1", 1)), "192.168.56.101");
+      assertEquals(cache.getIfPresent(MachineNameOrIdAndNicSlot.fromParts("vm1", 2)), "");
+      assertNull(cache.getIfPresent(MachineNameOrIdAndNicSlot.fromParts("vm2", 0)));
+   }
+
+   public void testEmptyValueForgetsTheIp() {
+      VirtualBoxManager manager = manager();
+      IpAddressesLoadingCache cache = new IpAddressesLoadingCache(Suppliers.ofInstance(manager));
+      GuestIpDiscovery discovery = new GuestIpDiscovery(Suppliers.ofInstance(manager), cache);
+
+      discovery.update("vm1", "/VirtualBox/GuestInfo/Net/0/V4/IP", "192.168.56.101");
+      discovery.update("vm1", "/VirtualBox/GuestInfo/Net/0/V4/Netmask", "255.255.255.0");
+      assertEquals(cache.getIfPresent(MachineNameOrIdAndNicSlot.fromParts("vm1", 0)), "192.168.56.101");
+
+      discovery.update("vm1", "/VirtualBox/GuestInfo/Net/0/V4/IP", "");
+      assertEquals(cache.getIfPresent(MachineNameOrIdAndNicSlot.fromParts("vm1", 0)), "");
+   }
+
+   public void testAwaitReturnsAsSoonAsTheGuestReportsTheIp() throws InterruptedException {
+      IMachine booting = machine("vm1", MachineState.Running, ImmutableList.<String> of(),
+               ImmutableList.<String> of());
+      VirtualBoxManager manager = manager(booting);
+      final GuestIpDiscovery discovery = new GuestIpDiscovery(Suppliers.ofInstance(manager),
+               new IpAddressesLoadingCache(Suppliers.ofInstance(manager)));
+      try {
+         Thread guest = new Thread() {
+            @Override
+            public void run() {
+               discovery.update("vm1", "/VirtualBox/GuestInfo/Net/0/V4/IP", "192.168.56.101");
+            }
+         };
+         guest.start();
+
+         assertEquals(discovery.awaitIpAddress("vm1", Predicates.<String> notNull(), 10, TimeUnit.SECONDS),
+                  "192.168.56.101");
+         guest.join();
+      } finally {
+         discovery.stop();
+      }
+   }
+
+   public void testAwaitGivesUpAfterTheTimeout() {
+      IMachine booting = machine("vm1", MachineState.Running, ImmutableList.<String> of(),
+               ImmutableList.<String> of());
+      GuestIpDiscovery discovery = new GuestIpDiscovery(Suppliers.ofInstance(manager(booting)),
+               new IpAddressesLoadingCache(Suppliers.ofInstance(manager(booting))));
+      try {
+         assertNull(discovery.awaitIpAddress("vm1", Predicates.<String> notNull(), 100, TimeUnit.MILLISECONDS));
+      } finally {
+         discovery.stop();
+      }
+   }
+
+   private static VirtualBoxManager manager(IMachine... machines) {
+      VirtualBoxManager manager = createNiceMock(VirtualBoxManager.class);
+      IVirtualBox vBox = createNiceMock(IVirtualBox.class);
+      IEventSource eventSource = createNiceMock(IEventSource.class);
+      expect(manager.getVBox()).andReturn(vBox).anyTimes();
+      expect(vBox.getMachines()).andReturn(ImmutableList.copyOf(machines)).anyTimes();
+      for (IMachine machine : machines) {
+         expect(vBox.findMachine(machine.getName())).andReturn(machine).anyTimes();
+      }
+      expect(vBox.getEventSource()).andReturn(eventSource).anyTimes();
+      // no events, a listener waits for them
+      expect(eventSource.getEvent(anyObject(IEventListener.class), anyInt())).andAnswer(new IAnswer<IEvent>() {
+         @Override
+         public IEvent answer() throws Throwable {
+            Thread.sleep(50);
+            return null;
+         }
+      }).anyTimes();
+      replay(manager, vBox, eventSource);
+      return manager;
+   }
+
+   @SuppressWarnings("unchecked")
+   private static IMachine machine(String name, MachineState state, final List<String> names,
+            final List<String> values) {
+      IMachine machine = createNiceMock(IMachine.class);
+      expect(machine.getName()).andReturn(name).anyTimes();
+      expect(machine.getState()).andReturn(state).anyTimes();
+      machine.enumerateGuestProperties(eq(IpAddressesLoadingCache.IP_PROPERTIES), anyObject(Holder.class),
+               anyObject(Holder.class), anyObject(Holder.class), anyObject(Holder.class));
+      expectLastCall().andAnswer(new IAnswer<Void>() {
+         @Override
+         public Void answer() throws Throwable {
+            ((Holder<List<String>>) EasyMock.getCurrentArguments()[1]).value = names;
+            ((Holder<List<String>>) EasyMock.getCurrentArguments()[2]).value = values;
+            return null;
+         }
+      }).anyTimes();
+      replay(machine);
+      return machine;
+   }
+}
@@ -0,0 +1,163 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.virtualbox.util;
+
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import org.jclouds.virtualbox.domain.MachineSnapshot;
+import org.testng.annotations.Test;
+import org.virtualbox_4_2.IGuestOSType;
+import org.virtualbox_4_2.IMachine;
+import org.virtualbox_4_2.INATEngine;
+import org.virtualbox_4_2.INetworkAdapter;
+import org.virtualbox_4_2.IVirtualBox;
+import org.virtualbox_4_2.MachineState;
+import org.virtualbox_4_2.NetworkAttachmentType;
+import org.virtualbox_4_2.VBoxException;
+import org.virtualbox_4_2.VirtualBoxManager;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Tests the MachineSnapshots
+ */
+@Test(groups = "unit", testName = "MachineSnapshotsTest")
+public class MachineSnapshotsTest {
+
+   public void testMachineIsReadOnce() {
+      IVirtualBox vBox = vBox(1);
+      IMachine machine = machine("node1");
+      MachineSnapshots snapshots = new MachineSnapshots(Suppliers.ofInstance(manager(vBox)),
+               MoreExecutors.sameThreadExecutor());
+
+      MachineSnapshot snapshot = snapshots.get(machine);
+      assertSame(snapshots.get(machine), snapshot);
+      verify(machine);
+
+      assertEquals(snapshot.getName(), "node1");
+      assertEquals(snapshot.getState(), MachineState.Running);
+      assertEquals(snapshot.getOsDescription(), "Ubuntu (64 bit)");
+      assertEquals(snapshot.getNics().size(), 1);
+      assertEquals(snapshot.getNics().get(0).getNatRedirects(), ImmutableList.of("ssh,1,127.0.0.1,2222,,22"));
+   }
+
+   public void testGuestOsTypesAreReadOnce() {
+      IVirtualBox vBox = vBox(1);
+      MachineSnapshots snapshots = new MachineSnapshots(Suppliers.ofInstance(manager(vBox)),
+               MoreExecutors.sameThreadExecutor());
+
+      Map<IMachine, MachineSnapshot> read = snapshots.getAll(ImmutableList.of(machine("node1"), machine("node2")));
+      assertEquals(read.size(), 2);
+      verify(vBox);
+   }
+
+   public void testMachinesThatCantBeReadAreLeftOut() {
+      IMachine deleted = createNiceMock(IMachine.class);
+      expect(deleted.getId()).andThrow(new VBoxException(createNiceMock(Throwable.class),
+               "VirtualBox error: the object is not ready"));
+      replay(deleted);
+      IMachine machine = machine("node1");
+      MachineSnapshots snapshots = new MachineSnapshots(Suppliers.ofInstance(manager(vBox(1))),
+               MoreExecutors.sameThreadExecutor());
+
+      Map<IMachine, MachineSnapshot> read = snapshots.getAll(ImmutableList.of(deleted, machine));
+      assertEquals(read.keySet(), ImmutableSet.of(machine));
+   }
+
+   public void testCallerReadsTheMachinesWhenUserThreadsAreBusy() {
+      final CountDownLatch busy = new CountDownLatch(1);
+      ListeningExecutorService userExecutor = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+      try {
+         userExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+               try {
+                  busy.await();
+               } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+               }
+            }
+         });
+         MachineSnapshots snapshots = new MachineSnapshots(Suppliers.ofInstance(manager(vBox(1))), userExecutor);
+
+         Map<IMachine, MachineSnapshot> read = snapshots.getAll(ImmutableList.of(machine("node1"), machine("node2")));
+         assertEquals(read.size(), 2);
+      } finally {
+         busy.countDown();
+         userExecutor.shutdownNow();
+      }
+   }
+
+   private static VirtualBoxManager manager(IVirtualBox vBox) {
+      VirtualBoxManager manager = createNiceMock(VirtualBoxManager.class);
+      expect(manager.getVBox()).andReturn(vBox).anyTimes();
+      replay(manager);
+      return manager;
+   }
+
+   private static IVirtualBox vBox(int osTypeReads) {
+      IVirtualBox vBox = createMock(IVirtualBox.class);
+      IGuestOSType osType = createNiceMock(IGuestOSType.class);
+      expect(osType.getDescription()).andReturn("Ubuntu (64 bit)").anyTimes();
+      expect(osType.getIs64Bit()).andReturn(true).anyTimes();
+      expect(vBox.getGuestOSType("Ubuntu_64")).andReturn(osType).times(osTypeReads);
+      replay(vBox, osType);
+      return vBox;
+   }
+
+   /**
+    * A running machine with a NAT adapter, each attribute of which can only be read once.
+    */
+   private static IMachine machine(String name) {
+      IMachine machine = createMock(IMachine.class);
+      INetworkAdapter nat = createNiceMock(INetworkAdapter.class);
+      INetworkAdapter none = createNiceMock(INetworkAdapter.class);
+      INATEngine natEngine = createNiceMock(INATEngine.class);
+      expect(machine.getId()).andReturn(name + "-id");
+      expect(machine.getName()).andReturn(name);
+      expect(machine.getState()).andReturn(MachineState.Running);
+      expect(machine.getExtraData("guestUser")).andReturn("toor");
+      expect(machine.getExtraData("guestPassword")).andReturn("password");
+      expect(machine.getOSTypeId()).andReturn("Ubuntu_64");
+      expect(machine.getNetworkAdapter(0L)).andReturn(nat);
+      expect(machine.getNetworkAdapter(anyLong())).andReturn(none).times(3);
+      expect(nat.getAttachmentType()).andReturn(NetworkAttachmentType.NAT);
+      expect(nat.getNATEngine()).andReturn(natEngine);
+      expect(natEngine.getHostIP()).andReturn("");
+      expect(natEngine.getRedirects()).andReturn(ImmutableList.of("ssh,1,127.0.0.1,2222,,22"));
+      expect(none.getAttachmentType()).andReturn(NetworkAttachmentType.Null).anyTimes();
+      replay(machine, nat, none, natEngine);
+      return machine;
+   }
+}
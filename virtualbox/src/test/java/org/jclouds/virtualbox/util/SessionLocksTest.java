@@ -0,0 +1,151 @@
+/**
+ * Licensed to jclouds, Inc. (jclouds) under one or more
+ * contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  jclouds licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jclouds.virtualbox.util;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.same;
+import static org.easymock.EasyMock.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import org.easymock.IAnswer;
+import org.testng.annotations.Test;
+import org.virtualbox_4_2.IMachine;
+import org.virtualbox_4_2.ISession;
+import org.virtualbox_4_2.IVirtualBox;
+import org.virtualbox_4_2.LockType;
+import org.virtualbox_4_2.SessionState;
+import org.virtualbox_4_2.VBoxException;
+import org.virtualbox_4_2.VirtualBoxManager;
+
+import com.google.common.base.Suppliers;
+
+/**
+ * Tests the SessionLocks
+ */
+@Test(groups = "unit", testName = "SessionLocksTest")
+public class SessionLocksTest {
+
+   public void testUnlockedSessionIsReused() {
+      FakeSession session = new FakeSession();
+      IMachine machine = machine(session, 0);
+      VirtualBoxManager manager = manager(machine, session.mock, 1);
+      SessionLocks locks = new SessionLocks(Suppliers.ofInstance(manager));
+
+      for (int i = 0; i < 3; i++) {
+         assertSame(locks.lock("vm1", LockType.Write), session.mock);
+         locks.unlock("vm1", LockType.Write, session.mock);
+      }
+      verify(manager);
+      assertEquals(session.state, SessionState.Unlocked);
+      assertEquals(locks.stats(LockType.Write).getLockCount(), 3);
+   }
+
+   public void testLockRefusedByVBoxIsRetried() {
+      FakeSession session = new FakeSession();
+      IMachine machine = machine(session, 2);
+      // a session vbox refused to lock is not reused
+      SessionLocks locks = new SessionLocks(Suppliers.ofInstance(manager(machine, session.mock, 3)));
+
+      assertSame(locks.lock("vm1", LockType.Shared), session.mock);
+      locks.unlock("vm1", LockType.Shared, session.mock);
+      verify(machine);
+
+      SessionLocks.Stats stats = locks.stats(LockType.Shared);
+      assertEquals(stats.getLockCount(), 1);
+      assertEquals(stats.getRetryCount(), 2);
+      assertEquals(locks.stats(LockType.Write).getLockCount(), 0);
+   }
+
+   public void testUnregisteredMachineIsNotLocked() {
+      FakeSession session = new FakeSession();
+      IMachine machine = createNiceMock(IMachine.class);
+      machine.lockMachine(session.mock, LockType.Write);
+      expectLastCall().andThrow(new VBoxException(createNiceMock(Throwable.class),
+               "VirtualBox error: Could not find a registered machine named 'vm1'"));
+      replay(machine);
+      SessionLocks locks = new SessionLocks(Suppliers.ofInstance(manager(machine, session.mock, 1)));
+
+      assertNull(locks.lock("vm1", LockType.Write));
+      assertEquals(locks.stats(LockType.Write).getLockCount(), 0);
+   }
+
+   private static VirtualBoxManager manager(IMachine machine, ISession session, int sessionObjects) {
+      VirtualBoxManager manager = createNiceMock(VirtualBoxManager.class);
+      IVirtualBox vBox = createNiceMock(IVirtualBox.class);
+      expect(manager.getVBox()).andReturn(vBox).anyTimes();
+      expect(manager.getSessionObject()).andReturn(session).times(sessionObjects);
+      expect(vBox.findMachine("vm1")).andReturn(machine).anyTimes();
+      replay(manager, vBox);
+      return manager;
+   }
+
+   /**
+    * A machine which refuses to be locked the given number of times, then locks the session.
+    */
+   private static IMachine machine(final FakeSession session, int refusals) {
+      IMachine machine = createNiceMock(IMachine.class);
+      if (refusals > 0) {
+         machine.lockMachine(session.mock, LockType.Shared);
+         expectLastCall().andThrow(new VBoxException(createNiceMock(Throwable.class),
+                  "VirtualBox error: The machine is locked by another session")).times(refusals);
+      }
+      machine.lockMachine(same(session.mock), anyObject(LockType.class));
+      expectLastCall().andAnswer(new IAnswer<Void>() {
+         @Override
+         public Void answer() {
+            session.state = SessionState.Locked;
+            return null;
+         }
+      }).anyTimes();
+      replay(machine);
+      return machine;
+   }
+
+   /**
+    * A session whose state follows its locks.
+    */
+   private static class FakeSession {
+      private SessionState state = SessionState.Unlocked;
+      private final ISession mock = createNiceMock(ISession.class);
+
+      private FakeSession() {
+         expect(mock.getState()).andAnswer(new IAnswer<SessionState>() {
+            @Override
+            public SessionState answer() {
+               return state;
+            }
+         }).anyTimes();
+         mock.unlockMachine();
+         expectLastCall().andAnswer(new IAnswer<Void>() {
+            @Override
+            public Void answer() {
+               state = SessionState.Unlocked;
+               return null;
+            }
+         }).anyTimes();
+         replay(mock);
+      }
+   }
+}